@@ -57,6 +57,8 @@ public class MapBoxSampleActivity extends Activity {
 	final static String PREFS_FILEPATH = "de.rooehler.mapboxrenderer.filepath";
 	final static String PREFS_RENDERER_TYPE = "de.rooehler.mapboxrenderer.renderer_type";
 	
+	final static long TILE_DISK_CACHE_SIZE = 64 * 1024 * 1024;
+	
 	private MapView mv;
 	private String currentMap = null;
 	private ITileLayer mCurrentLayer;
@@ -272,6 +274,7 @@ public class MapBoxSampleActivity extends Activity {
 		}
 
 		mCurrentLayer = new GDALTileLayer(new File(filePath), (GDALDataset) dataset);
+		((GDALTileLayer) mCurrentLayer).enableDiskCache(new File(getCacheDir(), "rastertiles"), TILE_DISK_CACHE_SIZE);
 
 		Log.d(TAG, "setting zoom for new file to "+ (((GDALTileLayer) mCurrentLayer).getStartZoomLevel()));
 		mv.setZoom(((GDALTileLayer) mCurrentLayer).getStartZoomLevel());
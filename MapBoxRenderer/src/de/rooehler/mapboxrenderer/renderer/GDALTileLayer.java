@@ -1,14 +1,13 @@
 package de.rooehler.mapboxrenderer.renderer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.Serializable;
-import java.nio.ByteOrder;
-import java.util.HashMap;
-import java.util.List;
 
 import uk.co.senab.bitmapcache.CacheableBitmapDrawable;
 import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
 import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory;
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -23,26 +22,23 @@ import com.mapbox.mapboxsdk.tileprovider.tilesource.TileLayer;
 import com.mapbox.mapboxsdk.views.util.Projection;
 import com.vividsolutions.jts.geom.Envelope;
 
-import de.rooehler.rastertheque.core.Band.Color;
-import de.rooehler.rastertheque.core.DataType;
-import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.RasterDataset;
-import de.rooehler.rastertheque.core.RasterQuery;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ByteBufferReaderUtil;
+import de.rooehler.rastertheque.io.cache.TileDiskCache;
 import de.rooehler.rastertheque.io.gdal.GDALDataset;
-import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
-import de.rooehler.rastertheque.processing.RasterOps;
-import de.rooehler.rastertheque.processing.rendering.MColorMap;
-import de.rooehler.rastertheque.processing.resampling.Resampler;
+import de.rooehler.rastertheque.processing.rendering.SharedTiles;
+import de.rooehler.rastertheque.processing.rendering.TileRenderer;
 import de.rooehler.rastertheque.proj.Proj;
 import de.rooehler.rastertheque.util.Formulae;
-import de.rooehler.rastertheque.util.Hints;
-import de.rooehler.rastertheque.util.Hints.Key;
 /**
  * A GDALTileLayer extends the Mapbox TileLayer to extract Tiles out of the
  * GDAL raster data
  * 
+ * this adapts the TileRenderer of the library to the bitmaps of Mapbox, the windows
+ * of the tiles are derived from the Mapbox projection of the bounding box of the raster
+ * 
+ * concurrent renders of the same (meta)tile by the download threads are coalesced,
+ * the first render reads and the others wait for its pixels
+ * 
  * @author Robert Oehler
  *
  */
@@ -58,8 +54,31 @@ public class GDALTileLayer extends TileLayer {
 	
 	private int mTileSize;
 	
+	private volatile int mMetaTileSize = 1;
+	
+	private volatile TileDiskCache mDiskCache;
+	
+	private final TileRenderer mTileRenderer;
+	
 	private static final int NO_DATA_COLOR = 0xff000000;
 	
+	/**
+	 * the shared bitmaps of empty tiles
+	 * 
+	 * the bitmap cache of Mapbox recycles the bitmaps it evicts, hence it receives
+	 * copies of them, which saves rendering and filling the pixels but not the bitmap
+	 */
+	private final SharedTiles<Bitmap> mEmptyTiles = new SharedTiles<Bitmap>() {
+		@Override
+		protected Bitmap create(int size, int color) {
+			return Bitmap.createBitmap(SharedTiles.createPixels(size, color), size, size, Config.ARGB_8888);
+		}
+		@Override
+		protected void release(Bitmap bitmap) {
+			bitmap.recycle();
+		}
+	};
+	
 	private static long mStart = -1;
 	private static long mTileCount = 0;
 	
@@ -79,6 +98,14 @@ public class GDALTileLayer extends TileLayer {
 		mRasterDataset = dataset;
 
 		initialize();
+		
+		mTileRenderer = new TileRenderer(dataset, new TileRenderer.TileGrid() {
+			@Override
+			public Rect getWindow(long tileX, long tileY, int zoom, int tiles, int tileSize) {
+				return getReadWindow((int) tileX, (int) tileY, zoom, tiles);
+			}
+		});
+		mTileRenderer.setNoDataColor(NO_DATA_COLOR);
 	}	
 
 	/**
@@ -124,6 +151,13 @@ public class GDALTileLayer extends TileLayer {
 
     /**
      * calculates a Raster Drawable using the GDAL dataset
+     * 
+     * if a metatile size larger than 1 is set, the metatile of NxN adjacent tiles which contains
+     * this tile is rendered with a single query and all its tiles are put into the cache
+     * 
+     * if the disk cache is enabled, a tile which was rendered before is read from it
+     * 
+     * tiles which are known to be empty before reading are served from the shared empty tile
      */
     @Override
     public Drawable getDrawableFromTile(final MapTileDownloader downloader, final MapTile aTile, boolean hdpi) {
@@ -138,22 +172,96 @@ public class GDALTileLayer extends TileLayer {
     	}
     	final int zoom = aTile.getZ();
     	
+    	final int tilesPerAxis = 1 << zoom;
+    	final int n = Math.min(mMetaTileSize, tilesPerAxis);
+
+    	if(n > 1){
+    		//this tile may already be rendered as a part of the metatile of a sibling
+    		final CacheableBitmapDrawable cached = downloader.getCache().getMapTileFromMemory(aTile);
+    		if(cached != null){
+    			return cached;
+    		}
+    	}
+    	
+    	final TileDiskCache diskCache = mDiskCache;
+    	if(diskCache != null){
+    		final byte[] data = diskCache.get(zoom, aTile.getX(), aTile.getY(), ts);
+    		final Bitmap bitmap = data != null ? BitmapFactory.decodeByteArray(data, 0, data.length) : null;
+    		if(bitmap != null){
+    			return downloader.getCache().putTileBitmap(aTile, bitmap);
+    		}
+    	}
+
+    	if(n <= 1){
+    		
+    		final int[] pixels = mTileRenderer.render(aTile.getX(), aTile.getY(), zoom, ts);
+    		
+    		mTileCount++;
+    		Log.d(TAG, "tile done "+ (System.currentTimeMillis() - mStart ) / 1000f + " since start for "+mTileCount+ " tiles");
+    		
+    		return pixels == null ? putEmptyTile(downloader, aTile, ts) : putTile(downloader, aTile, pixels, ts);
+    	}
+    	
+    	//the metatiles are aligned to multiples of the metatile size
+    	final int metaX = Math.min(aTile.getX() / n * n, tilesPerAxis - n);
+    	final int metaY = Math.min(aTile.getY() / n * n, tilesPerAxis - n);
+    	
+    	final int[] pixels = mTileRenderer.render(metaX, metaY, zoom, n, ts);
+    	
+    	final int[] tilePixels = new int[ts * ts];
+    	Drawable result = null;
+    	
+    	for (int j = 0; j < n; j++) {
+    		for (int i = 0; i < n; i++) {
+    			
+    			final boolean isRequested = metaX + i == aTile.getX() && metaY + j == aTile.getY();
+    			final MapTile tile = isRequested ? aTile : new MapTile(getCacheKey(), zoom, metaX + i, metaY + j);
+    			
+    			if(!isRequested && downloader.getCache().getMapTileFromMemory(tile) != null){
+    				//already put by a coalesced render of this metatile
+    				continue;
+    			}
+    			
+    			if(pixels == null){
+    				final Drawable empty = putEmptyTile(downloader, tile, ts);
+    				if(isRequested){
+    					result = empty;
+    				}
+    				continue;
+    			}
+    			
+    			TileRenderer.slice(pixels, n, ts, i, j, tilePixels);
+    			
+    			final Drawable drawable = putTile(downloader, tile, tilePixels, ts);
+    			if(isRequested){
+    				result = drawable;
+    			}
+    		}
+    	}
+    	
+    	mTileCount += n * n;
+    	Log.d(TAG, "metatile done "+ (System.currentTimeMillis() - mStart ) / 1000f + " since start for "+mTileCount+ " tiles");
+    	
+    	return result;
+    }
+    
+    /**
+     * calculates the window of the raster which is covered by the block of @param tiles x @param tiles tiles
+     * whose upper left tile is @param tileX, @param tileY at @param zoom
+     * 
+     * the position of the block within the bounding box of the raster is interpolated to its pixels
+     * 
+     * @return the window in pixel coordinates of the raster, which may exceed it, or null if the block has no extent
+     */
+    private Rect getReadWindow(final int tileX, final int tileY, final int zoom, final int tiles) {
+    	
     	final Rect dim = mRasterDataset.getDimension();
 		final int w  = dim.width();
 		final int h = dim.height();
-				
-		final DataType datatype = mRasterDataset.getBands().get(0).datatype();
-				
-    	long now = System.currentTimeMillis();
     	
     	//1. where is tile which should be displayed
-    	final Point t  = Projection.tileXYToPixelXY(aTile.getX(), aTile.getY(), null);
-    	final Point t2 = Projection.tileXYToPixelXY(aTile.getX() + 1, aTile.getY() + 1 , null);
-    	
-    	final LatLng uL = Projection.pixelXYToLatLong(t.x, t.y, aTile.getZ());
-    	final LatLng lR = Projection.pixelXYToLatLong(t2.x, t2.y, aTile.getZ());
-    	
-    	final Envelope bounds = new Envelope(uL.getLongitude(),lR.getLongitude(),lR.getLatitude(),uL.getLatitude());
+    	final Point t  = Projection.tileXYToPixelXY(tileX, tileY, null);
+    	final Point t2 = Projection.tileXYToPixelXY(tileX + tiles, tileY + tiles , null);
     			
     	final PointF northWest = Projection.latLongToPixelXY(mBoundingBox.getLatNorth(), mBoundingBox.getLonWest(), zoom, null);
     	final PointF southEast = Projection.latLongToPixelXY(mBoundingBox.getLatSouth(), mBoundingBox.getLonEast(), zoom, null);
@@ -165,343 +273,109 @@ public class GDALTileLayer extends TileLayer {
     	final double yRatio2 = (t2.y - northWest.y) / (southEast.y - northWest.y);
     	
     	//3. interpolate x and y to read from
-    	double readFromX =   w * xRatio;
-    	double readFromY =   h * yRatio;
-    	double readFromX2 =  w * xRatio2;
-    	double readFromY2 =  h * yRatio2;
+    	final double readFromX =   w * xRatio;
+    	final double readFromY =   h * yRatio;
 
     	//4. calculate the amount to read
-    	int readAmountX = (int) Math.round(readFromX2 - readFromX);  
-    	int readAmountY = (int) Math.round(readFromY2 - readFromY);  
+    	final int readAmountX = (int) Math.round(w * xRatio2 - readFromX);  
+    	final int readAmountY = (int) Math.round(h * yRatio2 - readFromY);  
     	
-    	if(readAmountX < 0 || readAmountY < 0){
-    		return returnNoDataTile(downloader, aTile, ts, now);
+    	if(readAmountX <= 0 || readAmountY <= 0){
+    		return null;
     	}
-
-//        Log.d(TAG, String.format("tile %d %d zoom %d read from %d %d amount %d %d",aTile.getX(), aTile.getY(),aTile.getZ(), aTile.getZ(),readFromX,readFromY,readAmountX,readAmountY));   
-        
-        if(readFromX < 0 || readFromX + readAmountX > w ||  readFromY < 0 || readFromY + readAmountY > h){
-
-        	
-        	//if entirely out of bounds -> return white tile
-        	if(readFromX + readAmountX <= 0 || readFromX  > w ||
-        	   readFromY + readAmountY <= 0 || readFromY  > h){
-        		//cannot read, create white tile
-        		return returnNoDataTile(downloader, aTile, ts, now);
-        	}
-        	
-        	//this tile is partially out of bounds, get available rectangle
-        	int availableX = readAmountX, availableY = readAmountY;
-        	int targetXSize = ts, targetYSize = ts;
-            int coveredXOrigin = 0, coveredYOrigin = 0;
-            final float scaleFactorX = (float) readAmountX  / ts;
-            final float scaleFactorY = (float) readAmountY  / ts;
-
-        	if(readFromX + readAmountX > w || 	readFromY + readAmountY > h){
-        		//max x or y bounds hit
-        		if(readFromX + readAmountX > w){        			
-        			availableX = (int) (w -  readFromX);   			
-        			targetXSize = (int) (availableX * (1 / scaleFactorX));
-        		}
-        		if(readFromY + readAmountY > h){        			
-        			availableY = (int) (h - readFromY);  			
-        			targetYSize = (int) (availableY * (1 / scaleFactorY));
-        		}
-        	}
-
-        	if(readFromX < 0 || readFromY < 0){
-        		//min x or y bounds hit
-        		if(readFromX < 0){        			
-        			availableX = (int) (readAmountX - Math.abs(readFromX));
-        			coveredXOrigin = Math.round((readAmountX - availableX) /  scaleFactorX);
-        			targetXSize = (int) (availableX * (1 /  scaleFactorX));
-        			readFromX = 0;
-        		}
-        		if(readFromY < 0){        			
-        			availableY = (int) (readAmountY - Math.abs(readFromY));
-        			coveredYOrigin = Math.round((readAmountY - availableY) / scaleFactorY);
-        			targetYSize = (int) (availableY * (1 / scaleFactorY));
-        			readFromY = 0;
-        		}
-        	}
-//        	Log.e(TAG, "reading of ("+availableX+","+availableY +") from "+readFromX+","+readFromY+" target {"+gdalTargetXSize+","+gdalTargetYSize+"}, covered: X"+coveredXOrigin+", Y "+coveredYOrigin);
-
-        	final Rect targetDim = useGDALAsResampler(targetXSize ,availableX) ?
-        			new Rect(0, 0, targetXSize, targetYSize) : new Rect(0, 0, availableX, availableY);
-        	
-        	final int pixels[] = executeQuery(
-        			bounds,
-           			new Rect((int)readFromX,(int) readFromY,(int) readFromX + availableX,(int) readFromY + availableY),
-             		targetDim,
-             		datatype,
-             		!useGDALAsResampler(targetXSize ,availableX),
-             		targetXSize / (double) availableX, targetYSize / (double) availableY);
-           	
-           	return createBoundsTile(downloader, aTile, pixels, coveredXOrigin,coveredYOrigin, targetXSize, targetYSize, ts, now);
-
-
-        }else{ //this rectangle is fully covered by the file
-//        	Log.i(TAG, "reading of ("+readAmountX+","+readAmountY +") from "+readFromX+","+readFromY+" of file {"+w+","+h+"}");    	
-        }  
-        final Rect targetDim = useGDALAsResampler(ts , readAmountX) ?
-        		new Rect(0,0, ts, ts) : new Rect(0, 0, readAmountX, readAmountY);
-      
-        final int pixels[] = executeQuery(
-        		bounds,
-        		new Rect((int)readFromX,(int) readFromY,(int) readFromX + readAmountX,(int) readFromY + readAmountY),
-        		targetDim,
-        		datatype,
-        		!useGDALAsResampler( ts , readAmountX),
-        		ts / (double) readAmountX , ts / (double) readAmountY);
-
-        Bitmap bitmap = Bitmap.createBitmap(ts, ts, Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, ts, 0, 0, ts, ts);
-        
-        mTileCount++;
-        Log.d(TAG, "tile done "+ (System.currentTimeMillis() - mStart ) / 1000f + " since start for "+mTileCount+ " tiles");
-        
-//        Log.d(TAG, "tile  took "+((System.currentTimeMillis() - now) / 1000.0f)+ " s");
-
-        CacheableBitmapDrawable result = downloader.getCache().putTileBitmap(aTile, bitmap);
-        if (result == null) {
-        	Log.d(TAG, "error reading stream from mbtiles");
-        }
-        
-        return result;
-
+    	
+    	final int left = (int) Math.floor(readFromX);
+    	final int top  = (int) Math.floor(readFromY);
+    	
+    	return new Rect(left, top, left + readAmountX, top + readAmountY);
     }
+    
     /**
-     * executes a query against the dataset, resamples the result if necessary and returns the rendered pixels
-     * @param bounds the bounds of the query
-     * @param readDim the target dimension of the query
-     * @param datatype the datatype of the query
-     * @param resample if resampling is necessary ( or done by implicitely providing a different target dimension in the query)
-     * @param targetWidth width of the target tile
-     * @param targetHeight height of the target tile
-     * @return array of pixels of size targetWidth * targetHeight
+     * puts the @param pixels of @param aTile of @param ts x @param ts pixels as bitmap into the cache of @param downloader
+     * @return the cached drawable
      */
-	public int[] executeQuery(final Envelope bounds, final Rect readDim, final Rect targetDim, final DataType datatype, boolean resample, final double scaleX, final double scaleY){
-		
-		final RasterQuery query = new GDALRasterQuery(
-				bounds,
-				mRasterDataset.getCRS(),
-				mRasterDataset.getBands(), 
-				readDim,
-				datatype,
-				targetDim);
-
-		Raster raster = null;
-		
-		synchronized(this){
-			raster = mRasterDataset.read(query);
-		}
-
-		if(resample){
-				
-			HashMap<Key,Serializable> resampleParams = new HashMap<>();
-
-			resampleParams.put(Resampler.KEY_SIZE, new Double[]{scaleX, scaleY});
-
-			RasterOps.execute(raster, RasterOps.RESIZE, resampleParams, null, null);
-
-		}
-		
-		if(checkIfHasRGBBands()){
-			//no rendering necessary
-			return renderRGB(raster);
-		}else{
-
-			HashMap<Key,Serializable> renderParams = new HashMap<>();
-
-			boolean containsColorMap = raster.getBands().get(0).colorMap() != null;
-			
-			if(containsColorMap){
-        		RasterOps.execute(raster, RasterOps.COLORMAP, renderParams, null, null);
-        	}else{
-        		RasterOps.execute(raster, RasterOps.AMPLITUDE_RESCALING, renderParams, null, null);
-        	}  
-			
-			final int width  = raster.getDimension().width();
-    		final int height = raster.getDimension().height();
-
-        	final int[] pixels  = new int[width * height];
-
-			raster.getData().asIntBuffer().get(pixels);
-
-			return pixels;
-
-		}
-	}
-
+    private CacheableBitmapDrawable putTile(final MapTileDownloader downloader, final MapTile aTile, final int[] pixels, final int ts){
+    	
+    	Bitmap bitmap = Bitmap.createBitmap(ts, ts, Config.ARGB_8888);
+    	bitmap.setPixels(pixels, 0, ts, 0, 0, ts, ts);
+    	
+    	final TileDiskCache diskCache = mDiskCache;
+    	if(diskCache != null){
+    		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    		if(bitmap.compress(CompressFormat.PNG, 100, os)){
+    			diskCache.put(aTile.getZ(), aTile.getX(), aTile.getY(), ts, os.toByteArray());
+    		}
+    	}
+    	
+    	CacheableBitmapDrawable result = downloader.getCache().putTileBitmap(aTile, bitmap);
+    	if (result == null) {
+    		Log.d(TAG, "error caching tile "+aTile);
+    	}
+    	return result;
+    }
+    
+    /**
+     * puts a copy of the shared empty tile of @param ts pixels as bitmap of @param aTile into the cache of @param downloader
+     * 
+     * empty tiles are not written to the disk cache as they are recognized without reading
+     * @return the cached drawable
+     */
+    private CacheableBitmapDrawable putEmptyTile(final MapTileDownloader downloader, final MapTile aTile, final int ts){
+    	
+    	final Bitmap bitmap = mEmptyTiles.get(ts, NO_DATA_COLOR).copy(Config.ARGB_8888, false);
+    	
+    	CacheableBitmapDrawable result = downloader.getCache().putTileBitmap(aTile, bitmap);
+    	if (result == null) {
+    		Log.d(TAG, "error caching tile "+aTile);
+    	}
+    	return result;
+    }
+    
+    @Override
+    public void detach() {
+    	
+    	if(mRasterDataset != null){    		
+    		mRasterDataset.close();
+    		mRasterDataset = null;
+    	}
+    	if(mDiskCache != null){
+    		mDiskCache.close();
+    		mDiskCache = null;
+    	}
+    	mEmptyTiles.clear();
+    }
 	/**
-	 * renders the bands of the the raster interpreting them a r,g and b channels
-	 * @param raster the raster containing the rgb bands
-	 * @return the array of argb pixels
+	 * sets the amount of tiles @param metaTileSize along each axis which are rendered at once, 1 to render tile by tile
 	 */
-	private int[] renderRGB(final Raster raster) {
+	public void setMetaTileSize(final int metaTileSize){
 		
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
-		
-		final int width  = raster.getDimension().width();
-		final int height = raster.getDimension().height();
-		final int pixelAmount = width * height;
-		
-		int [] pixels = new int[pixelAmount];
-		
-		double[] pixelsR = new double[pixelAmount];
-		double[] pixelsG = new double[pixelAmount];
-		double[] pixelsB = new double[pixelAmount];
-           
-		for (int i = 0; i < pixelAmount; i++) {	
-			pixelsR[i] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(0).datatype());
-		}
-		for (int j = 0; j < pixelAmount; j++) {	
-			pixelsG[j] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(1).datatype());
+		if(metaTileSize < 1){
+			throw new IllegalArgumentException("the metatile size must be at least 1, provided : " + metaTileSize);
 		}
-		for (int k = 0; k < pixelAmount; k++) {	
-			pixelsB[k] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(2).datatype());
-		}
-		
-        for (int l = 0; l < pixelAmount; l++) {	
-        	
-        	double r = pixelsR[l];
-        	double g = pixelsG[l];
-        	double b = pixelsB[l];
-        	
-        	pixels[l] = 0xff000000 | ((((int) r) << 16) & 0xff0000) | ((((int) g) << 8) & 0xff00) | ((int) b);
-        }
-        
-		return pixels;
+		mMetaTileSize = metaTileSize;
 	}
-
-	/**
-	 * returns a tile which partially contains raster data, the rest is filled with pixels according to the nodata value
-	 * @param downloader the downloader of this layer,
-	 * @param aTile the tile to render
-	 * @param gdalPixels the rendered pixels of the raster data
-	 * @param coveredOriginX the x coord of the covered area's origin
-	 * @param coveredOriginY the y coord of the covered area's origin
-	 * @param coveredAreaX the covered area's width
-	 * @param coveredAreaY the covered area's height
-	 * @param destinationTileSize the destination tileSize
-	 * @param timestamp when the creation of this tile started
-	 * @return the pixels of destTileSize*destTileSize,
-	 *  containing the rendered pixels filled up with nodata pixels
-	 */
-	public Drawable createBoundsTile(
-			final MapTileDownloader downloader,
-			final MapTile aTile,
-			final int[] gdalPixels,
-			final int coveredOriginX,
-			final int coveredOriginY,
-			final int coveredAreaX,
-			final int coveredAreaY,
-			final int destinationTileSize,
-			final long timestamp){
-
-		int[] pixels = new int[destinationTileSize * destinationTileSize];
-		int gdalPixelCounter = 0;
-
-		for (int y = 0; y < destinationTileSize; y++) {
-			for (int x = 0; x < destinationTileSize; x++) {
-
-				int pos = y * destinationTileSize + x;
-
-				if( x  >= coveredOriginX && y >= coveredOriginY && x < coveredOriginX + coveredAreaX && y < coveredOriginY + coveredAreaY){
-					//gdalpixel
-					pixels[pos] = gdalPixels[gdalPixelCounter++];
-
-				}else {
-					//no data
-					pixels[pos] =  NO_DATA_COLOR;
-				}
-			}
-		}
-		Bitmap bitmap = Bitmap.createBitmap(destinationTileSize, destinationTileSize, Config.ARGB_8888);
-		bitmap.setPixels(pixels, 0, destinationTileSize, 0, 0, destinationTileSize, destinationTileSize);
-
-//		Log.d(TAG, "tile  took "+((System.currentTimeMillis() - timestamp) / 1000.0f)+ " s");
-
-
-		CacheableBitmapDrawable result = downloader.getCache().putTileBitmap(aTile, bitmap);
-		if (result == null) {
-			Log.d(TAG, "error reading stream from mbtiles");
-		}
-		return result;
-
+	
+	public int getMetaTileSize(){
+		return mMetaTileSize;
 	}
-
-    
+	
 	/**
-	 * returns a Tile filled with pixels according to the NO_DATA_COLOR
-	 * as the desired coordinates were not covered by the dataset
-	 * @param bitmap to modify the pixels 
-	 * @param ts destination tilesize
-	 * @param timestamp when the creation of this tile started
-	 * @return the modified bitmap
+	 * @return the amount of renders which were saved as they attached to an identical render in flight
 	 */
-	protected Drawable returnNoDataTile(final MapTileDownloader downloader, final MapTile aTile,final int ts, final long timestamp){
-		
-		Bitmap bitmap = Bitmap.createBitmap(ts, ts, Config.ARGB_8888);
-		//cannot read, create white tile
-		int[] pixels = new int[ts * ts];
-		for (int i = 0; i < pixels.length; i++) {
-			pixels[i] = NO_DATA_COLOR;
-		}
-		bitmap.setPixels(pixels, 0, ts, 0, 0, ts, ts);
-
-		Log.d(TAG, "tile  took "+((System.currentTimeMillis() - timestamp) / 1000.0f)+ " s");
-		CacheableBitmapDrawable result = downloader.getCache().putTileBitmap(aTile, bitmap);
-		if (result == null) {
-			Log.d(TAG, "error reading stream from mbtiles");
-		}
-		return result;
-		
+	public long getCoalescedCount(){
+		return mTileRenderer.getCoalescedCount();
 	}
 	
 	/**
-	 * checks if this dataset consists of three bands red, green and blue
-	 * which can be used for rendering
-	 * @return if this dataset has three bands and their colors are RED GREEN and BLUE
+	 * enables the persistent cache of the rendered tiles in @param directory
+	 * which holds at most @param maxBytes bytes of tiles
 	 */
-	protected boolean checkIfHasRGBBands() {
+	public void enableDiskCache(final File directory, final long maxBytes){
 		
-		List<de.rooehler.rastertheque.core.Band> bands = mRasterDataset.getBands();
-		
-		return bands.size() == 3 &&
-			   bands.get(0).color() == Color.RED &&
-			   bands.get(1).color() == Color.GREEN &&
-			   bands.get(2).color() == Color.BLUE;
-	}
-
-
-    @Override
-    public void detach() {
-    	
-    	if(mRasterDataset != null){    		
-    		mRasterDataset.close();
-    		mRasterDataset = null;
-    	}
-    }
-    /**
-     * checks if the resampling should be done inherently by GDAL or by the provided Resampler
-     * 
-     * Currently for queries where the amount to read from the dataset
-     * is larger than the desired tile size GDAL is always used
-     * as otherwise enourmouse amounts of memory need to be allocated which will lead
-     * to OOM fastly
-     * 
-     * hence only if sample up operation is necessary the provided Resampler will be used
-     * 
-     * Sampling down is always done by GDAL
-     * 
-     * @param desiredTileSize the size of the tile to create
-     * @param readFromDataSetSize the amount to read from the dataset
-     * @return
-     */
-	public boolean useGDALAsResampler(int desiredTileSize, int readFromDataSetSize){
-		
-		return desiredTileSize <= readFromDataSetSize;
+		if(mDiskCache != null){
+			mDiskCache.close();
+		}
+		mDiskCache = new TileDiskCache(directory, mRasterDataset.getSource(), TileDiskCache.getStyle(mRasterDataset), maxBytes);
 	}
 	
 	public int getStartZoomLevel(){
@@ -209,6 +209,9 @@ public class TilesOverlay extends SafeDrawOverlay {
             } else {
                 mCurrentZoomFactor = 1.0f;
             }
+            // the tiles of this loop are requested first, pending requests of others are dropped
+            mTileProvider.setViewport(roundedZoom, mUpperLeft.x, mUpperLeft.y, mLowerRight.x,
+                    mLowerRight.y);
         }
 
         @Override
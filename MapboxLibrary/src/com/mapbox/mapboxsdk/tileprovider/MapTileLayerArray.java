@@ -281,6 +281,16 @@ public class MapTileLayerArray extends MapTileLayerBase {
         }
     }
 
+    @Override
+    public void setViewport(final int pZoom, final int pMinX, final int pMinY, final int pMaxX,
+            final int pMaxY) {
+        synchronized (mTileProviderList) {
+            for (final MapTileModuleLayerBase tileProvider : mTileProviderList) {
+                tileProvider.setViewport(pZoom, pMinX, pMinY, pMaxX, pMaxY);
+            }
+        }
+    }
+
     @Override
     public boolean hasNoSource() {
         synchronized (mTileProviderList) {
@@ -319,5 +319,19 @@ public abstract class MapTileLayerBase implements IMapTileProviderCallback, Tile
         }
     }
 
+    /**
+     * Sets the tiles which are currently drawn, so that the providers load the visible tiles
+     * first and drop requests which are not visible anymore. Does nothing by default.
+     *
+     * @param pZoom the zoom level of the drawn tiles
+     * @param pMinX the left most drawn tile
+     * @param pMinY the top most drawn tile
+     * @param pMaxX the right most drawn tile
+     * @param pMaxY the bottom most drawn tile
+     */
+    public void setViewport(final int pZoom, final int pMinX, final int pMinY, final int pMaxX,
+            final int pMaxY) {
+    }
+
     private static final String TAG = "MapTileLayerBase";
 }
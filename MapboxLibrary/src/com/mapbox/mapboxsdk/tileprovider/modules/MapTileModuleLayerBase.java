@@ -10,8 +10,11 @@ import com.mapbox.mapboxsdk.tileprovider.MapTileRequestState;
 import com.mapbox.mapboxsdk.tileprovider.constants.TileLayerConstants;
 import com.mapbox.mapboxsdk.tileprovider.tilesource.ITileLayer;
 import com.mapbox.mapboxsdk.util.BitmapUtils;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -116,12 +119,122 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
     protected final Object mQueueLockObject = new Object();
     protected final HashMap<MapTile, MapTileRequestState> mWorking;
     protected final LinkedHashMap<MapTile, MapTileRequestState> mPending;
+    /**
+     * requests of tiles which were already in the working queue when they were picked up,
+     * they are attached to the working request and completed with its result
+     */
+    protected final HashMap<MapTile, List<MapTileRequestState>> mWaiting;
+    private long mCoalescedCount;
+    /**
+     * requests which were dropped from the pending queue as their tile is not visible anymore,
+     * they are failed by the loader once it has left the queue lock
+     */
+    private final List<MapTileRequestState> mStale = new ArrayList<MapTileRequestState>();
+    private long mEvictedCount;
+    private int mViewportZoom = -1;
+    private double mViewportCenterX;
+    private double mViewportCenterY;
+    private double mViewportHalfWidth;
+    private double mViewportHalfHeight;
 
+    /**
+     * Sets the tiles which are currently drawn. The bounds are given in tiles of the zoom level
+     * and may exceed the world, as they do while the map wraps around.
+     *
+     * @param pZoom the zoom level of the drawn tiles
+     * @param pMinX the left most drawn tile
+     * @param pMinY the top most drawn tile
+     * @param pMaxX the right most drawn tile
+     * @param pMaxY the bottom most drawn tile
+     */
+    public void setViewport(final int pZoom, final int pMinX, final int pMinY, final int pMaxX,
+            final int pMaxY) {
+        synchronized (mQueueLockObject) {
+            mViewportZoom = pZoom;
+            mViewportCenterX = (pMinX + pMaxX + 1) / 2d;
+            mViewportCenterY = (pMinY + pMaxY + 1) / 2d;
+            mViewportHalfWidth = (pMaxX - pMinX + 1) / 2d;
+            mViewportHalfHeight = (pMaxY - pMinY + 1) / 2d;
+        }
+    }
+
+    /**
+     * Removes the pending request whose tile is closest to the center of the viewport. Requests
+     * of another zoom level or outside of the viewport are dropped on the way and failed by the
+     * loader. As long as no viewport is known the eldest request is returned.
+     * Must be called holding the queue lock.
+     *
+     * @return the next request or null if there is none
+     */
     public MapTileRequestState popFirstPending() {
+        if (mViewportZoom < 0) {
+            for (MapTile tile : mPending.keySet()) {
+                return mPending.remove(tile);
+            }
+            return null;
+        }
+        MapTile closest = null;
+        double closestDistance = Double.MAX_VALUE;
+        final Iterator<Map.Entry<MapTile, MapTileRequestState>> iterator =
+                mPending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<MapTile, MapTileRequestState> entry = iterator.next();
+            final double distance = viewportDistance(entry.getKey());
+            if (distance < 0) {
+                iterator.remove();
+                mStale.add(entry.getValue());
+                mEvictedCount++;
+            } else if (distance < closestDistance) {
+                closest = entry.getKey();
+                closestDistance = distance;
+            }
+        }
+        return closest != null ? mPending.remove(closest) : null;
+    }
+
+    /**
+     * Removes the pending request whose tile is farthest from the center of the viewport, or the
+     * eldest request as long as no viewport is known. Must be called holding the queue lock.
+     *
+     * @return the request to give up or null if there is none
+     */
+    private MapTileRequestState popLastPending() {
+        if (mViewportZoom < 0) {
+            return popFirstPending();
+        }
+        MapTile farthest = null;
+        double farthestDistance = -1;
         for (MapTile tile : mPending.keySet()) {
-            return mPending.remove(tile);
+            double distance = viewportDistance(tile);
+            if (distance < 0) {
+                distance = Double.MAX_VALUE;
+            }
+            if (farthest == null || distance > farthestDistance) {
+                farthest = tile;
+                farthestDistance = distance;
+            }
         }
-        return null;
+        return farthest != null ? mPending.remove(farthest) : null;
+    }
+
+    /**
+     * @return the squared distance of the center of the tile to the center of the viewport in
+     * tiles, or -1 if the tile is not part of the viewport
+     */
+    private double viewportDistance(final MapTile pTile) {
+        if (pTile.getZ() != mViewportZoom) {
+            return -1;
+        }
+        final int worldSize = 1 << mViewportZoom;
+        double dx = pTile.getX() + 0.5d - mViewportCenterX;
+        double dy = pTile.getY() + 0.5d - mViewportCenterY;
+        // the drawn tiles wrap around the world, take the closest copy of the tile
+        dx -= worldSize * Math.rint(dx / worldSize);
+        dy -= worldSize * Math.rint(dy / worldSize);
+        if (Math.abs(dx) > mViewportHalfWidth || Math.abs(dy) > mViewportHalfHeight) {
+            return -1;
+        }
+        return dx * dx + dy * dy;
     }
 
     /**
@@ -139,6 +252,7 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                 new ConfigurablePriorityThreadFactory(Thread.NORM_PRIORITY, getThreadGroupName()));
 
         mWorking = new HashMap<MapTile, MapTileRequestState>();
+        mWaiting = new HashMap<MapTile, List<MapTileRequestState>>();
         mPending =
                 new LinkedHashMap<MapTile, MapTileRequestState>(pPendingQueueSize + 2, 0.1f, true) {
 
@@ -148,7 +262,7 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                     protected boolean removeEldestEntry(
                             final Map.Entry<MapTile, MapTileRequestState> pEldest) {
                         while (size() > pPendingQueueSize) {
-                            MapTileRequestState state = popFirstPending();
+                            MapTileRequestState state = popLastPending();
                             state.getCallback().mapTileRequestFailed(state);
                         }
                         return false;
@@ -188,12 +302,59 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
     }
 
     /**
-     * Clears both pending and working queues.
+     * Clears both pending and working queues. Requests which are attached to a working request
+     * or were dropped as stale are failed, as nothing will complete them anymore.
      */
     protected void clearQueue() {
+        final List<MapTileRequestState> waiting = new ArrayList<MapTileRequestState>();
         synchronized (mQueueLockObject) {
             mPending.clear();
             mWorking.clear();
+            for (List<MapTileRequestState> states : mWaiting.values()) {
+                waiting.addAll(states);
+            }
+            mWaiting.clear();
+            waiting.addAll(mStale);
+            mStale.clear();
+        }
+        for (MapTileRequestState state : waiting) {
+            state.getCallback().mapTileRequestFailed(state);
+        }
+    }
+
+    /**
+     * Gets the amount of requests which attached to an identical request in the working queue
+     * instead of loading the tile again.
+     *
+     * @return the amount of coalesced requests
+     */
+    public long getCoalescedCount() {
+        synchronized (mQueueLockObject) {
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * Gets the amount of requests which were dropped from the pending queue as their tile was not
+     * visible anymore.
+     *
+     * @return the amount of evicted requests
+     */
+    public long getEvictedCount() {
+        synchronized (mQueueLockObject) {
+            return mEvictedCount;
+        }
+    }
+
+    /**
+     * Gets the depth of the queue, i.e. the amount of pending requests and requests which are
+     * currently loaded.
+     *
+     * @return the amount of queued requests
+     */
+    public int getQueueDepth() {
+        synchronized (mQueueLockObject) {
+            return mPending.size() + mWorking.size();
         }
     }
 
@@ -221,6 +382,21 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
         }
     }
 
+    /**
+     * Marks a given map tile as neither being downloaded or worked on and removes the requests
+     * which are attached to its working request. Both happens at once, hence no request can
+     * attach to a working request which has already completed.
+     *
+     * @return the attached requests, empty if there are none
+     */
+    List<MapTileRequestState> removeTileAndWaiting(final MapTile mapTile) {
+        synchronized (mQueueLockObject) {
+            removeTileFromQueues(mapTile);
+            final List<MapTileRequestState> waiting = mWaiting.remove(mapTile);
+            return waiting != null ? waiting : new ArrayList<MapTileRequestState>(0);
+        }
+    }
+
     /**
      * Load the requested tile. An abstract internal class whose objects are used by worker threads
      * to acquire tiles from servers. It processes tiles from the 'pending' set to the 'working'
@@ -248,11 +424,24 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
 
         protected MapTileRequestState nextTile() {
 
+            final MapTileRequestState next;
+            final List<MapTileRequestState> stale;
             synchronized (mQueueLockObject) {
-                // get the most recently accessed tile
-                // - the last item in the iterator that's not already being
-                // processed
+                // get the tile closest to the center of the viewport
+                // - the first one that's not already being processed
                 MapTileRequestState state = popFirstPending();
+                // a tile which is already being processed is not loaded twice,
+                // the request waits for the result of the working one
+                while (state != null && mWorking.containsKey(state.getMapTile())) {
+                    List<MapTileRequestState> waiting = mWaiting.get(state.getMapTile());
+                    if (waiting == null) {
+                        waiting = new ArrayList<MapTileRequestState>(1);
+                        mWaiting.put(state.getMapTile(), waiting);
+                    }
+                    waiting.add(state);
+                    mCoalescedCount++;
+                    state = popFirstPending();
+                }
                 if (state != null) {
                     mWorking.put(state.getMapTile(), state);
                     if (DEBUG_TILE_PROVIDERS) {
@@ -262,16 +451,26 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                                 + state.getMapTile());
                     }
                 }
-                return state;
+                next = state;
+                stale = new ArrayList<MapTileRequestState>(mStale);
+                mStale.clear();
             }
+            // the callbacks may queue the request at the next provider, hence not within the lock
+            for (MapTileRequestState state : stale) {
+                state.getCallback().mapTileRequestFailed(state);
+            }
+            return next;
         }
 
         /**
          * A tile has loaded.
          */
         protected void tileLoaded(final MapTileRequestState pState, final Drawable pDrawable) {
-            removeTileFromQueues(pState.getMapTile());
+            final List<MapTileRequestState> waiting = removeTileAndWaiting(pState.getMapTile());
             pState.getCallback().mapTileRequestCompleted(pState, pDrawable);
+            for (MapTileRequestState state : waiting) {
+                state.getCallback().mapTileRequestCompleted(state, pDrawable);
+            }
         }
 
         /**
@@ -286,8 +485,11 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                         + " with tile: "
                         + pState.getMapTile());
             }
-            removeTileFromQueues(pState.getMapTile());
+            final List<MapTileRequestState> waiting = removeTileAndWaiting(pState.getMapTile());
             pState.getCallback().mapTileRequestExpiredTile(pState, pDrawable);
+            for (MapTileRequestState state : waiting) {
+                state.getCallback().mapTileRequestExpiredTile(state, pDrawable);
+            }
         }
 
         protected void tileLoadedFailed(final MapTileRequestState pState) {
@@ -297,8 +499,11 @@ public abstract class MapTileModuleLayerBase implements TileLayerConstants {
                         + " with tile: "
                         + pState.getMapTile());
             }
-            removeTileFromQueues(pState.getMapTile());
+            final List<MapTileRequestState> waiting = removeTileAndWaiting(pState.getMapTile());
             pState.getCallback().mapTileRequestFailed(pState);
+            for (MapTileRequestState state : waiting) {
+                state.getCallback().mapTileRequestFailed(state);
+            }
         }
 
         /**
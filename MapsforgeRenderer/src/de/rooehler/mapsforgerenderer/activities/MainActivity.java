@@ -76,6 +76,8 @@ public class MainActivity extends Activity implements IWorkStatus{
 	final static String PREFS_FILEPATH = "de.rooehler.rastertheque.filepath";
 	final static String PREFS_RENDERER_TYPE = "de.rooehler.rastertheque.renderer_type";
 	
+	final static long TILE_DISK_CACHE_SIZE = 64 * 1024 * 1024;
+	
 	private MapView mapView;	
 	private TileCache tileCache;
 	
@@ -335,6 +337,7 @@ public class MainActivity extends Activity implements IWorkStatus{
 			mapView.getModel().mapViewPosition.setMapPosition(gdalmp);
 
 			byte zoomLevelMax = gdalFileRenderer.calculateZoomLevelsAndStartScale(tileSize, width, w, h);
+			gdalFileRenderer.enableDiskCache(new File(getCacheDir(), "rastertiles"), TILE_DISK_CACHE_SIZE);
 			Layer rasterLayer = new RasterLayer(getBaseContext(),tileCache, gdalmvp, false, AndroidGraphicFactory.INSTANCE, gdalFileRenderer, this);
 			mapView.getLayerManager().getLayers().add(0, rasterLayer);
 			Log.d(TAG, "setting max to "+zoomLevelMax+ " min to "+ startZoomLevel);
@@ -0,0 +1,30 @@
+package de.rooehler.mapsforgerenderer.rasterrenderer;
+
+import java.util.Map;
+
+import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.model.Tile;
+/**
+ * A MetaTileRenderer is a RasterRenderer which is able to render a block of
+ * NxN adjacent tiles, a metatile, at once
+ *
+ * a metatile is read with a single query and processed by a single pipeline of operations
+ * and afterwards sliced into its tiles, which saves the overhead of a read per tile
+ *
+ * @author Robert Oehler
+ *
+ */
+public interface MetaTileRenderer extends RasterRenderer {
+
+	/**
+	 * @return the amount of tiles N along each axis of a metatile, 1 to render tile by tile
+	 */
+	public int getMetaTileSize();
+
+	/**
+	 * renders the metatile which contains the tile of @param job
+	 *
+	 * @return the rendered bitmaps of the tiles of the metatile, including the tile of the job
+	 */
+	public Map<Tile, TileBitmap> executeMetaJob(RasterJob job);
+}
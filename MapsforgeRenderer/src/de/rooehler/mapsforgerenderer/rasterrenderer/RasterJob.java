@@ -29,6 +29,14 @@ public class RasterJob extends Job {
 		this.hashCodeValue = calculateHashCode();
 	}
 
+	/**
+	 * @return a job of the same source and display model for @param pTile
+	 */
+	public RasterJob forTile(final Tile pTile) {
+
+		return new RasterJob(pTile, this.displayModel, this.mFile, this.hasAlpha);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
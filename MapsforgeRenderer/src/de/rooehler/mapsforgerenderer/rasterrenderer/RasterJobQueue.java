@@ -0,0 +1,203 @@
+package de.rooehler.mapsforgerenderer.rasterrenderer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Tile;
+import org.mapsforge.core.util.MercatorProjection;
+import org.mapsforge.map.layer.queue.JobQueue;
+import org.mapsforge.map.model.DisplayModel;
+import org.mapsforge.map.model.MapViewPosition;
+/**
+ * A RasterJobQueue is the JobQueue of a RasterLayer which knows about the viewport
+ *
+ * whenever a worker requests a job, the pending jobs are scheduled according to the current viewport :
+ *
+ * 1.jobs of another zoom level than the current one or of tiles outside of the visible area
+ *   are evicted, as the user already left them
+ * 2.the remaining jobs are ordered by the distance of their tile to the center of the viewport
+ *   hence the tiles the user is looking at are rendered first
+ *
+ * the viewport is updated by the RasterLayer when it is drawn
+ *
+ * a job which is added again while it is pending or rendered is not queued twice,
+ * its tile is put into the shared tile cache once rendered and a redraw is requested,
+ * which serves all requests of the tile
+ *
+ * @author Robert Oehler
+ *
+ */
+public class RasterJobQueue extends JobQueue<RasterJob> {
+
+	/**
+	 * the maximum amount of pending jobs, the most distant ones are dropped
+	 */
+	private static final int QUEUE_CAPACITY = 128;
+
+	/**
+	 * the amount of tiles around the visible area whose jobs are kept
+	 */
+	private static final int VISIBLE_MARGIN = 1;
+
+	private final List<RasterJob> mPending = new ArrayList<>();
+
+	private final Set<RasterJob> mAssigned = new HashSet<>();
+
+	private BoundingBox mViewport;
+
+	private byte mZoomLevel;
+
+	private long mEvicted;
+
+	private long mCoalesced;
+
+	public RasterJobQueue(MapViewPosition mapViewPosition, DisplayModel displayModel) {
+		super(mapViewPosition, displayModel);
+	}
+
+	/**
+	 * sets the currently visible @param boundingBox at @param zoomLevel
+	 */
+	public synchronized void setViewport(final BoundingBox boundingBox, final byte zoomLevel){
+
+		this.mViewport = boundingBox;
+		this.mZoomLevel = zoomLevel;
+	}
+
+	@Override
+	public synchronized void add(RasterJob job) {
+
+		if (!mAssigned.contains(job) && !mPending.contains(job)) {
+			mPending.add(job);
+			notifyAll();
+		} else {
+			mCoalesced++;
+		}
+	}
+
+	/**
+	 * returns the pending job closest to the center of the viewport
+	 * waits until a job is available
+	 */
+	@Override
+	public synchronized RasterJob get() throws InterruptedException {
+
+		while (true) {
+
+			schedule();
+
+			if (!mPending.isEmpty()) {
+				final RasterJob job = mPending.remove(0);
+				mAssigned.add(job);
+				return job;
+			}
+			wait(200);
+		}
+	}
+
+	@Override
+	public synchronized void remove(RasterJob job) {
+
+		mAssigned.remove(job);
+		notifyAll();
+	}
+
+	@Override
+	public synchronized void notifyWorkers() {
+
+		notifyAll();
+	}
+
+	/**
+	 * @return the amount of pending jobs
+	 */
+	@Override
+	public synchronized int size() {
+
+		return mPending.size();
+	}
+
+	/**
+	 * @return the depth of this queue, i.e. the amount of pending jobs and jobs which are currently rendered
+	 */
+	public synchronized int getQueueDepth(){
+
+		return mPending.size() + mAssigned.size();
+	}
+
+	/**
+	 * @return the amount of jobs which were evicted as they were not visible anymore
+	 */
+	public synchronized long getEvictedCount(){
+
+		return mEvicted;
+	}
+
+	/**
+	 * @return the amount of jobs which were not queued as the same job was already pending or rendered
+	 */
+	public synchronized long getCoalescedCount(){
+
+		return mCoalesced;
+	}
+
+	/**
+	 * evicts the stale jobs and orders the remaining by their distance to the center of the viewport
+	 * if no viewport is known yet the jobs are handled in the order they were added
+	 */
+	private void schedule(){
+
+		if (mViewport == null || mPending.isEmpty()) {
+			return;
+		}
+
+		final byte zoom = mZoomLevel;
+
+		final long minX = MercatorProjection.longitudeToTileX(mViewport.minLongitude, zoom) - VISIBLE_MARGIN;
+		final long maxX = MercatorProjection.longitudeToTileX(mViewport.maxLongitude, zoom) + VISIBLE_MARGIN;
+		final long minY = MercatorProjection.latitudeToTileY(mViewport.maxLatitude, zoom) - VISIBLE_MARGIN;
+		final long maxY = MercatorProjection.latitudeToTileY(mViewport.minLatitude, zoom) + VISIBLE_MARGIN;
+
+		final Iterator<RasterJob> iterator = mPending.iterator();
+		while (iterator.hasNext()) {
+			final Tile tile = iterator.next().tile;
+			if (tile.zoomLevel != zoom || tile.tileX < minX || tile.tileX > maxX || tile.tileY < minY || tile.tileY > maxY) {
+				iterator.remove();
+				mEvicted++;
+			}
+		}
+
+		//the center of the viewport in tile units
+		final double centerX = (minX + maxX + 1) / 2d;
+		final double centerY = (minY + maxY + 1) / 2d;
+
+		Collections.sort(mPending, new Comparator<RasterJob>() {
+			@Override
+			public int compare(RasterJob lhs, RasterJob rhs) {
+				return Double.compare(distance(lhs.tile, centerX, centerY), distance(rhs.tile, centerX, centerY));
+			}
+		});
+
+		while (mPending.size() > QUEUE_CAPACITY) {
+			mPending.remove(mPending.size() - 1);
+			mEvicted++;
+		}
+	}
+
+	/**
+	 * @return the squared distance of the center of @param tile to @param centerX, @param centerY in tile units
+	 */
+	private static double distance(final Tile tile, final double centerX, final double centerY){
+
+		final double dx = tile.tileX + 0.5d - centerX;
+		final double dy = tile.tileY + 0.5d - centerY;
+
+		return dx * dx + dy * dy;
+	}
+}
@@ -1,8 +1,12 @@
 package de.rooehler.mapsforgerenderer.rasterrenderer;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.mapsforge.core.graphics.Canvas;
 import org.mapsforge.core.graphics.GraphicFactory;
+import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Point;
 import org.mapsforge.core.model.Tile;
 import org.mapsforge.map.layer.TileLayer;
 import org.mapsforge.map.layer.cache.TileCache;
@@ -13,9 +17,14 @@ import de.rooehler.mapsforgerenderer.interfaces.IWorkStatus;
 import android.content.Context;
 /**
  * A RasterLayer extends a Mapsforge TileLayer
- * It's workerThread handles RasterJobs to render the raster file
+ * Its workerThreads handle RasterJobs to render the raster file
  * 
- * Its rasterRenderer abstracts the raster's properties
+ * the workers share the JobQueue of this layer, by default there is a worker
+ * per available processor, hence tiles are rendered concurrently
+ * 
+ * the jobs are scheduled by a RasterJobQueue according to the viewport of the last draw
+ * 
+ * Its rasterRenderer abstracts the raster's properties, it must be thread-safe
  * 
  * @author Robert Oehler
  *
@@ -24,25 +33,45 @@ public class RasterLayer extends TileLayer<RasterJob>  {
 
 	private RasterRenderer rasterRenderer;
 
-	private RasterWorkerThread worker;
+	private RasterWorkerThread[] workers;
+	
+	private RasterJobQueue mJobQueue;
+	
+	private final MapViewPosition mMapViewPosition;
 
 	private File rasterFile;
 	
 	private IWorkStatus mStatus;
 	
 	final int mProcCount;
+	
+	private final AtomicInteger mBusyWorkers = new AtomicInteger();
 
 	public RasterLayer(Context context, TileCache tileCache, MapViewPosition mapViewPosition, boolean isTransparent,
 			GraphicFactory graphicFactory, final RasterRenderer pRasterRenderer, final IWorkStatus status) {
+		this(context, tileCache, mapViewPosition, isTransparent, graphicFactory, pRasterRenderer, status, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * creates a RasterLayer which renders with @param pWorkerCount worker threads
+	 */
+	public RasterLayer(Context context, TileCache tileCache, MapViewPosition mapViewPosition, boolean isTransparent,
+			GraphicFactory graphicFactory, final RasterRenderer pRasterRenderer, final IWorkStatus status, final int pWorkerCount) {
 		super(tileCache, mapViewPosition, graphicFactory.createMatrix(), isTransparent);
+		
+		if(pWorkerCount < 1){
+			throw new IllegalArgumentException("at least one worker is necessary, provided : " + pWorkerCount);
+		}
 
 		this.rasterFile = new File(pRasterRenderer.getFilePath());
 
 		this.rasterRenderer = pRasterRenderer;
 		
+		this.mMapViewPosition = mapViewPosition;
+		
 		this.mStatus = status;
 		
-		this.mProcCount = Runtime.getRuntime().availableProcessors();
+		this.mProcCount = pWorkerCount;
 	}
 
 	@Override
@@ -50,16 +79,47 @@ public class RasterLayer extends TileLayer<RasterJob>  {
 		super.setDisplayModel(displayModel);
 		
 		if (displayModel != null) {
-			this.worker = new RasterWorkerThread(this.tileCache, this.jobQueue, this.rasterRenderer, this, mStatus);
-			this.worker.start();
+			//replace the default queue by the viewport aware one
+			this.mJobQueue = new RasterJobQueue(mMapViewPosition, displayModel);
+			this.jobQueue = mJobQueue;
+			this.workers = new RasterWorkerThread[mProcCount];
+			for (int i = 0; i < mProcCount; i++) {
+				this.workers[i] = new RasterWorkerThread(this.tileCache, this.jobQueue, this.rasterRenderer, this, mStatus, mBusyWorkers);
+				this.workers[i].start();
+			}
 		} else {
 			// if we do not have a displayModel any more we can stop rendering.
-			if (this.worker != null) {
-				this.worker.interrupt();
+			if (this.workers != null) {
+				for (RasterWorkerThread worker : this.workers) {
+					worker.interrupt();
+				}
 			}
 		}
 	}
 	
+	@Override
+	public void draw(BoundingBox boundingBox, byte zoomLevel, Canvas canvas, Point topLeftPoint) {
+		
+		if (this.mJobQueue != null) {
+			this.mJobQueue.setViewport(boundingBox, zoomLevel);
+		}
+		super.draw(boundingBox, zoomLevel, canvas, topLeftPoint);
+	}
+	
+	/**
+	 * @return the amount of tiles which are waiting to be rendered or are rendered currently
+	 */
+	public int getQueueDepth(){
+		return this.mJobQueue != null ? this.mJobQueue.getQueueDepth() : 0;
+	}
+	
+	/**
+	 * @return the amount of worker threads which render the tiles of this layer
+	 */
+	public int getWorkerCount(){
+		return this.mProcCount;
+	}
+	
 	public RasterRenderer getRasterRenderer(){
 		return this.rasterRenderer;
 	}
@@ -73,7 +133,9 @@ public class RasterLayer extends TileLayer<RasterJob>  {
 	protected void onAdd() {
 
 		this.rasterRenderer.start();
-		this.worker.proceed();
+		for (RasterWorkerThread worker : this.workers) {
+			worker.proceed();
+		}
 		super.onAdd();
 	}
 
@@ -81,14 +143,18 @@ public class RasterLayer extends TileLayer<RasterJob>  {
 	protected void onRemove() {
 
 		this.rasterRenderer.stop();
-		this.worker.pause();
+		for (RasterWorkerThread worker : this.workers) {
+			worker.pause();
+		}
 		super.onRemove();
 	}
 
 	@Override
 	public void onDestroy() {
 		this.rasterRenderer.destroy();
-		this.worker.destroy();
+		for (RasterWorkerThread worker : this.workers) {
+			worker.destroy();
+		}
 		super.onDestroy();
 	}
 }
@@ -12,6 +12,8 @@ public interface RasterRenderer {
 
 	/**
 	 * render this particular job and return the rendered TileBitmap
+	 * 
+	 * this is called concurrently by the workers of a RasterLayer, hence implementations must be thread-safe
 	 */
 	public TileBitmap executeJob(RasterJob job);
 	/**
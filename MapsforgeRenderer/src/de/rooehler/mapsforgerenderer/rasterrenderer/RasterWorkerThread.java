@@ -1,6 +1,10 @@
 package de.rooehler.mapsforgerenderer.rasterrenderer;
 
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.mapsforge.core.graphics.TileBitmap;
+import org.mapsforge.core.model.Tile;
 import org.mapsforge.map.layer.Layer;
 import org.mapsforge.map.layer.cache.TileCache;
 import org.mapsforge.map.layer.queue.JobQueue;
@@ -12,6 +16,9 @@ import de.rooehler.mapsforgerenderer.interfaces.IWorkStatus;
  * 
  * This follows the default Mapsforge implementation
  * 
+ * several RasterWorkerThreads can share the JobQueue of a RasterLayer,
+ * the queue assigns each job to a single worker
+ * 
  * @author Robert Oehler
  *
  */
@@ -23,20 +30,25 @@ public class RasterWorkerThread extends PausableThread {
 	private final RasterRenderer rasterRenderer;
 	private final JobQueue<RasterJob> jobQueue;
 	private final IWorkStatus mStatus;
+	private final AtomicInteger mBusyWorkers;
 	
-	
-	public RasterWorkerThread(TileCache tileCache, JobQueue<RasterJob> jobQueue, RasterRenderer pRasterRenderer, Layer layer, IWorkStatus status) {
+	/**
+	 * @param pBusyWorkers the counter of the workers of the layer which currently render a job
+	 */
+	public RasterWorkerThread(TileCache tileCache, JobQueue<RasterJob> jobQueue, RasterRenderer pRasterRenderer, Layer layer, IWorkStatus status, AtomicInteger pBusyWorkers) {
 
 		this.layer = layer;
 		this.tileCache = tileCache;
 		this.rasterRenderer = pRasterRenderer;
 		this.jobQueue = jobQueue;
 		this.mStatus = status;
+		this.mBusyWorkers = pBusyWorkers;
 	}
 
 	@Override
 	protected void doWork() throws InterruptedException {
 		RasterJob rendererJob = this.jobQueue.get();
+		mBusyWorkers.incrementAndGet();
 		try {
 			if (!this.tileCache.containsKey(rendererJob)) {
 		
@@ -45,8 +57,10 @@ public class RasterWorkerThread extends PausableThread {
 			}
 		} finally {
 			this.jobQueue.remove(rendererJob);
+			mBusyWorkers.decrementAndGet();
 		}
-		if(this.jobQueue.size() == 0){
+		//finished only if the other workers are idle as well
+		if(this.jobQueue.size() == 0 && mBusyWorkers.get() == 0){
 			mStatus.renderingFinished();
 		}
 	}
@@ -56,6 +70,11 @@ public class RasterWorkerThread extends PausableThread {
 	}
 
 	private void renderTile(RasterJob rendererJob) {
+		
+		if (this.rasterRenderer instanceof MetaTileRenderer && ((MetaTileRenderer) this.rasterRenderer).getMetaTileSize() > 1) {
+			renderMetaTile(rendererJob, (MetaTileRenderer) this.rasterRenderer);
+			return;
+		}
 	
 		TileBitmap bitmap = this.rasterRenderer.executeJob(rendererJob);
 
@@ -68,6 +87,35 @@ public class RasterWorkerThread extends PausableThread {
 		}
 	}
 
+	/**
+	 * renders the metatile which contains the tile of @param rendererJob
+	 * and puts all its tiles into the tile cache
+	 */
+	private void renderMetaTile(RasterJob rendererJob, MetaTileRenderer renderer) {
+		
+		final Map<Tile, TileBitmap> tiles = renderer.executeMetaJob(rendererJob);
+		
+		if (tiles == null) {
+			return;
+		}
+		
+		for (Map.Entry<Tile, TileBitmap> entry : tiles.entrySet()) {
+			
+			final RasterJob job = rendererJob.forTile(entry.getKey());
+			final TileBitmap bitmap = entry.getValue();
+			
+			if (!isInterrupted() && bitmap != null && !this.tileCache.containsKey(job)) {
+				this.tileCache.put(job, bitmap);
+			}
+			if (bitmap != null) {
+				bitmap.decrementRefCount();
+			}
+		}
+		if (!isInterrupted()) {
+			this.layer.requestRedraw();
+		}
+	}
+
 	@Override
 	protected ThreadPriority getThreadPriority() {
 		return ThreadPriority.BELOW_NORMAL;
@@ -1,44 +1,52 @@
 package de.rooehler.mapsforgerenderer.rasterrenderer.gdal;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
-import java.nio.ByteOrder;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
 import org.mapsforge.core.graphics.GraphicFactory;
 import org.mapsforge.core.graphics.TileBitmap;
-import org.mapsforge.core.model.BoundingBox;
+import org.mapsforge.core.model.Tile;
 import org.mapsforge.map.android.graphics.AndroidGraphicFactory;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 import android.util.Log;
-import com.vividsolutions.jts.geom.Envelope;
+import de.rooehler.mapsforgerenderer.rasterrenderer.MetaTileRenderer;
 import de.rooehler.mapsforgerenderer.rasterrenderer.RasterJob;
-import de.rooehler.mapsforgerenderer.rasterrenderer.RasterRenderer;
-import de.rooehler.rastertheque.core.Band.Color;
-import de.rooehler.rastertheque.core.DataType;
-import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.RasterQuery;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ByteBufferReaderUtil;
+import de.rooehler.rastertheque.io.cache.TileDiskCache;
 import de.rooehler.rastertheque.io.gdal.GDALDataset;
-import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
-import de.rooehler.rastertheque.processing.RasterOps;
-import de.rooehler.rastertheque.processing.rendering.MColorMap;
-import de.rooehler.rastertheque.processing.resampling.Resampler;
-import de.rooehler.rastertheque.util.Hints;
-import de.rooehler.rastertheque.util.Hints.Key;
+import de.rooehler.rastertheque.processing.rendering.PyramidTileGrid;
+import de.rooehler.rastertheque.processing.rendering.SharedTiles;
+import de.rooehler.rastertheque.processing.rendering.TileRenderer;
+import de.rooehler.rastertheque.util.WorkerPool;
 /**
  * A Renderer of GDAL datasets for Mapsforge
  * 
+ * this adapts the TileRenderer of the library, which renders the pixels of the tiles
+ * according to a PyramidTileGrid, to the bitmaps and jobs of Mapsforge
+ * 
+ * jobs are executed concurrently, a job only uses local state and
+ * the GDALDataset reads using a pool of dataset handles
+ * 
+ * if a metatile size larger than 1 is set, blocks of adjacent tiles are rendered at once
+ * 
+ * if the disk cache is enabled, rendered tiles are persisted and read from it subsequently
+ * 
+ * tiles which are known to be empty, i.e. outside of the dataset or only consisting of nodata blocks,
+ * are detected before reading and served by a single shared bitmap per tile size
+ * 
+ * concurrent renders of the same (meta)tile are coalesced, the first render reads
+ * and the others wait for its pixels
+ * 
  * @author Robert Oehler
  *
  */
-public class GDALMapsforgeRenderer implements RasterRenderer {
+public class GDALMapsforgeRenderer implements MetaTileRenderer {
 
 	private final static String TAG = GDALMapsforgeRenderer.class.getSimpleName();
 	
@@ -46,13 +54,37 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 
 	private GraphicFactory graphicFactory;
 
-	private byte mInternalZoom = 1;
-	
 	private final byte NATIVE_ZOOM_RANGE = 5;
 	
-	private boolean isWorking = true;
+	private volatile boolean isWorking = true;
+	
+	private volatile int mMetaTileSize = 1;
+	
+	private volatile TileDiskCache mDiskCache;
 	
 	private GDALDataset mRasterDataset;	
+	
+	private final PyramidTileGrid mGrid = new PyramidTileGrid(1);
+	
+	private final TileRenderer mTileRenderer;
+	
+	/**
+	 * the shared bitmaps of empty tiles, each holds a reference of this renderer
+	 * and a reference per tile cache entry which uses it
+	 */
+	private final SharedTiles<TileBitmap> mEmptyTiles = new SharedTiles<TileBitmap>() {
+		@Override
+		protected TileBitmap create(int size, int color) {
+			final TileBitmap bitmap = graphicFactory.createTileBitmap(size, false);
+			bitmap.setPixels(SharedTiles.createPixels(size, color), size);
+			bitmap.incrementRefCount();
+			return bitmap;
+		}
+		@Override
+		protected void release(TileBitmap bitmap) {
+			bitmap.decrementRefCount();
+		}
+	};
 
 
 	public GDALMapsforgeRenderer(GraphicFactory graphicFactory, final GDALDataset pRaster) {
@@ -61,20 +93,13 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 		
 		this.mRasterDataset = pRaster;
 		
-	}
-	/**
-	 * checks if this dataset consists of three bands red, green and blue
-	 * which can be used for rendering
-	 * @return if this dataset has three bands and their colors are RED GREEN and BLUE
-	 */
-	private boolean checkIfHasRGBBands() {
+		this.mTileRenderer = new TileRenderer(pRaster, mGrid);
 		
-		List<de.rooehler.rastertheque.core.Band> bands = mRasterDataset.getBands();
+		this.mTileRenderer.setNoDataColor(NO_DATA_COLOR);
+		
+		//metatiles are few and large, they are processed by the threads of the worker pool
+		this.mTileRenderer.setParallelism(WorkerPool.getParallelism());
 		
-		return bands.size() == 3 &&
-			   bands.get(0).color() == Color.RED &&
-			   bands.get(1).color() == Color.GREEN &&
-			   bands.get(2).color() == Color.BLUE;
 	}
 	/**
 	 * calculates an appropriate first zoom level for this raster, i.e. :
@@ -123,11 +148,13 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 		
 		byte maxZoom = (byte) (NATIVE_ZOOM_RANGE + offset);
 		
+		int internalZoom = mGrid.getInternalZoom();
+		
 		if(rasterWidth > screenWidth){
 			//if raster larger than screen
 			int available = rasterWidth;
 			while(available / 2 > screenWidth){
-				this.mInternalZoom++;
+				internalZoom++;
 				available /= 2.0;
 			}
 		}else if(rasterHeight < tileSize || rasterWidth < tileSize){
@@ -135,11 +162,13 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 			int necessary = Math.min(rasterHeight, rasterWidth);
 			int desired   = tileSize;
 			while(desired > necessary){
-				this.mInternalZoom--;
+				internalZoom--;
 				desired /= 2;
 			}
 		}
 		
+		mGrid.setInternalZoom(internalZoom);
+		
 		return maxZoom;
 	}
 
@@ -149,14 +178,6 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 	 * executes a rasterJob and returns a bitmap with the rendered pixels
 	 * according to the parameters of @param job 
 	 * 
-	 * it checks the bounds of this job to see if
-	 * 1.the entire area is covered 
-	 * 		read the entire area and return the tile with the rendered data
-	 * 2.only a part
-	 *      read the covered area and fill up the remaining area on the tile with white pixels
-	 * 3.nothing
-	 *      returns a bitmap containing white pixels
-	 *      
 	 * @param job - the rasterjob containing the properties of the area to render
 	 * @return TileBitmap the rendered bitmap     
 	 */
@@ -164,271 +185,145 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 	public TileBitmap executeJob(final RasterJob job) {
 		
 		final int ts = job.tile.tileSize;
-		final byte zoom = job.tile.zoomLevel;
-		final Rect dim = mRasterDataset.getDimension();
-		final int w  = dim.width();
-		final int h = dim.height();
-		final DataType datatype = mRasterDataset.getBands().get(0).datatype();
-		       
-        BoundingBox bb = job.tile.getBoundingBox();
-        final Envelope bounds = new Envelope(bb.minLongitude,bb.maxLongitude,bb.minLatitude,bb.maxLatitude);	
 		
 		long now = System.currentTimeMillis();
+		
+		if(mTileRenderer.isEmpty(job.tile.tileX, job.tile.tileY, job.tile.zoomLevel, 1, ts)){
+			return getEmptyTile(ts);
+		}
+		
+		final TileBitmap cached = readFromDiskCache(job.tile, job);
+		if(cached != null){
+			return cached;
+		}
 
+		final int[] pixels = mTileRenderer.render(job.tile.tileX, job.tile.tileY, job.tile.zoomLevel, ts);
+		
+		if(pixels == null){
+			return getEmptyTile(ts);
+		}
+		
 		TileBitmap bitmap = this.graphicFactory.createTileBitmap(job.displayModel.getTileSize(), job.hasAlpha);
 		
-        final double scaleFactor = scaleFactorAccordingToZoom(zoom);
-        
-        int zoomedTS = (int) (ts * scaleFactor);  
-
-        final int readAmountX = zoomedTS;
-        final int readAmountY = zoomedTS;
-        
-        int readFromX = job.tile.tileX * readAmountX;
-        int readFromY = job.tile.tileY * readAmountY;
-          
-//        Log.d(TAG, String.format("tile %d %d zoom %d read from %d %d amount %d %d",job.tile.tileX,job.tile.tileY,job.tile.zoomLevel,readFromX,readFromY,readAmountX,readAmountY));   
-        
-        if(readFromX < 0 || readFromX + readAmountX > w ||  readFromY < 0 || readFromY + readAmountY > h){
-
-        	//if entirely out of bounds -> return white tile
-        	if(readFromX + readAmountX <= 0 || readFromX  > w ||
-        	   readFromY + readAmountY <= 0 || readFromY  > h){
-        		//cannot read, create white tile
-        		return returnNoDataTile(bitmap, ts, now);
-        	}
-        	
-        	//this tile is partially out of bounds, get available rectangle
-        	int availableX = readAmountX, availableY = readAmountY;
-        	int gdalTargetXSize = ts, gdalTargetYSize = ts;
-            int coveredXOrigin = 0, coveredYOrigin = 0;
-
-        	if(readFromX + readAmountX > w || 	readFromY + readAmountY > h){
-        		//max x or y bounds hit
-        		if(readFromX + readAmountX > w){        			
-        			availableX = (int) (w -  readFromX);   			
-        			gdalTargetXSize = (int) (availableX * (1 / scaleFactor));
-        		}
-        		if(readFromY + readAmountY > h){        			
-        			availableY = (int) (h - readFromY);  			
-        			gdalTargetYSize = (int) (availableY * (1 / scaleFactor));
-        		}
-        	}
-
-        	if(readFromX < 0 || readFromY < 0){
-        		//min x or y bounds hit
-        		if(readFromX < 0){        			
-        			availableX = (int) (readAmountX - Math.abs(readFromX));
-        			coveredXOrigin = (int) (ts - (availableX * scaleFactor));
-        			gdalTargetXSize = (int) (availableX * (1 /  scaleFactor));
-        			readFromX = 0;
-        		}
-        		if(readFromY < 0){        			
-        			availableY = (int) (readAmountY - Math.abs(readFromY));
-        			coveredYOrigin = (int) (ts - (availableY * scaleFactor));
-        			gdalTargetYSize = (int) (availableY * (1 / scaleFactor));
-        			readFromY = 0;
-        		}
-        	}
-
-        	final Rect targetDim = useGDALAsResampler(gdalTargetXSize , availableX) ?
-        			new Rect(0, 0, gdalTargetXSize, gdalTargetYSize) :	new Rect(0, 0, availableX, availableY);
-        	
-        	final int pixels[] = executeQuery(
-        			bounds,
-        			new Rect(readFromX, readFromY,readFromX + availableX, readFromY + availableY),
-             		targetDim,
-             		datatype,
-             		!useGDALAsResampler(gdalTargetXSize , availableX),
-             		gdalTargetXSize / (double) availableX, gdalTargetYSize / (double) availableY);
-
-            	
-            return createBoundsTile(bitmap, pixels, coveredXOrigin,coveredYOrigin, gdalTargetXSize, gdalTargetYSize, ts, now);
-            
-
-        }
-        
-        final Rect targetDim = useGDALAsResampler(ts , readAmountX) ? 
-        		new Rect(0, 0, ts, ts) : new Rect(0, 0, readAmountX, readAmountY);
-        		
-        final int pixels[] = executeQuery(
-        		bounds,
-        		new Rect(readFromX, readFromY,readFromX + readAmountX,  readFromY + readAmountY),
-        		targetDim,
-        		datatype,
-        		!useGDALAsResampler(ts , readAmountX),
-        		ts / (double) readAmountX, ts / (double)readAmountY);
-
-        bitmap.setPixels(pixels, ts);
+		bitmap.setPixels(pixels, ts);
+		
+		writeToDiskCache(job.tile, bitmap);
 		
-		Log.d(TAG, "tile at zoom "+zoom+"  took "+((System.currentTimeMillis() - now) / 1000.0f)+ " s");
+		Log.d(TAG, "tile at zoom "+job.tile.zoomLevel+"  took "+((System.currentTimeMillis() - now) / 1000.0f)+ " s");
 
 		return bitmap;
 	}
 	
-   /**
-     * executes a query against the dataset, resamples the result if necessary and returns the rendered pixels
-     * @param bounds the bounds of the query
-     * @param readDim the target dimension of the query
-     * @param datatype the datatype of the query
-     * @param resample if resampling is necessary ( or done by implicitely providing a different target dimension in the query)
-     * @param targetWidth width of the target tile
-     * @param targetHeight height of the target tile
-     * @return array of pixels of size targetWidth * targetHeight
-     */
-	public int[] executeQuery(final Envelope bounds, final Rect readDim,final Rect targetDim, final DataType datatype, boolean resample, final double scaleX, final double scaleY){
-		
-		final RasterQuery query = new GDALRasterQuery(
-				bounds,
-				mRasterDataset.getCRS(),
-        		mRasterDataset.getBands(), 
-        		readDim,
-        		datatype,
-        		targetDim);
-        
-        final Raster raster = mRasterDataset.read(query);
-        
-        if(resample){
-			
-			HashMap<Key,Serializable> resampleParams = new HashMap<>();
-
-			resampleParams.put(Resampler.KEY_SIZE, new Double[]{scaleX,scaleY});
-
-			RasterOps.execute(raster, RasterOps.RESIZE, resampleParams, null, null);
-
-		}
-
-        if(checkIfHasRGBBands()){
-        	
-        	return renderRGB(raster);
-        	
-        }else{
-
-        	HashMap<Key,Serializable> renderParams = new HashMap<>();
-        	
-        	boolean containsColorMap = raster.getBands().get(0).colorMap() != null;
-        	
-        	if(containsColorMap){
-        		RasterOps.execute(raster, RasterOps.COLORMAP, renderParams, null, null);
-        	}else{
-        		RasterOps.execute(raster, RasterOps.AMPLITUDE_RESCALING, renderParams, null, null);
-        	}        	
-        	
-        	final int width  = raster.getDimension().width();
-    		final int height = raster.getDimension().height();
-
-        	final int[] pixels  = new int[width * height];
-
-        	raster.getData().asIntBuffer().get(pixels);
-
-        	return pixels;
-        }
-	}
-	
 	/**
-	 * renders the bands of the the raster interpreting them a r,g and b channels
-	 * @param raster the raster containing the rgb bands
-	 * @return the array of argb pixels
+	 * renders the metatile of getMetaTileSize() x getMetaTileSize() tiles which contains the tile of @param job
+	 * with a single query and slices it into the bitmaps of its tiles
+	 * 
+	 * the metatiles are aligned to multiples of the metatile size, at low zoom levels they are
+	 * limited to the tiles which exist at this zoom level
+	 * 
+	 * tiles of the metatile which are known to be empty are served by the shared empty tile
 	 */
-	private int[] renderRGB(final Raster raster) {
-		
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
+	@Override
+	public Map<Tile, TileBitmap> executeMetaJob(final RasterJob job) {
 		
-		final int width  = raster.getDimension().width();
-		final int height = raster.getDimension().height();
-		final int pixelAmount = width * height;
+		final Tile tile = job.tile;
+		final int ts = tile.tileSize;
+		final byte zoom = tile.zoomLevel;
 		
-		int [] pixels = new int[pixelAmount];
+		long now = System.currentTimeMillis();
 		
-		double[] pixelsR = new double[pixelAmount];
-		double[] pixelsG = new double[pixelAmount];
-		double[] pixelsB = new double[pixelAmount];
-           
-		for (int i = 0; i < pixelAmount; i++) {	
-			pixelsR[i] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(0).datatype());
+		final TileBitmap cached = readFromDiskCache(tile, job);
+		if(cached != null){
+			final Map<Tile, TileBitmap> tiles = new HashMap<>(1);
+			tiles.put(tile, cached);
+			return tiles;
 		}
-		for (int j = 0; j < pixelAmount; j++) {	
-			pixelsG[j] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(1).datatype());
-		}
-		for (int k = 0; k < pixelAmount; k++) {	
-			pixelsB[k] =  ByteBufferReaderUtil.getValue(reader, raster.getBands().get(2).datatype());
+		
+		final long tilesPerAxis = 1L << zoom;
+		final int n = (int) Math.min(mMetaTileSize, tilesPerAxis);
+		final long metaX = Math.min(tile.tileX / n * n, tilesPerAxis - n);
+		final long metaY = Math.min(tile.tileY / n * n, tilesPerAxis - n);
+		
+		final Map<Tile, TileBitmap> tiles = new HashMap<>(n * n);
+		
+		final int[] pixels = mTileRenderer.isEmpty(metaX, metaY, zoom, n, ts) ? null : mTileRenderer.render(metaX, metaY, zoom, n, ts);
+		
+		final int[] tilePixels = new int[ts * ts];
+		
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < n; i++) {
+				
+				final Tile sibling = new Tile(metaX + i, metaY + j, zoom, ts);
+				
+				if(pixels == null || mTileRenderer.isEmpty(sibling.tileX, sibling.tileY, zoom, 1, ts)){
+					tiles.put(sibling, getEmptyTile(ts));
+					continue;
+				}
+				
+				TileRenderer.slice(pixels, n, ts, i, j, tilePixels);
+				
+				TileBitmap bitmap = this.graphicFactory.createTileBitmap(job.displayModel.getTileSize(), job.hasAlpha);
+				bitmap.setPixels(tilePixels, ts);
+				
+				writeToDiskCache(sibling, bitmap);
+				tiles.put(sibling, bitmap);
+			}
 		}
 		
-        for (int l = 0; l < pixelAmount; l++) {	
-        	
-        	double r = pixelsR[l];
-        	double g = pixelsG[l];
-        	double b = pixelsB[l];
-        	
-        	pixels[l] = 0xff000000 | ((((int) r) << 16) & 0xff0000) | ((((int) g) << 8) & 0xff00) | ((int) b);
-        }
-        
-		return pixels;
+		Log.d(TAG, "metatile of "+ (n * n)+" tiles at zoom "+zoom+"  took "+((System.currentTimeMillis() - now) / 1000.0f)+ " s");
+		
+		return tiles;
 	}
-
+	
 	/**
-	 * returns a Tile filled with pixels according to the NO_DATA_COLOR
-	 * as the desired coordinates were not covered by the dataset
-	 * @param bitmap to modify the pixels 
-	 * @param ts destination tilesize
-	 * @param timestamp when the creation of this tile started
-	 * @return the modified bitmap
+	 * returns the shared bitmap of an empty tile of @param ts pixels
+	 * 
+	 * its reference count is incremented for the caller, which releases it like any other rendered bitmap
 	 */
-	public TileBitmap returnNoDataTile(final TileBitmap bitmap, final int ts, final long timestamp){
-		//cannot read, create white tile
-		int[] pixels = new int[ts * ts];
-		for (int i = 0; i < pixels.length; i++) {
-			pixels[i] = NO_DATA_COLOR;
-		}
-		bitmap.setPixels( pixels, ts);
-		Log.d(TAG, "tile  took "+((System.currentTimeMillis() - timestamp) / 1000.0f)+ " s");
+	private TileBitmap getEmptyTile(final int ts){
+		
+		final TileBitmap bitmap = mEmptyTiles.get(ts, NO_DATA_COLOR);
+		bitmap.incrementRefCount();
 		return bitmap;
+	}
+	
+	/**
+	 * @return the bitmap of @param tile from the disk cache or null if it is not cached
+	 */
+	private TileBitmap readFromDiskCache(final Tile tile, final RasterJob job){
 		
+		final TileDiskCache cache = mDiskCache;
+		if(cache == null){
+			return null;
+		}
+		final byte[] data = cache.get(tile.zoomLevel, tile.tileX, tile.tileY, tile.tileSize);
+		if(data == null){
+			return null;
+		}
+		try {
+			return this.graphicFactory.createTileBitmap(new ByteArrayInputStream(data), job.displayModel.getTileSize(), job.hasAlpha);
+		} catch (RuntimeException e) {
+			Log.e(TAG, "error decoding cached tile "+tile, e);
+			return null;
+		}
 	}
+	
 	/**
-	 * returns a tile which partially contains raster data, the rest is filled with white pixels
-	 * @param bitmap to modify the pixels
-	 * @param gdalPixels the pixels with the raster data
-	 * @param coveredOriginX the x coord of the covered area's origin
-	 * @param coveredOriginY the y coord of the covered area's origin
-	 * @param coveredAreaX the covered area's width
-	 * @param coveredAreaY the covered area's height
-	 * @param destinationTileSize the destination tileSize
-	 * @param timestamp when the creation of this tile started
-	 * @return the modified bitmap
+	 * encodes @param bitmap of @param tile and writes it into the disk cache
 	 */
-	public TileBitmap createBoundsTile(	
-			final TileBitmap bitmap,
-			final int[] gdalPixels,
-			final int coveredOriginX,
-			final int coveredOriginY,
-			final int coveredAreaX,
-			final int coveredAreaY,
-			final int destinationTileSize,
-			final long timestamp){
-
-		int[] pixels = new int[destinationTileSize * destinationTileSize];
-		int gdalPixelCounter = 0;
-
-		for (int y = 0; y < destinationTileSize; y++) {
-			for (int x = 0; x < destinationTileSize; x++) {
-
-				int pos = y * destinationTileSize + x;
-
-				if( x  >= coveredOriginX && y >= coveredOriginY && x < coveredOriginX + coveredAreaX && y < coveredOriginY + coveredAreaY){
-					//gdalpixel
-					pixels[pos] = gdalPixels[gdalPixelCounter++];
-
-				}else {
-					//NO_DATA_COLOR;
-					pixels[pos] =  NO_DATA_COLOR;
-				}
-
-			}
+	private void writeToDiskCache(final Tile tile, final TileBitmap bitmap){
+		
+		final TileDiskCache cache = mDiskCache;
+		if(cache == null){
+			return;
+		}
+		final ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			bitmap.compress(os);
+			cache.put(tile.zoomLevel, tile.tileX, tile.tileY, tile.tileSize, os.toByteArray());
+		} catch (IOException e) {
+			Log.e(TAG, "error encoding tile "+tile, e);
 		}
-		bitmap.setPixels( pixels, destinationTileSize);
-		Log.d(TAG, "tile  took "+((System.currentTimeMillis() - timestamp) / 1000.0f)+ " s");
-		return bitmap;
 	}
 	
 	/**
@@ -470,27 +365,6 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 		return mRasterDataset.getCRS();
 	}
 	
-	 /**
-     * checks if the resampling should be done inherently by GDAL or by the provided Resampler
-     * 
-     * Currently for queries where the amount to read from the dataset
-     * is larger than the desired tile size GDAL is always used
-     * as otherwise enourmouse amounts of memory need to be allocated which will lead
-     * to OOM fastly
-     * 
-     * hence only if sample up operation is necessary the provided Resampler will be used
-     * 
-     * Sampling down is always done by GDAL
-     * 
-     * @param desiredTileSize the size of the tile to create
-     * @param readFromDataSetSize the amount to read from the dataset
-     * @return
-     */
-	public boolean useGDALAsResampler(int desiredTileSize, int readFromDataSetSize){
-		
-		return desiredTileSize <= readFromDataSetSize;
-	}
-	
 	@Override
 	public void start() {
 
@@ -516,11 +390,59 @@ public class GDALMapsforgeRenderer implements RasterRenderer {
 	public void destroy() {
 
 		stop();
+		
+		if(mDiskCache != null){
+			mDiskCache.close();
+			mDiskCache = null;
+		}
+		
+		mEmptyTiles.clear();
 
 	}
+	/**
+	 * sets the amount of tiles @param metaTileSize along each axis which are rendered at once, 1 to render tile by tile
+	 */
+	public void setMetaTileSize(final int metaTileSize){
+		
+		if(metaTileSize < 1){
+			throw new IllegalArgumentException("the metatile size must be at least 1, provided : " + metaTileSize);
+		}
+		this.mMetaTileSize = metaTileSize;
+	}
+	
+	/**
+	 * enables the persistent cache of the rendered tiles in @param directory
+	 * which holds at most @param maxBytes bytes of tiles
+	 * 
+	 * tiles depend on the internal zoom, hence this must be called after calculateZoomLevelsAndStartScale()
+	 */
+	public void enableDiskCache(final File directory, final long maxBytes){
+		
+		if(mDiskCache != null){
+			mDiskCache.close();
+		}
+		final String style = TileDiskCache.getStyle(mRasterDataset) + "|internalZoom=" + mGrid.getInternalZoom();
+		
+		mDiskCache = new TileDiskCache(directory, mRasterDataset.getSource(), style, maxBytes);
+	}
+	
+	/**
+	 * @return the amount of renders which were saved as they attached to an identical render in flight
+	 */
+	public long getCoalescedCount(){
+		
+		return mTileRenderer.getCoalescedCount();
+	}
+	
+	@Override
+	public int getMetaTileSize(){
+		
+		return this.mMetaTileSize;
+	}
+	
 	public double scaleFactorAccordingToZoom(short zoom){
 		
-		return Math.pow(2,  -(zoom - this.mInternalZoom));
+		return mGrid.getScaleFactor(zoom);
 		
 	}
 
@@ -16,6 +16,7 @@ import de.rooehler.rastertheque.core.RasterQuery;
 import de.rooehler.rastertheque.io.mbtiles.MBTilesDataset;
 import de.rooehler.rastertheque.io.mbtiles.MBTilesRasterQuery;
 import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.rendering.SharedTiles;
 import de.rooehler.rastertheque.processing.resampling.Resampler;
 import de.rooehler.rastertheque.util.Hints.Key;
 /**
@@ -26,11 +27,31 @@ import de.rooehler.rastertheque.util.Hints.Key;
  *
  */
 public class MBTilesMapsforgeRenderer implements RasterRenderer{
+	
+	private static final int NO_DATA_COLOR = 0xffffffff;
 
 	private GraphicFactory graphicFactory;
 	
 	private final MBTilesDataset mDataset;
 	
+	/**
+	 * the shared bitmaps of tiles which are not contained in the MBTiles,
+	 * each holds a reference of this renderer and a reference per tile cache entry which uses it
+	 */
+	private final SharedTiles<TileBitmap> mEmptyTiles = new SharedTiles<TileBitmap>() {
+		@Override
+		protected TileBitmap create(int size, int color) {
+			final TileBitmap bitmap = graphicFactory.createTileBitmap(size, false);
+			bitmap.setPixels(SharedTiles.createPixels(size, color), size);
+			bitmap.incrementRefCount();
+			return bitmap;
+		}
+		@Override
+		protected void release(TileBitmap bitmap) {
+			bitmap.decrementRefCount();
+		}
+	};
+	
 
 	public MBTilesMapsforgeRenderer(GraphicFactory graphicFactory, final MBTilesDataset pDataset) {
 		
@@ -43,7 +64,9 @@ public class MBTilesMapsforgeRenderer implements RasterRenderer{
 	 * called from RasterWorkerThread : executes a rasterJob querying the MBTilesDataset
 	 * if data is returned it is resized if necessary and converted to a bitmap which is returned
 	 * if no data is returned (no underlying MBTile available)
-	 * a white tile is returned
+	 * the shared white tile is returned
+	 * 
+	 * this is thread-safe as the SQLiteDatabase of the dataset serializes concurrent queries
 	 */
 	@Override
 	public TileBitmap executeJob(RasterJob job) {
@@ -55,13 +78,9 @@ public class MBTilesMapsforgeRenderer implements RasterRenderer{
 		long localTileX = tile.tileX;
 		long localTileY = tile.tileY;
 
-		TileBitmap bitmap = this.graphicFactory.createTileBitmap(job.displayModel.getTileSize(), job.hasAlpha);
-
 		// conversion needed to fit the MBTiles coordinate system
 		final int[] tmsTileXY = mDataset.googleTile2TmsTile(localTileX, localTileY, tile.zoomLevel);
 
-		int[] pixels = new int[tileSize * tileSize];
-
 		//create the query
 		RasterQuery query = new MBTilesRasterQuery(
 				mDataset.tile2boundingBox(tile.tileX, tile.tileY, tile.zoomLevel),
@@ -75,14 +94,12 @@ public class MBTilesMapsforgeRenderer implements RasterRenderer{
 		//read
 		Raster raster = mDataset.read(query);
 		
-		//if no data available, return tile containing white pixels
+		//if no data available, return the shared white tile, referenced for the caller
 		if (raster.getData() == null) {
 
-			for (int i = 0; i < pixels.length; i++) {
-				pixels[i] = 0xff << 24 | (0xff << 16) | (0xff << 8) | 0xff;
-			}
-			bitmap.setPixels(pixels, tileSize);
-			return bitmap;
+			final TileBitmap empty = mEmptyTiles.get(tileSize, NO_DATA_COLOR);
+			empty.incrementRefCount();
+			return empty;
 		} 
 		
 		//if target tilesize is not the size of the raster
@@ -98,7 +115,11 @@ public class MBTilesMapsforgeRenderer implements RasterRenderer{
 
 		} 
 		
+		final int[] pixels = new int[tileSize * tileSize];
+		
 		raster.getData().asIntBuffer().get(pixels);
+		
+		TileBitmap bitmap = this.graphicFactory.createTileBitmap(job.displayModel.getTileSize(), job.hasAlpha);
 
 		// copy all pixels from the color array to the tile bitmap
 		bitmap.setPixels(pixels, tileSize);
@@ -131,6 +152,8 @@ public class MBTilesMapsforgeRenderer implements RasterRenderer{
 	@Override
 	public void destroy() {		
 		this.mDataset.close();
+		
+		mEmptyTiles.clear();
 	}
 
 }
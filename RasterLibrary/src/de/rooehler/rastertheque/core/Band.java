@@ -46,5 +46,13 @@ public interface Band {
      * @return The value or NoData.None if the band has no nodata value yet
      */
     NoData nodata();
+    
+    /**
+     * Returns the statistics of the values of this band
+     * 
+     * implementations compute them once and may approximate them
+     * @return the statistics or null if they are not available
+     */
+    Statistics statistics();
 
 }
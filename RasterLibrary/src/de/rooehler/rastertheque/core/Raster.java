@@ -165,6 +165,221 @@ public class Raster {
     	this.metadata = pMetadata;
     }
     
+    /**
+     * the amount of pixels of one band of this raster
+     */
+    public int getPixelCount(){
+    	
+    	return this.dimension.width() * this.dimension.height();
+    }
+    
+    /**
+     * returns a view on the data of the band @param band in the byte order of the data
+     * 
+     * the view shares the data of this raster, its position and limit are independent
+     * @param band the index of the band
+     * @return a ByteBuffer containing only the data of this band
+     */
+    public ByteBuffer getBandData(final int band){
+    	
+    	final int bandSize = getPixelCount() * this.bands.get(band).datatype().size();
+    	
+    	final ByteBuffer view = this.data.duplicate();
+    	view.position(band * bandSize);
+    	view.limit(band * bandSize + bandSize);
+    	
+    	return view.slice().order(this.data.order());
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.BYTE
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public byte[] getBytes(final int band, byte[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.BYTE);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new byte[count];
+    	}
+    	view.get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.CHAR
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public char[] getChars(final int band, char[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.CHAR);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new char[count];
+    	}
+    	view.asCharBuffer().get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.SHORT
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public short[] getShorts(final int band, short[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.SHORT);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new short[count];
+    	}
+    	view.asShortBuffer().get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.INT
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public int[] getInts(final int band, int[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.INT);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new int[count];
+    	}
+    	view.asIntBuffer().get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.LONG
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public long[] getLongs(final int band, long[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.LONG);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new long[count];
+    	}
+    	view.asLongBuffer().get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band, which must be of type DataType.FLOAT
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public float[] getFloats(final int band, float[] dst){
+    	
+    	final ByteBuffer view = typedData(band, DataType.FLOAT);
+    	final int count = getPixelCount();
+    	if(dst == null || dst.length < count){
+    		dst = new float[count];
+    	}
+    	view.asFloatBuffer().get(dst, 0, count);
+    	return dst;
+    }
+    
+    /**
+     * reads the values of the band @param band of any data type widened to double
+     * 
+     * the data type is evaluated once, each type is read in its own loop
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values
+     */
+    public double[] getDoubles(final int band, double[] dst){
+    	
+    	return getDoubles(band, 0, this.dimension.height(), dst);
+    }
+    
+    /**
+     * reads @param rows rows starting at row @param fromRow of the band @param band
+     * of any data type widened to double
+     * @param dst the array to write in, if null or too small a new one is allocated
+     * @return the array containing the values of the rows
+     */
+    public double[] getDoubles(final int band, final int fromRow, final int rows, double[] dst){
+    	
+    	final DataType type = this.bands.get(band).datatype();
+    	final int width = this.dimension.width();
+    	final int offset = bandOffset(band, type) + fromRow * width * type.size();
+    	final int count = rows * width;
+    	if(dst == null || dst.length < count){
+    		dst = new double[count];
+    	}
+    	final ByteBuffer data = this.data;
+    	
+    	switch(type){
+    	case BYTE:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.get(offset + i);
+    		}
+    		break;
+    	case CHAR:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.getChar(offset + (i << 1));
+    		}
+    		break;
+    	case SHORT:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.getShort(offset + (i << 1));
+    		}
+    		break;
+    	case INT:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.getInt(offset + (i << 2));
+    		}
+    		break;
+    	case LONG:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.getLong(offset + (i << 3));
+    		}
+    		break;
+    	case FLOAT:
+    		for(int i = 0; i < count; i++){
+    			dst[i] = data.getFloat(offset + (i << 2));
+    		}
+    		break;
+    	case DOUBLE:
+    		final ByteBuffer doubles = data.duplicate().order(data.order());
+    		doubles.position(offset);
+    		doubles.asDoubleBuffer().get(dst, 0, count);
+    		break;
+    	}
+    	return dst;
+    }
+    
+    /**
+     * returns a view on the data of the band @param band
+     * after checking that it is of type @param type
+     */
+    private ByteBuffer typedData(final int band, final DataType type){
+    	
+    	bandOffset(band, type);
+    	
+    	return getBandData(band);
+    }
+    
+    /**
+     * returns the byte offset of the band @param band within the data
+     * after checking that it is of type @param type
+     */
+    private int bandOffset(final int band, final DataType type){
+    	
+    	if(this.bands.get(band).datatype() != type){
+    		throw new IllegalArgumentException("band "+band+" is of type "+this.bands.get(band).datatype()+", not "+type);
+    	}
+    	
+    	return band * getPixelCount() * type.size();
+    }
+    
     public double[] getGeoTransform(){
     	
     	if(this.bounds == null || this.dimension == null){
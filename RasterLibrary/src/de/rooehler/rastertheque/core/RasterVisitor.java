@@ -0,0 +1,26 @@
+package de.rooehler.rastertheque.core;
+
+/**
+ * A RasterVisitor receives the chunks of a RasterDataset
+ * which is streamed using StreamableRasterDataset.stream()
+ * 
+ * each chunk is a Raster whose dimension is the position of the chunk
+ * within the dataset in pixel coordinates and whose bounds correspond to this position,
+ * hence its geotransform is the geotransform of the chunk
+ * 
+ * the data buffer of the chunk is reused for the following chunk,
+ * a visitor must not keep a reference to it after visit() returned
+ * 
+ * @author Robert Oehler
+ *
+ */
+public interface RasterVisitor {
+	
+	/**
+	 * called for every chunk of the streamed dataset
+	 * @param chunk the raster of this chunk
+	 * @return true to continue streaming, false to stop
+	 */
+	boolean visit(Raster chunk);
+
+}
@@ -0,0 +1,87 @@
+package de.rooehler.rastertheque.core;
+
+/**
+ * Statistics of the values of a band
+ *
+ * min, max, mean and standard deviation and an approximate histogram
+ * whose buckets equally divide the range between histogram min and histogram max
+ *
+ * the statistics may be approximated, e.g. from overviews
+ *
+ * @author Robert Oehler
+ *
+ */
+public class Statistics {
+
+	private final double mMin;
+
+	private final double mMax;
+
+	private final double mMean;
+
+	private final double mStdDev;
+
+	private final double mHistogramMin;
+
+	private final double mHistogramMax;
+
+	private final int[] mHistogram;
+
+	/**
+	 * @param pMin the minimum value
+	 * @param pMax the maximum value
+	 * @param pMean the mean value
+	 * @param pStdDev the standard deviation
+	 * @param pHistogramMin the lower bound of the first bucket of the histogram
+	 * @param pHistogramMax the upper bound of the last bucket of the histogram
+	 * @param pHistogram the counts of the buckets - can be null
+	 */
+	public Statistics(final double pMin, final double pMax, final double pMean, final double pStdDev,
+			final double pHistogramMin, final double pHistogramMax, final int[] pHistogram) {
+
+		this.mMin = pMin;
+		this.mMax = pMax;
+		this.mMean = pMean;
+		this.mStdDev = pStdDev;
+		this.mHistogramMin = pHistogramMin;
+		this.mHistogramMax = pHistogramMax;
+		this.mHistogram = pHistogram;
+	}
+
+	public double getMin() {
+		return mMin;
+	}
+
+	public double getMax() {
+		return mMax;
+	}
+
+	public double getMean() {
+		return mMean;
+	}
+
+	public double getStdDev() {
+		return mStdDev;
+	}
+
+	public double getHistogramMin() {
+		return mHistogramMin;
+	}
+
+	public double getHistogramMax() {
+		return mHistogramMax;
+	}
+
+	/**
+	 * the counts of the buckets of the histogram
+	 * @return a copy of the histogram or null if there is none
+	 */
+	public int[] getHistogram() {
+		return mHistogram != null ? mHistogram.clone() : null;
+	}
+
+	@Override
+	public String toString() {
+		return "Statistics [min=" + mMin + ", max=" + mMax + ", mean=" + mMean + ", stddev=" + mStdDev + "]";
+	}
+}
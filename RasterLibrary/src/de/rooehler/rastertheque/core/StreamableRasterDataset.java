@@ -0,0 +1,28 @@
+package de.rooehler.rastertheque.core;
+
+/**
+ * A StreamableRasterDataset is a RasterDataset whose pixels
+ * can be streamed window by window
+ * 
+ * @author Robert Oehler
+ *
+ */
+public interface StreamableRasterDataset extends RasterDataset{
+	
+	/**
+	 * streams the window of @param query in its native resolution as a sequence of chunks
+	 * which are passed to @param visitor row by row
+	 * 
+	 * row strips are streamed if @param chunkWidth is the width of the window,
+	 * if chunkWidth or @param chunkHeight are not positive the native block size of the dataset is used
+	 * 
+	 * only a single chunk is held in memory, hence operations over the whole dataset
+	 * can run in constant memory
+	 * 
+	 * @param query specifying the window and the bands to stream
+	 * @param chunkWidth the width of the chunks
+	 * @param chunkHeight the height of the chunks
+	 * @param visitor receiving the chunks
+	 */
+	void stream(RasterQuery query, int chunkWidth, int chunkHeight, RasterVisitor visitor);
+}
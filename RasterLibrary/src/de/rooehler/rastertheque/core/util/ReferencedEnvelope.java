@@ -2,8 +2,6 @@ package de.rooehler.rastertheque.core.util;
 
 import org.osgeo.proj4j.CoordinateReferenceSystem;
 import org.osgeo.proj4j.CoordinateTransform;
-import org.osgeo.proj4j.CoordinateTransformFactory;
-import org.osgeo.proj4j.ProjCoordinate;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
@@ -76,8 +74,7 @@ public class ReferencedEnvelope {
          * Gets a first estimation using an algorithm capable to take singularity in account
          * (North pole, South pole, 180° longitude). We will expand this initial box later.
          */
-        CoordinateTransformFactory txFactory = new CoordinateTransformFactory();
-        CoordinateTransform tx = txFactory.createTransform(crs, targetCRS);
+        CoordinateTransform tx = Proj.transform(crs, targetCRS);
         Envelope transformed = Proj.reproject(envelope, crs, targetCRS);
         
         /*
@@ -163,31 +160,29 @@ public class ReferencedEnvelope {
      */
     public void xform(final CoordinateTransform tx, final double[] src, final double[] dest) {
 
-        final int sourceDim = 2;
-        final int targetDim = 2;
+        final int points = src.length / 2;
 
-        boolean startPointTransformed = false;
-        ProjCoordinate c = null;
+        Proj.transform(tx, src, dest, points);
 
-        for (int i = 0; i < src.length; i += sourceDim) {
+        //replace failed points by the last point correctly transformed
+        int last = -1;
+        for (int i = 0; i < points * 2; i += 2) {
 
-        	double x = src[i];
-        	double y = src[i + 1];
-
-        	c = new ProjCoordinate(x, y);
-        	tx.transform(c, c);
-
-        	dest[i] = c.x;
-        	dest[i + 1] = c.y;
-
-        	if (!startPointTransformed) {
-        		startPointTransformed = true;
-
-        		for (int j = 0; j < i; j++) {
-        			System.arraycopy(dest, j, dest, i, targetDim);
+        	if (Double.isNaN(dest[i]) || Double.isNaN(dest[i + 1])) {
+        		if (last >= 0) {
+        			dest[i] = dest[last];
+        			dest[i + 1] = dest[last + 1];
+        		}
+        	} else {
+        		if (last < 0) {
+        			//the points before the first one transformed
+        			for (int j = 0; j < i; j += 2) {
+        				dest[j] = dest[i];
+        				dest[j + 1] = dest[i + 1];
+        			}
         		}
+        		last = i;
         	}
-
         }
     }
     
@@ -0,0 +1,530 @@
+package de.rooehler.rastertheque.io.cache;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import de.rooehler.rastertheque.core.Band;
+import de.rooehler.rastertheque.core.RasterDataset;
+import de.rooehler.rastertheque.processing.rendering.ColorMap;
+import de.rooehler.rastertheque.processing.rendering.ColorMapEntry;
+
+/**
+ * A TileDiskCache persists the encoded tiles which were rendered from a source file
+ * in a single container file, hence revisiting an area after a restart costs
+ * a read of the container instead of reading, resampling and rendering the source
+ *
+ * the container consists of a header containing the signature of the source and its styling
+ * followed by the records of the tiles, each identified by zoom, x, y and tile size
+ * the index of the records is kept in memory and rebuilt by scanning the records when the container is opened
+ *
+ * every combination of source and style, e.g. the colormap or the zoom levels, has its own container,
+ * hence switching between styles does not discard the tiles of the other ones as long as they fit :
+ * the containers of a directory share the size limit, when a container is opened or compacted
+ * the least recently modified containers of other sources and styles are deleted until all fit into it
+ *
+ * the signature consists of the path, the size and the modification time of the source
+ * and the style, if it differs from the signature of an existing container
+ * the container is cleared, hence tiles of an outdated source or style are never returned
+ *
+ * the size of the live records is limited, records are evicted in least recently used order
+ * and the space of evicted records is reclaimed by compacting the container
+ *
+ * the encoding of the tiles is up to the caller, the cache stores the bytes it is given
+ *
+ * @author Robert Oehler
+ *
+ */
+public class TileDiskCache {
+
+	private static final String TAG = TileDiskCache.class.getSimpleName();
+
+	/**
+	 * the extension of container files
+	 */
+	public static final String EXTENSION = ".tiles";
+
+	private static final String PREFIX = "tiles_";
+
+	private static final int MAGIC = 0x52544331;
+
+	private static final int VERSION = 1;
+
+	private static final byte DELETED = 0;
+
+	private static final byte LIVE = 1;
+
+	/**
+	 * flag, zoom, x, y, tile size and length of the data
+	 */
+	private static final int RECORD_HEADER_SIZE = 1 + 4 + 8 + 8 + 4 + 4;
+
+	private final File mFile;
+
+	private final String mSignature;
+
+	private final long mMaxBytes;
+
+	/**
+	 * access ordered -> iteration starts with the least recently used record
+	 */
+	private final LinkedHashMap<String, long[]> mIndex = new LinkedHashMap<>(256, 0.75f, true);
+
+	private RandomAccessFile mContainer;
+
+	private long mDataStart;
+
+	private long mLiveBytes;
+
+	/**
+	 * the length of the container when it could not be compacted
+	 */
+	private long mUncompactedLength;
+
+	private long mHits;
+
+	private long mMisses;
+
+	/**
+	 * opens or creates the container of the tiles of @param pSource rendered with @param pStyle
+	 * in @param pDirectory which holds at most @param pMaxBytes bytes of tiles
+	 */
+	public TileDiskCache(final File pDirectory, final String pSource, final String pStyle, final long pMaxBytes){
+
+		final File source = new File(pSource);
+
+		this.mFile = new File(pDirectory, PREFIX + Integer.toHexString(source.getAbsolutePath().hashCode())
+				+ "_" + Integer.toHexString(String.valueOf(pStyle).hashCode()) + EXTENSION);
+		this.mSignature = source.getAbsolutePath() + "|" + source.length() + "|" + source.lastModified() + "|" + pStyle;
+		this.mMaxBytes = pMaxBytes;
+
+		open();
+	}
+
+	/**
+	 * returns the style of @param dataset, which consists of the data types, colors and colormaps
+	 * of its bands and the size and modification time of a sld file accompanying its source
+	 */
+	public static String getStyle(final RasterDataset dataset){
+
+		final StringBuilder sb = new StringBuilder();
+
+		for(Band band : dataset.getBands()){
+
+			sb.append(band.datatype()).append(':').append(band.color());
+
+			final ColorMap colorMap = band.colorMap();
+			if(colorMap != null && colorMap.getEntries() != null){
+				int hash = 1;
+				for(ColorMapEntry entry : colorMap.getEntries()){
+					final long value = Double.doubleToLongBits(entry.getValue());
+					final long opacity = Double.doubleToLongBits(entry.getOpacity());
+					hash = 31 * hash + (int) (value ^ (value >>> 32));
+					hash = 31 * hash + entry.getColor();
+					hash = 31 * hash + (int) (opacity ^ (opacity >>> 32));
+				}
+				sb.append(":cm").append(colorMap.getEntries().size()).append('_').append(Integer.toHexString(hash));
+			}
+			sb.append(';');
+		}
+
+		final String source = dataset.getSource();
+		if(source != null && source.lastIndexOf(".") > 0){
+			final File sld = new File(source.substring(0, source.lastIndexOf(".") + 1) + "sld");
+			if(sld.exists()){
+				sb.append("sld:").append(sld.length()).append('@').append(sld.lastModified());
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return the encoded tile @param x, @param y at @param zoom of @param tileSize pixels or null if it is not cached
+	 */
+	public synchronized byte[] get(final int zoom, final long x, final long y, final int tileSize){
+
+		final long[] record = mContainer != null ? mIndex.get(key(zoom, x, y, tileSize)) : null;
+
+		if(record == null){
+			mMisses++;
+			return null;
+		}
+
+		try {
+			final byte[] data = new byte[(int) record[1]];
+			mContainer.seek(record[0] + RECORD_HEADER_SIZE);
+			mContainer.readFully(data);
+			mHits++;
+			return data;
+		} catch (IOException e) {
+			Log.e(TAG, "error reading tile from "+mFile.getAbsolutePath(), e);
+			disable();
+			return null;
+		}
+	}
+
+	/**
+	 * stores the encoded tile @param data of the tile @param x, @param y at @param zoom of @param tileSize pixels
+	 * and evicts the least recently used tiles if the size limit is exceeded
+	 */
+	public synchronized void put(final int zoom, final long x, final long y, final int tileSize, final byte[] data){
+
+		if(mContainer == null || data == null || data.length > mMaxBytes){
+			return;
+		}
+
+		final String key = key(zoom, x, y, tileSize);
+
+		try {
+			final long[] previous = mIndex.remove(key);
+			if(previous != null){
+				delete(previous);
+			}
+
+			//the record is marked live after its data is written completely
+			final ByteBuffer bytes = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+			bytes.put(DELETED).putInt(zoom).putLong(x).putLong(y).putInt(tileSize).putInt(data.length).put(data);
+
+			final long offset = mContainer.length();
+			mContainer.seek(offset);
+			mContainer.write(bytes.array());
+			mContainer.seek(offset);
+			mContainer.writeByte(LIVE);
+
+			mIndex.put(key, new long[]{ offset, data.length });
+			mLiveBytes += data.length;
+
+			final Iterator<Map.Entry<String, long[]>> iterator = mIndex.entrySet().iterator();
+			while(mLiveBytes > mMaxBytes && iterator.hasNext()){
+				final long[] eldest = iterator.next().getValue();
+				iterator.remove();
+				delete(eldest);
+			}
+
+			//the container is at least twice as large as its live records
+			final long length = mContainer.length();
+			if(length - mDataStart > 2 * Math.max(mLiveBytes, mMaxBytes / 2) && length > 2 * mUncompactedLength){
+				compact();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "error writing tile to "+mFile.getAbsolutePath(), e);
+			disable();
+		}
+	}
+
+	/**
+	 * removes all tiles
+	 */
+	public synchronized void clear(){
+
+		if(mContainer == null){
+			return;
+		}
+		try {
+			reset();
+		} catch (IOException e) {
+			Log.e(TAG, "error clearing "+mFile.getAbsolutePath(), e);
+			disable();
+		}
+	}
+
+	/**
+	 * closes the container, afterwards no tiles are returned nor stored
+	 */
+	public synchronized void close(){
+
+		disable();
+	}
+
+	/**
+	 * @return the container file
+	 */
+	public File getFile(){
+
+		return mFile;
+	}
+
+	/**
+	 * @return the size in bytes of the cached tiles
+	 */
+	public synchronized long getSize(){
+
+		return mLiveBytes;
+	}
+
+	/**
+	 * @return the maximum size in bytes of the cached tiles
+	 */
+	public long getMaxBytes(){
+
+		return mMaxBytes;
+	}
+
+	/**
+	 * @return the amount of cached tiles
+	 */
+	public synchronized int getCount(){
+
+		return mIndex.size();
+	}
+
+	/**
+	 * @return the amount of requests of tiles which were cached
+	 */
+	public synchronized long getHits(){
+
+		return mHits;
+	}
+
+	/**
+	 * @return the amount of requests of tiles which were not cached
+	 */
+	public synchronized long getMisses(){
+
+		return mMisses;
+	}
+
+	/**
+	 * opens the container, if it does not match the signature it is cleared
+	 */
+	private void open(){
+
+		try {
+			final File directory = mFile.getParentFile();
+			if(directory != null && !directory.exists() && !directory.mkdirs()){
+				Log.e(TAG, "cannot create "+directory.getAbsolutePath());
+				return;
+			}
+
+			mContainer = new RandomAccessFile(mFile, "rw");
+
+			if(mContainer.length() == 0 || !readHeader()){
+				reset();
+			}else{
+				scan();
+			}
+
+			trimDirectory();
+
+		} catch (IOException e) {
+			Log.e(TAG, "error opening "+mFile.getAbsolutePath(), e);
+			disable();
+		}
+	}
+
+	/**
+	 * @return true if the header of the container is valid and contains the signature of this cache
+	 */
+	private boolean readHeader() throws IOException{
+
+		mContainer.seek(0);
+		try{
+			if(mContainer.readInt() != MAGIC || mContainer.readInt() != VERSION){
+				return false;
+			}
+			if(!mSignature.equals(mContainer.readUTF())){
+				Log.d(TAG, "source or style changed, clearing "+mFile.getAbsolutePath());
+				return false;
+			}
+		}catch(IOException e){
+			//a truncated header
+			return false;
+		}
+		mDataStart = mContainer.getFilePointer();
+		return true;
+	}
+
+	/**
+	 * empties the container and writes its header
+	 */
+	private void reset() throws IOException{
+
+		mIndex.clear();
+		mLiveBytes = 0;
+
+		mContainer.setLength(0);
+		mContainer.seek(0);
+		mContainer.writeInt(MAGIC);
+		mContainer.writeInt(VERSION);
+		mContainer.writeUTF(mSignature);
+		mDataStart = mContainer.getFilePointer();
+	}
+
+	/**
+	 * rebuilds the index by scanning the records of the container,
+	 * an incomplete record at the end is cut off
+	 */
+	private void scan() throws IOException{
+
+		final long length = mContainer.length();
+		final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		long offset = mDataStart;
+
+		while(offset + RECORD_HEADER_SIZE <= length){
+
+			mContainer.seek(offset);
+			mContainer.readFully(header.array());
+			header.rewind();
+
+			final byte flag = header.get();
+			final int zoom = header.getInt();
+			final long x = header.getLong();
+			final long y = header.getLong();
+			final int tileSize = header.getInt();
+			final int size = header.getInt();
+
+			if(size < 0 || offset + RECORD_HEADER_SIZE + size > length){
+				break;
+			}
+			if(flag == LIVE){
+				final long[] previous = mIndex.put(key(zoom, x, y, tileSize), new long[]{ offset, size });
+				if(previous != null){
+					mLiveBytes -= previous[1];
+				}
+				mLiveBytes += size;
+			}
+			offset += RECORD_HEADER_SIZE + size;
+		}
+
+		if(offset < length){
+			Log.w(TAG, "cutting off incomplete record of "+mFile.getAbsolutePath());
+			mContainer.setLength(offset);
+		}
+	}
+
+	/**
+	 * rewrites the live records into a new container, in least recently used order
+	 */
+	private void compact() throws IOException{
+
+		final File compacted = new File(mFile.getAbsolutePath() + ".tmp");
+		final RandomAccessFile target = new RandomAccessFile(compacted, "rw");
+		final LinkedHashMap<String, long[]> index = new LinkedHashMap<>(mIndex.size() * 2, 0.75f, true);
+
+		boolean written = false;
+		try{
+			target.setLength(0);
+			target.writeInt(MAGIC);
+			target.writeInt(VERSION);
+			target.writeUTF(mSignature);
+
+			for(Map.Entry<String, long[]> entry : mIndex.entrySet()){
+
+				final long[] record = entry.getValue();
+				final byte[] bytes = new byte[(int) (RECORD_HEADER_SIZE + record[1])];
+				mContainer.seek(record[0]);
+				mContainer.readFully(bytes);
+
+				index.put(entry.getKey(), new long[]{ target.getFilePointer(), record[1] });
+				target.write(bytes);
+			}
+			written = true;
+		}finally{
+			target.close();
+			if(!written){
+				compacted.delete();
+			}
+		}
+
+		mContainer.close();
+		mContainer = null;
+
+		final boolean replaced = compacted.renameTo(mFile);
+
+		mContainer = new RandomAccessFile(mFile, "rw");
+
+		if(!replaced){
+			//the records of the uncompacted container remain valid, it is compacted again when it doubled
+			Log.w(TAG, "cannot replace "+mFile.getAbsolutePath()+", keeping it uncompacted");
+			compacted.delete();
+			mUncompactedLength = mContainer.length();
+			return;
+		}
+
+		mIndex.clear();
+		mIndex.putAll(index);
+		mUncompactedLength = 0;
+
+		trimDirectory();
+	}
+
+	/**
+	 * deletes the least recently modified containers of other sources and styles in the directory
+	 * of this container until all containers of the directory fit into the size limit
+	 */
+	private void trimDirectory(){
+
+		final File[] containers = mFile.getParentFile().listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().startsWith(PREFIX) && file.getName().endsWith(EXTENSION) && !file.equals(mFile);
+			}
+		});
+
+		if(containers == null){
+			return;
+		}
+
+		//the most recently modified first
+		Arrays.sort(containers, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				final long l = lhs.lastModified();
+				final long r = rhs.lastModified();
+				return l > r ? -1 : (l < r ? 1 : 0);
+			}
+		});
+
+		long total = mFile.length();
+		boolean exceeded = false;
+
+		for(File container : containers){
+
+			total += container.length();
+			exceeded |= total > mMaxBytes;
+
+			if(exceeded){
+				Log.d(TAG, "deleting the container "+container.getAbsolutePath());
+				if(!container.delete()){
+					Log.w(TAG, "cannot delete "+container.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	private void delete(final long[] record) throws IOException{
+
+		mContainer.seek(record[0]);
+		mContainer.writeByte(DELETED);
+		mLiveBytes -= record[1];
+	}
+
+	private void disable(){
+
+		if(mContainer != null){
+			try {
+				mContainer.close();
+			} catch (IOException e) {
+				Log.e(TAG, "error closing "+mFile.getAbsolutePath(), e);
+			}
+			mContainer = null;
+		}
+		mIndex.clear();
+		mLiveBytes = 0;
+	}
+
+	private static String key(final int zoom, final long x, final long y, final int tileSize){
+
+		return zoom + "/" + x + "/" + y + "@" + tileSize;
+	}
+}
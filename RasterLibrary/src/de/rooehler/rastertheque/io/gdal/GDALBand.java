@@ -8,6 +8,7 @@ import org.gdal.gdal.ColorTable;
 import de.rooehler.rastertheque.core.Band;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.NoData;
+import de.rooehler.rastertheque.core.Statistics;
 import de.rooehler.rastertheque.processing.rendering.ColorMap;
 import de.rooehler.rastertheque.processing.rendering.ColorMapEntry;
 import de.rooehler.rastertheque.processing.rendering.SLDColorMapParser;
@@ -24,6 +25,10 @@ public class GDALBand implements Band{
 	
 	private ColorMap mColorMap;
 	
+	private GDALDataset mDataset;
+	
+	private Statistics mStatistics;
+	
 	public void clearColorMap(){
 		
 		mColorMap = null;
@@ -73,6 +78,14 @@ public class GDALBand implements Band{
     public GDALBand(org.gdal.gdal.Band band) {
         this.band = band;
     }
+    
+    /**
+     * creates a band of @param dataset, which provides the statistics of this band
+     */
+    public GDALBand(org.gdal.gdal.Band band, GDALDataset dataset) {
+    	this(band);
+    	this.mDataset = dataset;
+    }
 
 	@Override
 	public String name() {
@@ -133,17 +146,123 @@ public class GDALBand implements Band{
 	}
 	
 	/**
-	 * calculates the min/max values of a band
-	 * @param the band to use
-	 * @return an array of format {min,max}
+	 * returns the number of overviews (pyramid levels) available for this band
+	 * @return the number of overviews, 0 if there are none
+	 */
+	public int getOverviewCount(){
+		
+		return this.band.GetOverviewCount();
+	}
+	
+	/**
+	 * returns the overview at index @param index
+	 * @param index of the overview, -1 returns the full resolution band
+	 * @return the overview band or null if not available
+	 */
+	public org.gdal.gdal.Band getOverview(final int index){
+		
+		if(index < 0){
+			return this.band;
+		}
+		
+		return this.band.GetOverview(index);
+	}
+	
+	/**
+	 * selects the coarsest overview of this band which still provides 
+	 * at least the resolution of the target
+	 * 
+	 * the window of @param readWidth x @param readHeight pixels (at full resolution)
+	 * will be rendered into @param targetWidth x @param targetHeight pixels
+	 * 
+	 * @return the index of the overview to use or -1 if the full resolution band should be read
+	 */
+	public int getBestOverview(final int readWidth, final int readHeight, final int targetWidth, final int targetHeight){
+		
+		return getBestOverview(this.band, readWidth, readHeight, targetWidth, targetHeight);
+	}
+	
+	/**
+	 * selects the coarsest overview of @param band which still provides 
+	 * at least the resolution of the target
+	 * 
+	 * @see GDALBand#getBestOverview(int, int, int, int)
+	 * 
+	 * @return the index of the overview to use or -1 if the full resolution band should be read
+	 */
+	public static int getBestOverview(final org.gdal.gdal.Band band, final int readWidth, final int readHeight, final int targetWidth, final int targetHeight){
+		
+		if(targetWidth >= readWidth || targetHeight >= readHeight){
+			//no downsampling
+			return -1;
+		}
+		
+		final int count = band.GetOverviewCount();
+		if(count == 0){
+			return -1;
+		}
+		
+		final int fullWidth  = band.getXSize();
+		final int fullHeight = band.getYSize();
+		
+		int best = -1;
+		int bestWidth = fullWidth;
+		
+		for(int i = 0; i < count; i++){
+			
+			final org.gdal.gdal.Band overview = band.GetOverview(i);
+			if(overview == null){
+				continue;
+			}
+			final int ovWidth  = overview.getXSize();
+			final int ovHeight = overview.getYSize();
+			
+			//size of the read window within this overview
+			final double ovReadWidth  = readWidth  * ovWidth  / (double) fullWidth;
+			final double ovReadHeight = readHeight * ovHeight / (double) fullHeight;
+			
+			if(ovReadWidth >= targetWidth && ovReadHeight >= targetHeight && ovWidth < bestWidth){
+				best = i;
+				bestWidth = ovWidth;
+			}
+		}
+		
+		return best;
+	}
+
+	/**
+	 * returns the statistics of this band
+	 * 
+	 * bands of a dataset use the statistics of the dataset, which are
+	 * persisted next to its file, other bands compute them once
+	 * @return the statistics or null if they could not be computed
+	 */
+	@Override
+	public Statistics statistics(){
+		
+		if(mDataset != null){
+			return mDataset.getStatistics(this.band.GetBand() - 1);
+		}
+		synchronized (this) {
+			if(mStatistics == null){
+				mStatistics = GDALStatistics.compute(this.band, datatype());
+			}
+			return mStatistics;
+		}
+	}
+	
+	/**
+	 * returns the min/max values of a band
+	 * @return an array of format {min,max} or null if they are not available
 	 */
 	public double[] getMinMax(){
 		
-		double[] min = new double[1];
-        double[] max = new double[1];
-		this.band.ComputeStatistics(true, min, max);
+		final Statistics statistics = statistics();
 		
-		return new double[]{min[0],max[0]};
+		if(statistics == null){
+			return null;
+		}
+		return new double[]{statistics.getMin(), statistics.getMax()};
 	}
 
 	/**
@@ -0,0 +1,434 @@
+package de.rooehler.rastertheque.io.gdal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.gdal.gdalconst.gdalconst;
+
+/**
+ * A GDALBlockCache holds decoded blocks of the bands of a GDAL dataset
+ * in their native block layout
+ *
+ * blocks are identified by (band, overview, blockX, blockY) and
+ * evicted in least recently used order when the byte budget of the cache is exceeded
+ *
+ * windows of arbitrary position are assembled from the cached blocks,
+ * only missing blocks are read using ReadBlock, hence neighbouring windows
+ * which touch the same blocks read and decompress them only once
+ *
+ * the cache can be used concurrently, blocks which are missing are read
+ * with the (not shared) band handle of the calling thread
+ *
+ * blocks which only contain the nodata value of their band are remembered
+ * (also after their data was evicted), hence windows which only touch such blocks
+ * can be recognized as empty without reading them again,
+ * they are kept in one bit set per (band, overview), i.e. one bit per block of the dataset
+ *
+ * @author Robert Oehler
+ *
+ */
+public class GDALBlockCache {
+
+	/**
+	 * the maximum size of the read buffer which is kept per thread,
+	 * larger blocks are read into a temporary buffer
+	 */
+	public static final int MAX_READ_BUFFER_BYTES = 1024 * 1024;
+
+	private final LinkedHashMap<Long, byte[]> mBlocks;
+
+	private final HashMap<Integer, BitSet> mEmptyBlocks;
+
+	private int mEmptyBlockCount;
+
+	private final ThreadLocal<ByteBuffer> mReadBuffer;
+
+	private long mMaxBytes;
+
+	private long mBytes;
+
+	private long mHits;
+
+	private long mMisses;
+
+	/**
+	 * creates a cache holding at most @param pMaxBytes bytes of blocks
+	 * @param pMaxBytes the byte budget of this cache
+	 */
+	public GDALBlockCache(final long pMaxBytes){
+
+		this.mMaxBytes = pMaxBytes;
+		//access ordered -> iteration starts with the least recently used block
+		this.mBlocks = new LinkedHashMap<>(64, 0.75f, true);
+		this.mEmptyBlocks = new HashMap<>();
+		this.mReadBuffer = new ThreadLocal<ByteBuffer>();
+	}
+
+	/**
+	 * reads the window @param left, @param top, @param width, @param height
+	 * of the (overview of the) band @param band into @param buffer
+	 * starting at the current position of the buffer
+	 *
+	 * the pixels are written row by row in the native data type of the band
+	 *
+	 * @param band the band (or overview) to read from
+	 * @param bandIndex the index of the band within its dataset
+	 * @param overview the index of the overview or -1 for the full resolution band
+	 * @param dataTypeSize the size in bytes of the native data type of the band
+	 * @return CE_None if the window was read, an GDAL error code otherwise
+	 */
+	public int read(final org.gdal.gdal.Band band, final int bandIndex, final int overview,
+			final int left, final int top, final int width, final int height,
+			final int dataTypeSize, final ByteBuffer buffer){
+
+		final int blockWidth  = band.GetBlockXSize();
+		final int blockHeight = band.GetBlockYSize();
+
+		final int base = buffer.position();
+
+		final int firstBlockX = left / blockWidth;
+		final int firstBlockY = top / blockHeight;
+		final int lastBlockX = (left + width - 1) / blockWidth;
+		final int lastBlockY = (top + height - 1) / blockHeight;
+
+		for(int blockY = firstBlockY; blockY <= lastBlockY; blockY++){
+
+			final int blockTop = blockY * blockHeight;
+			final int y0 = Math.max(top, blockTop);
+			final int y1 = Math.min(top + height, blockTop + blockHeight);
+
+			for(int blockX = firstBlockX; blockX <= lastBlockX; blockX++){
+
+				final byte[] block = getBlock(band, bandIndex, overview, blockX, blockY, blockWidth * blockHeight * dataTypeSize);
+
+				if(block == null){
+					buffer.position(base);
+					return gdalconst.CE_Failure;
+				}
+
+				final int blockLeft = blockX * blockWidth;
+				final int x0 = Math.max(left, blockLeft);
+				final int x1 = Math.min(left + width, blockLeft + blockWidth);
+				final int rowLength = (x1 - x0) * dataTypeSize;
+
+				for(int y = y0; y < y1; y++){
+
+					final int srcOffset = ((y - blockTop) * blockWidth + (x0 - blockLeft)) * dataTypeSize;
+					final int dstOffset = base + ((y - top) * width + (x0 - left)) * dataTypeSize;
+
+					buffer.position(dstOffset);
+					buffer.put(block, srcOffset, rowLength);
+				}
+			}
+		}
+		buffer.position(base);
+
+		return gdalconst.CE_None;
+	}
+
+	/**
+	 * returns the block from the cache or reads it from @param band if it is not cached yet
+	 * @return the block or null if reading it failed
+	 */
+	private byte[] getBlock(final org.gdal.gdal.Band band, final int bandIndex, final int overview, final int blockX, final int blockY, final int blockBytes){
+
+		final long key = key(bandIndex, overview, blockX, blockY);
+
+		synchronized (this) {
+			final byte[] block = mBlocks.get(key);
+			if(block != null){
+				mHits++;
+				return block;
+			}
+			mMisses++;
+		}
+
+		//read outside of the lock, the band belongs to the calling thread
+		ByteBuffer readBuffer = mReadBuffer.get();
+		if(readBuffer == null || readBuffer.capacity() < blockBytes){
+			readBuffer = ByteBuffer.allocateDirect(blockBytes);
+			readBuffer.order(ByteOrder.nativeOrder());
+			//large blocks must not pin a large buffer for the lifetime of the thread
+			if(blockBytes <= MAX_READ_BUFFER_BYTES){
+				mReadBuffer.set(readBuffer);
+			}
+		}
+		readBuffer.clear();
+
+		if(band.ReadBlock_Direct(blockX, blockY, readBuffer) != gdalconst.CE_None){
+			return null;
+		}
+
+		final byte[] block = new byte[blockBytes];
+		readBuffer.position(0);
+		readBuffer.get(block, 0, blockBytes);
+
+		final boolean empty = isNoData(band, readBuffer, blockX, blockY);
+
+		synchronized (this) {
+			if(empty){
+				final Integer level = level(bandIndex, overview);
+				BitSet emptyBlocks = mEmptyBlocks.get(level);
+				if(emptyBlocks == null){
+					emptyBlocks = new BitSet();
+					mEmptyBlocks.put(level, emptyBlocks);
+				}
+				final int index = blockIndex(band, blockX, blockY);
+				if(!emptyBlocks.get(index)){
+					emptyBlocks.set(index);
+					mEmptyBlockCount++;
+				}
+			}
+			if(blockBytes <= mMaxBytes){
+				final byte[] previous = mBlocks.put(key, block);
+				if(previous != null){
+					mBytes -= previous.length;
+				}
+				mBytes += blockBytes;
+				evict();
+			}
+		}
+
+		return block;
+	}
+
+	/**
+	 * checks if the blocks of @param band containing values of @param dataTypeSize bytes
+	 * fit into the byte budget of this cache
+	 * 
+	 * windows of bands with larger blocks, e.g. strips or single strip files,
+	 * should be read directly instead of decoding a whole block to serve a small window
+	 * 
+	 * @return true if a block of the band can be cached
+	 */
+	public boolean canCache(final org.gdal.gdal.Band band, final int dataTypeSize){
+
+		final long blockBytes = (long) band.GetBlockXSize() * band.GetBlockYSize() * dataTypeSize;
+
+		synchronized (this) {
+			return blockBytes <= mMaxBytes;
+		}
+	}
+
+	/**
+	 * checks if the window @param left, @param top, @param width, @param height
+	 * of the (overview of the) band @param band only touches blocks which
+	 * were read before and contained nothing but the nodata value of the band
+	 *
+	 * no block is read by this check, unknown blocks are considered not to be empty
+	 *
+	 * @return true if the window is known to be empty
+	 */
+	public boolean isEmpty(final org.gdal.gdal.Band band, final int bandIndex, final int overview,
+			final int left, final int top, final int width, final int height){
+
+		if(width <= 0 || height <= 0){
+			return true;
+		}
+
+		final int blockWidth  = band.GetBlockXSize();
+		final int blockHeight = band.GetBlockYSize();
+
+		final int firstBlockX = left / blockWidth;
+		final int firstBlockY = top / blockHeight;
+		final int lastBlockX = (left + width - 1) / blockWidth;
+		final int lastBlockY = (top + height - 1) / blockHeight;
+
+		synchronized (this) {
+			final BitSet emptyBlocks = mEmptyBlocks.get(level(bandIndex, overview));
+			if(emptyBlocks == null){
+				return false;
+			}
+			for(int blockY = firstBlockY; blockY <= lastBlockY; blockY++){
+				for(int blockX = firstBlockX; blockX <= lastBlockX; blockX++){
+					if(!emptyBlocks.get(blockIndex(band, blockX, blockY))){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * checks if the block @param blockX, @param blockY of @param band,
+	 * which is in the native data type of the band, only contains the nodata value of the band
+	 *
+	 * the padding of blocks at the right and bottom edge of the band is not checked
+	 *
+	 * @return false if the band has no nodata value or any other value was found
+	 */
+	private static boolean isNoData(final org.gdal.gdal.Band band, final ByteBuffer block, final int blockX, final int blockY){
+
+		final Double[] nodata = new Double[1];
+		band.GetNoDataValue(nodata);
+		if(nodata[0] == null){
+			return false;
+		}
+		final double value = nodata[0];
+
+		final int dt = band.GetRasterDataType();
+		final int size;
+		if(dt == gdalconst.GDT_Byte){
+			size = 1;
+		}else if(dt == gdalconst.GDT_Int16 || dt == gdalconst.GDT_UInt16){
+			size = 2;
+		}else if(dt == gdalconst.GDT_Int32 || dt == gdalconst.GDT_UInt32 || dt == gdalconst.GDT_Float32){
+			size = 4;
+		}else if(dt == gdalconst.GDT_Float64){
+			size = 8;
+		}else{
+			//complex types are not checked
+			return false;
+		}
+
+		final int blockWidth  = band.GetBlockXSize();
+		final int blockHeight = band.GetBlockYSize();
+		//edge blocks are padded, only their part within the band is valid
+		final int validWidth  = Math.min(blockWidth,  band.getXSize() - blockX * blockWidth);
+		final int validHeight = Math.min(blockHeight, band.getYSize() - blockY * blockHeight);
+
+		for(int y = 0; y < validHeight; y++){
+
+			final int rowStart = y * blockWidth * size;
+			final int rowEnd = rowStart + validWidth * size;
+
+			for(int i = rowStart; i < rowEnd; i += size){
+
+				final double v;
+				if(dt == gdalconst.GDT_Byte){
+					v = block.get(i) & 0xff;
+				}else if(dt == gdalconst.GDT_Int16){
+					v = block.getShort(i);
+				}else if(dt == gdalconst.GDT_UInt16){
+					v = block.getShort(i) & 0xffff;
+				}else if(dt == gdalconst.GDT_Int32){
+					v = block.getInt(i);
+				}else if(dt == gdalconst.GDT_UInt32){
+					v = block.getInt(i) & 0xffffffffL;
+				}else if(dt == gdalconst.GDT_Float32){
+					v = block.getFloat(i);
+				}else{
+					v = block.getDouble(i);
+				}
+
+				if(Double.isNaN(value) ? !Double.isNaN(v) : v != (dt == gdalconst.GDT_Float32 ? (float) value : value)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * evicts the least recently used blocks until the byte budget is met
+	 */
+	private void evict(){
+
+		final Iterator<Map.Entry<Long, byte[]>> it = mBlocks.entrySet().iterator();
+
+		while(mBytes > mMaxBytes && it.hasNext()){
+
+			mBytes -= it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	/**
+	 * creates the key of a block
+	 *
+	 * bands and overviews are limited to 255 and 254, block indices to 2^24
+	 */
+	private static long key(final int bandIndex, final int overview, final int blockX, final int blockY){
+
+		return ((long) (bandIndex & 0xff) << 56) |
+			   ((long) ((overview + 1) & 0xff) << 48) |
+			   ((long) (blockX & 0xffffff) << 24) |
+			   ((long) (blockY & 0xffffff));
+	}
+
+	/**
+	 * creates the key of the empty blocks of a (band, overview)
+	 */
+	private static Integer level(final int bandIndex, final int overview){
+
+		return ((bandIndex & 0xff) << 8) | ((overview + 1) & 0xff);
+	}
+
+	/**
+	 * @return the index of the block @param blockX, @param blockY within the blocks of @param band
+	 */
+	private static int blockIndex(final org.gdal.gdal.Band band, final int blockX, final int blockY){
+
+		final int blockWidth = band.GetBlockXSize();
+		final int blocksPerRow = (band.getXSize() + blockWidth - 1) / blockWidth;
+
+		return blockY * blocksPerRow + blockX;
+	}
+
+	/**
+	 * changes the byte budget of this cache, evicting blocks if necessary
+	 * @param maxBytes the new budget, 0 disables caching
+	 */
+	public synchronized void setMaxBytes(final long maxBytes){
+
+		this.mMaxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * @return the byte budget of this cache
+	 */
+	public synchronized long getMaxBytes(){
+
+		return mMaxBytes;
+	}
+
+	/**
+	 * @return the amount of bytes currently cached
+	 */
+	public synchronized long getSize(){
+
+		return mBytes;
+	}
+
+	/**
+	 * @return the number of blocks which were found in the cache
+	 */
+	public synchronized long getHits(){
+
+		return mHits;
+	}
+
+	/**
+	 * @return the number of blocks which had to be read
+	 */
+	public synchronized long getMisses(){
+
+		return mMisses;
+	}
+
+	/**
+	 * @return the number of blocks which are known to only contain nodata
+	 */
+	public synchronized int getEmptyBlockCount(){
+
+		return mEmptyBlockCount;
+	}
+
+	/**
+	 * removes all blocks from this cache, including the knowledge about empty blocks
+	 */
+	public synchronized void clear(){
+
+		mBlocks.clear();
+		mEmptyBlocks.clear();
+		mEmptyBlockCount = 0;
+		mBytes = 0;
+	}
+}
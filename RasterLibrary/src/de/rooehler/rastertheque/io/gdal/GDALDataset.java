@@ -1,14 +1,20 @@
 package de.rooehler.rastertheque.io.gdal;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.gdal.gdal.Dataset;
+import org.gdal.gdal.ProgressCallback;
 import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
 import org.gdal.osr.CoordinateTransformation;
 import org.gdal.osr.SpatialReference;
 import org.osgeo.proj4j.CoordinateReferenceSystem;
@@ -22,9 +28,13 @@ import de.rooehler.rastertheque.core.Band;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Driver;
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.RasterDataset;
 import de.rooehler.rastertheque.core.RasterQuery;
+import de.rooehler.rastertheque.core.RasterVisitor;
+import de.rooehler.rastertheque.core.Statistics;
+import de.rooehler.rastertheque.core.StreamableRasterDataset;
+import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
 import de.rooehler.rastertheque.proj.Proj;
+import de.rooehler.rastertheque.util.ProgressListener;
 /**
  * A GDALDataset wraps a org.gdal.gdal.dataset
  * and gives access to its properties and metadata
@@ -32,7 +42,7 @@ import de.rooehler.rastertheque.proj.Proj;
  * @author Robert Oehler
  *
  */
-public class GDALDataset implements RasterDataset{
+public class GDALDataset implements StreamableRasterDataset{
 	
 	GDALDriver mDriver;
 
@@ -48,6 +58,33 @@ public class GDALDataset implements RasterDataset{
 	
 	List<Band> mBands;
 	
+	Hashtable<?, ?> mMetadata;
+	
+	/**
+	 * handles used for reads, the dataset itself is only used to access properties
+	 */
+	GDALDatasetPool mPool;
+	
+	/**
+	 * decoded blocks shared by all reads of this dataset
+	 */
+	GDALBlockCache mBlockCache;
+	
+	/**
+	 * statistics of the bands, computed or loaded once
+	 */
+	Statistics[] mStatistics;
+	
+	/**
+	 * the extension which GDAL appends to the source file to name external overviews
+	 */
+	public static final String OVERVIEW_EXTENSION = ".ovr";
+	
+	/**
+	 * default byte budget of the block cache
+	 */
+	public static final long DEFAULT_BLOCK_CACHE_SIZE = 16 * 1024 * 1024;
+	
 	/**
 	 * default constructor using the path to the raster file,
 	 * the dataset opened by the driver and the driver itself
@@ -61,8 +98,17 @@ public class GDALDataset implements RasterDataset{
         this.dataset = dataset;
         this.mDriver = driver;
         
+        //datasets without source (e.g. in memory) cannot be reopened and share their single handle
+        this.mPool = pFilePath != null ?
+        		new GDALDatasetPool(pFilePath, Runtime.getRuntime().availableProcessors()) :
+        		new GDALDatasetPool(dataset);
+        
+        this.mBlockCache = new GDALBlockCache(DEFAULT_BLOCK_CACHE_SIZE);
+        
         getBoundingBox();
         
+        getCRS();
+        
         getMetadata();
         
 		((GDALBand)this.getBands().get(0)).applySLDColorMap(mSource);
@@ -99,42 +145,492 @@ public class GDALDataset implements RasterDataset{
 				
 		final int bufferSize = targetWidth * targetHeight * query.getDataType().size() * query.getBands().size();
 		
+		//GDAL writes directly into the native memory of this buffer, no intermediate heap copy is made
 		final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
-//		final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
 		buffer.order(ByteOrder.nativeOrder()); 
+		
+		final int gdalDataType = DataType.toGDAL(query.getBands().get(0).datatype()); // the type of the pixel values in the buffer
+		
+		final int[] readBands = new int[query.getBands().size()];
+		for(int i = 0; i < query.getBands().size();i++){
+			readBands[i] = ((GDALBand)query.getBands().get(i)).getBand().GetBand();
+		}
+		
+		//GDAL handles are not thread-safe, every read borrows its own handle
+		final Dataset handle = mPool.acquire();
+		
+		if(handle == null){
+			Log.e(GDALDataset.class.getSimpleName(), "no handle available to read "+mSource);
+			return null;
+		}
+		
+		int success = Integer.MIN_VALUE;
+		
+		try{
+			//when downsampling, read from the coarsest overview which still satisfies the target resolution
+			final int overview = GDALBand.getBestOverview(handle.GetRasterBand(readBands[0]), readWidth, readHeight, targetWidth, targetHeight);
 
-		if(query.getBands().size() == 1){
+			if(overview >= 0){
+				success = readOverview(handle, readBands, overview, src, targetWidth, targetHeight, gdalDataType, query.getDataType().size(), buffer);
+			}
 
-			((GDALBand)query.getBands().get(0)).getBand().ReadRaster(
-					src.left,src.top, //src pos
-					readWidth, readHeight, //src dim
-					targetWidth,targetHeight, //dst dim
-					DataType.toGDAL(query.getBands().get(0).datatype()), // the type of the pixel values in the array. 
-					buffer.array());
-		}else{
-			int[] readBands = new int[query.getBands().size()];
-			for(int i = 0; i < query.getBands().size();i++){
-				readBands[i] = ((GDALBand)query.getBands().get(i)).getBand().GetBand();
+			if(success != gdalconst.CE_None && readWidth == targetWidth && readHeight == targetHeight){
+				//full resolution without resampling, assemble from cached blocks
+				success = readBlocks(handle, readBands, src, gdalDataType, query.getDataType().size(), buffer);
+			}
+
+			if(success != gdalconst.CE_None){
+				//full resolution
+				if(readBands.length == 1){
+
+					success = handle.GetRasterBand(readBands[0]).ReadRaster_Direct(
+							src.left,src.top, //src pos
+							readWidth, readHeight, //src dim
+							targetWidth,targetHeight, //dst dim
+							gdalDataType,
+							buffer); //buffer to write in
+				}else{
+					success = handle.ReadRaster_Direct(
+							src.left,src.top, //src pos
+							readWidth, readHeight, //src dim
+							targetWidth,targetHeight, //dst dim
+							gdalDataType,
+							buffer, //buffer to write in
+							readBands);
+				}
 			}
-			dataset.ReadRaster(
-					src.left,src.top, //src pos
-					readWidth, readHeight, //src dim
-					targetWidth,targetHeight, //dst dim
-					DataType.toGDAL(query.getBands().get(0).datatype()), // the type of the pixel values in the array. 
-					buffer.array(), //buffer to write in
-					readBands);
+		}finally{
+			mPool.release(handle);
+		}
+		
+		if(success != gdalconst.CE_None){
+			Log.e(GDALDataset.class.getSimpleName(), "error reading raster : "+ gdal.GetLastErrorMsg());
 		}
 		
 		return new Raster(query.getBounds() , getCRS(), target, query.getBands(), buffer, getMetadata());
 
 	}
+	
+	/**
+	 * streams the window of @param query chunk by chunk to @param visitor
+	 * 
+	 * a single handle is borrowed for the whole stream and a single buffer
+	 * of the size of a chunk is reused for all chunks
+	 * 
+	 * if @param chunkWidth or @param chunkHeight are not positive, 
+	 * the block size of the first band is used
+	 */
+	@Override
+	public void stream(final RasterQuery query, int chunkWidth, int chunkHeight, final RasterVisitor visitor) {
+		
+		final Rect window = query.getDimension();
+		
+		final int[] readBands = new int[query.getBands().size()];
+		for(int i = 0; i < query.getBands().size();i++){
+			readBands[i] = ((GDALBand)query.getBands().get(i)).getBand().GetBand();
+		}
+		final int gdalDataType = DataType.toGDAL(query.getBands().get(0).datatype());
+		final int dataTypeSize = query.getDataType().size();
+		
+		final Dataset handle = mPool.acquire();
+		
+		if(handle == null){
+			Log.e(GDALDataset.class.getSimpleName(), "no handle available to stream "+mSource);
+			return;
+		}
+		
+		try{
+			if(chunkWidth <= 0 || chunkHeight <= 0){
+				final org.gdal.gdal.Band band = handle.GetRasterBand(readBands[0]);
+				chunkWidth = band.GetBlockXSize();
+				chunkHeight = band.GetBlockYSize();
+			}
+			chunkWidth  = Math.min(chunkWidth, window.width());
+			chunkHeight = Math.min(chunkHeight, window.height());
+			
+			final double[] gt = handle.GetGeoTransform();
+			
+			final ByteBuffer buffer = ByteBuffer.allocateDirect(chunkWidth * chunkHeight * dataTypeSize * readBands.length);
+			buffer.order(ByteOrder.nativeOrder());
+			
+			final Raster chunk = new Raster(null, getCRS(), null, query.getBands(), buffer, getMetadata());
+			
+			for(int top = window.top; top < window.bottom; top += chunkHeight){
+				
+				final int bottom = Math.min(top + chunkHeight, window.bottom);
+				
+				for(int left = window.left; left < window.right; left += chunkWidth){
+					
+					final int right = Math.min(left + chunkWidth, window.right);
+					final int width = right - left;
+					final int height = bottom - top;
+					
+					buffer.clear();
+					buffer.limit(width * height * dataTypeSize * readBands.length);
+					
+					final int success = handle.ReadRaster_Direct(
+							left, top, //src pos
+							width, height, //src dim
+							width, height, //dst dim
+							gdalDataType,
+							buffer, //buffer to write in
+							readBands);
+					
+					if(success != gdalconst.CE_None){
+						Log.e(GDALDataset.class.getSimpleName(), "error streaming chunk : "+ gdal.GetLastErrorMsg());
+						return;
+					}
+					
+					chunk.setDimension(new Rect(left, top, right, bottom));
+					chunk.setBoundingBox(new Envelope(
+							gt[0] + left   * gt[1], //minx
+							gt[0] + right  * gt[1], //maxx
+							gt[3] + bottom * gt[5], //miny
+							gt[3] + top    * gt[5]));//maxy
+					
+					if(!visitor.visit(chunk)){
+						return;
+					}
+				}
+			}
+		}finally{
+			mPool.release(handle);
+		}
+	}
+	
+	/**
+	 * reads the window @param src (in full resolution pixel coordinates)
+	 * from the overview with index @param overview of the bands @param readBands
+	 * of @param handle into @param buffer
+	 * 
+	 * the window is rescaled to the pixel coordinates of the overview
+	 * and the bands are written sequentially into the buffer
+	 * 
+	 * @return CE_None if all bands were read successfully, an GDAL error code otherwise
+	 */
+	private int readOverview(final Dataset handle, final int[] readBands, final int overview, final Rect src, final int targetWidth, final int targetHeight, final int gdalDataType, final int dataTypeSize, final ByteBuffer buffer){
+		
+		final int fullWidth  = handle.GetRasterXSize();
+		final int fullHeight = handle.GetRasterYSize();
+		final int bandSize = targetWidth * targetHeight * dataTypeSize;
+		
+		int success = gdalconst.CE_None;
+		
+		for(int i = 0; i < readBands.length; i++){
+			
+			final org.gdal.gdal.Band ovBand = handle.GetRasterBand(readBands[i]).GetOverview(overview);
+			if(ovBand == null){
+				success = gdalconst.CE_Failure;
+				break;
+			}
+			final Rect ovSrc = toOverview(src, fullWidth, fullHeight, ovBand);
+			final int left = ovSrc.left;
+			final int top = ovSrc.top;
+			final int right = ovSrc.right;
+			final int bottom = ovSrc.bottom;
+			
+			buffer.position(i * bandSize);
+			
+			success = gdalconst.CE_Failure;
+			
+			if(right - left == targetWidth && bottom - top == targetHeight && isWholeOverviewWindow(src, fullWidth, fullHeight, ovSrc, ovBand)
+					&& isBlockCacheable(ovBand, gdalDataType, dataTypeSize)){
+				//the overview window is exactly the requested one and matches the target, assemble from cached blocks
+				success = mBlockCache.read(ovBand, readBands[i], overview, left, top, targetWidth, targetHeight, dataTypeSize, buffer);
+			}
+			
+			if(success != gdalconst.CE_None){
+				success = readOverviewWindow(ovBand, src, fullWidth, fullHeight, ovSrc, targetWidth, targetHeight, gdalDataType, dataTypeSize, buffer);
+			}
+			
+			if(success != gdalconst.CE_None){
+				break;
+			}
+		}
+		buffer.position(0);
+		
+		return success;
+	}
+
+	/**
+	 * reads the window @param src (in full resolution pixel coordinates) from @param ovBand
+	 * resampled to @param targetWidth x @param targetHeight into @param buffer
+	 * starting at its current position
+	 * 
+	 * the window usually does not start and end on whole pixels of the overview,
+	 * as GDAL only reads whole pixels, the enclosing window @param ovSrc is read at a size
+	 * in which the requested part has the target size and this part is cropped,
+	 * hence the result deviates less than a target pixel and not up to an overview pixel from the requested window
+	 * 
+	 * @return CE_None if the window was read successfully, an GDAL error code otherwise
+	 */
+	private static int readOverviewWindow(final org.gdal.gdal.Band ovBand, final Rect src, final int fullWidth, final int fullHeight, final Rect ovSrc,
+			final int targetWidth, final int targetHeight, final int gdalDataType, final int dataTypeSize, final ByteBuffer buffer){
+		
+		final double scaleX = ovBand.getXSize() / (double) fullWidth;
+		final double scaleY = ovBand.getYSize() / (double) fullHeight;
+		
+		//the requested window within the overview, in fractional overview pixels
+		final double left   = Math.max(ovSrc.left,   src.left   * scaleX);
+		final double top    = Math.max(ovSrc.top,    src.top    * scaleY);
+		final double right  = Math.min(ovSrc.right,  src.right  * scaleX);
+		final double bottom = Math.min(ovSrc.bottom, src.bottom * scaleY);
+		
+		//target pixels per overview pixel
+		final double pixelsX = right > left ? targetWidth / (right - left) : 1;
+		final double pixelsY = bottom > top ? targetHeight / (bottom - top) : 1;
+		
+		final int offsetX = (int) Math.round((left - ovSrc.left) * pixelsX);
+		final int offsetY = (int) Math.round((top  - ovSrc.top)  * pixelsY);
+		final int readWidth  = Math.max(offsetX + targetWidth,  (int) Math.round(ovSrc.width()  * pixelsX));
+		final int readHeight = Math.max(offsetY + targetHeight, (int) Math.round(ovSrc.height() * pixelsY));
+		
+		if(offsetX == 0 && offsetY == 0 && readWidth == targetWidth && readHeight == targetHeight){
+			//the window covers whole overview pixels, read directly into the part of the buffer for this band
+			return ovBand.ReadRaster_Direct(
+					ovSrc.left, ovSrc.top, //ov pos
+					ovSrc.width(), ovSrc.height(), //ov dim
+					targetWidth, targetHeight, //dst dim
+					gdalDataType,
+					buffer.slice());
+		}
+		
+		final ByteBuffer enclosing = ByteBuffer.allocateDirect(readWidth * readHeight * dataTypeSize);
+		enclosing.order(buffer.order());
+		
+		final int success = ovBand.ReadRaster_Direct(
+				ovSrc.left, ovSrc.top, //ov pos
+				ovSrc.width(), ovSrc.height(), //ov dim
+				readWidth, readHeight, //dst dim
+				gdalDataType,
+				enclosing);
+		
+		if(success != gdalconst.CE_None){
+			return success;
+		}
+		
+		//crop the requested part row by row
+		final ByteBuffer bandBuffer = buffer.slice();
+		final int rowLength = targetWidth * dataTypeSize;
+		for(int y = 0; y < targetHeight; y++){
+			final int rowStart = ((offsetY + y) * readWidth + offsetX) * dataTypeSize;
+			enclosing.limit(rowStart + rowLength);
+			enclosing.position(rowStart);
+			bandBuffer.put(enclosing);
+		}
+		
+		return success;
+	}
 
+	/**
+	 * checks if the window @param src in full resolution pixel coordinates
+	 * covers exactly the whole pixels @param ovSrc of the overview @param ovBand
+	 */
+	private static boolean isWholeOverviewWindow(final Rect src, final int fullWidth, final int fullHeight, final Rect ovSrc, final org.gdal.gdal.Band ovBand){
+		
+		final double scaleX = ovBand.getXSize() / (double) fullWidth;
+		final double scaleY = ovBand.getYSize() / (double) fullHeight;
+		
+		return Math.abs(src.left * scaleX - ovSrc.left) < 1e-9 && Math.abs(src.right * scaleX - ovSrc.right) < 1e-9 &&
+			   Math.abs(src.top * scaleY - ovSrc.top) < 1e-9 && Math.abs(src.bottom * scaleY - ovSrc.bottom) < 1e-9;
+	}
 
 	/**
-	 * returns the bands of this dataset
+	 * rescales the window @param src in full resolution pixel coordinates
+	 * to the pixel coordinates of the overview @param ovBand
+	 * @return the enclosing window of whole pixels within the overview, at least one pixel in size
+	 */
+	private static Rect toOverview(final Rect src, final int fullWidth, final int fullHeight, final org.gdal.gdal.Band ovBand){
+		
+		final int ovWidth  = ovBand.getXSize();
+		final int ovHeight = ovBand.getYSize();
+		final double scaleX = ovWidth  / (double) fullWidth;
+		final double scaleY = ovHeight / (double) fullHeight;
+		
+		final int left = Math.max(0, (int) Math.floor(src.left * scaleX));
+		final int top  = Math.max(0, (int) Math.floor(src.top  * scaleY));
+		final int right  = Math.min(ovWidth,  Math.max(left + 1, (int) Math.ceil(src.right  * scaleX)));
+		final int bottom = Math.min(ovHeight, Math.max(top  + 1, (int) Math.ceil(src.bottom * scaleY)));
+		
+		return new Rect(left, top, right, bottom);
+	}
+	
+	/**
+	 * checks, without reading any pixels, if a read of the window @param src 
+	 * (in full resolution pixel coordinates) resampled to @param targetWidth x @param targetHeight
+	 * would only contain nodata
+	 * 
+	 * this is the case if 
+	 * 1.the window lies entirely outside of this dataset
+	 * 2.all blocks of all bands touched by the window, either in full resolution or in the overview
+	 *   a read of this size would use, were read before and only contained the nodata value
+	 * 
+	 * @return true if the window is known to be empty, false if it may contain data
+	 */
+	public boolean isEmpty(final Rect src, final int targetWidth, final int targetHeight){
+		
+		final Rect dim = getDimension();
+		
+		if(src.right <= dim.left || src.left >= dim.right || src.bottom <= dim.top || src.top >= dim.bottom){
+			return true;
+		}
+		
+		final Rect window = new Rect(
+				Math.max(src.left, dim.left),
+				Math.max(src.top, dim.top),
+				Math.min(src.right, dim.right),
+				Math.min(src.bottom, dim.bottom));
+		
+		if(mBlockCache.getEmptyBlockCount() == 0){
+			return false;
+		}
+		
+		//the target size of the part of the window which is covered by this dataset
+		final int coveredWidth  = Math.max(1, (int) Math.round(targetWidth  * window.width()  / (double) src.width()));
+		final int coveredHeight = Math.max(1, (int) Math.round(targetHeight * window.height() / (double) src.height()));
+		
+		final Dataset handle = mPool.acquire();
+		
+		if(handle == null){
+			return false;
+		}
+		
+		try{
+			for(int i = 1; i <= handle.getRasterCount(); i++){
+				
+				final org.gdal.gdal.Band band = handle.GetRasterBand(i);
+				
+				if(mBlockCache.isEmpty(band, i, -1, window.left, window.top, window.width(), window.height())){
+					continue;
+				}
+				
+				final int overview = GDALBand.getBestOverview(band, window.width(), window.height(), coveredWidth, coveredHeight);
+				if(overview < 0){
+					return false;
+				}
+				final org.gdal.gdal.Band ovBand = band.GetOverview(overview);
+				if(ovBand == null){
+					return false;
+				}
+				final Rect ovWindow = toOverview(window, dim.width(), dim.height(), ovBand);
+				
+				if(!mBlockCache.isEmpty(ovBand, i, overview, ovWindow.left, ovWindow.top, ovWindow.width(), ovWindow.height())){
+					return false;
+				}
+			}
+		}finally{
+			mPool.release(handle);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * reads the window @param src of the bands @param readBands of @param handle
+	 * without resampling from the block cache into @param buffer
+	 * 
+	 * @return CE_None if all bands were read successfully, 
+	 * CE_Failure if the block cache cannot be used for this read or an GDAL error code
+	 */
+	private int readBlocks(final Dataset handle, final int[] readBands, final Rect src, final int gdalDataType, final int dataTypeSize, final ByteBuffer buffer){
+		
+		final int bandSize = src.width() * src.height() * dataTypeSize;
+		
+		int success = gdalconst.CE_None;
+		
+		for(int i = 0; i < readBands.length; i++){
+			
+			final org.gdal.gdal.Band band = handle.GetRasterBand(readBands[i]);
+			
+			if(!isBlockCacheable(band, gdalDataType, dataTypeSize)){
+				success = gdalconst.CE_Failure;
+				break;
+			}
+			
+			buffer.position(i * bandSize);
+			
+			success = mBlockCache.read(band, readBands[i], -1, src.left, src.top, src.width(), src.height(), dataTypeSize, buffer);
+			
+			if(success != gdalconst.CE_None){
+				break;
+			}
+		}
+		buffer.position(0);
+		
+		return success;
+	}
+	
+	/**
+	 * blocks can only be copied if the cache is enabled,
+	 * they are stored in the data type which is requested
+	 * and they fit into the budget of the cache, larger blocks are read directly
+	 */
+	private boolean isBlockCacheable(final org.gdal.gdal.Band band, final int gdalDataType, final int dataTypeSize){
+		
+		return band.GetRasterDataType() == gdalDataType && mBlockCache.canCache(band, dataTypeSize);
+	}
+	
+	/**
+	 * returns the cache of decoded GDAL blocks used by the reads of this dataset
+	 * 
+	 * its byte budget can be changed using GDALBlockCache.setMaxBytes(), 0 disables it
+	 * @return the block cache
+	 */
+	public GDALBlockCache getBlockCache(){
+		
+		return mBlockCache;
+	}
+
+	/**
+	 * returns the statistics of the band at index @param band (starting at 0)
+	 * 
+	 * statistics are loaded from the sidecar next to the file of this dataset,
+	 * if they are not available there they are computed once and the sidecar is written
+	 * @return the statistics or null if they could not be computed
+	 */
+	public synchronized Statistics getStatistics(final int band){
+		
+		final int bandCount = getBands().size();
+		
+		if(band < 0 || band >= bandCount){
+			throw new IllegalArgumentException("invalid band index "+band);
+		}
+		
+		if(mStatistics == null){
+			if(mSource != null){
+				mStatistics = GDALStatistics.load(mSource, bandCount);
+			}
+			if(mStatistics == null){
+				mStatistics = new Statistics[bandCount];
+			}
+		}
+		
+		if(mStatistics[band] == null){
+			
+			final Dataset handle = mPool.acquire();
+			if(handle == null){
+				Log.e(GDALDataset.class.getSimpleName(), "no handle available to compute statistics of "+mSource);
+				return null;
+			}
+			try{
+				mStatistics[band] = GDALStatistics.compute(handle.GetRasterBand(band + 1), getBands().get(band).datatype());
+			}finally{
+				mPool.release(handle);
+			}
+			
+			if(mStatistics[band] != null && mSource != null){
+				GDALStatistics.save(mSource, mStatistics);
+			}
+		}
+		
+		return mStatistics[band];
+	}
+	
+	/**
+	 * returns the bands of this dataset, which are created once for all reading threads
 	 */
 	@Override
-	public List<Band> getBands(){
+	public synchronized List<Band> getBands(){
 		
 		if(mBands == null){
 			
@@ -142,7 +638,7 @@ public class GDALDataset implements RasterDataset{
 			
 			mBands = new ArrayList<Band>(nbands);
 			for (int i = 1; i <= nbands; i++) {
-				mBands.add(new GDALBand(dataset.GetRasterBand(i)));
+				mBands.add(new GDALBand(dataset.GetRasterBand(i), this));
 			}
 			
 		}
@@ -254,6 +750,128 @@ public class GDALDataset implements RasterDataset{
 		return c;
 	}
 	
+	/**
+	 * builds overviews (a pyramid of downsampled versions of this dataset)
+	 * in the background
+	 * 
+	 * the file is opened read-only for this operation, hence GDAL writes the overviews
+	 * into an external .ovr file next to the source file which stays untouched
+	 * 
+	 * the overviews are used by reads which are executed after the returned future completed
+	 * 
+	 * the operation can be cancelled by cancelling the returned future,
+	 * the overviews of a cancelled or failed build are deleted
+	 * 
+	 * @param decimationFactors the factors of the overviews to build, e.g. {2, 4, 8, 16}
+	 * @param method the resampling method to use
+	 * @param listener a listener to report the progress to, may be null
+	 * @return a future which results in true if the overviews were built, false otherwise
+	 */
+	public Future<Boolean> buildOverviews(final int[] decimationFactors, final ResampleMethod method, final ProgressListener listener){
+		
+		if(mSource == null){
+			throw new IllegalArgumentException("overviews can only be built for datasets which have a source file");
+		}
+		if(decimationFactors == null || decimationFactors.length == 0){
+			throw new IllegalArgumentException("no decimation factors provided");
+		}
+		
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		final Future<Boolean> future = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				
+				final Dataset readOnly = gdal.Open(mSource, gdalconst.GA_ReadOnly);
+				
+				if(readOnly == null){
+					Log.e(GDALDataset.class.getSimpleName(), "could not open "+mSource+" to build overviews : "+gdal.GetLastErrorMsg());
+					return false;
+				}
+				
+				final ProgressCallback callback = new ProgressCallback(){
+					@Override
+					public int run(double dfComplete, String pszMessage) {
+						
+						if(listener != null){
+							listener.onProgress((int) (dfComplete * 100));
+						}
+						//returning 0 lets GDAL abort the operation
+						return Thread.currentThread().isInterrupted() ? 0 : 1;
+					}
+				};
+				
+				boolean built = false;
+				try{
+					final long now = System.currentTimeMillis();
+					
+					final int success = readOnly.BuildOverviews(toGDALResampling(method), decimationFactors, callback);
+					
+					if(success != gdalconst.CE_None){
+						Log.e(GDALDataset.class.getSimpleName(), "error building overviews : "+gdal.GetLastErrorMsg());
+						return false;
+					}
+					
+					Log.d(GDALDataset.class.getSimpleName(), "building overviews took "+((System.currentTimeMillis() - now) / 1000.0f)+" s");
+					
+					built = true;
+					
+				}finally{
+					readOnly.delete();
+					
+					if(!built){
+						//a failed or aborted build leaves incomplete overviews which must not be used
+						final File ovr = new File(mSource + OVERVIEW_EXTENSION);
+						if(ovr.exists() && !ovr.delete()){
+							Log.e(GDALDataset.class.getSimpleName(), "could not delete incomplete overviews "+ovr.getAbsolutePath());
+						}
+					}
+					//let subsequent reads reopen the file to make use of the overviews
+					mPool.invalidate();
+					//overview indices may have changed
+					mBlockCache.clear();
+				}
+				
+				return true;
+			}
+		});
+		//the executor terminates after the task has completed
+		executor.shutdown();
+		
+		return future;
+	}
+	
+	/**
+	 * converts a ResampleMethod to the according resampling name
+	 * of GDALs overview building
+	 * @param method the method to convert
+	 * @return the GDAL name of the resampling method
+	 */
+	private static String toGDALResampling(final ResampleMethod method){
+		
+		if(method == null){
+			return "NEAREST";
+		}
+		
+		switch (method) {
+		case NEARESTNEIGHBOUR:
+			return "NEAREST";
+		case BILINEAR:
+			//GDAL has no bilinear overview resampling, averaging is closest
+			return "AVERAGE";
+		case BICUBIC:
+		case LANCZOS:
+			//GDAL 1.11 has no lanczos overview resampling, cubic is closest
+			return "CUBIC";
+		case AVERAGE:
+			return "AVERAGE";
+		case MODE:
+			return "MODE";
+		default:
+			return "NEAREST";
+		}
+	}
+	
     /**
      * closes this dataset and cleans up resources used by it
      */
@@ -265,6 +883,10 @@ public class GDALDataset implements RasterDataset{
 			((GDALBand)this.getBands().get(0)).clearColorMap();
 		}
 		
+		mPool.close();
+		
+		mBlockCache.clear();
+		
 		if (dataset != null) {
 			dataset.delete();
 			dataset = null;
@@ -273,6 +895,8 @@ public class GDALDataset implements RasterDataset{
 		mBounds = null;
 		mCRS = null;
 		mBands = null;
+		mMetadata = null;
+		mStatistics = null;
 		
 	}
 	
@@ -368,7 +992,12 @@ public class GDALDataset implements RasterDataset{
 	 */
 	public Hashtable<?, ?> getMetadata(){
 		
-		return dataset != null ? dataset.GetMetadata_Dict() : null;
+		if(mMetadata == null && dataset != null){
+			
+			mMetadata = dataset.GetMetadata_Dict();
+		}
+		
+		return mMetadata;
 				
 	}
 }
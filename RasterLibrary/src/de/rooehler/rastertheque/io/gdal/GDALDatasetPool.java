@@ -0,0 +1,190 @@
+package de.rooehler.rastertheque.io.gdal;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+import org.gdal.gdal.Dataset;
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+import android.util.Log;
+
+/**
+ * A GDALDatasetPool manages a bounded number of org.gdal.gdal.Dataset handles
+ * which are opened on the same source file
+ *
+ * GDAL handles are not thread-safe, hence every concurrent read
+ * borrows its own handle using acquire() and returns it using release()
+ *
+ * handles are opened lazily, if all handles are in use and the maximum
+ * number of handles is reached, acquire() blocks until a handle is released
+ *
+ * datasets which do not have a source file (e.g. in-memory datasets)
+ * cannot be reopened, for those the pool contains only the single dataset
+ *
+ * @author Robert Oehler
+ *
+ */
+public class GDALDatasetPool {
+
+	private static final String TAG = GDALDatasetPool.class.getSimpleName();
+
+	private final String mSource;
+
+	private final int mMaxHandles;
+
+	private final ArrayDeque<Dataset> mIdle;
+
+	private final Dataset mShared;
+
+	private final IdentityHashMap<Dataset, Integer> mGenerations;
+
+	private int mOpened;
+
+	private int mGeneration;
+
+	private boolean mClosed;
+
+	/**
+	 * creates a pool for the file @param pSource
+	 * @param pSource the path to the file the handles are opened on
+	 * @param pMaxHandles the maximum number of handles which are opened at the same time
+	 */
+	public GDALDatasetPool(final String pSource, final int pMaxHandles){
+		this(pSource, pMaxHandles, null);
+	}
+
+	/**
+	 * creates a pool which only contains @param dataset
+	 * which is used for datasets which cannot be reopened
+	 *
+	 * the dataset is not deleted when the pool is closed
+	 * @param dataset the dataset to share
+	 */
+	public GDALDatasetPool(final Dataset dataset){
+		this(null, 1, dataset);
+	}
+
+	private GDALDatasetPool(final String pSource, final int pMaxHandles, final Dataset pShared){
+
+		if(pMaxHandles < 1){
+			throw new IllegalArgumentException("a pool needs at least one handle");
+		}
+
+		this.mSource = pSource;
+		this.mMaxHandles = pMaxHandles;
+		this.mShared = pShared;
+		this.mIdle = new ArrayDeque<>(pMaxHandles);
+		this.mGenerations = new IdentityHashMap<>(pMaxHandles);
+
+		if(pShared != null){
+			mIdle.add(pShared);
+			mOpened = 1;
+		}
+	}
+
+	/**
+	 * borrows a handle from this pool, which must be returned using release()
+	 *
+	 * if no handle is available and the maximum number of handles is open
+	 * this method blocks until a handle is released
+	 *
+	 * @return the handle or null if the file could not be opened or the pool is closed
+	 */
+	public synchronized Dataset acquire(){
+
+		while(!mClosed){
+
+			if(!mIdle.isEmpty()){
+				return mIdle.poll();
+			}
+
+			if(mOpened < mMaxHandles && mSource != null){
+
+				final Dataset dataset = gdal.Open(mSource, gdalconst.GA_ReadOnly);
+				if(dataset == null){
+					Log.e(TAG, "could not open handle on "+mSource+" : "+gdal.GetLastErrorMsg());
+					return null;
+				}
+				mOpened++;
+				mGenerations.put(dataset, mGeneration);
+				return dataset;
+			}
+
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * returns a handle which was borrowed using acquire() to this pool
+	 *
+	 * handles opened before the last invalidate() or which are returned
+	 * to a closed pool are deleted
+	 * @param dataset the handle to return
+	 */
+	public synchronized void release(final Dataset dataset){
+
+		if(dataset == null){
+			return;
+		}
+
+		final Integer generation = mGenerations.get(dataset);
+
+		if(dataset != mShared && (mClosed || generation == null || generation != mGeneration)){
+			mGenerations.remove(dataset);
+			dataset.delete();
+			mOpened--;
+		}else{
+			mIdle.push(dataset);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * invalidates the currently opened handles
+	 *
+	 * idle handles are deleted immediately, handles in use when they are released,
+	 * subsequent reads open new handles which e.g. take newly built overviews into account
+	 */
+	public synchronized void invalidate(){
+
+		if(mSource == null){
+			return;
+		}
+		mGeneration++;
+		deleteIdle();
+		notifyAll();
+	}
+
+	/**
+	 * closes this pool and deletes all idle handles
+	 *
+	 * handles which are in use are deleted when they are released
+	 */
+	public synchronized void close(){
+
+		mClosed = true;
+		deleteIdle();
+		notifyAll();
+	}
+
+	private void deleteIdle(){
+
+		while(!mIdle.isEmpty()){
+			final Dataset dataset = mIdle.poll();
+			if(dataset != mShared){
+				mGenerations.remove(dataset);
+				dataset.delete();
+				mOpened--;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+package de.rooehler.rastertheque.io.gdal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.gdal.gdal.gdal;
+import org.gdal.gdalconst.gdalconst;
+
+import android.util.Log;
+
+import de.rooehler.rastertheque.core.DataType;
+import de.rooehler.rastertheque.core.Statistics;
+
+/**
+ * computes the Statistics of GDAL bands and persists them
+ * in a sidecar file next to the source file of a dataset
+ *
+ * the statistics are computed approximately by GDAL, which uses
+ * overviews or a subsample of the band if available,
+ * hence they are cheap to compute even for large files
+ *
+ * a sidecar which is older than its source is not used
+ *
+ * @author Robert Oehler
+ *
+ */
+public class GDALStatistics {
+
+	private static final String TAG = GDALStatistics.class.getSimpleName();
+
+	/**
+	 * the extension which is appended to the source file to name the sidecar
+	 */
+	public static final String SIDECAR_EXTENSION = ".stats";
+
+	/**
+	 * the amount of buckets of computed histograms
+	 */
+	public static final int HISTOGRAM_BUCKETS = 256;
+
+	/**
+	 * computes the statistics of @param band containing values of @param dataType
+	 * @return the statistics or null if GDAL could not compute them
+	 */
+	public static Statistics compute(final org.gdal.gdal.Band band, final DataType dataType){
+
+		final double[] min = new double[1];
+		final double[] max = new double[1];
+		final double[] mean = new double[1];
+		final double[] stddev = new double[1];
+
+		if(band.ComputeStatistics(true, min, max, mean, stddev) != gdalconst.CE_None){
+			Log.e(TAG, "error computing statistics : "+gdal.GetLastErrorMsg());
+			return null;
+		}
+
+		//buckets of integer values are centered on the values
+		final boolean integer = dataType != DataType.FLOAT && dataType != DataType.DOUBLE;
+		final double histogramMin = integer ? min[0] - 0.5 : min[0];
+		final double histogramMax = integer ? max[0] + 0.5 : max[0];
+
+		int[] histogram = new int[HISTOGRAM_BUCKETS];
+		if(band.GetHistogram(histogramMin, histogramMax, histogram, true, true) != gdalconst.CE_None){
+			Log.e(TAG, "error computing histogram : "+gdal.GetLastErrorMsg());
+			histogram = null;
+		}
+
+		return new Statistics(min[0], max[0], mean[0], stddev[0], histogramMin, histogramMax, histogram);
+	}
+
+	/**
+	 * @return the sidecar file of the source file @param source
+	 */
+	public static File getSidecar(final String source){
+
+		return new File(source + SIDECAR_EXTENSION);
+	}
+
+	/**
+	 * loads the statistics of the @param bandCount bands of the file @param source from its sidecar
+	 * @return the statistics, entries of bands which are not contained are null,
+	 * or null if there is no up-to-date sidecar
+	 */
+	public static Statistics[] load(final String source, final int bandCount){
+
+		final File sidecar = getSidecar(source);
+
+		if(!sidecar.exists() || sidecar.lastModified() < new File(source).lastModified()){
+			return null;
+		}
+
+		final Properties properties = new Properties();
+		InputStream is = null;
+		try {
+			is = new FileInputStream(sidecar);
+			properties.load(is);
+		} catch (IOException e) {
+			Log.e(TAG, "error reading "+sidecar.getAbsolutePath(), e);
+			return null;
+		} finally {
+			close(is);
+		}
+
+		final Statistics[] statistics = new Statistics[bandCount];
+
+		for(int i = 0; i < bandCount; i++){
+
+			final String prefix = "band." + (i + 1) + ".";
+
+			if(!properties.containsKey(prefix + "min")){
+				continue;
+			}
+			try{
+				int[] histogram = null;
+				final String buckets = properties.getProperty(prefix + "histogram");
+				if(buckets != null && buckets.length() > 0){
+					final String[] counts = buckets.split(",");
+					histogram = new int[counts.length];
+					for(int j = 0; j < counts.length; j++){
+						histogram[j] = Integer.parseInt(counts[j]);
+					}
+				}
+				statistics[i] = new Statistics(
+						Double.parseDouble(properties.getProperty(prefix + "min")),
+						Double.parseDouble(properties.getProperty(prefix + "max")),
+						Double.parseDouble(properties.getProperty(prefix + "mean")),
+						Double.parseDouble(properties.getProperty(prefix + "stddev")),
+						Double.parseDouble(properties.getProperty(prefix + "histogram.min")),
+						Double.parseDouble(properties.getProperty(prefix + "histogram.max")),
+						histogram);
+			}catch(RuntimeException e){
+				Log.e(TAG, "invalid statistics of band "+(i + 1)+" in "+sidecar.getAbsolutePath());
+			}
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * saves the @param statistics of the bands of the file @param source to its sidecar
+	 * @return true if the sidecar was written
+	 */
+	public static boolean save(final String source, final Statistics[] statistics){
+
+		final Properties properties = new Properties();
+
+		for(int i = 0; i < statistics.length; i++){
+
+			final Statistics s = statistics[i];
+			if(s == null){
+				continue;
+			}
+			final String prefix = "band." + (i + 1) + ".";
+
+			properties.setProperty(prefix + "min", Double.toString(s.getMin()));
+			properties.setProperty(prefix + "max", Double.toString(s.getMax()));
+			properties.setProperty(prefix + "mean", Double.toString(s.getMean()));
+			properties.setProperty(prefix + "stddev", Double.toString(s.getStdDev()));
+			properties.setProperty(prefix + "histogram.min", Double.toString(s.getHistogramMin()));
+			properties.setProperty(prefix + "histogram.max", Double.toString(s.getHistogramMax()));
+
+			final int[] histogram = s.getHistogram();
+			if(histogram != null){
+				final StringBuilder sb = new StringBuilder();
+				for(int j = 0; j < histogram.length; j++){
+					if(j > 0){
+						sb.append(',');
+					}
+					sb.append(histogram[j]);
+				}
+				properties.setProperty(prefix + "histogram", sb.toString());
+			}
+		}
+
+		final File sidecar = getSidecar(source);
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(sidecar);
+			properties.store(os, "statistics of "+new File(source).getName());
+			return true;
+		} catch (IOException e) {
+			Log.e(TAG, "error writing "+sidecar.getAbsolutePath(), e);
+			return false;
+		} finally {
+			close(os);
+		}
+	}
+
+	private static void close(final Closeable closeable){
+
+		if(closeable != null){
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				Log.e(TAG, "error closing stream", e);
+			}
+		}
+	}
+}
@@ -26,6 +26,7 @@ import de.rooehler.rastertheque.core.NoData;
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.RasterDataset;
 import de.rooehler.rastertheque.core.RasterQuery;
+import de.rooehler.rastertheque.core.Statistics;
 import de.rooehler.rastertheque.processing.rendering.ColorMap;
 import de.rooehler.rastertheque.proj.Proj;
 /**
@@ -395,6 +396,11 @@ public class MBTilesDataset implements RasterDataset {
 			public Color color() {
 				return Color.OTHER;
 			}
+			
+			@Override
+			public Statistics statistics() {
+				return null;
+			}
 		};
 		bands.add(b);
 		
@@ -42,12 +42,16 @@ public class MBTilesResampler {
 
 		switch (method) {
 		case NEARESTNEIGHBOUR:
+		case MODE:
 			resampleNN(srcPixels, srcWidth, srcHeight, dstPixels, dstWidth, dstHeight);
 			break;
 		case BILINEAR:
+		case AVERAGE:
+			//the area methods are approximated for the pixels of tiles
 			resampleBilinear(srcPixels, srcWidth, srcHeight, dstPixels, dstWidth, dstHeight);
 			break;
 		case BICUBIC:
+		case LANCZOS:
 			resampleBicubic(srcPixels, srcWidth, srcHeight, dstPixels, dstWidth, dstHeight);
 			break;
 		}
@@ -13,7 +13,20 @@ public interface Interpolation {
 	{
 		NEARESTNEIGHBOUR,
 		BILINEAR,
-		BICUBIC;
+		BICUBIC,
+		/**
+		 * the Lanczos kernel with a radius of 3, for high quality
+		 */
+		LANCZOS,
+		/**
+		 * the mean of the source pixels a destination pixel covers, for downsampling
+		 */
+		AVERAGE,
+		/**
+		 * the most frequent of the source pixels a destination pixel covers,
+		 * for downsampling categorical rasters
+		 */
+		MODE;
 	}
 	
 
@@ -1,17 +1,26 @@
 package de.rooehler.rastertheque.processing;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.graphics.Rect;
 
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.util.CustomServiceLoader;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
 import de.rooehler.rastertheque.util.ProgressListener;
+import de.rooehler.rastertheque.util.WorkerPool;
 
 /**
  * Facade class for RasterOp operations
@@ -29,8 +38,18 @@ public class RasterOps {
 	public final static String AMPLITUDE_RESCALING = "AMPLITUDE_RESCALING";
 	public final static String REPROJECT = "REPROJECT";
 
-	private static Map<String,List<RasterOp>> operations;
+	/**
+	 * the minimum amount of rows of a strip of a parallel execution
+	 */
+	private final static int MIN_STRIP_ROWS = 8;
+	
+	/**
+	 * the amount of strips per thread of a parallel execution, more strips balance the load better
+	 */
+	private final static int STRIPS_PER_THREAD = 4;
 
+	private static Map<String,List<RasterOp>> operations;
+	
 	/**
 	 * Load available implementation of the RasterOp interface
 	 */
@@ -52,6 +71,11 @@ public class RasterOps {
 	 * if there are implementations found, the one with the highest priority is selected
 	 * and executed
 	 * 
+	 * if the hint Hints.KEY_PARALLELISM is set to more than one thread and the selected
+	 * operation is a SplittableRasterOp, the result is computed in strips of rows
+	 * which are executed in parallel on a shared pool of threads
+	 * the listener may then be called from the threads of this pool
+	 * 
 	 * @param raster the raster to manipulate
 	 * @param operation the operation to exexute
 	 * @param params a map of parameters - can be null depending on the operation
@@ -61,23 +85,11 @@ public class RasterOps {
 	public static void execute(Raster raster, String operation, HashMap<Key, Serializable> params, Hints hints, ProgressListener listener){
 
 
-		RasterOp selectedOp = null;
-
-		for(String key : operations.keySet()){
-
-			if(key.equals(operation)){
-				List<RasterOp> ops = operations.get(key);
-				for(RasterOp op : ops){
-					if(selectedOp == null || op.getPriority().ordinal() > selectedOp.getPriority().ordinal()){
-						selectedOp = op;
-					}
-				}
-				break;
-			}
-		}
+		RasterOp selectedOp = selectOp(operation, RasterOp.class);
+		
 		if(selectedOp != null){
 			
-			selectedOp.execute(raster, params, hints, listener);
+			execute(selectedOp, raster, params, hints, listener);
 
 		}else{
 
@@ -85,6 +97,279 @@ public class RasterOps {
 		}
 
 	}
+	
+	/**
+	 * executes the implementation @param op on @param raster according to @param params, with optional @param hints
+	 * 
+	 * if the hint Hints.KEY_PARALLELISM is set to more than one thread and @param op
+	 * is a SplittableRasterOp, the result is computed in strips of rows in parallel
+	 * 
+	 * @param listener  progress listener - can be null
+	 */
+	public static void execute(RasterOp op, Raster raster, HashMap<Key, Serializable> params, Hints hints, ProgressListener listener){
+		
+		final int parallelism = getParallelism(hints);
+		
+		SplittableRasterOp.Split split = null;
+		if(parallelism > 1 && op instanceof SplittableRasterOp){
+			split = ((SplittableRasterOp) op).split(raster, params, hints);
+		}
+		
+		if(split != null){
+			
+			executeParallel(split, parallelism, listener);
+			
+		}else{
+			
+			op.execute(raster, params, hints, listener);
+		}
+	}
+	/**
+	 * executes the chain of @param steps in their order on @param raster
+	 * using the optional @param hints for all steps
+	 * 
+	 * a step whose operation has an implementation of RowRasterOp, followed by a step
+	 * whose operation has an implementation of RenderingRasterOp (e.g. RESIZE followed by COLORMAP)
+	 * is fused into a single pass : the values of each row of the result of the first step
+	 * are rendered directly into the pixels of the result, no intermediate buffer is created,
+	 * as the rendering operations render the first band only, only this band is computed
+	 * 
+	 * fused steps are executed in parallel strips of rows like SplittableRasterOps
+	 * if the hint Hints.KEY_PARALLELISM is set to more than one thread
+	 * 
+	 * for fused steps these implementations are preferred over other implementations
+	 * of the same operation with higher priority
+	 * 
+	 * @param raster the raster to manipulate
+	 * @param steps the operations to execute and their parameters
+	 * @param hints a map of hints - can be null
+	 * @param listener  progress listener - can be null
+	 */
+	public static void execute(Raster raster, List<Step> steps, Hints hints, ProgressListener listener){
+		
+		for(int i = 0; i < steps.size(); i++){
+			
+			final Step step = steps.get(i);
+			
+			if(i + 1 < steps.size()){
+				
+				final Step next = steps.get(i + 1);
+				
+				final RowRasterOp rowOp = selectOp(step.getOperation(), RowRasterOp.class);
+				final RenderingRasterOp renderingOp = selectOp(next.getOperation(), RenderingRasterOp.class);
+				
+				if(rowOp != null && renderingOp != null){
+					
+					executeFused(raster, rowOp, step.getParams(), renderingOp, next.getParams(), hints, listener);
+					i++;
+					continue;
+				}
+			}
+			
+			execute(raster, step.getOperation(), step.getParams(), hints, listener);
+		}
+	}
+	
+	/**
+	 * executes @param rowOp and renders the values of the first band of its result using @param renderingOp in a single pass
+	 * 
+	 * the result contains the argb pixels of the first band only, as the rendering operations produce them
+	 * 
+	 * if the hint Hints.KEY_PARALLELISM is set to more than one thread, strips of rows are executed in parallel,
+	 * each strip computes its rows using its own Rows, the renderer is shared
+	 */
+	private static void executeFused(final Raster raster,
+			final RowRasterOp rowOp, final HashMap<Key, Serializable> rowParams,
+			final RenderingRasterOp renderingOp, final HashMap<Key, Serializable> renderParams,
+			final Hints hints, final ProgressListener listener){
+		
+		//the renderer is prepared on the source values, the raster is not modified before the pass
+		final RenderingRasterOp.Renderer renderer = renderingOp.renderer(raster, renderParams, hints);
+		final RowRasterOp.Rows first = rowOp.rows(raster, rowParams, hints);
+		
+		final int width  = first.getWidth();
+		final int height = first.getHeight();
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(width * height * 4);
+		
+		final SplittableRasterOp.Split split = new SplittableRasterOp.Split() {
+			
+			@Override
+			public int getRows() {
+				return height;
+			}
+			
+			@Override
+			public int getHalo() {
+				return 0;
+			}
+			
+			@Override
+			public void execute(int fromRow, int toRow, ProgressListener listener) {
+				
+				//the buffers of Rows must only be used by one thread
+				final RowRasterOp.Rows rows = fromRow == 0 ? first : rowOp.rows(raster, rowParams, hints);
+				
+				final IntBuffer pixelBuffer = buffer.duplicate().asIntBuffer();
+				pixelBuffer.position(fromRow * width);
+				
+				final double[] values = new double[width];
+				final int[] pixels = new int[width];
+				
+				final float onePercent = (toRow - fromRow) / 100f;
+				float current = onePercent;
+				int percent = 1;
+				
+				for(int y = fromRow; y < toRow; y++){
+					
+					rows.getRow(0, y, values);
+					
+					renderer.render(values, width, pixels);
+					
+					pixelBuffer.put(pixels, 0, width);
+					
+					//progress
+					if(y - fromRow > current){
+						if(listener != null){
+							listener.onProgress(percent);
+						}
+						current += onePercent;
+						percent++;
+					}
+				}
+			}
+			
+			@Override
+			public void finish() {
+				
+				raster.setDimension(new Rect(0, 0, width, height));
+				
+				raster.setData(buffer);
+			}
+		};
+		
+		final int parallelism = getParallelism(hints);
+		
+		if(parallelism > 1){
+			
+			executeParallel(split, parallelism, listener);
+			
+		}else{
+			
+			split.execute(0, height, listener);
+			
+			split.finish();
+		}
+	}
+	
+	/**
+	 * @return the amount of threads the hint Hints.KEY_PARALLELISM of @param hints allows, 1 if it is not set
+	 */
+	private static int getParallelism(final Hints hints){
+		
+		if(hints != null && hints.containsKey(Hints.KEY_PARALLELISM)){
+			return (Integer) hints.get(Hints.KEY_PARALLELISM);
+		}
+		return 1;
+	}
+	
+	/**
+	 * selects the implementation of @param operation with the highest priority
+	 * among the implementations which are of type @param type
+	 * @return the selected implementation or null if none is available
+	 */
+	private static <T> T selectOp(final String operation, final Class<T> type){
+		
+		final List<RasterOp> ops = operations.get(operation);
+		
+		if(ops == null){
+			return null;
+		}
+		
+		RasterOp selectedOp = null;
+		
+		for(RasterOp op : ops){
+			if(type.isInstance(op) && (selectedOp == null || op.getPriority().ordinal() > selectedOp.getPriority().ordinal())){
+				selectedOp = op;
+			}
+		}
+		
+		return type.cast(selectedOp);
+	}
+	
+	/**
+	 * executes the prepared @param split in strips of rows using up to @param parallelism threads
+	 * 
+	 * the calling thread computes strips itself, hence the execution proceeds
+	 * even if all threads of the pool are busy
+	 * 
+	 * @param split the prepared execution
+	 * @param parallelism the maximum amount of threads to use
+	 * @param listener progress listener - can be null
+	 */
+	private static void executeParallel(final SplittableRasterOp.Split split, final int parallelism, final ProgressListener listener){
+		
+		final int rows = split.getRows();
+		final int minRows = Math.max(MIN_STRIP_ROWS, 4 * split.getHalo());
+		final int strips = Math.max(1, Math.min(rows / minRows, parallelism * STRIPS_PER_THREAD));
+		
+		final AtomicInteger nextStrip = new AtomicInteger();
+		final AtomicInteger finishedStrips = new AtomicInteger();
+		final AtomicReference<RuntimeException> error = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(strips);
+		
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				
+				int strip;
+				while((strip = nextStrip.getAndIncrement()) < strips){
+					try{
+						if(error.get() == null){
+							split.execute((int) ((long) rows * strip / strips), (int) ((long) rows * (strip + 1) / strips), null);
+						}
+					}catch(RuntimeException e){
+						error.compareAndSet(null, e);
+					}finally{
+						final int finished = finishedStrips.incrementAndGet();
+						if(listener != null && finished < strips){
+							listener.onProgress(finished * 100 / strips);
+						}
+						done.countDown();
+					}
+				}
+			}
+		};
+		
+		final int workers = Math.min(strips, parallelism) - 1;
+		if(workers > 0){
+			final ExecutorService pool = WorkerPool.getExecutor();
+			for(int i = 0; i < workers; i++){
+				pool.execute(worker);
+			}
+		}
+		worker.run();
+		
+		//strips taken by the pool may still be running
+		boolean interrupted = false;
+		while(done.getCount() > 0){
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+		
+		if(error.get() != null){
+			throw error.get();
+		}
+		
+		split.finish();
+	}
+	
 	/**
 	 * retrieves a Map<OperationName,List<RasterOp>> of the available RasterOps
 	 * 
@@ -117,4 +402,35 @@ public class RasterOps {
 		return ops;
 	}
 
+	/**
+	 * A Step of a chain of operations, the name of the operation and its parameters
+	 * 
+	 * @author Robert Oehler
+	 *
+	 */
+	public static class Step {
+		
+		private final String mOperation;
+		
+		private final HashMap<Key, Serializable> mParams;
+		
+		/**
+		 * @param pOperation the name of the operation to execute
+		 * @param pParams a map of parameters - can be null depending on the operation
+		 */
+		public Step(final String pOperation, final HashMap<Key, Serializable> pParams){
+			
+			this.mOperation = pOperation;
+			this.mParams = pParams;
+		}
+		
+		public String getOperation() {
+			return mOperation;
+		}
+		
+		public HashMap<Key, Serializable> getParams() {
+			return mParams;
+		}
+	}
+
 }
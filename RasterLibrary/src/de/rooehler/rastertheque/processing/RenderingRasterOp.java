@@ -0,0 +1,52 @@
+package de.rooehler.rastertheque.processing;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.util.Hints;
+import de.rooehler.rastertheque.util.Hints.Key;
+
+/**
+ * A RenderingRasterOp is a RasterOp which renders the values
+ * of the first band of a raster to argb pixels value by value,
+ * independently of the neighbouring values
+ *
+ * the other bands are not rendered, the result is a raster of one band
+ * whose buffer contains the argb pixels as ints in the default (big-endian) byte order
+ *
+ * this allows RasterOps to fuse it with a preceding RowRasterOp
+ * so that the values flow directly into the pixels of the result
+ *
+ * @author Robert Oehler
+ *
+ */
+public interface RenderingRasterOp extends RasterOp {
+
+	/**
+	 * prepares the rendering of the values of @param raster
+	 * according to the @param params using the optional @param hints
+	 *
+	 * the raster is not modified
+	 * @return the renderer for the values of this raster
+	 */
+	Renderer renderer(Raster raster, Map<Key,Serializable> params, Hints hints);
+
+	/**
+	 * A Renderer converts raster values to argb pixels
+	 *
+	 * a Renderer may be used by several threads at once
+	 *
+	 * @author Robert Oehler
+	 *
+	 */
+	interface Renderer {
+
+		/**
+		 * renders the first @param count @param values into @param pixels,
+		 * the values may be modified meanwhile
+		 */
+		void render(double[] values, int count, int[] pixels);
+	}
+
+}
@@ -0,0 +1,58 @@
+package de.rooehler.rastertheque.processing;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.util.Hints;
+import de.rooehler.rastertheque.util.Hints.Key;
+
+/**
+ * A RowRasterOp is a RasterOp which can provide the values
+ * of its result row by row, without writing them to a buffer
+ *
+ * this allows RasterOps to fuse it with a subsequent RenderingRasterOp,
+ * which then only requests the rows of the first band
+ *
+ * @author Robert Oehler
+ *
+ */
+public interface RowRasterOp extends RasterOp {
+
+	/**
+	 * prepares the computation of the result of this operation on @param raster
+	 * according to the @param params using the optional @param hints
+	 *
+	 * the raster is not modified
+	 * @return the rows of the result
+	 */
+	Rows rows(Raster raster, Map<Key,Serializable> params, Hints hints);
+
+	/**
+	 * The Rows of the result of a RowRasterOp
+	 *
+	 * @author Robert Oehler
+	 *
+	 */
+	interface Rows {
+
+		/**
+		 * @return the width of the result
+		 */
+		int getWidth();
+
+		/**
+		 * @return the height of the result
+		 */
+		int getHeight();
+
+		/**
+		 * computes the row @param y of the band @param band of the result into @param values
+		 *
+		 * rows are most efficiently requested band by band in ascending order,
+		 * the buffers of Rows are reused, hence they must only be used by one thread
+		 */
+		void getRow(int band, int y, double[] values);
+	}
+
+}
@@ -0,0 +1,67 @@
+package de.rooehler.rastertheque.processing;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.util.Hints;
+import de.rooehler.rastertheque.util.Hints.Key;
+import de.rooehler.rastertheque.util.ProgressListener;
+
+/**
+ * A SplittableRasterOp is a RasterOp whose result rows
+ * can be computed independently of each other
+ *
+ * RasterOps uses this to execute the operation in parallel
+ * on strips of rows if the hint Hints.KEY_PARALLELISM is set
+ *
+ * @author Robert Oehler
+ *
+ */
+public interface SplittableRasterOp extends RasterOp {
+
+	/**
+	 * prepares the execution of this operation on @param raster
+	 * according to the @param params using the optional @param hints
+	 *
+	 * @return the prepared execution or null if it cannot be prepared
+	 */
+	Split split(Raster raster, Map<Key,Serializable> params, Hints hints);
+
+	/**
+	 * A Split is a single prepared execution of a SplittableRasterOp
+	 *
+	 * @author Robert Oehler
+	 *
+	 */
+	interface Split {
+
+		/**
+		 * @return the amount of rows of the result
+		 */
+		int getRows();
+
+		/**
+		 * the amount of source rows above and below a strip which are read
+		 * by the kernel of the operation in addition to the rows of the strip
+		 * e.g. 2 for bicubic interpolation
+		 *
+		 * @return the halo of a strip in rows
+		 */
+		int getHalo();
+
+		/**
+		 * computes the rows of the result from @param fromRow (inclusive) to @param toRow (exclusive)
+		 *
+		 * this method is called concurrently for disjoint strips
+		 * @param listener reports the progress within the strip - can be null
+		 */
+		void execute(int fromRow, int toRow, ProgressListener listener);
+
+		/**
+		 * sets the result as the data of the raster after all rows were computed
+		 */
+		void finish();
+	}
+
+}
@@ -4,7 +4,10 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.rooehler.rastertheque.core.Band;
+import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.core.Statistics;
 import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.processing.RasterOps;
 import de.rooehler.rastertheque.util.Hints;
@@ -30,6 +33,59 @@ public abstract class AmplitudeRescaler implements RasterOp{
 		
 	};
 	
+	/**
+	 * returns the range {min, max} to rescale the values of @param raster to
+	 * 
+	 * this is the range provided as parameter or otherwise the range of the statistics
+	 * of the first band, hence all tiles of a dataset are rescaled identically
+	 * 
+	 * the range is in the domain of the actual values of the band, see toValueDomain()
+	 * 
+	 * @return the range or null if it has to be determined from the values of the raster
+	 */
+	protected double[] getRange(final Raster raster, final Map<Key, Serializable> params){
+		
+		if(params != null && params.containsKey(KEY_MINMAX)){
+			return (double[]) params.get(KEY_MINMAX);
+		}
+		
+		final Statistics statistics = raster.getBands().get(0).statistics();
+		
+		if(statistics != null && statistics.getMax() > statistics.getMin()){
+			return new double[]{ statistics.getMin(), statistics.getMax() };
+		}
+		return null;
+	}
+	
+	/**
+	 * converts the first @param count @param values, which were read from a raster of @param type,
+	 * in place into the domain of the actual values of the band, in which also its statistics are
+	 * 
+	 * a raster reads a BYTE signed and a CHAR, which holds signed 16 bit values, unsigned,
+	 * hence their values are wrapped around, unsigned bytes become 0..255 and CHARs become signed
+	 */
+	public static void toValueDomain(final double[] values, final int count, final DataType type){
+		
+		switch(type){
+		case BYTE:
+			for(int i = 0; i < count; i++){
+				if(values[i] < 0){
+					values[i] += 256;
+				}
+			}
+			break;
+		case CHAR:
+			for(int i = 0; i < count; i++){
+				if(values[i] > Short.MAX_VALUE){
+					values[i] -= 65536;
+				}
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
 	//implemented by subclasses
 	@Override
 	public abstract Priority getPriority();
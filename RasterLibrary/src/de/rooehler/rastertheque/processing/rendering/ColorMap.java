@@ -2,9 +2,10 @@ package de.rooehler.rastertheque.processing.rendering;
 
 import java.util.ArrayList;
 
-import android.util.Log;
 import android.util.Pair;
 
+import de.rooehler.rastertheque.core.DataType;
+
 
 /**
  * class which defines ranges of values and maps colors to them
@@ -16,6 +17,8 @@ import android.util.Pair;
  * which will result e.g. for a range {-100,100} 
  * with minValue - 100 in the index -100 - -100 --> 0
  * 
+ * for rendering a colormap is compiled into a primitive ColorMapLUT
+ * 
  * @author Robert Oehler
  *
  */
@@ -27,6 +30,14 @@ public class ColorMap {
 	private double mMaxValue;
 	private boolean mapsColorsToValues;
 	
+	/**
+	 * the maximum size of a dense lookup table created from intervals
+	 */
+	public static final int MAX_DENSE_SIZE = 1 << 16;
+	
+	private ColorMapLUT mLUT;
+	private ColorMapLUT mIntegerLUT;
+	
 	public ColorMap(ArrayList<ColorMapEntry> pEntries,final double pMin, final double pMax, final Pair<Double,Integer> pNoData, boolean hasInterpolatedColorMap){
 		
 		this.mEntries = pEntries;
@@ -45,72 +56,91 @@ public class ColorMap {
 		return mEntries;
 	}
 
-	public void setEntries(ArrayList<ColorMapEntry> pEntries) {
+	public synchronized void setEntries(ArrayList<ColorMapEntry> pEntries) {
 		
 		this.mEntries = pEntries;
+		this.mLUT = null;
+		this.mIntegerLUT = null;
 	}
 	
-	public int getColorAccordingToValue(Double val){
+	/**
+	 * returns the color of the value @param val
+	 * 
+	 * for many values use the LUT returned by compile()
+	 */
+	public int getColorAccordingToValue(double val){
+		
+		return compile(DataType.DOUBLE).lookup(val);
+	}
+	
+	/**
+	 * compiles this colormap into a lookup table for values of type @param dataType
+	 * 
+	 * colormaps which map colors to values become a dense table indexed by value,
+	 * other colormaps become a table of breakpoints, for integer types with a
+	 * range of at most MAX_DENSE_SIZE values the breakpoints are expanded to a dense table
+	 * 
+	 * the table is cached until the entries of this colormap change
+	 * @param dataType the data type of the values to look up
+	 * @return the lookup table
+	 */
+	public synchronized ColorMapLUT compile(final DataType dataType){
+		
+		final boolean integer = dataType != DataType.FLOAT && dataType != DataType.DOUBLE;
+		
+		ColorMapLUT lut = integer ? mIntegerLUT : mLUT;
+		
+		if(lut == null){
+			
+			lut = createLUT(integer);
+			
+			if(integer){
+				mIntegerLUT = lut;
+			}else{
+				mLUT = lut;
+			}
+		}
+		return lut;
+	}
+	
+	private ColorMapLUT createLUT(final boolean integer){
+		
+		final int size = mEntries.size();
+		
+		if(size == 0){
+			throw new IllegalArgumentException("colormap does not contain entries");
+		}
 		
-		if(mNoData != null && val.equals(mNoData.first)){
-			return mNoData.second;
+		final int[] colors = new int[size];
+		final double[] breakpoints = new double[size];
+		for(int i = 0; i < size; i++){
+			colors[i] = mEntries.get(i).getColor();
+			breakpoints[i] = mEntries.get(i).getValue();
 		}
 		
 		if(mapsColorsToValues){
-			//there should exist a color value according to the raster value
-			int index = (int) (val - mMinValue);
-
-			if(index < 0){
-				if(mNoData != null){				
-					return mNoData.second;
-				}else{
-					return mEntries.get(0).getColor();
-				}
-			}
-			try{
-				return  mEntries.get(index).getColor();
-
-			}catch(IndexOutOfBoundsException e){
-				if(mNoData == null){
-					mNoData = new Pair<Double, Integer>(val, mEntries.get(0).getColor());
-				}else{				
-					Log.e("ColorMap", "IndexOutOfBoundsException for index "+index +", size : "+mEntries.size()+", noData "+ mNoData.first);
-				}
-				return mEntries.get(0).getColor();
-			}
-
-		}else{
-			//needs to search for the nearest color map entry
-
-			int min = 0;
-			int max = mEntries.size() - 1;
-
-			while(max >= min) {
-				int middle = (max + min) / 2;
-
-				if(middle <= 0){
-					return mEntries.get(middle).getColor();
-				}else if(middle >= mEntries.size() - 1){
-					return mEntries.get(mEntries.size() - 1).getColor();				            	   
-				}else{
-
-					if(mEntries.get(middle - 1).getValue() <= val && 
-							mEntries.get(middle ).getValue() >= val) {
-						return mEntries.get(middle - 1).getColor();
-					}else if(mEntries.get(middle).getValue() <= val && 
-							mEntries.get(middle + 1).getValue() >= val){
-						return mEntries.get(middle).getColor();
-					}else  if(mEntries.get(middle).getValue() <= val) {
-						min = middle + 1;
-					}else  if(mEntries.get(middle).getValue() >= val) {
-						max = middle - 1;
-					}
-				}
+			//there exists a color for each value starting at the min value
+			//values below use the nodata color, values above the first color
+			return new ColorMapLUT(colors, mMinValue, mNoData != null ? mNoData.second : colors[0], colors[0], mNoData);
+		}
+		
+		final ColorMapLUT intervals = new ColorMapLUT(colors, breakpoints, mNoData);
+		
+		final double lower = Math.floor(breakpoints[0]);
+		final double upper = Math.ceil(breakpoints[size - 1]);
+		
+		if(integer && upper - lower < MAX_DENSE_SIZE){
+			//expand the intervals for each integer value of the range
+			final int[] dense = new int[(int) (upper - lower) + 1];
+			for(int i = 0; i < dense.length; i++){
+				dense[i] = intervals.lookup(lower + i);
 			}
+			return new ColorMapLUT(dense, lower, colors[0], colors[size - 1], mNoData);
 		}
-		return mEntries.get(0).getColor();
-
+		
+		return intervals;
 	}
+	
 	public double getMaxValue() {
 		return mMaxValue;
 	}
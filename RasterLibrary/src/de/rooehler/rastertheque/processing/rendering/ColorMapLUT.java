@@ -0,0 +1,165 @@
+package de.rooehler.rastertheque.processing.rendering;
+
+import android.util.Pair;
+
+/**
+ * A ColorMapLUT is a ColorMap compiled into primitive arrays
+ *
+ * it either is a dense table which contains a color for each
+ * (integer) value starting at an offset, or a list of breakpoints
+ * which are binary searched for the interval a value lies in
+ *
+ * a LUT is immutable and can be used concurrently
+ *
+ * @author Robert Oehler
+ *
+ */
+public class ColorMapLUT {
+
+	private final int[] mColors;
+
+	private final double[] mBreakpoints;
+
+	private final double mOffset;
+
+	private final int mBelowColor;
+
+	private final int mAboveColor;
+
+	private final boolean mHasNoData;
+
+	private final double mNoDataValue;
+
+	private final int mNoDataColor;
+
+	/**
+	 * creates a dense table, the value @param pOffset maps to the first of @param pColors
+	 * @param pBelowColor the color for values below the table
+	 * @param pAboveColor the color for values above the table
+	 * @param pNoData the value and the color of nodata - can be null
+	 */
+	ColorMapLUT(final int[] pColors, final double pOffset, final int pBelowColor, final int pAboveColor, final Pair<Double,Integer> pNoData){
+
+		this(pColors, null, pOffset, pBelowColor, pAboveColor, pNoData);
+	}
+
+	/**
+	 * creates a table of breakpoints, a value lying in the interval
+	 * ( pBreakpoints[i], pBreakpoints[i + 1] ] maps to pColors[i]
+	 * values below the first breakpoint map to the first color, values above the last to the last
+	 * @param pNoData the value and the color of nodata - can be null
+	 */
+	ColorMapLUT(final int[] pColors, final double[] pBreakpoints, final Pair<Double,Integer> pNoData){
+
+		this(pColors, pBreakpoints, 0, pColors[0], pColors[pColors.length - 1], pNoData);
+	}
+
+	private ColorMapLUT(final int[] pColors, final double[] pBreakpoints, final double pOffset, final int pBelowColor, final int pAboveColor, final Pair<Double,Integer> pNoData){
+
+		this.mColors = pColors;
+		this.mBreakpoints = pBreakpoints;
+		this.mOffset = pOffset;
+		this.mBelowColor = pBelowColor;
+		this.mAboveColor = pAboveColor;
+		this.mHasNoData = pNoData != null;
+		this.mNoDataValue = pNoData != null ? pNoData.first : 0;
+		this.mNoDataColor = pNoData != null ? pNoData.second : 0;
+	}
+
+	/**
+	 * @return true if this LUT is a dense table
+	 */
+	public boolean isDense(){
+
+		return mBreakpoints == null;
+	}
+
+	/**
+	 * looks up the color of a single @param value
+	 * @return the color
+	 */
+	public int lookup(final double value){
+
+		if(mHasNoData && isNoData(value)){
+			return mNoDataColor;
+		}
+		if(mBreakpoints == null){
+			final int index = (int) (value - mOffset);
+			return index < 0 ? mBelowColor : index >= mColors.length ? mAboveColor : mColors[index];
+		}
+		return mColors[search(value)];
+	}
+
+	/**
+	 * looks up the colors of the first @param count @param values and writes them into @param pixels
+	 */
+	public void lookup(final double[] values, final int count, final int[] pixels){
+
+		final int[] colors = mColors;
+
+		if(mBreakpoints == null){
+
+			final double offset = mOffset;
+			final int length = colors.length;
+
+			for(int i = 0; i < count; i++){
+
+				final double value = values[i];
+
+				if(mHasNoData && isNoData(value)){
+					pixels[i] = mNoDataColor;
+					continue;
+				}
+
+				final int index = (int) (value - offset);
+
+				pixels[i] = index < 0 ? mBelowColor : index >= length ? mAboveColor : colors[index];
+			}
+		}else{
+
+			for(int i = 0; i < count; i++){
+
+				final double value = values[i];
+
+				if(mHasNoData && isNoData(value)){
+					pixels[i] = mNoDataColor;
+					continue;
+				}
+
+				pixels[i] = colors[search(value)];
+			}
+		}
+	}
+
+	/**
+	 * binary searches the index of the interval @param value lies in
+	 */
+	private int search(final double value){
+
+		final double[] breakpoints = mBreakpoints;
+
+		//the first breakpoint which is greater than or equal to the value
+		int low = 0;
+		int high = breakpoints.length;
+
+		while(low < high){
+			final int middle = (low + high) >>> 1;
+			if(breakpoints[middle] < value){
+				low = middle + 1;
+			}else{
+				high = middle;
+			}
+		}
+
+		if(low >= breakpoints.length){
+			return breakpoints.length - 1;
+		}
+		return Math.max(0, low - 1);
+	}
+
+	private boolean isNoData(final double value){
+
+		return value == mNoDataValue || (value != value && mNoDataValue != mNoDataValue);
+	}
+
+}
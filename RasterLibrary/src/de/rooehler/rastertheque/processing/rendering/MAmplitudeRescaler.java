@@ -1,26 +1,22 @@
 package de.rooehler.rastertheque.processing.rendering;
 
-import java.io.EOFException;
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.Map;
 
-import android.util.Log;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ByteBufferReaderUtil;
-import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.RenderingRasterOp;
+import de.rooehler.rastertheque.processing.SplittableRasterOp;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
 import de.rooehler.rastertheque.util.ProgressListener;
 /**
  *  Manual implementation of the amplitude rescaling operation
  *  
- *  if no min/max parameter is provided is determines them
+ *  if no min/max parameter is provided it uses the statistics of the band
+ *  and only if those are not available determines them from the raster
  *  
  *  and subsequently interpolates raster values as grey scale pixels
  *  
@@ -29,7 +25,7 @@ import de.rooehler.rastertheque.util.ProgressListener;
  * @author Robert Oehler
  *
  */
-public class MAmplitudeRescaler extends AmplitudeRescaler implements RasterOp, Serializable {
+public class MAmplitudeRescaler extends AmplitudeRescaler implements SplittableRasterOp, RenderingRasterOp, Serializable {
 
 
 	private static final long serialVersionUID = 2138351083682731966L;
@@ -46,43 +42,123 @@ public class MAmplitudeRescaler extends AmplitudeRescaler implements RasterOp, S
 	@Override
 	public void execute(Raster raster, Map<Key, Serializable> params, Hints hints, ProgressListener listener) {
 		
-		double[] minMax = null;
-		if(params != null){
-			if(params.containsKey(KEY_MINMAX)){
-				 minMax = (double[]) params.get(KEY_MINMAX);									
-			}
-		}
+		final Split split = split(raster, params, hints);
+		
+		split.execute(0, split.getRows(), listener);
+		
+		split.finish();
+	}
+	
+	/**
+	 * prepares the rescaling of @param raster, determining its range if it is not provided
+	 * 
+	 * the rows of the raster are rescaled independently of each other
+	 */
+	@Override
+	public Split split(final Raster raster, Map<Key, Serializable> params, Hints hints) {
+		
+		double[] minMax = getRange(raster, params);
 		
 		final int raster_width  = raster.getDimension().width();
 		final int raster_height = raster.getDimension().height();
+		final DataType dataType = raster.getBands().get(0).datatype();
 		
-		final int pixelAmount = raster_width * raster_height;
-		int[] pixels = new int[pixelAmount];
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
+		//the range needs all values, which are hence read only once
+		double[] allValues = null;
 		
 		if(minMax == null){
-			minMax = new double[2];
-			getMinMax(minMax, reader, pixelAmount, raster.getBands().get(0).datatype());
-			reader.init();
+			allValues = raster.getDoubles(0, null);
+			toValueDomain(allValues, raster_width * raster_height, dataType);
+			minMax = getMinMax(allValues, raster_width * raster_height);
 		}
 //    	Log.d(MAmplitudeRescaler.class.getSimpleName(), "rawdata min "+minMax[0] +" max "+minMax[1]);
 
-    	for (int i = 0; i < pixelAmount; i++) {
-        	
-        	double d = ByteBufferReaderUtil.getValue(reader, raster.getBands().get(0).datatype());
-
-    		pixels[i] = pixelValueForGrayScale(d, minMax[0], minMax[1]);
+		final double min = minMax[0];
+		final double max = minMax[1];
+		final double[] values = allValues;
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(raster_width * raster_height * 4);
+		
+		return new Split() {
+			
+			@Override
+			public int getRows() {
+				return raster_height;
+			}
+			
+			@Override
+			public int getHalo() {
+				return 0;
+			}
+			
+			@Override
+			public void execute(int fromRow, int toRow, ProgressListener listener) {
+				
+				final int pixelAmount = (toRow - fromRow) * raster_width;
+				int[] pixels = new int[pixelAmount];
+				
+				int offset = fromRow * raster_width;
+				double[] stripValues = values;
+				if(stripValues == null){
+					stripValues = raster.getDoubles(0, fromRow, toRow - fromRow, null);
+					toValueDomain(stripValues, pixelAmount, dataType);
+					offset = 0;
+				}
+				
+				for (int i = 0; i < pixelAmount; i++) {
+					
+					pixels[i] = pixelValueForGrayScale(stripValues[offset + i], min, max);
+					
+				}
+				
+				final ByteBuffer strip = buffer.duplicate();
+				strip.position(fromRow * raster_width * 4);
+				strip.asIntBuffer().put(pixels);
+			}
+			
+			@Override
+			public void finish() {
+				
+				raster.setData(buffer);
+			}
+		};
+	}
 
-        }
 
-    	ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4);
+	/**
+	 * prepares a renderer which maps values to grey scale pixels
+	 * according to the range provided as parameter or otherwise to the range of the values of @param raster
+	 */
+	@Override
+	public Renderer renderer(Raster raster, Map<Key, Serializable> params, Hints hints) {
+		
+		final DataType dataType = raster.getBands().get(0).datatype();
 		
-		buffer.asIntBuffer().put(pixels);
+		double[] minMax = getRange(raster, params);
+		if(minMax == null){
+			final double[] values = raster.getDoubles(0, null);
+			toValueDomain(values, raster.getPixelCount(), dataType);
+			minMax = getMinMax(values, raster.getPixelCount());
+		}
 		
-		raster.setData(buffer);
+		final double min = minMax[0];
+		final double max = minMax[1];
+		
+		return new Renderer() {
+			
+			@Override
+			public void render(double[] values, int count, int[] pixels) {
+				
+				toValueDomain(values, count, dataType);
+				
+				for (int i = 0; i < count; i++) {
+					
+					pixels[i] = pixelValueForGrayScale(values[i], min, max);
+				}
+			}
+		};
 	}
 
-
 	/**
 	 * returns a (grayscale color) int value according to the @param val inside the range of @param min and @param max  
 	 * @param pixel value to calculate a color for
@@ -93,98 +169,32 @@ public class MAmplitudeRescaler extends AmplitudeRescaler implements RasterOp, S
 	private int pixelValueForGrayScale(double val, double min, double max){
 
 		final double color = (val - min) / (max - min);
-		int grey = (int) (color * 256);
+		//values outside of the range, e.g. overshooting interpolations, are clamped
+		final int grey = Math.max(0, Math.min(255, (int) (color * 256)));
 		return 0xff000000 | ((((int) grey) << 16) & 0xff0000) | ((((int) grey) << 8) & 0xff00) | ((int) grey);
 
 	}
 	
 	/**
-	 * iterates over the pixelsize, determining min and max value of the data in 
-	 * the ByteBufferReader according to its datatype
-	 * @param result array in order {min, max}
-	 * @param reader the reader to read from 	
+	 * iterates over the first @param pixelSize values, determining their min and max value
+	 * @param values the values of the raster
 	 * @param pixelSize the amount of pixels to check
-	 * @param dataType the datatype according to which the data is read
+	 * @return array in order {min, max}
 	 */
-	private void getMinMax(double[] result, ByteBufferReader reader, int pixelSize, final DataType dataType){
-		double max =  Double.MIN_VALUE;
-		double min =  Double.MAX_VALUE;
+	private double[] getMinMax(final double[] values, final int pixelSize){
+		double max = - Double.MAX_VALUE;
+		double min =   Double.MAX_VALUE;
 
 		for (int i = 0; i < pixelSize; i++) {
-			try{
-				switch(dataType) {
-				case CHAR:
-					char _char = reader.readChar();
-					if(_char > max){
-						max = _char;
-					}
-					if(_char < min){
-						min = _char;
-					}
-					break;
-				case BYTE:
-					byte _byte = reader.readByte();
-					if(_byte > max){
-						max = _byte;
-					}
-					if(_byte < min){
-						min = _byte;
-					}
-					break;
-				case SHORT:
-					short _short = reader.readShort();
-					if(_short > max){
-						max = _short;
-					}
-					if(_short < min){
-						min = _short;
-					}
-					break;
-				case INT:
-					int _int = reader.readInt();
-					if(_int > max){
-						max = _int;
-					}
-					if(_int < min){
-						min = _int;
-					}
-					break;
-				case LONG:
-					long _long = reader.readLong();
-					if(_long > max){
-						max = _long;
-					}
-					if(_long < min){
-						min = _long;
-					}
-					break;
-				case FLOAT:
-					float _float = reader.readFloat();
-					if(_float > max){
-						max = _float;
-					}
-					if(_float < min){
-						min = _float;
-					}
-					break;
-				case DOUBLE:
-					double _double = reader.readDouble();
-					if(_double > max){
-						max = _double;
-					}
-					if(_double < min){
-						min = _double;
-					}
-					break;
-				}
-			}catch(EOFException e){
-				break;
-			}catch(IOException  e){
-				Log.e(MAmplitudeRescaler.class.getSimpleName(), "error reading from byteBufferedReader");
+			final double value = values[i];
+			if(value > max){
+				max = value;
+			}
+			if(value < min){
+				min = value;
 			}
 		}
-		result[0] = min;
-		result[1] = max;
+		return new double[]{min, max};
 	}
 	
 	@Override
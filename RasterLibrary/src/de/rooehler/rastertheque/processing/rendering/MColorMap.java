@@ -2,15 +2,13 @@ package de.rooehler.rastertheque.processing.rendering;
 
 import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.HashMap;
 import java.util.Map;
 
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ByteBufferReaderUtil;
-import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.RenderingRasterOp;
+import de.rooehler.rastertheque.processing.SplittableRasterOp;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
 import de.rooehler.rastertheque.util.ProgressListener;
@@ -24,7 +22,7 @@ import de.rooehler.rastertheque.util.ProgressListener;
  * @author Robert Oehler
  *
  */
-public class MColorMap implements RasterOp, Serializable{
+public class MColorMap implements SplittableRasterOp, RenderingRasterOp, Serializable{
 
 
 	private static final long serialVersionUID = 1184127428068286145L;
@@ -58,6 +56,73 @@ public class MColorMap implements RasterOp, Serializable{
 	@Override
 	public void execute(Raster raster, Map<Key, Serializable> params, Hints hints, ProgressListener listener) {
 		
+		final Split split = split(raster, params, hints);
+		
+		split.execute(0, split.getRows(), listener);
+		
+		split.finish();
+	}
+	
+	/**
+	 * prepares the symbolization of @param raster, the rows of the raster
+	 * are symbolized independently of each other
+	 */
+	@Override
+	public Split split(final Raster raster, Map<Key, Serializable> params, Hints hints) {
+		
+		final Renderer renderer = renderer(raster, params, hints);
+		
+		final int raster_width  = raster.getDimension().width();
+		final int raster_height = raster.getDimension().height();
+		
+		final ByteBuffer buffer = ByteBuffer.allocate(raster_width * raster_height * 4);
+		
+		return new Split() {
+			
+			@Override
+			public int getRows() {
+				return raster_height;
+			}
+			
+			@Override
+			public int getHalo() {
+				return 0;
+			}
+			
+			@Override
+			public void execute(int fromRow, int toRow, ProgressListener listener) {
+				
+				final int pixelAmount = (toRow - fromRow) * raster_width;
+				
+				int[] pixels = new int[pixelAmount];
+				
+				final double[] values = raster.getDoubles(0, fromRow, toRow - fromRow, null);
+				
+				renderer.render(values, pixelAmount, pixels);
+				
+				final ByteBuffer strip = buffer.duplicate();
+				strip.position(fromRow * raster_width * 4);
+				strip.asIntBuffer().put(pixels);
+			}
+			
+			@Override
+			public void finish() {
+				
+				raster.setData(buffer);
+			}
+		};
+	}
+	
+
+	/**
+	 * prepares a renderer which looks up the colors of values in the colormap
+	 * provided as parameter or otherwise in the colormap of the first band of @param raster
+	 * 
+	 * the colormap is compiled into a lookup table for the data type of the raster
+	 */
+	@Override
+	public Renderer renderer(Raster raster, Map<Key, Serializable> params, Hints hints) {
+		
 		ColorMap map = null;
 		
 		//if available, use colormap param
@@ -73,31 +138,18 @@ public class MColorMap implements RasterOp, Serializable{
 			throw new IllegalArgumentException("no colorMap available");
 		}		
 		
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
-		final int raster_width  = raster.getDimension().width();
-		final int raster_height = raster.getDimension().height();
-		
-		final int pixelAmount = raster_width * raster_height;
-		
-        int[] pixels = new int[pixelAmount];
-        
-        for (int i = 0; i < pixelAmount; i++) {
-
-        	double d = ByteBufferReaderUtil.getValue(reader, raster.getBands().get(0).datatype());
-
-    		pixels[i] = map.getColorAccordingToValue(d);
-
-        }
-
-        ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4);
-		
-		buffer.asIntBuffer().put(pixels);
-		
-		raster.setData(buffer);
+		final ColorMapLUT lut = map.compile(raster.getBands().get(0).datatype());
 		
+		return new Renderer() {
+			
+			@Override
+			public void render(double[] values, int count, int[] pixels) {
+				
+				lut.lookup(values, count, pixels);
+			}
+		};
 	}
 	
-
 	@Override
 	public String getOperationName() {
 		
@@ -17,7 +17,6 @@ import android.util.Log;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ByteBufferReaderUtil;
 import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
@@ -29,6 +28,7 @@ import de.rooehler.rastertheque.util.ProgressListener;
  * the rest of the operation is carried out manually
  * 
  * if min/max are provided as parameter to the operation
+ * or available from the statistics of the band
  * OpenCV is not used at all
  * 
  * Look out that there exists a bug in Android 5.0 which
@@ -49,12 +49,7 @@ public class OpenCVAmplitudeRescaler extends AmplitudeRescaler implements Raster
 	public void execute(Raster raster, Map<Key, Serializable> params,Hints hints, ProgressListener listener) {
 		
 		
-		double[] minMax = null;
-		if(params != null){
-			if(params.containsKey(KEY_MINMAX)){
-				 minMax = (double[]) params.get(KEY_MINMAX);									
-			}
-		}
+		double[] minMax = getRange(raster, params);
 		
 		final int raster_width  = raster.getDimension().width();
 		final int raster_height = raster.getDimension().height();
@@ -73,17 +68,15 @@ public class OpenCVAmplitudeRescaler extends AmplitudeRescaler implements Raster
 		}
 		
 		int[] pixels = new int[pixelAmount];
- 
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
 
-//    	Log.d(OpenCVAmplitudeRescaler.class.getSimpleName(), "rawdata min "+minMax[0] +" max "+minMax[1]);
+		final double[] values = raster.getDoubles(0, null);
+		toValueDomain(values, pixelAmount, raster.getBands().get(0).datatype());
 
+//    	Log.d(OpenCVAmplitudeRescaler.class.getSimpleName(), "rawdata min "+minMax[0] +" max "+minMax[1]);
 
     	for (int i = 0; i < pixelAmount; i++) {
-        	
-        	double d = ByteBufferReaderUtil.getValue(reader, raster.getBands().get(0).datatype());
 
-    		pixels[i] = pixelValueForGrayScale(d, minMax[0], minMax[1]);
+    		pixels[i] = pixelValueForGrayScale(values[i], minMax[0], minMax[1]);
 
         }
 
@@ -142,7 +135,8 @@ public class OpenCVAmplitudeRescaler extends AmplitudeRescaler implements Raster
 		switch(type){
 		case BYTE:
 			
-			Mat byteMat = new Mat(height, width, CvType.CV_8S);
+			//GDAL bytes are unsigned
+			Mat byteMat = new Mat(height, width, CvType.CV_8U);
 			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
 				
 				byteMat.put(0, 0, Arrays.copyOfRange(buffer.array(),0, width * height));
@@ -155,7 +149,8 @@ public class OpenCVAmplitudeRescaler extends AmplitudeRescaler implements Raster
 			
 		case CHAR:
 				
-			Mat charMat = new Mat(height, width, CvType.CV_16UC1);
+			//a CHAR holds the signed 16 bit values of GDAL
+			Mat charMat = new Mat(height, width, CvType.CV_16SC1);
 			
 			final char[] chars = new char[size];
 			
@@ -179,7 +174,7 @@ public class OpenCVAmplitudeRescaler extends AmplitudeRescaler implements Raster
 		    	for(int j = 0; j < width; j++){
 		    		
 		    		final char _char = chars[i * width + j];
-		    		charMat.put(i,j,_char);
+		    		charMat.put(i,j,(short) _char);
 		    	}
 		    }
 			
@@ -0,0 +1,58 @@
+package de.rooehler.rastertheque.processing.rendering;
+
+import android.graphics.Rect;
+
+/**
+ * A PyramidTileGrid maps tiles onto the pixels of a dataset like an image pyramid,
+ * the dataset is not georeferenced but its upper left pixel is the origin of tile 0,0
+ *
+ * at the internal zoom a tile pixel is a dataset pixel, each zoom level
+ * above halves and each zoom level below doubles the amount of dataset pixels per tile pixel
+ *
+ * @author Robert Oehler
+ *
+ */
+public class PyramidTileGrid implements TileRenderer.TileGrid {
+
+	private volatile int mInternalZoom;
+
+	/**
+	 * @param pInternalZoom the zoom level at which a tile pixel is a dataset pixel
+	 */
+	public PyramidTileGrid(final int pInternalZoom) {
+
+		this.mInternalZoom = pInternalZoom;
+	}
+
+	@Override
+	public Rect getWindow(final long tileX, final long tileY, final int zoom, final int tiles, final int tileSize) {
+
+		final int zoomedTS = (int) (tileSize * getScaleFactor(zoom));
+		if(zoomedTS <= 0){
+			return null;
+		}
+		final int readAmount = tiles * zoomedTS;
+		final int readFromX = (int) (tileX * zoomedTS);
+		final int readFromY = (int) (tileY * zoomedTS);
+
+		return new Rect(readFromX, readFromY, readFromX + readAmount, readFromY + readAmount);
+	}
+
+	/**
+	 * @return the amount of dataset pixels per tile pixel at @param zoom
+	 */
+	public double getScaleFactor(final int zoom){
+
+		return Math.pow(2, -(zoom - mInternalZoom));
+	}
+
+	public void setInternalZoom(final int internalZoom){
+
+		this.mInternalZoom = internalZoom;
+	}
+
+	public int getInternalZoom(){
+
+		return mInternalZoom;
+	}
+}
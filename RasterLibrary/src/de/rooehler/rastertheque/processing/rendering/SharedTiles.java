@@ -0,0 +1,97 @@
+package de.rooehler.rastertheque.processing.rendering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SharedTiles holds a single pre-rendered tile of a constant color per tile size and color
+ *
+ * tiles which do not contain any data, i.e. which are entirely outside of a raster
+ * or only contain nodata, look the same, hence a renderer can serve all of them
+ * with the same instance instead of allocating and filling the pixels of every such tile
+ *
+ * the shared tiles must not be modified by their users
+ *
+ * subclasses create the tile representation of the rendering framework,
+ * e.g. a bitmap, and may release it when the shared tiles are cleared
+ *
+ * @author Robert Oehler
+ *
+ * @param <T> the type of a tile
+ */
+public abstract class SharedTiles<T> {
+
+	private final Map<Long, T> mTiles = new HashMap<>();
+
+	private long mServed;
+
+	/**
+	 * returns the shared tile of @param size x @param size pixels of @param color,
+	 * creating it if it does not exist yet
+	 * @param size the size of the tile in pixels
+	 * @param color the argb color of the tile
+	 * @return the shared tile
+	 */
+	public synchronized T get(final int size, final int color){
+
+		final long key = ((long) size << 32) | (color & 0xffffffffL);
+
+		T tile = mTiles.get(key);
+		if(tile == null){
+			tile = create(size, color);
+			mTiles.put(key, tile);
+		}
+		mServed++;
+
+		return tile;
+	}
+
+	/**
+	 * @return how often a shared tile was served
+	 */
+	public synchronized long getServedCount(){
+
+		return mServed;
+	}
+
+	/**
+	 * releases all shared tiles, subsequent calls of get() create them again
+	 */
+	public void clear(){
+
+		final List<T> tiles;
+		synchronized (this) {
+			tiles = new ArrayList<>(mTiles.values());
+			mTiles.clear();
+		}
+		for(T tile : tiles){
+			release(tile);
+		}
+	}
+
+	/**
+	 * creates the tile of @param size x @param size pixels of @param color
+	 */
+	protected abstract T create(int size, int color);
+
+	/**
+	 * releases @param tile when the shared tiles are cleared, does nothing by default
+	 */
+	protected void release(T tile){
+
+	}
+
+	/**
+	 * @return the argb pixels of a tile of @param size x @param size pixels of @param color
+	 */
+	public static int[] createPixels(final int size, final int color){
+
+		final int[] pixels = new int[size * size];
+		Arrays.fill(pixels, color);
+
+		return pixels;
+	}
+}
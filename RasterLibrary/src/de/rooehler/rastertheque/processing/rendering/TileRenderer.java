@@ -0,0 +1,411 @@
+package de.rooehler.rastertheque.processing.rendering;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import android.graphics.Rect;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import de.rooehler.rastertheque.core.Band;
+import de.rooehler.rastertheque.core.Band.Color;
+import de.rooehler.rastertheque.core.DataType;
+import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.core.RasterDataset;
+import de.rooehler.rastertheque.core.RasterQuery;
+import de.rooehler.rastertheque.io.gdal.GDALDataset;
+import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
+import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.resampling.Resampler;
+import de.rooehler.rastertheque.util.Hints;
+import de.rooehler.rastertheque.util.Hints.Key;
+import de.rooehler.rastertheque.util.InFlightRequests;
+
+/**
+ * A TileRenderer renders z/x/y tiles of a RasterDataset into argb pixels
+ * independently of any map framework
+ *
+ * the TileGrid of the renderer maps a tile to the window of the dataset it covers,
+ * the renderer
+ * 1.clips this window to the dataset, the uncovered part of the tile is filled with the nodata color
+ * 2.reads the covered part, GDAL resamples when sampling down, otherwise the Resampler is used
+ * 3.renders the data using its colormap or amplitude rescaling, three RGB bands are combined directly
+ *
+ * blocks of NxN adjacent tiles (metatiles) are rendered at once by a single read,
+ * concurrent renders of the same block are coalesced
+ *
+ * map frameworks adapt the resulting pixels to their bitmaps
+ *
+ * @author Robert Oehler
+ *
+ */
+public class TileRenderer {
+
+	/**
+	 * A TileGrid maps tiles to the windows of a dataset they cover
+	 */
+	public interface TileGrid {
+
+		/**
+		 * returns the window in pixel coordinates of the dataset which is covered by the block of
+		 * @param tiles x @param tiles tiles of @param tileSize pixels whose upper left tile is @param tileX, @param tileY
+		 * at @param zoom
+		 *
+		 * the window may exceed the dataset
+		 *
+		 * @return the window or null if the block does not cover any pixels
+		 */
+		Rect getWindow(long tileX, long tileY, int zoom, int tiles, int tileSize);
+	}
+
+	private final RasterDataset mDataset;
+
+	private final TileGrid mGrid;
+
+	private final boolean mRGB;
+
+	private volatile int mNoDataColor = 0xffffffff;
+
+	private volatile int mParallelism = 1;
+
+	private final InFlightRequests<String, int[]> mInFlight = new InFlightRequests<>();
+
+	/**
+	 * creates a renderer of the tiles of @param pDataset whose windows are defined by @param pGrid
+	 */
+	public TileRenderer(final RasterDataset pDataset, final TileGrid pGrid) {
+
+		this.mDataset = pDataset;
+		this.mGrid = pGrid;
+		this.mRGB = hasRGBBands(pDataset.getBands());
+	}
+
+	/**
+	 * renders the tile @param tileX, @param tileY at @param zoom of @param tileSize pixels
+	 *
+	 * @return the argb pixels of the tile, which must not be modified, or null if it is empty
+	 */
+	public int[] render(final long tileX, final long tileY, final int zoom, final int tileSize){
+
+		return render(tileX, tileY, zoom, 1, tileSize);
+	}
+
+	/**
+	 * renders the block of @param tiles x @param tiles tiles of @param tileSize pixels
+	 * whose upper left tile is @param tileX, @param tileY at @param zoom
+	 *
+	 * if the same block is currently rendered by another thread, its pixels are awaited and shared
+	 *
+	 * @return the argb pixels of the block, which must not be modified,
+	 * or null if the block is empty, i.e. outside of the dataset or only covering nodata blocks
+	 */
+	public int[] render(final long tileX, final long tileY, final int zoom, final int tiles, final int tileSize){
+
+		final String key = zoom + "/" + tileX + "/" + tileY + "/" + tiles + "/" + tileSize;
+
+		return mInFlight.get(key, new Callable<int[]>() {
+			@Override
+			public int[] call() {
+				return renderBlock(tileX, tileY, zoom, tiles, tileSize);
+			}
+		});
+	}
+
+	/**
+	 * checks without reading if the block of @param tiles x @param tiles tiles of @param tileSize pixels
+	 * whose upper left tile is @param tileX, @param tileY at @param zoom is known to be empty
+	 */
+	public boolean isEmpty(final long tileX, final long tileY, final int zoom, final int tiles, final int tileSize){
+
+		final Rect window = mGrid.getWindow(tileX, tileY, zoom, tiles, tileSize);
+
+		if(window == null || clip(window) == null){
+			return true;
+		}
+		if(mDataset instanceof GDALDataset){
+			final int size = tiles * tileSize;
+			return ((GDALDataset) mDataset).isEmpty(window, size, size);
+		}
+		return false;
+	}
+
+	/**
+	 * copies the pixels of the tile @param i, @param j of the block @param pixels
+	 * of @param tiles x @param tiles tiles of @param tileSize pixels into @param dst
+	 */
+	public static void slice(final int[] pixels, final int tiles, final int tileSize, final int i, final int j, final int[] dst){
+
+		for (int y = 0; y < tileSize; y++) {
+			System.arraycopy(pixels, (j * tileSize + y) * tiles * tileSize + i * tileSize, dst, y * tileSize, tileSize);
+		}
+	}
+
+	/**
+	 * reads and renders a block of tiles
+	 * @see TileRenderer#render(long, long, int, int, int)
+	 */
+	private int[] renderBlock(final long tileX, final long tileY, final int zoom, final int tiles, final int tileSize){
+
+		final int size = tiles * tileSize;
+
+		final Rect window = mGrid.getWindow(tileX, tileY, zoom, tiles, tileSize);
+		if(window == null){
+			return null;
+		}
+		final Rect covered = clip(window);
+		if(covered == null){
+			return null;
+		}
+		if(mDataset instanceof GDALDataset && ((GDALDataset) mDataset).isEmpty(window, size, size)){
+			return null;
+		}
+
+		//dataset pixels per tile pixel
+		final double scaleX = window.width() / (double) size;
+		final double scaleY = window.height() / (double) size;
+
+		final int originX = Math.min(size - 1, (int) Math.round((covered.left - window.left) / scaleX));
+		final int originY = Math.min(size - 1, (int) Math.round((covered.top  - window.top)  / scaleY));
+		final int targetWidth  = Math.max(1, Math.min(size - originX, (int) Math.round(covered.width()  / scaleX)));
+		final int targetHeight = Math.max(1, Math.min(size - originY, (int) Math.round(covered.height() / scaleY)));
+
+		//single tiles are usually rendered by several threads already, blocks are split additionally
+		final Hints hints = tiles > 1 && mParallelism > 1 ? new Hints(Hints.KEY_PARALLELISM, mParallelism) : null;
+
+		final int[] pixels = renderWindow(covered, targetWidth, targetHeight, hints);
+
+		if(originX == 0 && originY == 0 && targetWidth == size && targetHeight == size){
+			//the block is entirely covered by the dataset
+			return pixels;
+		}
+
+		//the block is partially covered, fill up the remaining area with nodata
+		final int[] block = new int[size * size];
+		Arrays.fill(block, mNoDataColor);
+		for (int y = 0; y < targetHeight; y++) {
+			System.arraycopy(pixels, y * targetWidth, block, (originY + y) * size + originX, targetWidth);
+		}
+		return block;
+	}
+
+	/**
+	 * @return the part of @param window which is covered by the dataset or null if it is not covered at all
+	 */
+	private Rect clip(final Rect window){
+
+		final Rect dim = mDataset.getDimension();
+
+		final int left   = Math.max(window.left, dim.left);
+		final int top    = Math.max(window.top, dim.top);
+		final int right  = Math.min(window.right, dim.right);
+		final int bottom = Math.min(window.bottom, dim.bottom);
+
+		if(left >= right || top >= bottom){
+			return null;
+		}
+		return new Rect(left, top, right, bottom);
+	}
+
+	/**
+	 * reads the window @param src of the dataset, resamples it to @param targetWidth x @param targetHeight and renders it
+	 * using the optional @param hints
+	 * @return the argb pixels of size targetWidth * targetHeight
+	 */
+	private int[] renderWindow(final Rect src, final int targetWidth, final int targetHeight, final Hints hints){
+
+		final DataType datatype = mDataset.getBands().get(0).datatype();
+
+		//GDAL samples down while reading, sampling up is done by the Resampler
+		final boolean datasetResamples = mDataset instanceof GDALDataset && useDatasetAsResampler(targetWidth, targetHeight, src);
+
+		final RasterQuery query;
+		if(mDataset instanceof GDALDataset){
+			query = new GDALRasterQuery(
+					getBounds(src),
+					mDataset.getCRS(),
+					mDataset.getBands(),
+					src,
+					datatype,
+					datasetResamples ? new Rect(0, 0, targetWidth, targetHeight) : new Rect(0, 0, src.width(), src.height()));
+		}else{
+			query = new RasterQuery(
+					getBounds(src),
+					mDataset.getCRS(),
+					mDataset.getBands(),
+					src,
+					datatype);
+		}
+
+		final Raster raster = mDataset.read(query);
+
+		HashMap<Key,Serializable> resampleParams = null;
+
+		if(!datasetResamples && (targetWidth != src.width() || targetHeight != src.height())){
+
+			resampleParams = new HashMap<>();
+
+			resampleParams.put(Resampler.KEY_SIZE, new Double[]{targetWidth / (double) src.width(), targetHeight / (double) src.height()});
+		}
+
+		final int[] pixels;
+
+		if(mRGB){
+
+			if(resampleParams != null){
+				RasterOps.execute(raster, RasterOps.RESIZE, resampleParams, hints, null);
+			}
+			//no rendering necessary
+			pixels = renderRGB(raster);
+		}else{
+
+			final boolean containsColorMap = raster.getBands().get(0).colorMap() != null;
+
+			//resampling and rendering are fused into a single pass if possible
+			final List<RasterOps.Step> steps = new ArrayList<>();
+			if(resampleParams != null){
+				steps.add(new RasterOps.Step(RasterOps.RESIZE, resampleParams));
+			}
+			steps.add(new RasterOps.Step(containsColorMap ? RasterOps.COLORMAP : RasterOps.AMPLITUDE_RESCALING, new HashMap<Key,Serializable>()));
+
+			RasterOps.execute(raster, steps, hints, null);
+
+			pixels = new int[raster.getDimension().width() * raster.getDimension().height()];
+
+			raster.getData().asIntBuffer().get(pixels);
+		}
+
+		return fit(pixels, raster.getDimension().width(), raster.getDimension().height(), targetWidth, targetHeight);
+	}
+
+	/**
+	 * the resampled size may differ by a pixel from the target size due to rounding,
+	 * crops or pads @param pixels of @param width x @param height to @param targetWidth x @param targetHeight
+	 */
+	private int[] fit(final int[] pixels, final int width, final int height, final int targetWidth, final int targetHeight){
+
+		if(width == targetWidth && height == targetHeight){
+			return pixels;
+		}
+		final int[] fitted = new int[targetWidth * targetHeight];
+		Arrays.fill(fitted, mNoDataColor);
+
+		final int copyWidth = Math.min(width, targetWidth);
+		final int copyHeight = Math.min(height, targetHeight);
+		for (int y = 0; y < copyHeight; y++) {
+			System.arraycopy(pixels, y * width, fitted, y * targetWidth, copyWidth);
+		}
+		return fitted;
+	}
+
+	/**
+	 * renders the bands of the the raster interpreting them a r,g and b channels
+	 * @param raster the raster containing the rgb bands
+	 * @return the array of argb pixels
+	 */
+	private int[] renderRGB(final Raster raster) {
+
+		final int pixelAmount = raster.getDimension().width() * raster.getDimension().height();
+
+		final int[] pixels = new int[pixelAmount];
+
+		final double[] pixelsR = raster.getDoubles(0, null);
+		final double[] pixelsG = raster.getDoubles(1, null);
+		final double[] pixelsB = raster.getDoubles(2, null);
+
+		for (int l = 0; l < pixelAmount; l++) {
+
+			pixels[l] = 0xff000000 | ((((int) pixelsR[l]) << 16) & 0xff0000) | ((((int) pixelsG[l]) << 8) & 0xff00) | (((int) pixelsB[l]) & 0xff);
+		}
+
+		return pixels;
+	}
+
+	/**
+	 * @return the bounds of the window @param src in the crs of the dataset, assuming a north up dataset
+	 */
+	private Envelope getBounds(final Rect src){
+
+		final Envelope bb = mDataset.getBoundingBox();
+		final Rect dim = mDataset.getDimension();
+
+		final double resX = bb.getWidth()  / dim.width();
+		final double resY = bb.getHeight() / dim.height();
+
+		return new Envelope(
+				bb.getMinX() + src.left   * resX,
+				bb.getMinX() + src.right  * resX,
+				bb.getMaxY() - src.bottom * resY,
+				bb.getMaxY() - src.top    * resY);
+	}
+
+	/**
+	 * checks if the resampling should be done by the dataset while reading or by the Resampler
+	 *
+	 * sampling down is done by the dataset, as otherwise enormous amounts of memory would be read,
+	 * hence the Resampler is only used when sampling up
+	 *
+	 * @return true if the target is not larger than the window @param src
+	 */
+	public static boolean useDatasetAsResampler(final int targetWidth, final int targetHeight, final Rect src){
+
+		return targetWidth <= src.width() && targetHeight <= src.height();
+	}
+
+	/**
+	 * @return if @param bands are three bands whose colors are RED GREEN and BLUE
+	 */
+	private static boolean hasRGBBands(final List<Band> bands){
+
+		return bands.size() == 3 &&
+			   bands.get(0).color() == Color.RED &&
+			   bands.get(1).color() == Color.GREEN &&
+			   bands.get(2).color() == Color.BLUE;
+	}
+
+	/**
+	 * sets the argb @param color of the parts of tiles which are not covered by the dataset
+	 */
+	public void setNoDataColor(final int color){
+
+		this.mNoDataColor = color;
+	}
+
+	public int getNoDataColor(){
+
+		return mNoDataColor;
+	}
+
+	/**
+	 * sets the amount of threads which process the read data of blocks of more than one tile,
+	 * 1, the default, processes them sequentially
+	 */
+	public void setParallelism(final int parallelism){
+
+		if(parallelism < 1){
+			throw new IllegalArgumentException("the parallelism must be at least 1, provided : " + parallelism);
+		}
+		this.mParallelism = parallelism;
+	}
+
+	public int getParallelism(){
+
+		return mParallelism;
+	}
+
+	/**
+	 * @return the amount of renders which were saved as they attached to an identical render in flight
+	 */
+	public long getCoalescedCount(){
+
+		return mInFlight.getCoalescedCount();
+	}
+
+	public RasterDataset getDataset(){
+
+		return mDataset;
+	}
+}
@@ -0,0 +1,314 @@
+package de.rooehler.rastertheque.processing.reprojecting;
+
+import org.osgeo.proj4j.CoordinateTransform;
+import org.osgeo.proj4j.ProjCoordinate;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * An ApproxTransformer calculates the source raster positions of destination
+ * raster pixels of a reprojection approximately
+ *
+ * only a coarse mesh of control points is transformed exactly, the positions
+ * in between are interpolated linearly from the corners of a mesh cell
+ *
+ * if the interpolated position at the center of a cell differs by more than the
+ * maximum error (in source pixels) from its exact position, the cell is subdivided,
+ * down to single pixels, which is the approach of GDALs approximate transformer
+ *
+ * as proj4j transforms are not thread-safe an ApproxTransformer must only be used by one thread
+ *
+ * @author Robert Oehler
+ *
+ */
+public class ApproxTransformer {
+
+	/**
+	 * the default maximum error in source pixels, which is the default of gdalwarp
+	 */
+	public static final double DEFAULT_MAX_ERROR = 0.125d;
+
+	/**
+	 * the distance in pixels between the control points of the initial mesh
+	 */
+	public static final int MESH_STEP = 32;
+
+	private final CoordinateTransform mTransform;
+
+	private final Coordinate mDstUpperLeft;
+
+	private final double mDstXRes;
+
+	private final double mDstYRes;
+
+	private final Coordinate mSrcUpperLeft;
+
+	private final double mSrcXRes;
+
+	private final double mSrcYRes;
+
+	private final double mMaxError;
+
+	private final ProjCoordinate mCoord = new ProjCoordinate();
+
+	private double[] mOutX;
+
+	private double[] mOutY;
+
+	private int mWidth;
+
+	private int mFromRow;
+
+	private long mTransformed;
+
+	/**
+	 * @param pTransform the transform from the destination model to the source model
+	 * @param pDstUpperLeft the model coordinate of the upper left corner of the destination raster
+	 * @param pDstXRes the width of a destination pixel in model units
+	 * @param pDstYRes the height of a destination pixel in model units
+	 * @param pSrcUpperLeft the model coordinate of the upper left corner of the source raster
+	 * @param pSrcXRes the width of a source pixel in model units
+	 * @param pSrcYRes the height of a source pixel in model units
+	 * @param pMaxError the maximum error of an approximated position in source pixels, 0 to transform every pixel
+	 */
+	public ApproxTransformer(final CoordinateTransform pTransform,
+			final Coordinate pDstUpperLeft, final double pDstXRes, final double pDstYRes,
+			final Coordinate pSrcUpperLeft, final double pSrcXRes, final double pSrcYRes,
+			final double pMaxError){
+
+		this.mTransform = pTransform;
+		this.mDstUpperLeft = pDstUpperLeft;
+		this.mDstXRes = pDstXRes;
+		this.mDstYRes = pDstYRes;
+		this.mSrcUpperLeft = pSrcUpperLeft;
+		this.mSrcXRes = pSrcXRes;
+		this.mSrcYRes = pSrcYRes;
+		this.mMaxError = pMaxError;
+	}
+
+	/**
+	 * calculates the source raster positions of the destination pixels of the rows
+	 * @param fromRow (inclusive) to @param toRow (exclusive) which are @param width wide
+	 *
+	 * @param srcX receives the source columns, row by row starting with fromRow,
+	 * NaN if the position cannot be transformed
+	 * @param srcY receives the source rows accordingly
+	 */
+	public void transform(final int width, final int fromRow, final int toRow, final double[] srcX, final double[] srcY){
+
+		if(width <= 0 || fromRow >= toRow){
+			return;
+		}
+
+		mOutX = srcX;
+		mOutY = srcY;
+		mWidth = width;
+		mFromRow = fromRow;
+
+		if(mMaxError <= 0){
+			for(int y = fromRow; y < toRow; y++){
+				for(int x = 0; x < width; x++){
+					final int i = (y - fromRow) * width + x;
+					final double[] p = exact(x, y);
+					srcX[i] = p[0];
+					srcY[i] = p[1];
+				}
+			}
+			return;
+		}
+
+		//the control points of the mesh
+		final int[] xs = meshPositions(0, width - 1);
+		final int[] ys = meshPositions(fromRow, toRow - 1);
+
+		final double[][] mesh = new double[xs.length * ys.length][];
+		for(int j = 0; j < ys.length; j++){
+			for(int i = 0; i < xs.length; i++){
+				mesh[j * xs.length + i] = exact(xs[i], ys[j]);
+			}
+		}
+
+		//the cells between the control points, of zero extent if there is a single row or column
+		for(int j = 0; j < Math.max(1, ys.length - 1); j++){
+			for(int i = 0; i < Math.max(1, xs.length - 1); i++){
+
+				final int i1 = Math.min(i + 1, xs.length - 1);
+				final int j1 = Math.min(j + 1, ys.length - 1);
+
+				cell(xs[i], ys[j], xs[i1], ys[j1],
+						mesh[j * xs.length + i], mesh[j * xs.length + i1],
+						mesh[j1 * xs.length + i], mesh[j1 * xs.length + i1]);
+			}
+		}
+
+		mOutX = null;
+		mOutY = null;
+	}
+
+	/**
+	 * @return the amount of positions which were transformed exactly
+	 */
+	public long getTransformedPoints(){
+
+		return mTransformed;
+	}
+
+	/**
+	 * fills the cell from @param x0, @param y0 to @param x1, @param y1 (inclusive)
+	 * whose corners are at the source positions @param p00, @param p10, @param p01 and @param p11
+	 */
+	private void cell(final int x0, final int y0, final int x1, final int y1,
+			final double[] p00, final double[] p10, final double[] p01, final double[] p11){
+
+		final boolean splitX = x1 - x0 > 1;
+		final boolean splitY = y1 - y0 > 1;
+
+		if(!splitX && !splitY){
+			//all pixels of the cell are corners
+			write(x0, y0, p00);
+			write(x1, y0, p10);
+			write(x0, y1, p01);
+			write(x1, y1, p11);
+			return;
+		}
+
+		final int xm = (x0 + x1) >>> 1;
+		final int ym = (y0 + y1) >>> 1;
+
+		final double[] center = exact(xm, ym);
+
+		if(isFinite(p00) && isFinite(p10) && isFinite(p01) && isFinite(p11) && isFinite(center)){
+
+			final double fx = (xm - x0) / (double) (x1 - x0);
+			final double fy = y1 > y0 ? (ym - y0) / (double) (y1 - y0) : 0;
+
+			final double errorX = Math.abs(interpolate(p00[0], p10[0], p01[0], p11[0], fx, fy) - center[0]);
+			final double errorY = Math.abs(interpolate(p00[1], p10[1], p01[1], p11[1], fx, fy) - center[1]);
+
+			if(errorX <= mMaxError && errorY <= mMaxError){
+				fill(x0, y0, x1, y1, p00, p10, p01, p11);
+				return;
+			}
+		}
+
+		//subdivide
+		if(splitX && splitY){
+
+			final double[] top = exact(xm, y0);
+			final double[] bottom = exact(xm, y1);
+			final double[] left = exact(x0, ym);
+			final double[] right = exact(x1, ym);
+
+			cell(x0, y0, xm, ym, p00, top, left, center);
+			cell(xm, y0, x1, ym, top, p10, center, right);
+			cell(x0, ym, xm, y1, left, center, p01, bottom);
+			cell(xm, ym, x1, y1, center, right, bottom, p11);
+
+		}else if(splitX){
+
+			final double[] top = y0 == ym ? center : exact(xm, y0);
+			final double[] bottom = y1 == ym ? center : exact(xm, y1);
+
+			cell(x0, y0, xm, y1, p00, top, p01, bottom);
+			cell(xm, y0, x1, y1, top, p10, bottom, p11);
+
+		}else{
+
+			final double[] left = x0 == xm ? center : exact(x0, ym);
+			final double[] right = x1 == xm ? center : exact(x1, ym);
+
+			cell(x0, y0, x1, ym, p00, p10, left, right);
+			cell(x0, ym, x1, y1, left, right, p01, p11);
+		}
+	}
+
+	/**
+	 * fills the cell by interpolating the positions of its corners bilinearly
+	 */
+	private void fill(final int x0, final int y0, final int x1, final int y1,
+			final double[] p00, final double[] p10, final double[] p01, final double[] p11){
+
+		final double width = x1 - x0;
+		final double height = y1 - y0;
+
+		for(int y = y0; y <= y1; y++){
+
+			final double fy = height > 0 ? (y - y0) / height : 0;
+
+			//the positions at the left and the right border of this row
+			final double leftX = p00[0] + (p01[0] - p00[0]) * fy;
+			final double leftY = p00[1] + (p01[1] - p00[1]) * fy;
+			final double rightX = p10[0] + (p11[0] - p10[0]) * fy;
+			final double rightY = p10[1] + (p11[1] - p10[1]) * fy;
+
+			final double stepX = width > 0 ? (rightX - leftX) / width : 0;
+			final double stepY = width > 0 ? (rightY - leftY) / width : 0;
+
+			final int offset = (y - mFromRow) * mWidth;
+
+			for(int x = x0; x <= x1; x++){
+				mOutX[offset + x] = leftX + stepX * (x - x0);
+				mOutY[offset + x] = leftY + stepY * (x - x0);
+			}
+		}
+	}
+
+	private void write(final int x, final int y, final double[] p){
+
+		final int i = (y - mFromRow) * mWidth + x;
+		mOutX[i] = p[0];
+		mOutY[i] = p[1];
+	}
+
+	/**
+	 * transforms the destination pixel @param x, @param y exactly
+	 * @return its source raster position, NaN if it cannot be transformed
+	 */
+	private double[] exact(final int x, final int y){
+
+		mTransformed++;
+
+		mCoord.x = mDstUpperLeft.x + x * mDstXRes;
+		mCoord.y = mDstUpperLeft.y - y * mDstYRes;
+
+		try{
+			mTransform.transform(mCoord, mCoord);
+		}catch(RuntimeException e){
+			return new double[]{ Double.NaN, Double.NaN };
+		}
+
+		return new double[]{
+				(mCoord.x - mSrcUpperLeft.x) / mSrcXRes,
+				(mSrcUpperLeft.y - mCoord.y) / mSrcYRes };
+	}
+
+	/**
+	 * @return the positions of the control points from @param from to @param to (inclusive)
+	 */
+	private static int[] meshPositions(final int from, final int to){
+
+		if(to == from){
+			return new int[]{ from };
+		}
+		final int cells = (to - from + MESH_STEP - 1) / MESH_STEP;
+		final int[] positions = new int[cells + 1];
+		for(int i = 0; i < cells; i++){
+			positions[i] = from + i * MESH_STEP;
+		}
+		positions[cells] = to;
+		return positions;
+	}
+
+	private static double interpolate(final double v00, final double v10, final double v01, final double v11, final double fx, final double fy){
+
+		final double top = v00 + (v10 - v00) * fx;
+		final double bottom = v01 + (v11 - v01) * fx;
+
+		return top + (bottom - top) * fy;
+	}
+
+	private static boolean isFinite(final double[] p){
+
+		return !Double.isNaN(p[0]) && !Double.isInfinite(p[0]) && !Double.isNaN(p[1]) && !Double.isInfinite(p[1]);
+	}
+}
@@ -14,11 +14,13 @@ import org.osgeo.proj4j.CoordinateReferenceSystem;
 
 import android.graphics.Rect;
 import android.util.Log;
+
+import com.vividsolutions.jts.geom.Envelope;
+
 import de.rooehler.rastertheque.core.Band;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.RasterQuery;
-import de.rooehler.rastertheque.core.util.ReferencedEnvelope;
 import de.rooehler.rastertheque.io.gdal.GDALBand;
 import de.rooehler.rastertheque.io.gdal.GDALDataset;
 import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
@@ -31,6 +33,9 @@ import de.rooehler.rastertheque.util.ProgressListener;
 /**
  * Reproject Operation which makes use of the GDAL library
  * 
+ * the geometry of the result is determined by a WarpOutput, the bounds, the crs
+ * and the dimension of the raster are updated accordingly
+ * 
  * @author Robert Oehler
  *
  */
@@ -143,21 +148,19 @@ public class GDALReproject extends Reproject implements RasterOp {
 		}
 		//data available, can warp
 		
-		//2. transform the source bounds to the target bounds
-		//2a.src envelope
-		ReferencedEnvelope	src_refEnv = new ReferencedEnvelope(raster.getBoundingBox(), src_crs);
-		//2b.transform to the target crs
-		ReferencedEnvelope reprojected = src_refEnv.transform(dst_crs, 10);
+		//2. determine the geometry of the result in the target crs
+		final WarpOutput output = WarpOutput.create(raster, dst_crs, params);
+		final Envelope dst_bounds = output.getBounds();
 		
 		//3a.create an in-memory target dataset
-		Dataset warped = driver.Create("", srcWidth, srcHeight, bandCount, gdalDataType);
+		Dataset warped = driver.Create("", output.getWidth(), output.getHeight(), bandCount, gdalDataType);
 		double[] warped_geotransform = new double[]{
-				reprojected.getEnvelope().getMinX(),
-				(reprojected.getEnvelope().getMaxX() - reprojected.getEnvelope().getMinX()) / srcWidth, /* w-e pixel resolution */
+				dst_bounds.getMinX(),
+				output.getXRes(), /* w-e pixel resolution */
 				geotransform[2],  /* 0 */
-				reprojected.getEnvelope().getMaxY() , /* top left y */
+				dst_bounds.getMaxY() , /* top left y */
 				geotransform[4], /* 0 */
-				- ((reprojected.getEnvelope().getMaxY() - reprojected.getEnvelope().getMinY()) / srcHeight) /* n-s pixel resolution (negative value) */
+				- output.getYRes() /* n-s pixel resolution (negative value) */
 		};
 		//3b.set transform
 		warped.SetGeoTransform(warped_geotransform);
@@ -180,9 +183,9 @@ public class GDALReproject extends Reproject implements RasterOp {
 		for (int i = 1; i <= nbands; i++) {
 			bands.add(new GDALBand(warped.GetRasterBand(i)));
 		}
-		final Rect readDim = new Rect(0, 0, srcWidth, srcHeight);
+		final Rect readDim = new Rect(0, 0, output.getWidth(), output.getHeight());
 		RasterQuery query = new GDALRasterQuery(
-				reprojected.getEnvelope(),
+				dst_bounds,
 				dst_crs,
 				bands,
 				readDim,
@@ -191,8 +194,11 @@ public class GDALReproject extends Reproject implements RasterOp {
 		
 		//5.read from reprojected
 		Raster reprojectedRaster = warpedDS.read(query);
-		//6. set data
+		//6. set data and geometry
 		raster.setData(reprojectedRaster.getData());
+		raster.setDimension(readDim);
+		raster.setBoundingBox(dst_bounds);
+		raster.setCRS(dst_crs);
 		
 		// clean up
 		warpedDS.close();
@@ -214,6 +220,12 @@ public class GDALReproject extends Reproject implements RasterOp {
 			return gdalconst.GRA_Bilinear;
 		case BICUBIC:
 			return gdalconst.GRA_Cubic;
+		case LANCZOS:
+			return gdalconst.GRA_Lanczos;
+		case AVERAGE:
+			return gdalconst.GRA_Average;
+		case MODE:
+			return gdalconst.GRA_Mode;
 
 		default:
 			return gdalconst.GRA_Bilinear;
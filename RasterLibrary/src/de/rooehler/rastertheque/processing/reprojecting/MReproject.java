@@ -1,15 +1,13 @@
 package de.rooehler.rastertheque.processing.reprojecting;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Map;
 
 import org.osgeo.proj4j.CoordinateReferenceSystem;
-import org.osgeo.proj4j.CoordinateTransform;
-import org.osgeo.proj4j.ProjCoordinate;
 
+import android.graphics.Rect;
 import android.util.Log;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -17,10 +15,8 @@ import com.vividsolutions.jts.geom.Coordinate;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.NoData;
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
-import de.rooehler.rastertheque.core.util.ReferencedEnvelope;
 import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
-import de.rooehler.rastertheque.processing.RasterOp;
+import de.rooehler.rastertheque.processing.SplittableRasterOp;
 import de.rooehler.rastertheque.processing.resampling.MResampler;
 import de.rooehler.rastertheque.proj.Proj;
 import de.rooehler.rastertheque.util.Hints;
@@ -30,10 +26,15 @@ import de.rooehler.rastertheque.util.ProgressListener;
  * Implementation of the reproject operation 
  * in a "manual" way, step by step
  * 
+ * the geometry of the result is determined by a WarpOutput, the bounds, the crs
+ * and the dimension of the raster are updated accordingly
+ * 
+ * the rows of the result can be computed in parallel strips, see SplittableRasterOp
+ * 
  * @author Robert Oehler
  *
  */
-public class MReproject extends Reproject implements RasterOp {
+public class MReproject extends Reproject implements SplittableRasterOp {
 
 	/**
 	 * executes the operation on the @param raster according to the @params
@@ -43,8 +44,33 @@ public class MReproject extends Reproject implements RasterOp {
 	@Override
 	public void execute(Raster raster, Map<Key, Serializable> params,Hints hints, ProgressListener listener) {
 
+		final Split split = split(raster, params, hints);
+		
+		if(split == null){
+			return;
+		}
+		
+		split.execute(0, split.getRows(), listener);
+		
+		split.finish();
+	}
+	
+	/**
+	 * prepares the reprojection of @param raster
+	 * 
+	 * the source positions of a strip of rows are calculated once for all bands
+	 * by an ApproxTransformer, which transforms a mesh of control points and
+	 * interpolates in between, within the maximum error of Reproject.KEY_REPROJECT_MAX_ERROR
+	 * 
+	 * only the source rows they cover plus the halo of the interpolation are read
+	 * 
+	 * @return the prepared reprojection or null if the parameters or the raster are invalid
+	 */
+	@Override
+	public Split split(final Raster raster, Map<Key, Serializable> params, Hints hints) {
+
 		// src projection		
-		CoordinateReferenceSystem src_crs = raster.getCRS();
+		final CoordinateReferenceSystem src_crs = raster.getCRS();
 		// target projection
 		CoordinateReferenceSystem dst_crs = null;
 
@@ -60,325 +86,196 @@ public class MReproject extends Reproject implements RasterOp {
 					dst_crs = Proj.crs(wkt);
 				}catch(RuntimeException e){
 					Log.e(Reproject.class.getSimpleName(), "error parsing target projection String "+wkt);
-					return;
+					return null;
 				}
 			}else{
 				Log.e(MReproject.class.getSimpleName(), "no proj params String provided as dst crs parameter");
-				return;
+				return null;
 			}
 			
 		}else if(params == null){	
 			Log.e(MReproject.class.getSimpleName(), "no params provided");
-			return;
+			return null;
 		}else if(!params.containsKey(Reproject.KEY_REPROJECT_TARGET_CRS)){
 			Log.e(MReproject.class.getSimpleName(), "no parameter for the target crs provided");
-			return;
+			return null;
 		}
 		if(src_crs == null){
 			Log.e(MReproject.class.getSimpleName(), "src raster does not have a crs, cannot reproject");
-			return;	
+			return null;	
 		}
 		if(dst_crs == null){		
 			Log.e(MReproject.class.getSimpleName(), "invalid well-known text provided as dst crs parameter");
-			return;
+			return null;
 		}
+		final CoordinateReferenceSystem target_crs = dst_crs;
 
-		ResampleMethod method = ResampleMethod.BILINEAR;
+		ResampleMethod resampleMethod = ResampleMethod.BILINEAR;
 		if(hints != null && hints.containsKey(Hints.KEY_INTERPOLATION)){
-			method = (ResampleMethod) hints.get(Hints.KEY_INTERPOLATION);
+			resampleMethod = (ResampleMethod) hints.get(Hints.KEY_INTERPOLATION);
+		}
+		final ResampleMethod method = resampleMethod;
+		
+		double error = ApproxTransformer.DEFAULT_MAX_ERROR;
+		if(params.containsKey(Reproject.KEY_REPROJECT_MAX_ERROR)){
+			error = (Double) params.get(Reproject.KEY_REPROJECT_MAX_ERROR);
 		}
+		final double maxError = error;
 		
 		final DataType dataType = raster.getBands().get(0).datatype();
 		final int srcWidth  = raster.getDimension().width();
 		final int srcHeight = raster.getDimension().height();
 
-		//source envelope
-		ReferencedEnvelope	src_refEnv = new ReferencedEnvelope(raster.getBoundingBox(), src_crs);
-
-		//transform the src envelope to the target envelope using the target crs
-		//densify it with 10 additional points
-		ReferencedEnvelope reprojected = src_refEnv.transform(dst_crs, 10);
+		//the geometry of the result
+		final WarpOutput output = WarpOutput.create(raster, target_crs, params);
+		final int dstWidth = output.getWidth();
+		final int dstHeight = output.getHeight();
 
 		//target raster resolution "how much model units are between two raster points"
-		double dst_x_res = reprojected.getEnvelope().getWidth() / srcWidth;
-		double dst_y_res = reprojected.getEnvelope().getHeight() / srcHeight;
+		final double dst_x_res = output.getXRes();
+		final double dst_y_res = output.getYRes();
 
 		//src raster resolution -> "how much model units are between two raster points"
-		double src_x_res = raster.getBoundingBox().getWidth() / srcWidth;
-		double src_y_res = raster.getBoundingBox().getHeight() / srcHeight;
+		final double src_x_res = raster.getBoundingBox().getWidth() / srcWidth;
+		final double src_y_res = raster.getBoundingBox().getHeight() / srcHeight;
 
 		//target reference coordinate
-		final Coordinate dst_upperLeft = new Coordinate(reprojected.getEnvelope().getMinX(), reprojected.getEnvelope().getMaxY());
+		final Coordinate dst_upperLeft = new Coordinate(output.getBounds().getMinX(), output.getBounds().getMaxY());
 		//src reference coordinate
 		final Coordinate src_upperLeft = new Coordinate(raster.getBoundingBox().getMinX(), raster.getBoundingBox().getMaxY());
-		//inverse transform
-		final CoordinateTransform inverseTransform = Proj.transform(dst_crs, src_crs);
 		
 		//the size of the buffer for one band
-		final int bandSize = srcWidth * srcHeight * dataType.size();
-		final int readerSize = bandSize * raster.getBands().size();
-		ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
-		ByteBuffer newBuffer = ByteBuffer.allocate(bandSize * raster.getBands().size()); 
-
-		NoData noData = null;
-		
-		ProjCoordinate dst_model_pos = new ProjCoordinate(dst_upperLeft.x , dst_upperLeft.y);
-		Coordinate src_model_coord = new Coordinate();
+		final int bandSize = dstWidth * dstHeight * dataType.size();
+		final ByteBuffer newBuffer = ByteBuffer.allocate(bandSize * raster.getBands().size()); 
+		newBuffer.order(ByteOrder.nativeOrder());
 		
 		final int bandAmount = raster.getBands().size();
-		final float onePercent = bandAmount * srcHeight * srcWidth / 100f;
-		float current = onePercent;
-		int percent = 1;
+		final int halo = MResampler.getHalo(method);
 		
-		int bufferPos, srcX, srcY, dataSize;
-		double src_raster_x,src_raster_y;
-		
-		for(int i = 0; i < bandAmount; i++){
-			//determine the nodata for each band
-			noData = raster.getBands().get(i).nodata();
-			//if not available, use the datatypes min value
-			if(noData == NoData.NONE){
-				noData = NoData.noDataForDataType(dataType);
+		return new Split() {
+			
+			@Override
+			public int getRows() {
+				return dstHeight;
 			}
-			dataSize = raster.getBands().get(i).datatype().size();
-
-			for(int y = 0; y < srcHeight; y++){
-				for(int x = 0; x < srcWidth; x++){
-
-					//calculate the destination model coordinate within the destination bounds
-					dst_model_pos.x = dst_upperLeft.x + x * dst_x_res;
-					dst_model_pos.y = dst_upperLeft.y - y * dst_y_res;
+			
+			@Override
+			public int getHalo() {
+				return halo;
+			}
+			
+			@Override
+			public void execute(int fromRow, int toRow, ProgressListener listener) {
+				
+				if(fromRow >= toRow){
+					return;
+				}
+				
+				//inverse transform, transforms are not thread-safe, Proj caches one per thread
+				final ApproxTransformer transformer = new ApproxTransformer(
+						Proj.transform(target_crs, src_crs),
+						dst_upperLeft, dst_x_res, dst_y_res,
+						src_upperLeft, src_x_res, src_y_res,
+						maxError);
+				
+				final int stripRows = toRow - fromRow;
+				
+				//the source raster positions of this strip, NaN if not covered by the source
+				final double[] src_raster_x = new double[stripRows * dstWidth];
+				final double[] src_raster_y = new double[stripRows * dstWidth];
+				
+				transformer.transform(dstWidth, fromRow, toRow, src_raster_x, src_raster_y);
+				
+				double minY = Double.MAX_VALUE;
+				double maxY = - Double.MAX_VALUE;
+				
+				for(int i = 0; i < src_raster_x.length; i++){
 					
-					//transform it to the source model
-					inverseTransform.transform(dst_model_pos, dst_model_pos);
-
-					src_model_coord.x = dst_model_pos.x;
-					src_model_coord.y = dst_model_pos.y;
+					final double rx = src_raster_x[i];
+					final double ry = src_raster_y[i];
 					
-					//progress
-					if(x * y * bandAmount > current){
-						if(listener != null){								
-							listener.onProgress(percent);
-						}
-						current += onePercent;
-						percent++;
+					// if the source raster contains this position
+					if(rx >= 0 && rx < srcWidth && ry >= 0 && ry < srcHeight){
+						minY = Math.min(minY, ry);
+						maxY = Math.max(maxY, ry);
+					}else{
+						src_raster_x[i] = Double.NaN;
+						src_raster_y[i] = Double.NaN;
+					}
+				}
+				
+				//the source rows covered by this strip including the halo
+				int top = 0;
+				int windowHeight = 0;
+				if(minY <= maxY){
+					top = Math.max(0, (int) Math.floor(minY) - halo);
+					windowHeight = Math.min(srcHeight, (int) Math.floor(maxY) + halo + 1) - top;
+				}
+				
+				final float onePercent = bandAmount * stripRows / 100f;
+				float current = onePercent;
+				int percent = 1;
+				
+				double[] src = null;
+				final double[] row = new double[dstWidth];
+				
+				final ByteBuffer strip = newBuffer.duplicate();
+				strip.order(newBuffer.order());
+				
+				for(int b = 0; b < bandAmount; b++){
+					//determine the nodata for each band
+					NoData noData = raster.getBands().get(b).nodata();
+					//if not available, use the datatypes min value
+					if(noData == NoData.NONE){
+						noData = NoData.noDataForDataType(dataType);
+					}
+					//the values of this band covered by the strip
+					if(windowHeight > 0){
+						src = raster.getDoubles(b, top, windowHeight, src);
 					}
 					
-					// if the source raster contains this position
-					if(raster.getBoundingBox().contains(src_model_coord)){
-
-						//calculate src raster position
-						src_raster_x = (src_model_coord.x - src_upperLeft.x) / src_x_res;
-						src_raster_y = (src_upperLeft.y - src_model_coord.y) / src_y_res;
-
-						//reference src raster position (upper left of neighbourhood)
-						srcX = (int) src_raster_x;
-						srcY = (int) src_raster_y;
-						
-						if(srcX >= 0 && srcX < srcWidth && srcY >= 0 && srcY < srcHeight){
-
-							//determine the pos of this raster value within the src raster
-							bufferPos = (i * bandSize) + (srcY * srcWidth + srcX) * dataType.size();
-
-							//move buffer to this pos			
-							reader.seekToOffset(bufferPos);
-
-							try{
-								//read from src into the new buffer
-								switch(dataType){
-								case BYTE:
-									
-									byte[] bytes = MResampler.getByteNeighbours(reader, readerSize, dataSize, srcWidth);					
-									byte interpolatedByte = 0;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedByte = MResampler.interpolateBytesNN(bytes, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedByte = MResampler.interpolateBytesBilinear(bytes, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedByte = MResampler.interpolateBytesBicubic(bytes, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.put(interpolatedByte);
-									break;
-								case CHAR:
-									
-									char[] chars = MResampler.getCharNeighbours(reader, readerSize, dataSize, srcWidth);					
-									char interpolatedChar = 0;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedChar = MResampler.interpolateCharsNN(chars, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedChar = MResampler.interpolateCharsBilinear(chars, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedChar = MResampler.interpolateCharsBicubic(chars, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putChar(interpolatedChar);
-									break;
-								case DOUBLE:
-									double[] doubles = MResampler.getDoubleNeighbours(reader, readerSize, dataSize, srcWidth);					
-									double interpolatedDouble = 0.0d;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedDouble = MResampler.interpolateDoublesNN(doubles, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedDouble = MResampler.interpolateDoublesBilinear(doubles, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedDouble = MResampler.interpolateDoublesBicubic(doubles, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putDouble(interpolatedDouble);
-									break;
-								case FLOAT:
-									float[] floats = MResampler.getFloatNeighbours(reader, readerSize, dataSize, srcWidth);					
-									float interpolatedFloat = 0.0f;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedFloat = MResampler.interpolateFloatsNN(floats, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedFloat = MResampler.interpolateFloatsBilinear(floats, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedFloat = MResampler.interpolateFloatsBicubic(floats, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putFloat(interpolatedFloat);
-									break;
-								case INT:
-									int[] ints = MResampler.getIntNeighbours(reader, readerSize, dataSize, srcWidth);					
-									int interpolatedInt = 0;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedInt = MResampler.interpolateIntsNN(ints, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedInt = MResampler.interpolateIntsBilinear(ints, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedInt = MResampler.interpolateIntsBicubic(ints, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putInt(interpolatedInt);
-									break;
-								case LONG:
-									long[] longs= MResampler.getLongNeighbours(reader, readerSize, dataSize, srcWidth);					
-									long interpolatedLong = 0l;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedLong = MResampler.interpolateLongsNN(longs, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedLong = MResampler.interpolateLongsBilinear(longs, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedLong = MResampler.interpolateLongsBicubic(longs, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putLong(interpolatedLong);
-									break;
-								case SHORT:
-									short[] shorts = MResampler.getShortNeighbours(reader, readerSize, dataSize, srcWidth);					
-									short interpolatedShort = 0;
-									
-									switch (method) {
-									case NEARESTNEIGHBOUR:
-										int nearestX = (int) Math.rint(src_raster_x);
-										int nearestY = (int) Math.rint(src_raster_y);
-										interpolatedShort = MResampler.interpolateShortsNN(shorts, nearestX, nearestY, srcX, srcY);
-										break;
-									case BILINEAR:
-										float x_diff = (float) (src_raster_x - srcX);
-										float y_diff = (float) (src_raster_y - srcY);
-										interpolatedShort = MResampler.interpolateShortsBilinear(shorts, x_diff, y_diff);
-										break;
-									case BICUBIC:
-										src_model_coord.x = src_raster_x;
-										src_model_coord.y = src_raster_y;
-										interpolatedShort = MResampler.interpolateShortsBicubic(shorts, src_model_coord, reader, srcX, srcY, srcWidth, srcHeight, dataSize);
-										break;
-									}
-									
-									newBuffer.putShort(interpolatedShort);
-									break;
-								default:
-									break;
-
-								}
-							}catch(IOException e){
-								Log.e(MReproject.class.getSimpleName(), "error reading from bytebuffered reader @ x : "+x+" y : "+ y);
-							}
-						}else{ //the src raster position is outside the raster bounds - > cannot use src raster
+					strip.position(b * bandSize + fromRow * dstWidth * dataType.size());
+					
+					for(int y = 0; y < stripRows; y++){
+						for(int x = 0; x < dstWidth; x++){
 							
-							addNoData(newBuffer, noData, dataType);
+							final int i = y * dstWidth + x;
 							
+							if(!Double.isNaN(src_raster_x[i])){
+								
+								//interpolate from the src values
+								row[x] = MResampler.interpolate(src, srcWidth, windowHeight, src_raster_x[i], src_raster_y[i] - top, method);
+								
+							}else{ //the position is outside the src raster - > use NoData values
+								
+								row[x] = noData.getValue();
+							}
+						}
+						//write the row to the new buffer
+						MResampler.writeValues(strip, dataType, row, dstWidth);
+						
+						//progress
+						if(b * stripRows + y > current){
+							if(listener != null){								
+								listener.onProgress(percent);
+							}
+							current += onePercent;
+							percent++;
 						}
-					}else{ // the calculated position is outside the src bounds -> cannot use src raster
-
-						// use NoData values and write it to the new buffer
-						addNoData(newBuffer, noData, dataType);
-
 					}
-				}				
+				}
 			}
-		}
-		//set the newBuffer as the rasters data
-		raster.setData(newBuffer);
+			
+			@Override
+			public void finish() {
+				
+				//set the newBuffer as the rasters data
+				raster.setData(newBuffer);
+				raster.setDimension(new Rect(0, 0, dstWidth, dstHeight));
+				raster.setBoundingBox(output.getBounds());
+				raster.setCRS(target_crs);
+			}
+		};
 	}
 	
 	/**
@@ -26,12 +26,50 @@ public abstract class Reproject implements RasterOp {
 	
 	private static final int INT_KEY_REPROJECT_TARGET_CRS = 1111;
 
+	private static final int INT_KEY_REPROJECT_MAX_ERROR = 1112;
+
+	private static final int INT_KEY_REPROJECT_TARGET_RESOLUTION = 1113;
+
+	private static final int INT_KEY_REPROJECT_TARGET_DIMENSION = 1114;
+
 	public static final Key KEY_REPROJECT_TARGET_CRS = new Hints.Key(INT_KEY_REPROJECT_TARGET_CRS){
 		@Override
 		public boolean isCompatibleValue(Object val) {
 			return val != null && val instanceof String;
 		}
 	};
+
+	/**
+	 * the maximum error in source pixels of the approximated source positions,
+	 * 0 to transform every pixel exactly, see ApproxTransformer
+	 */
+	public static final Key KEY_REPROJECT_MAX_ERROR = new Hints.Key(INT_KEY_REPROJECT_MAX_ERROR){
+		@Override
+		public boolean isCompatibleValue(Object val) {
+			return val != null && val instanceof Double && ((Double) val) >= 0;
+		}
+	};
+
+	/**
+	 * the resolution {x, y} of the result in target model units,
+	 * if not provided the resolution is suggested, see WarpOutput
+	 */
+	public static final Key KEY_REPROJECT_TARGET_RESOLUTION = new Hints.Key(INT_KEY_REPROJECT_TARGET_RESOLUTION){
+		@Override
+		public boolean isCompatibleValue(Object val) {
+			return val != null && val instanceof Double[] && ((Double[]) val).length == 2 && ((Double[]) val)[0] > 0 && ((Double[]) val)[1] > 0;
+		}
+	};
+
+	/**
+	 * the dimension {width, height} of the result in pixels, takes precedence over the resolution
+	 */
+	public static final Key KEY_REPROJECT_TARGET_DIMENSION = new Hints.Key(INT_KEY_REPROJECT_TARGET_DIMENSION){
+		@Override
+		public boolean isCompatibleValue(Object val) {
+			return val != null && val instanceof Integer[] && ((Integer[]) val).length == 2 && ((Integer[]) val)[0] > 0 && ((Integer[]) val)[1] > 0;
+		}
+	};
 	
 	//implemented by subclasses
 	@Override
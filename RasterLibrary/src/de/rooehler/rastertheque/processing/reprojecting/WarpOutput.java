@@ -0,0 +1,148 @@
+package de.rooehler.rastertheque.processing.reprojecting;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import de.rooehler.rastertheque.core.Raster;
+import de.rooehler.rastertheque.core.util.ReferencedEnvelope;
+import de.rooehler.rastertheque.util.Hints.Key;
+
+/**
+ * A WarpOutput is the geometry of the result of a reprojection,
+ * its bounds in the target crs, its dimension and its resolution
+ *
+ * the suggested output follows GDALSuggestedWarpOutput : the bounds are the
+ * transformed footprint of the source and the square pixels are sized such that
+ * the diagonal of the output has as many pixels as the diagonal of the source
+ *
+ * an explicit dimension or resolution can be provided as parameters of the reprojection
+ *
+ * @author Robert Oehler
+ *
+ */
+public class WarpOutput {
+
+	/**
+	 * the amount of points per edge which are transformed to determine the footprint
+	 */
+	private static final int FOOTPRINT_POINTS = 10;
+
+	private final Envelope mBounds;
+
+	private final int mWidth;
+
+	private final int mHeight;
+
+	/**
+	 * @param pBounds the bounds in the target crs
+	 * @param pWidth the width in pixels
+	 * @param pHeight the height in pixels
+	 */
+	public WarpOutput(final Envelope pBounds, final int pWidth, final int pHeight) {
+
+		this.mBounds = pBounds;
+		this.mWidth = pWidth;
+		this.mHeight = pHeight;
+	}
+
+	/**
+	 * determines the output of the reprojection of @param raster to @param targetCRS
+	 *
+	 * if @param params contain Reproject.KEY_REPROJECT_TARGET_DIMENSION the footprint is divided
+	 * into this dimension, otherwise if they contain Reproject.KEY_REPROJECT_TARGET_RESOLUTION
+	 * the footprint is covered by pixels of this resolution, otherwise the output is suggested
+	 *
+	 * @return the output
+	 */
+	public static WarpOutput create(final Raster raster, final CoordinateReferenceSystem targetCRS, final Map<Key, Serializable> params){
+
+		final ReferencedEnvelope source = new ReferencedEnvelope(raster.getBoundingBox(), raster.getCRS());
+
+		final Envelope footprint = source.transform(targetCRS, FOOTPRINT_POINTS).getEnvelope();
+
+		if(params != null && params.containsKey(Reproject.KEY_REPROJECT_TARGET_DIMENSION)){
+
+			final Integer[] dimension = (Integer[]) params.get(Reproject.KEY_REPROJECT_TARGET_DIMENSION);
+
+			return new WarpOutput(footprint, dimension[0], dimension[1]);
+		}
+
+		if(params != null && params.containsKey(Reproject.KEY_REPROJECT_TARGET_RESOLUTION)){
+
+			final Double[] resolution = (Double[]) params.get(Reproject.KEY_REPROJECT_TARGET_RESOLUTION);
+
+			return fromResolution(footprint, resolution[0], resolution[1]);
+		}
+
+		final int srcWidth = raster.getDimension().width();
+		final int srcHeight = raster.getDimension().height();
+
+		//the diagonal of the output has as many pixels as the diagonal of the source
+		final double diagonal = Math.sqrt(footprint.getWidth() * footprint.getWidth() + footprint.getHeight() * footprint.getHeight());
+		final double pixelSize = diagonal / Math.sqrt((double) srcWidth * srcWidth + (double) srcHeight * srcHeight);
+
+		return fromResolution(footprint, pixelSize, pixelSize);
+	}
+
+	/**
+	 * covers the @param footprint with pixels of @param xRes and @param yRes
+	 * the bounds are extended to the right and to the bottom to full pixels
+	 */
+	private static WarpOutput fromResolution(final Envelope footprint, final double xRes, final double yRes){
+
+		final int width = Math.max(1, (int) (footprint.getWidth() / xRes + 0.5));
+		final int height = Math.max(1, (int) (footprint.getHeight() / yRes + 0.5));
+
+		final Envelope bounds = new Envelope(
+				footprint.getMinX(),
+				footprint.getMinX() + width * xRes,
+				footprint.getMaxY() - height * yRes,
+				footprint.getMaxY());
+
+		return new WarpOutput(bounds, width, height);
+	}
+
+	/**
+	 * @return the bounds of the output in the target crs
+	 */
+	public Envelope getBounds() {
+		return mBounds;
+	}
+
+	/**
+	 * @return the width of the output in pixels
+	 */
+	public int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * @return the height of the output in pixels
+	 */
+	public int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * @return the width of an output pixel in target model units
+	 */
+	public double getXRes() {
+		return mBounds.getWidth() / mWidth;
+	}
+
+	/**
+	 * @return the height of an output pixel in target model units
+	 */
+	public double getYRes() {
+		return mBounds.getHeight() / mHeight;
+	}
+
+	@Override
+	public String toString() {
+		return "WarpOutput [bounds=" + mBounds + ", width=" + mWidth + ", height=" + mHeight + "]";
+	}
+}
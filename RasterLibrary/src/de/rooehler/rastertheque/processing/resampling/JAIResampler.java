@@ -1,17 +1,14 @@
 package de.rooehler.rastertheque.processing.resampling;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Map;
 
 import android.graphics.Rect;
-import android.util.Log;
 import de.rooehler.jai.JaiInterpolate;
 import de.rooehler.rastertheque.core.DataType;
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
 import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
 import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.util.Hints;
@@ -27,6 +24,9 @@ import de.rooehler.rastertheque.util.ProgressListener;
  * As JAI supports only int as Integer data format, other 
  * integer datatypes are wrapped by ints
  * 
+ * JAI has no Lanczos interpolation, LANCZOS is resampled by MResampler,
+ * whose kernel is widened when sampling down
+ * 
  * @author Robert Oehler
  *
  */
@@ -53,6 +53,11 @@ public class JAIResampler extends Resampler implements RasterOp, Serializable  {
 		if(hints != null && hints.containsKey(Hints.KEY_INTERPOLATION)){
 			method = (ResampleMethod) hints.get(Hints.KEY_INTERPOLATION);
 		}
+		
+		if(method == ResampleMethod.LANCZOS){
+			new MResampler().execute(raster, params, hints, listener);
+			return;
+		}
 
 		final int srcWidth  = raster.getDimension().width();
 		final int srcHeight = raster.getDimension().height();
@@ -60,10 +65,7 @@ public class JAIResampler extends Resampler implements RasterOp, Serializable  {
 		final int dstWidth = (int) (srcWidth * scaleX);
 		final int dstHeight = (int) (srcHeight * scaleY);
 		
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
 		final DataType dataType = raster.getBands().get(0).datatype();
-		final int bandSize = srcWidth * srcHeight * dataType.size();
-		final int readerSize = bandSize * raster.getBands().size();
 		
 		int interpolation = 0;
 		switch (method) {
@@ -76,26 +78,41 @@ public class JAIResampler extends Resampler implements RasterOp, Serializable  {
 		case BICUBIC:
 			interpolation = 2;
 			break;
+		case MODE:
+			//JAI has no area methods, they are approximated
+			interpolation = 0;
+			break;
+		case AVERAGE:
+		default:
+			interpolation = 1;
+			break;
 		}
 				
-		final int newBufferSize = dstWidth * dstHeight * raster.getBands().size() * raster.getBands().get(0).datatype().size();
+		final int newBufferSize = dstWidth * dstHeight * raster.getBands().size() * dataType.size();
 		final ByteBuffer buffer = ByteBuffer.allocate(newBufferSize);
 		buffer.order(ByteOrder.nativeOrder()); 
 		
-		int x, y, index;
+		int x, y, x1, y1;
 		float x_ratio = ((float) (srcWidth - 1)) / dstWidth;
 		float y_ratio = ((float) (srcHeight - 1)) / dstHeight;
 		float x_diff, y_diff;
 		final int bandAmount = raster.getBands().size();
 		
-		final float onePercent = raster.getBands().size() * dstHeight * dstWidth / 100f;
+		final float onePercent = bandAmount * dstHeight / 100f;
 		float current = onePercent;
 		int percent = 1;
+		
+		//the neighbourhoods, JAI supports only int as integer type
+		final int[] ints = new int[4];
+		final float[] floats = new float[4];
+		final double[] doubles = new double[4];
+		
+		double[] src = null;
+		final double[] row = new double[dstWidth];
 
 		for(int h = 0; h < bandAmount; h++){
 			
-			final int dataSize = raster.getBands().get(h).datatype().size();
-			final int bandIndex = h * srcHeight * srcWidth;
+			src = raster.getDoubles(h, src);
 			
 			for (int i = 0; i < dstHeight; i++) {
 				for (int j = 0; j < dstWidth; j++) {
@@ -103,91 +120,46 @@ public class JAIResampler extends Resampler implements RasterOp, Serializable  {
 					// src pix coords
 					x = (int) (x_ratio * j);
 					y = (int) (y_ratio * i);
+					x1 = Math.min(x + 1, srcWidth - 1);
+					y1 = Math.min(y + 1, srcHeight - 1);
 
 					// offsets from the current pos to the pos in the new array
 					x_diff = (x_ratio * j) - x;
 					y_diff = (y_ratio * i) - y;
 
-					index = (y * srcWidth + x);
+					doubles[0] = src[y  * srcWidth + x];
+					doubles[1] = src[y  * srcWidth + x1];
+					doubles[2] = src[y1 * srcWidth + x];
+					doubles[3] = src[y1 * srcWidth + x1];
 					
-					//progress
-					if(index * bandAmount > current){
-						if(listener != null){							
-							listener.onProgress(percent);
+					switch(dataType) {
+					case FLOAT:
+						for(int n = 0; n < 4; n++){
+							floats[n] = (float) doubles[n];
 						}
-						current += onePercent;
-						percent++;
-					}
-					
-					reader.seekToOffset(index * dataSize + bandIndex);
-					
-					try{
-
-						switch(raster.getBands().get(h).datatype()) {
-
-						case BYTE:
-							final byte[] bytes = MResampler.getByteNeighbours(reader, readerSize, dataSize, srcWidth);	
-							final int[] _bytes = new int[4];
-							for(int ib = 0; ib < 4; ib++){
-								_bytes[ib] = (int) bytes[ib];
-							}
-							final int interpolatedByte = JaiInterpolate.interpolateRawInts(_bytes, x_diff, y_diff, interpolation);
-
-							buffer.put((byte)interpolatedByte);
-							break;
-						case CHAR:
-							final char[] chars = MResampler.getCharNeighbours(reader, readerSize, dataSize, srcWidth);	
-							final int[] _chars = new int[4];
-							for(int ic = 0; ic < 4; ic++){
-								_chars[ic] = (int) chars[ic];
-							}
-							final int interpolatedChar = JaiInterpolate.interpolateRawInts(_chars, x_diff, y_diff, interpolation);
-							
-							buffer.putChar((char)interpolatedChar);
-							break;
-						case SHORT:
-							final short[] shorts = MResampler.getShortNeighbours(reader, readerSize, dataSize, srcWidth);			
-							final int[] _shorts = new int[4];
-							for(int is = 0; is < 4; is++){
-								_shorts[is] = (int) shorts[is];
-							}
-							final int interpolatedShort = JaiInterpolate.interpolateRawInts(_shorts, x_diff, y_diff, interpolation);
-							buffer.putShort((short)interpolatedShort);
-							break;
-						case INT:
-							final int[] ints = MResampler.getIntNeighbours(reader, readerSize, dataSize, srcWidth);	
-							final int interpolatedInt = JaiInterpolate.interpolateRawInts(ints, x_diff, y_diff, interpolation);
-
-							buffer.putInt(interpolatedInt);
-							break;
-						case LONG:
-							final long[] longs= MResampler.getLongNeighbours(reader, readerSize, dataSize, srcWidth);		
-							final int[] _longs = new int[4];
-							for(int il = 0; il < 4; il++){
-								_longs[il] = (int) longs[il];
-							}
-							final int interpolatedLong = JaiInterpolate.interpolateRawInts(_longs, x_diff, y_diff, interpolation);
-
-							buffer.putLong(interpolatedLong);
-							break;
-						case FLOAT:
-							final float[] floats = MResampler.getFloatNeighbours(reader, readerSize, dataSize, srcWidth);	
-							
-							final float interpolatedFloat = JaiInterpolate.interpolateRawFloats(floats, x_diff, y_diff, interpolation);
-
-							buffer.putFloat(interpolatedFloat);
-							break;
-						case DOUBLE:
-							final double[] doubles = MResampler.getDoubleNeighbours(reader, readerSize, dataSize, srcWidth);	
-							
-							final double interpolatedDouble = JaiInterpolate.interpolateRawDoubles(doubles, x_diff, y_diff, interpolation);
-
-							buffer.putDouble(interpolatedDouble);
-							break;
+						row[j] = JaiInterpolate.interpolateRawFloats(floats, x_diff, y_diff, interpolation);
+						break;
+					case DOUBLE:
+						row[j] = JaiInterpolate.interpolateRawDoubles(doubles, x_diff, y_diff, interpolation);
+						break;
+					default:
+						for(int n = 0; n < 4; n++){
+							ints[n] = (int) doubles[n];
 						}
-					}catch(IOException e){
-						Log.e(JAIResampler.class.getSimpleName(), "IOException reading bytebufferedreader",e);
+						row[j] = JaiInterpolate.interpolateRawInts(ints, x_diff, y_diff, interpolation);
+						break;
+					}
+				}
+				
+				MResampler.writeValues(buffer, dataType, row, dstWidth);
+				
+				//progress
+				if(h * dstHeight + i > current){
+					if(listener != null){							
+						listener.onProgress(percent);
 					}
+					current += onePercent;
+					percent++;
 				}
 			}
 		}
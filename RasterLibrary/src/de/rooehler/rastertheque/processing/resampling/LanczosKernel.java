@@ -0,0 +1,119 @@
+package de.rooehler.rastertheque.processing.resampling;
+
+/**
+ * LanczosKernel provides the weights of the Lanczos kernel with a radius of 3
+ *
+ * the weights are not evaluated per pixel, they are looked up from a table
+ * which is computed once for a subdivision of the fractional position between two pixels
+ *
+ * the weights of a position are normalized, they sum up to 1
+ *
+ * the table covers interpolations at the source resolution, when sampling down
+ * the kernel is stretched by the reduction factor, its values at the stretched
+ * distances are interpolated from a second table of the values of the kernel
+ *
+ * @author Robert Oehler
+ *
+ */
+public class LanczosKernel {
+
+	/**
+	 * the radius of the kernel
+	 */
+	public static final int RADIUS = 3;
+
+	/**
+	 * the amount of pixels the kernel combines along an axis
+	 */
+	public static final int TAPS = 2 * RADIUS;
+
+	/**
+	 * the amount of fractional positions between two pixels the tables contain
+	 */
+	public static final int SUBDIVISIONS = 1024;
+
+	private static final double[] WEIGHTS = computeWeights();
+
+	private static final double[] VALUES = computeValues();
+
+	/**
+	 * returns the index of the weights of the fractional position @param fraction within [0, 1]
+	 * the weight of the tap t, which is the pixel floor(pos) - RADIUS + 1 + t,
+	 * is found at index + t
+	 */
+	public static int index(final double fraction){
+
+		return (int) (fraction * SUBDIVISIONS + 0.5) * TAPS;
+	}
+
+	/**
+	 * @return the weight at @param index
+	 */
+	public static double weight(final int index){
+
+		return WEIGHTS[index];
+	}
+
+	private static double[] computeWeights(){
+
+		final double[] weights = new double[(SUBDIVISIONS + 1) * TAPS];
+
+		for(int s = 0; s <= SUBDIVISIONS; s++){
+
+			final double fraction = s / (double) SUBDIVISIONS;
+
+			double sum = 0;
+			for(int t = 0; t < TAPS; t++){
+				weights[s * TAPS + t] = lanczos(fraction - (t - RADIUS + 1));
+				sum += weights[s * TAPS + t];
+			}
+			for(int t = 0; t < TAPS; t++){
+				weights[s * TAPS + t] /= sum;
+			}
+		}
+
+		return weights;
+	}
+
+	private static double[] computeValues(){
+
+		//one more entry, the value at the radius is 0
+		final double[] values = new double[RADIUS * SUBDIVISIONS + 2];
+
+		for(int i = 0; i <= RADIUS * SUBDIVISIONS; i++){
+			values[i] = lanczos(i / (double) SUBDIVISIONS);
+		}
+
+		return values;
+	}
+
+	/**
+	 * returns the (not normalized) value of the kernel at the distance @param x
+	 * linearly interpolated from the table of its values
+	 */
+	public static double value(final double x){
+
+		final double pos = Math.abs(x) * SUBDIVISIONS;
+
+		if(pos >= RADIUS * SUBDIVISIONS){
+			return 0;
+		}
+		final int i = (int) pos;
+		final double fraction = pos - i;
+
+		return VALUES[i] + (VALUES[i + 1] - VALUES[i]) * fraction;
+	}
+
+	private static double lanczos(final double x){
+
+		if(x == 0){
+			return 1;
+		}
+		if(x <= -RADIUS || x >= RADIUS){
+			return 0;
+		}
+		final double px = Math.PI * x;
+
+		return RADIUS * Math.sin(px) * Math.sin(px / RADIUS) / (px * px);
+	}
+}
@@ -1,46 +1,67 @@
 package de.rooehler.rastertheque.processing.resampling;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Map;
 
 import android.graphics.Rect;
-import android.util.Log;
-
-import com.vividsolutions.jts.geom.Coordinate;
 
+import de.rooehler.rastertheque.core.DataType;
+import de.rooehler.rastertheque.core.NoData;
 import de.rooehler.rastertheque.core.Raster;
-import de.rooehler.rastertheque.core.util.ByteBufferReader;
 import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
-import de.rooehler.rastertheque.processing.RasterOp;
+import de.rooehler.rastertheque.processing.RowRasterOp;
+import de.rooehler.rastertheque.processing.SplittableRasterOp;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
 import de.rooehler.rastertheque.util.ProgressListener;
 /**
  * Implementation of the Resampling operation
  * following algorithms and samples found in :
- * 
+ *
  * Burger, Wilhelm & Burge, Mark James :
  * Digital Image Processing. Springer, 2008
- * 
+ *
  * Currently the interpolation methods
- * 
+ *
  * NEARESTNEIGHBOUR
  * BILINEAR
  * BICUBIC
- * 
- * are realised
- * 
+ * LANCZOS
+ *
+ * are realised, for downsampling the area methods
+ *
+ * AVERAGE
+ * MODE
+ *
+ * reduce all source pixels a destination pixel covers
+ *
+ * the interpolation kernels are separable, the source rows are resampled horizontally
+ * and then combined vertically using precomputed ResampleCoefficients,
+ * only the source rows the vertical kernel needs are converted and kept in a ring of row buffers,
+ * the results are written row by row
+ *
+ * the rows of the result can be computed in parallel strips, see SplittableRasterOp
+ *
  * @author Robert Oehler
  *
  */
-public class MResampler extends Resampler implements RasterOp, Serializable  {
+public class MResampler extends Resampler implements SplittableRasterOp, RowRasterOp, Serializable  {
 
 
 	private static final long serialVersionUID = -5891230160742468189L;
 
+	/**
+	 * the parameter of the cubic convolution kernel,
+	 * -0.5 approximates the underlying signal best (Keys, 1981)
+	 *
+	 * the kernel is evaluated at the fractional distances of a position
+	 * and the results of integer types are rounded
+	 */
+	private static final double CUBIC_A = -0.5d;
+
 	/**
 	 * executes the operation on the @param raster according to the @params
 	 * using the optional @param hints
@@ -49,855 +70,753 @@ public class MResampler extends Resampler implements RasterOp, Serializable  {
 	@Override
 	public void execute(Raster raster,Map<Key,Serializable> params, Hints hints, ProgressListener listener) {
 
-		double scaleX = 0;
-		double scaleY = 0;
-		if(params != null && params.containsKey(KEY_SIZE)){
-			Double[] factors = (Double[]) params.get(KEY_SIZE);
-			scaleX = factors[0];
-			scaleY = factors[1];
-		}else{
-			throw new IllegalArgumentException("no scale factors provided, cannot continue");
-		}
+		final Split split = split(raster, params, hints);
 
-		ResampleMethod method = ResampleMethod.BILINEAR;
-		if(hints != null && hints.containsKey(Hints.KEY_INTERPOLATION)){
-			method = (ResampleMethod) hints.get(Hints.KEY_INTERPOLATION);
-		}
+		split.execute(0, split.getRows(), listener);
+
+		split.finish();
+	}
+
+	/**
+	 * prepares the resampling of @param raster
+	 *
+	 * the rows of the result are interpolated independently of each other,
+	 * a strip of rows reads only the source rows it covers plus the halo the interpolation kernel needs
+	 */
+	@Override
+	public Split split(final Raster raster, Map<Key, Serializable> params, Hints hints) {
+
+		final Double[] factors = getScaleFactors(params);
+		final ResampleMethod method = getMethod(hints);
 
 		final int srcWidth  = raster.getDimension().width();
 		final int srcHeight = raster.getDimension().height();
 
-		final int dstWidth = (int) (srcWidth * scaleX);
-		final int dstHeight = (int) (srcHeight * scaleY);
+		final int dstWidth = (int) (srcWidth * factors[0]);
+		final int dstHeight = (int) (srcHeight * factors[1]);
 
-		final ByteBufferReader reader = new ByteBufferReader(raster.getData().array(), ByteOrder.nativeOrder());
+		final ResampleCoefficients horizontal = ResampleCoefficients.get(srcWidth, dstWidth, method);
+		final ResampleCoefficients vertical = ResampleCoefficients.get(srcHeight, dstHeight, method);
 
-		int x, y, index, nearestX, nearestY;
-		float x_ratio = ((float) (srcWidth - 1)) / dstWidth;
-		float y_ratio = ((float) (srcHeight - 1)) / dstHeight;
-		float x_diff, y_diff;
+		final DataType dataType = raster.getBands().get(0).datatype();
+		final int bandAmount = raster.getBands().size();
 
-		final int readerSize = ((int)srcWidth) * ((int)srcHeight) * raster.getBands().size() * raster.getBands().get(0).datatype().size();
+		final int newBufferSize = dstWidth * dstHeight * bandAmount * dataType.size();
 
-		final int newBufferSize = ((int)dstWidth) * ((int)dstHeight) * raster.getBands().size() * raster.getBands().get(0).datatype().size();
+		final ByteBuffer buffer = ByteBuffer.allocate(newBufferSize);
+		buffer.order(ByteOrder.nativeOrder());
 
-		Coordinate coord = new Coordinate();
-		
-		final int bandAmount = raster.getBands().size();
-		final float onePercent = bandAmount * dstHeight * dstWidth / 100f;
-		float current = onePercent;
-		int percent = 1;
-		
-		
-		try{
+		//a kernel which is widened when sampling down reads more rows
+		final int halo = Math.max(getHalo(method), (vertical.getTaps() + 1) / 2);
 
-			final ByteBuffer buffer = ByteBuffer.allocate(newBufferSize);
-			buffer.order(ByteOrder.nativeOrder()); 
+		return new Split() {
 
-			for(int h = 0; h < bandAmount; h++){
-				final int dataSize = raster.getBands().get(h).datatype().size();
-				final int bandIndex = h * srcHeight * srcWidth;
+			@Override
+			public int getRows() {
+				return dstHeight;
+			}
 
-				for (int i = 0; i < dstHeight; i++) {
-					for (int j = 0; j < dstWidth; j++) {
+			@Override
+			public int getHalo() {
+				return halo;
+			}
+
+			@Override
+			public void execute(int fromRow, int toRow, ProgressListener listener) {
+
+				if(fromRow >= toRow){
+					return;
+				}
 
-						// src pix coords
-						x = (int) (x_ratio * j);
-						y = (int) (y_ratio * i);
+				final boolean area = vertical.isArea();
 
-						// offsets from the current pos to the pos in the new image
-						x_diff = (x_ratio * j) - x;
-						y_diff = (y_ratio * i) - y;
+				final int stripRows = toRow - fromRow;
+				final float onePercent = bandAmount * stripRows / 100f;
+				float current = onePercent;
+				int percent = 1;
 
-						// current pos
-						index = y * srcWidth + x;
+				final ResampledRows rows = area ? null : new ResampledRows(raster, horizontal, vertical);
+				final AreaReducer reducer = area ? new AreaReducer(raster, horizontal, vertical, method) : null;
+				final double[] row = new double[dstWidth];
+
+				final ByteBuffer strip = buffer.duplicate();
+				strip.order(buffer.order());
+
+				for(int h = 0; h < bandAmount; h++){
+
+					strip.position((h * dstHeight + fromRow) * dstWidth * dataType.size());
+
+					for (int i = fromRow; i < toRow; i++) {
+
+						if(area){
+							reducer.reduce(h, i, row);
+						}else{
+							rows.combine(h, i, row);
+						}
+
+						writeValues(strip, dataType, row, dstWidth);
 
 						//progress
-						if(index * bandAmount > current){
-							if(listener != null){								
+						if(h * stripRows + i - fromRow > current){
+							if(listener != null){
 								listener.onProgress(percent);
 							}
 							current += onePercent;
 							percent++;
 						}
-						//move buffer
-						reader.seekToOffset(index * dataSize + bandIndex);
-
-						switch(raster.getBands().get(h).datatype()) {
-
-						case BYTE:
-
-							byte[] bytes = getByteNeighbours(reader, readerSize, dataSize, srcWidth);					
-							byte interpolatedByte = 0;
-
-							switch (method) {
-							case BICUBIC:
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedByte = interpolateBytesBicubic(bytes, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;
-							case BILINEAR:
-								interpolatedByte = interpolateBytesBilinear(bytes, x_diff, y_diff);
-								break;
-							case NEARESTNEIGHBOUR:
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedByte = interpolateBytesNN(bytes, nearestX, nearestY, x, y);
-								break;
-
-							default:
-								break;
-							}
-							//Log.d(MRawResampler.class.getSimpleName(), String.format("x %d y %d resampled %d", j, i , interpolatedByte));
-							buffer.put(interpolatedByte);
-							break;
-						case CHAR:
-
-							char[] chars = getCharNeighbours(reader,readerSize,dataSize, srcWidth);
-							char interpolatedValue = 0;
-
-							switch(method){
-							case BICUBIC:
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedValue = interpolateCharsBicubic(chars, coord, reader, x, y, srcWidth, srcHeight, dataSize);				
-								break;						
-							case BILINEAR:
-								interpolatedValue = interpolateCharsBilinear(chars, x_diff, y_diff);
-								break;						
-							case NEARESTNEIGHBOUR:	
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedValue = interpolateCharsNN(chars, nearestX, nearestY, x, y);
-								break;
-							}
-							buffer.putChar(interpolatedValue);
-							break;
-						case DOUBLE:
-
-							double[] doubles = getDoubleNeighbours(reader,readerSize,dataSize,srcWidth);
-							double interpolatedDouble = 0;
-
-							switch(method){
-							case BICUBIC:								
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedDouble = interpolateDoublesBicubic(doubles, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;							
-							case BILINEAR:
-								// Yb = Ab(1-w)(1-h) + Bb(w)(1-h) + Cb(h)(1-w) + Db(wh)
-								interpolatedDouble = interpolateDoublesBilinear(doubles, x_diff, y_diff);
-								break;
-							case NEARESTNEIGHBOUR:
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedDouble = interpolateDoublesNN(doubles, nearestX, nearestY, x, y);
-								break;						
-							}
-							buffer.putDouble(interpolatedDouble);
-							break;
-
-						case FLOAT:
-
-							float[] floats = getFloatNeighbours(reader,readerSize,dataSize,srcWidth);
-							float interpolatedFloat = 0;
-
-							switch(method){
-							case BICUBIC:						
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedFloat = interpolateFloatsBicubic(floats, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;					
-							case BILINEAR:
-								interpolatedFloat = interpolateFloatsBilinear(floats, x_diff, y_diff);
-								break;
-							case NEARESTNEIGHBOUR:	
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedFloat = interpolateFloatsNN(floats, nearestX, nearestY, x, y);
-								break;
-							}
-							buffer.putFloat(interpolatedFloat);
-							break;
-						case INT:
-
-							int[] ints = getIntNeighbours(reader,readerSize,dataSize,srcWidth);
-							int interpolatedInt = 0;
-
-							switch(method){
-							case BICUBIC:							
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedInt = interpolateIntsBicubic(ints, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;					
-							case BILINEAR:
-								interpolatedInt = interpolateIntsBilinear(ints, x_diff, y_diff);
-								break;
-							case NEARESTNEIGHBOUR:	
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedInt = interpolateIntsNN(ints, nearestX, nearestY, x, y);
-								break;
-							}
-							buffer.putInt(interpolatedInt);
-							break;
-						case LONG:
-
-							long[] longs = getLongNeighbours(reader,readerSize,dataSize,srcWidth);
-							long interpolatedLong = 0;
-
-							switch(method){
-							case BICUBIC:					
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedLong = interpolateLongsBicubic(longs, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;							
-							case BILINEAR:
-								interpolatedLong = interpolateLongsBilinear(longs, x_diff, y_diff);
-								break;						
-							case NEARESTNEIGHBOUR:
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedLong = interpolateLongsNN(longs, nearestX, nearestY, x, y);
-								break;
-							}
-							buffer.putLong(interpolatedLong);
-							break;
-						case SHORT:
-
-							short[] shorts = getShortNeighbours(reader,readerSize,dataSize,srcWidth);
-							short interpolatedShort= 0;
-
-							switch(method){
-							case BICUBIC:								
-								coord.x = x_ratio * j;
-								coord.y = y_ratio * i;
-								interpolatedShort = interpolateShortsBicubic(shorts, coord, reader, x, y, srcWidth, srcHeight, dataSize);
-								break;							
-							case BILINEAR:
-								interpolatedShort = interpolateShortsBilinear(shorts, x_diff, y_diff);
-								break;							
-							case NEARESTNEIGHBOUR:	
-								nearestX = (int) Math.rint(x + x_diff);
-								nearestY = (int) Math.rint(y + y_diff);
-								interpolatedShort = interpolateShortsNN(shorts, nearestX, nearestY, x, y);
-								break;
-							}
-							buffer.putShort(interpolatedShort);
-							break;
-						}
 					}
 				}
 			}
 
-			raster.setDimension(new Rect(0, 0, dstWidth, dstHeight));
+			@Override
+			public void finish() {
 
-			raster.setData(buffer);
+				raster.setDimension(new Rect(0, 0, dstWidth, dstHeight));
 
-		}catch(IOException e){
-			Log.e(MResampler.class.getSimpleName(), "Error reading raster values",e);
-		}
+				raster.setData(buffer);
+			}
+		};
 	}
 
-	/////////////////**************SHORTS*************/////////////////////////////	
+	/**
+	 * prepares the resampling of @param raster row by row,
+	 * the source rows are read when a requested row needs them
+	 *
+	 * the values are quantized to the data type of the raster, as if they were written to its buffer
+	 */
+	@Override
+	public Rows rows(final Raster raster, Map<Key, Serializable> params, Hints hints) {
 
-	public static short[] getShortNeighbours(ByteBufferReader reader, int readerSize,int dataSize, int srcWidth) throws IOException {
-		short[] shorts = new short[4];
-		shorts[0] = reader.readShort();
-		if(reader.getPos() < readerSize){					
-			shorts[1] = reader.readShort();
-		}else{
-			shorts[1] = shorts[0];
-		}
+		final Double[] factors = getScaleFactors(params);
+		final ResampleMethod method = getMethod(hints);
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			shorts[2] = reader.readShort();	
-			if(reader.getPos() < readerSize){
-				shorts[3] = reader.readShort();
-			}else{
-				shorts[3] = shorts[2];	
-			}
-		}else{
-			shorts[2] = shorts[0];	
-			shorts[3] = shorts[1];
-		}
-		return shorts;
-	}
+		final int srcWidth  = raster.getDimension().width();
+		final int srcHeight = raster.getDimension().height();
 
-	public static short interpolateShortsBicubic(short[] shorts, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
+		final int dstWidth = (int) (srcWidth * factors[0]);
+		final int dstHeight = (int) (srcHeight * factors[1]);
 
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
+		final ResampleCoefficients horizontal = ResampleCoefficients.get(srcWidth, dstWidth, method);
+		final ResampleCoefficients vertical = ResampleCoefficients.get(srcHeight, dstHeight, method);
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		short bicubic_short = 0;
+		final DataType dataType = raster.getBands().get(0).datatype();
 
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
+		return new Rows() {
 
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+			private final ResampledRows rows = vertical.isArea() ? null : new ResampledRows(raster, horizontal, vertical);
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_short = reader.readShort();
+			private final AreaReducer reducer = vertical.isArea() ? new AreaReducer(raster, horizontal, vertical, method) : null;
 
-				p = p + bicubic_short * cubic(x - u, a);
+			@Override
+			public int getWidth() {
+				return dstWidth;
 			}
 
-			q = q + p * cubic(y - v, a);
-		}
+			@Override
+			public int getHeight() {
+				return dstHeight;
+			}
 
-		return (short) q;
+			@Override
+			public void getRow(int band, int y, double[] values) {
 
-	}
+				if(reducer != null){
 
-	public static short interpolateShortsBilinear(short[] shorts, float x_diff, float y_diff){
+					reducer.reduce(band, y, values);
 
-		return (short)  Math.rint((shorts[0] * (1 - x_diff) * (1 - y_diff) +
-				shorts[1] * (x_diff) * (1 - y_diff) +
-				shorts[2] * (y_diff) * (1 - x_diff) +
-				shorts[3] * (x_diff * y_diff)));
+				}else{
 
-	}
+					rows.combine(band, y, values);
+				}
 
-	public static short interpolateShortsNN(short[] shorts, int nearestX, int nearestY, int x, int y){
+				for (int j = 0; j < dstWidth; j++) {
 
-		if(nearestX == x && nearestY == y){
-			return shorts[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return shorts[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return shorts[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return shorts[3];
-		}
-		return 0;
+					values[j] = quantize(dataType, values[j]);
+				}
+			}
+		};
 	}
 
-	/////////////////**************LONGS*************/////////////////////////////
-
-	public static long[] getLongNeighbours(ByteBufferReader reader, int readerSize,int dataSize, int srcWidth)throws IOException {
-		long[] longs = new long[4];
-		longs[0] = reader.readLong();
-		if(reader.getPos() < readerSize){					
-			longs[1] = reader.readLong();
-		}else{
-			longs[1] = longs[0];
-		}
+	/**
+	 * @return the scale factors {x, y} contained in @param params
+	 * @throws IllegalArgumentException if no scale factors are provided
+	 */
+	private static Double[] getScaleFactors(final Map<Key, Serializable> params){
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			longs[2] = reader.readLong();	
-			if(reader.getPos() < readerSize){
-				longs[3] = reader.readLong();
-			}else{
-				longs[3] = longs[2];	
-			}
-		}else{
-			longs[2] = longs[0];	
-			longs[3] = longs[1];
+		if(params != null && params.containsKey(KEY_SIZE)){
+			return (Double[]) params.get(KEY_SIZE);
 		}
-		return longs;
+		throw new IllegalArgumentException("no scale factors provided, cannot continue");
 	}
 
-	public static long interpolateLongsBicubic(long[] longs, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
-
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
-
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		long bicubic_long = 0;
-
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
-
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+	/**
+	 * @return the interpolation method contained in @param hints, BILINEAR by default
+	 */
+	private static ResampleMethod getMethod(final Hints hints){
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_long = reader.readLong();
+		if(hints != null && hints.containsKey(Hints.KEY_INTERPOLATION)){
+			return (ResampleMethod) hints.get(Hints.KEY_INTERPOLATION);
+		}
+		return ResampleMethod.BILINEAR;
+	}
 
-				p = p + bicubic_long * cubic(x - u, a);
-			}
+	/**
+	 * the amount of rows above and below a position which
+	 * the interpolation kernel of @param method reads
+	 */
+	public static int getHalo(final ResampleMethod method){
 
-			q = q + p * cubic(y - v, a);
+		switch (method) {
+		case BICUBIC:
+			return 2;
+		case LANCZOS:
+			return LanczosKernel.RADIUS;
+		case NEARESTNEIGHBOUR:
+		case BILINEAR:
+		default:
+			return 1;
 		}
+	}
 
-		return (long) q;
+	/**
+	 * interpolates the value at the position @param x, @param y
+	 * of the raster values @param src using @param method
+	 *
+	 * positions outside of the raster are clamped to its border,
+	 * the area methods are approximated at a single position, AVERAGE bilinearly and MODE by the nearest neighbour
+	 *
+	 * @param src the values of one band of the raster
+	 * @param srcWidth the width of the raster
+	 * @param srcHeight the height of the raster
+	 * @return the interpolated value
+	 */
+	public static double interpolate(final double[] src, final int srcWidth, final int srcHeight, final double x, final double y, final ResampleMethod method){
 
+		switch (method) {
+		case NEARESTNEIGHBOUR:
+		case MODE:
+			return interpolateNN(src, srcWidth, srcHeight, x, y);
+		case BICUBIC:
+			return interpolateBicubic(src, srcWidth, srcHeight, x, y);
+		case LANCZOS:
+			return interpolateLanczos(src, srcWidth, srcHeight, x, y);
+		case BILINEAR:
+		default:
+			return interpolateBilinear(src, srcWidth, srcHeight, x, y);
+		}
 	}
 
-	public static long interpolateLongsBilinear(long[] longs, float x_diff, float y_diff){
-
-		return 	(long)  Math.rint((longs[0] * (1 - x_diff) * (1 - y_diff) +
-				longs[1] * (x_diff) * (1 - y_diff) +
-				longs[2] * (y_diff) * (1 - x_diff) +
-				longs[3] * (x_diff * y_diff)));
+	/**
+	 * returns the value of the pixel nearest to @param x, @param y
+	 */
+	public static double interpolateNN(final double[] src, final int srcWidth, final int srcHeight, final double x, final double y){
 
-	}
-	public static long interpolateLongsNN(long[] longs, int nearestX, int nearestY, int x, int y){
-
-		if(nearestX == x && nearestY == y){
-			return longs[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return longs[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return longs[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return longs[3];
-		}
-		return 0;
+		final int nearestX = clamp((int) Math.rint(x), srcWidth);
+		final int nearestY = clamp((int) Math.rint(y), srcHeight);
 
+		return src[nearestY * srcWidth + nearestX];
 	}
 
-	/////////////////**************INTS*************/////////////////////////////
+	/**
+	 * interpolates the value at @param x, @param y bilinearly from its four neighbours
+	 */
+	public static double interpolateBilinear(final double[] src, final int srcWidth, final int srcHeight, final double x, final double y){
 
-	public static int[] getIntNeighbours(ByteBufferReader reader, int readerSize,int dataSize, int srcWidth) throws IOException{
-		int[] ints = new int[4];
-		ints[0] = reader.readInt();
-		if(reader.getPos() < readerSize){					
-			ints[1] = reader.readInt();
-		}else{
-			ints[1] = ints[0];
-		}
+		final int x0 = (int) Math.floor(x);
+		final int y0 = (int) Math.floor(y);
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			ints[2] = reader.readInt();	
-			if(reader.getPos() < readerSize){
-				ints[3] = reader.readInt();
-			}else{
-				ints[3] = ints[2];	
-			}
-		}else{
-			ints[2] = ints[0];	
-			ints[3] = ints[1];
-		}
-		return ints;
-	}
+		final double x_diff = x - x0;
+		final double y_diff = y - y0;
 
+		final int left   = clamp(x0, srcWidth);
+		final int right  = clamp(x0 + 1, srcWidth);
+		final int top    = clamp(y0, srcHeight) * srcWidth;
+		final int bottom = clamp(y0 + 1, srcHeight) * srcWidth;
 
-	public static int interpolateIntsBicubic(int[] ints, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
+		// Yb = Ab(1-w)(1-h) + Bb(w)(1-h) + Cb(h)(1-w) + Db(wh)
+		return  src[top + left]     * (1 - x_diff) * (1 - y_diff) +
+				src[top + right]    * (x_diff) * (1 - y_diff) +
+				src[bottom + left]  * (y_diff) * (1 - x_diff) +
+				src[bottom + right] * (x_diff * y_diff);
+	}
 
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
+	/**
+	 * interpolates the value at @param x, @param y by cubic convolution
+	 * of its 4 x 4 neighbourhood
+	 */
+	public static double interpolateBicubic(final double[] src, final int srcWidth, final int srcHeight, final double x, final double y){
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		float bicubic_int = 0;
+		final int x0 = (int) Math.floor(x);
+		final int y0 = (int) Math.floor(y);
 
 		double q = 0;
 		for (int _j = 0; _j < 4; _j++) {
 			final int v = y0 - 1 + _j;
+			final int rowIndex = clamp(v, srcHeight) * srcWidth;
 			double  p = 0;
 
 			for (int _i = 0; _i < 4; _i++) {
 				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_int = reader.readInt();
-
-				p = p + bicubic_int * cubic(x - u, a);
+				p = p + src[rowIndex + clamp(u, srcWidth)] * cubic(x - u, CUBIC_A);
 			}
 
-			q = q + p * cubic(y - v, a);
+			q = q + p * cubic(y - v, CUBIC_A);
 		}
+		return q;
+	}
 
-		return (int) q;
+	/**
+	 * interpolates the value at @param x, @param y with the Lanczos kernel
+	 * from its 6 x 6 neighbourhood, the weights are looked up from the LanczosKernel
+	 */
+	public static double interpolateLanczos(final double[] src, final int srcWidth, final int srcHeight, final double x, final double y){
 
-	}
+		final int x0 = (int) Math.floor(x);
+		final int y0 = (int) Math.floor(y);
 
-	public static int interpolateIntsBilinear(int[] ints, float x_diff, float y_diff){
+		final int xWeights = LanczosKernel.index(x - x0);
+		final int yWeights = LanczosKernel.index(y - y0);
 
-		return 	 (int)  Math.rint((ints[0] * (1 - x_diff) * (1 - y_diff) +
-				ints[1] * (x_diff) * (1 - y_diff) +
-				ints[2] * (y_diff) * (1 - x_diff) +
-				ints[3] * (x_diff * y_diff)));
+		double q = 0;
+		for (int _j = 0; _j < LanczosKernel.TAPS; _j++) {
+			final int rowIndex = clamp(y0 - LanczosKernel.RADIUS + 1 + _j, srcHeight) * srcWidth;
+			double  p = 0;
 
-	}
+			for (int _i = 0; _i < LanczosKernel.TAPS; _i++) {
 
-	public static int interpolateIntsNN(int[] ints, int nearestX, int nearestY, int x, int y){
+				p = p + src[rowIndex + clamp(x0 - LanczosKernel.RADIUS + 1 + _i, srcWidth)] * LanczosKernel.weight(xWeights + _i);
+			}
 
-		if(nearestX == x && nearestY == y){
-			return ints[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return ints[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return ints[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return ints[3];
+			q = q + p * LanczosKernel.weight(yWeights + _j);
 		}
-		return 0;
-
+		return q;
 	}
 
-	/////////////////**************FLOATS*************/////////////////////////////
+	/**
+	 * writes the first @param count @param values into @param buffer
+	 * converted to @param dataType
+	 *
+	 * values of integer types are rounded to the nearest integer
+	 */
+	public static void writeValues(final ByteBuffer buffer, final DataType dataType, final double[] values, final int count){
 
-	public static float[] getFloatNeighbours(ByteBufferReader reader, int readerSize,	int dataSize, int srcWidth) throws IOException{
-		float[] floats = new float[4];
-		floats[0] = reader.readFloat();
-		if(reader.getPos() < readerSize){					
-			floats[1] = reader.readFloat();
-		}else{
-			floats[1] = floats[0];
+		switch(dataType){
+		case BYTE:
+			for(int i = 0; i < count; i++){
+				buffer.put((byte) Math.rint(values[i]));
+			}
+			break;
+		case CHAR:
+			for(int i = 0; i < count; i++){
+				buffer.putChar((char) Math.rint(values[i]));
+			}
+			break;
+		case SHORT:
+			for(int i = 0; i < count; i++){
+				buffer.putShort((short) Math.rint(values[i]));
+			}
+			break;
+		case INT:
+			for(int i = 0; i < count; i++){
+				buffer.putInt((int) Math.rint(values[i]));
+			}
+			break;
+		case LONG:
+			for(int i = 0; i < count; i++){
+				buffer.putLong((long) Math.rint(values[i]));
+			}
+			break;
+		case FLOAT:
+			for(int i = 0; i < count; i++){
+				buffer.putFloat((float) values[i]);
+			}
+			break;
+		case DOUBLE:
+			for(int i = 0; i < count; i++){
+				buffer.putDouble(values[i]);
+			}
+			break;
 		}
+	}
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			floats[2] = reader.readFloat();	
-			if(reader.getPos() < readerSize){
-				floats[3] = reader.readFloat();
-			}else{
-				floats[3] = floats[2];	
-			}
-		}else{
-			floats[2] = floats[0];	
-			floats[3] = floats[1];
+	/**
+	 * returns @param value as it is stored in a buffer of type @param dataType by writeValues
+	 */
+	public static double quantize(final DataType dataType, final double value){
+
+		switch(dataType){
+		case BYTE:
+			return (byte) Math.rint(value);
+		case CHAR:
+			return (char) Math.rint(value);
+		case SHORT:
+			return (short) Math.rint(value);
+		case INT:
+			return (int) Math.rint(value);
+		case LONG:
+			return (long) Math.rint(value);
+		case FLOAT:
+			return (float) value;
+		case DOUBLE:
+		default:
+			return value;
 		}
-		return floats;
 	}
 
-	public static float interpolateFloatsBicubic(float[] floats, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
+	/**
+	 * ResampledRows keeps the horizontally resampled source rows which the vertical kernel combines
+	 * in a ring of as many rows as the kernel has taps, the source row r is kept at r % taps
+	 *
+	 * a source row is only converted and resampled when a destination row needs it,
+	 * when the destination rows are requested in ascending order each source row is resampled once per band
+	 *
+	 * the buffers are reused, hence an instance must only be used by one thread
+	 */
+	private static class ResampledRows {
 
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
+		private final Raster mRaster;
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		float bicubic_float = 0;
+		private final ResampleCoefficients mHorizontal;
 
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
+		private final ResampleCoefficients mVertical;
 
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+		private final double[][] mRing;
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_float = reader.readFloat();
+		private final int[] mRingRows;
 
-				p = p + bicubic_float * cubic(x - u, a);
-			}
+		private double[] mSrcRow;
 
-			q = q + p * cubic(y - v, a);
-		}
+		private int mBand = -1;
 
-		return (float) q;
-	}
+		ResampledRows(final Raster pRaster, final ResampleCoefficients pHorizontal, final ResampleCoefficients pVertical){
 
-	public static float interpolateFloatsBilinear(float[] floats, float x_diff, float y_diff){
+			this.mRaster = pRaster;
+			this.mHorizontal = pHorizontal;
+			this.mVertical = pVertical;
+			this.mRing = new double[pVertical.getTaps()][pHorizontal.getSize()];
+			this.mRingRows = new int[pVertical.getTaps()];
+		}
 
-		return 	floats[0] * (1 - x_diff) * (1 - y_diff) +
-				floats[1] * (x_diff) * (1 - y_diff) +
-				floats[2] * (y_diff) * (1 - x_diff) +
-				floats[3] * (x_diff * y_diff);
-	}
+		/**
+		 * combines the destination row @param dstRow of the band @param band into @param values
+		 */
+		void combine(final int band, final int dstRow, final double[] values){
 
-	public static float interpolateFloatsNN(float[] floats, int nearestX, int nearestY, int x, int y){
+			if(band != mBand){
+				Arrays.fill(mRingRows, -1);
+				mBand = band;
+			}
 
-		if(nearestX == x && nearestY == y){
-			return floats[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return floats[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return floats[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return floats[3];
-		}
-		return 0;
+			final int taps = mRing.length;
 
-	}
-	/////////////////**************DOUBLES*************/////////////////////////////
-
-	public static double[] getDoubleNeighbours(ByteBufferReader reader,int readerSize, int dataSize, int srcWidth) throws IOException {
-		double[] doubles = new double[4];
-		doubles[0] = reader.readDouble();
-		if(reader.getPos() < readerSize){					
-			doubles[1] = reader.readDouble();
-		}else{
-			doubles[1] = doubles[0];
-		}
+			for(int r = mVertical.getFirstIndex(dstRow); r <= mVertical.getLastIndex(dstRow); r++){
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			doubles[2] = reader.readDouble();	
-			if(reader.getPos() < readerSize){
-				doubles[3] = reader.readDouble();
-			}else{
-				doubles[3] = doubles[2];	
+				final int slot = r % taps;
+
+				if(mRingRows[slot] != r){
+					mSrcRow = mRaster.getDoubles(band, r, 1, mSrcRow);
+					mHorizontal.resample(mSrcRow, 0, mRing[slot], 0);
+					mRingRows[slot] = r;
+				}
 			}
-		}else{
-			doubles[2] = doubles[0];	
-			doubles[3] = doubles[1];
+
+			mVertical.combine(dstRow, mRing, values);
 		}
-		return doubles;
 	}
 
-	public static double interpolateDoublesBilinear(double[] doubles, float x_diff, float y_diff){
+	/**
+	 * An AreaReducer reduces the source pixels each destination pixel covers
+	 * to their mean (AVERAGE) or their most frequent value (MODE)
+	 *
+	 * the source rows of a destination row are read one by one from the typed data of the band
+	 * and accumulated, values of integer data types are summed up as integers,
+	 * bytes are read unsigned like GDAL stores them
+	 *
+	 * like GDAL, the nodata values of the band are skipped, a destination pixel
+	 * which covers nodata only becomes nodata
+	 *
+	 * the buffers are reused, hence a reducer must only be used by one thread
+	 */
+	private static class AreaReducer {
 
-		return 	doubles[0] * (1 - x_diff) * (1 - y_diff) +
-				doubles[1] * (x_diff) * (1 - y_diff) +
-				doubles[2] * (y_diff) * (1 - x_diff) +
-				doubles[3] * (x_diff * y_diff);
+		private final Raster mRaster;
 
-	}
+		private final ResampleCoefficients mHorizontal;
 
-	public static double interpolateDoublesNN(double[] doubles, int nearestX, int nearestY, int x, int y){
+		private final ResampleCoefficients mVertical;
 
-		if(nearestX == x && nearestY == y){
-			return doubles[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return doubles[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return doubles[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return doubles[3];
-		}
-		return 0;
+		private final int mSrcWidth;
 
-	}
+		private final DataType mDataType;
 
-	public static double interpolateDoublesBicubic(double[] doubles, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
+		private final boolean mInteger;
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		double bicubic_double = 0;
+		private final boolean mMode;
 
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
+		private final long[] mIntegerRow;
 
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+		private final double[] mRow;
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_double = reader.readDouble();
+		private final long[] mSums;
 
-				p = p + bicubic_double * cubic(x - u, a);
-			}
+		private final double[] mDoubleSums;
 
-			q = q + p * cubic(y - v, a);
-		}
-		return q;
-	}
+		private final int[] mCounts;
 
-	/////////////////**************CHARS*************/////////////////////////////
+		private final int mBoxSize;
 
-	public static char interpolateCharsBicubic(char[] bytes, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
-		final double a = 0.0d;
-		final double _x = coord.x;
-		final double _y = coord.y;
+		private final double[] mBoxes;
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		char bicubic_char = 0;
+		private ByteBuffer mData;
 
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
+		private int mBand = -1;
 
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+		private boolean mHasNoData;
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_char = reader.readChar();
+		/**
+		 * the nodata value of the current band as it is read from its data
+		 */
+		private double mNoData;
 
-				p = p + bicubic_char * cubic(x - u, a);
-			}
+		AreaReducer(final Raster pRaster, final ResampleCoefficients pHorizontal, final ResampleCoefficients pVertical, final ResampleMethod pMethod){
 
-			q = q + p * cubic(y - v, a);
+			final DataType dataType = pRaster.getBands().get(0).datatype();
+			final int dstWidth = pHorizontal.getSize();
+
+			this.mRaster = pRaster;
+			this.mHorizontal = pHorizontal;
+			this.mVertical = pVertical;
+			this.mSrcWidth = pRaster.getDimension().width();
+			this.mDataType = dataType;
+			this.mInteger = dataType != DataType.FLOAT && dataType != DataType.DOUBLE;
+			this.mMode = pMethod == ResampleMethod.MODE;
+			this.mIntegerRow = mInteger ? new long[mSrcWidth] : null;
+			this.mRow = mInteger ? null : new double[mSrcWidth];
+			this.mSums = mInteger ? new long[dstWidth] : null;
+			this.mDoubleSums = mInteger ? null : new double[dstWidth];
+			this.mCounts = new int[dstWidth];
+			this.mBoxSize = mMode ? getMaxSpan(pHorizontal) * getMaxSpan(pVertical) : 0;
+			this.mBoxes = mMode ? new double[dstWidth * mBoxSize] : null;
 		}
 
-		return  (char) q;
-	}
+		/**
+		 * reduces the destination row @param dstRow of the band @param band into @param values
+		 */
+		void reduce(final int band, final int dstRow, final double[] values){
 
-	public static char[] getCharNeighbours(ByteBufferReader reader, int readerSize,int dataSize, int srcWidth) throws IOException{
-		char[] chars =  new char[4];
-		chars[0] = reader.readChar();
-		if(reader.getPos() < readerSize){					
-			chars[1] = reader.readChar();
-		}else{
-			chars[1] = chars[0];
-		}
+			if(band != mBand){
+				final NoData noData = mRaster.getBands().get(band).nodata();
+				mData = mRaster.getBandData(band);
+				mHasNoData = noData != NoData.NONE;
+				mNoData = mHasNoData ? quantize(mDataType, noData.getValue()) : 0;
+				if(mDataType == DataType.BYTE){
+					mNoData = ((int) mNoData) & 0xff;
+				}
+				mBand = band;
+			}
 
-		if(reader.getPos() + (srcWidth * dataSize  - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			chars[2] = reader.readChar();
-			if(reader.getPos() < readerSize){
-				chars[3] = reader.readChar();
-			}else{
-				chars[3] = chars[2];				    	
+			final int dstWidth = mHorizontal.getSize();
+
+			Arrays.fill(mCounts, 0);
+			if(!mMode){
+				if(mInteger){
+					Arrays.fill(mSums, 0);
+				}else{
+					Arrays.fill(mDoubleSums, 0);
+				}
 			}
-		}else{
-			chars[2] = chars[0];	
-			chars[3] = chars[1];
-		}
-		return chars;
-	}
 
-	public static char interpolateCharsBilinear(char[] chars, float x_diff, float y_diff){
+			for(int y = mVertical.getFirstIndex(dstRow); y <= mVertical.getLastIndex(dstRow); y++){
 
-		return (char)  Math.rint((chars[0] * (1 - x_diff) * (1 - y_diff) +
-				chars[1] * (x_diff) * (1 - y_diff) +
-				chars[2] * (y_diff) * (1 - x_diff) +
-				chars[3] * (x_diff * y_diff)));
+				readRow(y);
 
-	}
+				if(mMode){
+					collect();
+				}else if(mInteger){
+					sumIntegers();
+				}else{
+					sum();
+				}
+			}
 
-	public static char interpolateCharsNN(char[] chars, int nearestX, int nearestY, int x, int y){
+			for(int j = 0; j < dstWidth; j++){
 
-		if(nearestX == x && nearestY == y){
-			return chars[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return chars[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return chars[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return chars[3];
+				if(mCounts[j] == 0){
+					values[j] = mNoData;
+				}else if(mMode){
+					values[j] = mode(j * mBoxSize, mCounts[j]);
+				}else{
+					values[j] = (mInteger ? (double) mSums[j] : mDoubleSums[j]) / mCounts[j];
+				}
+			}
 		}
 
-		return 0;
+		/**
+		 * reads the source row @param y of the current band into the row of its kind
+		 */
+		private void readRow(final int y){
 
-	}
+			final ByteBuffer data = mData;
+			final int offset = y * mSrcWidth;
+			final int width = mSrcWidth;
+
+			switch(mDataType){
+			case BYTE:
+				for(int x = 0; x < width; x++){
+					mIntegerRow[x] = data.get(offset + x) & 0xff;
+				}
+				break;
+			case CHAR:
+				for(int x = 0; x < width; x++){
+					mIntegerRow[x] = data.getChar((offset + x) << 1);
+				}
+				break;
+			case SHORT:
+				for(int x = 0; x < width; x++){
+					mIntegerRow[x] = data.getShort((offset + x) << 1);
+				}
+				break;
+			case INT:
+				for(int x = 0; x < width; x++){
+					mIntegerRow[x] = data.getInt((offset + x) << 2);
+				}
+				break;
+			case LONG:
+				for(int x = 0; x < width; x++){
+					mIntegerRow[x] = data.getLong((offset + x) << 3);
+				}
+				break;
+			case FLOAT:
+				for(int x = 0; x < width; x++){
+					mRow[x] = data.getFloat((offset + x) << 2);
+				}
+				break;
+			case DOUBLE:
+				for(int x = 0; x < width; x++){
+					mRow[x] = data.getDouble((offset + x) << 3);
+				}
+				break;
+			}
+		}
+
+		private void sumIntegers(){
 
-	/////////////////**************BYTES*************/////////////////////////////
+			final long noData = (long) mNoData;
 
-	public static byte[] getByteNeighbours(ByteBufferReader reader, int readerSize, int dataSize, int srcWidth) throws IOException {
-		byte[] bytes = new byte[4];
-		bytes[0] = reader.readByte();
-		if(reader.getPos() < readerSize){					
-			bytes[1] = reader.readByte();
-		}else{
-			bytes[1] = bytes[0];
+			for(int j = 0; j < mSums.length; j++){
+
+				long sum = 0;
+				int count = 0;
+				for(int x = mHorizontal.getFirstIndex(j); x <= mHorizontal.getLastIndex(j); x++){
+					final long value = mIntegerRow[x];
+					if(!mHasNoData || value != noData){
+						sum += value;
+						count++;
+					}
+				}
+				mSums[j] += sum;
+				mCounts[j] += count;
+			}
 		}
 
-		if(reader.getPos() + (srcWidth * dataSize - 2 * dataSize) < readerSize){
-			reader.seekToOffset(reader.getPos() + (srcWidth * dataSize - 2 * dataSize)); 
-			bytes[2] = reader.readByte();	
-			if(reader.getPos() < readerSize){
-				bytes[3] = reader.readByte();
-			}else{
-				bytes[3] = bytes[2];	
+		private void sum(){
+
+			for(int j = 0; j < mDoubleSums.length; j++){
+
+				double sum = 0;
+				int count = 0;
+				for(int x = mHorizontal.getFirstIndex(j); x <= mHorizontal.getLastIndex(j); x++){
+					final double value = mRow[x];
+					if(!mHasNoData || !isNoData(value)){
+						sum += value;
+						count++;
+					}
+				}
+				mDoubleSums[j] += sum;
+				mCounts[j] += count;
 			}
-		}else{
-			bytes[2] = bytes[0];	
-			bytes[3] = bytes[1];
 		}
-		return bytes;
-	}
 
-	public static byte interpolateBytesBicubic(byte[] bytes, Coordinate coord, ByteBufferReader reader, int x, int y, int srcWidth, int srcHeight, int dataSize) throws IOException{
-		final double a = 0.0d;
+		/**
+		 * appends the valid values of the current row to the boxes of the destination pixels
+		 */
+		private void collect(){
 
-		final double _x = coord.x;
-		final double _y = coord.y;
+			for(int j = 0; j < mCounts.length; j++){
 
-		final int x0 = (int) Math.floor(_x);
-		final int y0 = (int) Math.floor(_y);
-		byte bicubic_byte = 0;
+				final int box = j * mBoxSize;
+				for(int x = mHorizontal.getFirstIndex(j); x <= mHorizontal.getLastIndex(j); x++){
+					final double value = mInteger ? mIntegerRow[x] : mRow[x];
+					if(!mHasNoData || !isNoData(value)){
+						mBoxes[box + mCounts[j]++] = value;
+					}
+				}
+			}
+		}
 
-		double q = 0;
-		for (int _j = 0; _j < 4; _j++) {
-			final int v = y0 - 1 + _j;
-			double  p = 0;
+		/**
+		 * @return the most frequent of the @param n values of the box at @param box
+		 */
+		private double mode(final int box, final int n){
 
-			for (int _i = 0; _i < 4; _i++) {
-				final int u = x0 - 1 + _i;
-				final int _index = v * srcWidth + u;
+			final int end = box + n;
 
-				seekTo(reader, _index, dataSize, u, v, srcWidth, srcHeight);
-				bicubic_byte = reader.readByte();
+			Arrays.sort(mBoxes, box, end);
 
-				p = p + bicubic_byte * cubic(x - u, a);
+			//the longest run of equal values, the smallest value wins a tie
+			double mode = mBoxes[box];
+			int best = 0;
+			for(int k = box; k < end;){
+				int run = k + 1;
+				while(run < end && mBoxes[run] == mBoxes[k]){
+					run++;
+				}
+				if(run - k > best){
+					best = run - k;
+					mode = mBoxes[k];
+				}
+				k = run;
 			}
-
-			q = q + p * cubic(y - v, a);
+			return mode;
 		}
 
-		return (byte) q;
-	}
+		private boolean isNoData(final double value){
 
-	public static byte interpolateBytesBilinear(byte[] bytes, float x_diff, float y_diff){
+			return value == mNoData || (value != value && mNoData != mNoData);
+		}
 
-		return 	(byte) Math.rint((bytes[0] * (1 - x_diff) * (1 - y_diff) +
-				bytes[1] * (x_diff) * (1 - y_diff) +
-				bytes[2] * (y_diff) * (1 - x_diff) +
-				bytes[3] * (x_diff * y_diff)));
-	}
+		private static int getMaxSpan(final ResampleCoefficients spans){
 
-	public static byte interpolateBytesNN(byte[] bytes, int nearestX, int nearestY, int x, int y){
-
-		if(nearestX == x && nearestY == y){
-			return bytes[0];
-		}else if(nearestX == x && nearestY == (y + 1)){
-			return bytes[2];
-		}else if(nearestX == (x + 1) && nearestY ==  y){
-			return bytes[1];
-		}else if(nearestX == (x + 1) && nearestY == (y + 1)){
-			return bytes[3];
-		}else{
-			throw new IllegalArgumentException(String.format("wrong nx %d ny %d x %d y %d", nearestX,nearestY,x,y));
+			int max = 1;
+			for(int i = 0; i < spans.getSize(); i++){
+				max = Math.max(max, spans.getLastIndex(i) - spans.getFirstIndex(i) + 1);
+			}
+			return max;
 		}
-
 	}
 
 	/////////////////**************UTIL*************/////////////////////////////
 
-	private static void seekTo(ByteBufferReader reader, int _index, int dataSize, int u, int v, int srcWidth, int srcHeight){
-		if( v < 0){
-			if(u >= 0){
-				reader.seekToOffset(u * dataSize);
-			}else{
-				reader.seekToOffset(0 * dataSize);
-			}
-		}else if(u < 0){
-			if(v >= srcWidth){
-				reader.seekToOffset((v - 1) * srcWidth * dataSize);
-			}else{												
-				reader.seekToOffset(v * srcWidth * dataSize);
-			}
-		}else if(v >= srcWidth){
-			if(u < srcWidth){
-				reader.seekToOffset((srcWidth - 1 * srcWidth + u) * dataSize);						
-			}else{
-				reader.seekToOffset((srcWidth - 1 * srcWidth + (srcWidth - 1)) * dataSize);
-			}												
-		}else if(u >= srcWidth){
-			reader.seekToOffset((v * srcWidth + (srcWidth - 1)) * dataSize);
-		}else{
-			reader.seekToOffset(_index * dataSize);
-		}
+	private static int clamp(final int pos, final int size){
+
+		return pos < 0 ? 0 : (pos >= size ? size - 1 : pos);
+	}
+
+	/**
+	 * the weight of the cubic convolution kernel at the distance @param r
+	 */
+	static double cubic(final double r) {
+
+		return cubic(r, CUBIC_A);
 	}
 
 	private static  double cubic(double r, double a) {
 		if (r < 0) r = -r;
 		double w = 0;
-		if (r < 1) 
+		if (r < 1)
 			w = (a+2)*r*r*r - (a+3)*r*r + 1;
-		else if (r < 2) 
+		else if (r < 2)
 			w = a*r*r*r - 5*a*r*r + 8*a*r - 4*a;
 		return w;
 	}
@@ -911,4 +830,3 @@ public class MResampler extends Resampler implements RasterOp, Serializable  {
 	}
 
 }
-
@@ -0,0 +1,300 @@
+package de.rooehler.rastertheque.processing.resampling;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
+
+/**
+ * ResampleCoefficients contain the source indices and the weights of the
+ * interpolation kernel for each destination position along one axis
+ *
+ * as the interpolation methods are separable, a resampling is done in two passes,
+ * first each source row is resampled horizontally, then the resampled rows are
+ * combined vertically, using the coefficients of the respective axis,
+ * a destination row combines at most getTaps() consecutive source rows
+ *
+ * for the area methods AVERAGE and MODE the coefficients contain the span
+ * of source indices each destination position covers instead
+ *
+ * the coefficients only depend on the source size, the destination size and the method,
+ * hence they are computed once and shared, instances are immutable
+ *
+ * @author Robert Oehler
+ *
+ */
+public class ResampleCoefficients {
+
+	/**
+	 * the amount of coefficients which are kept
+	 */
+	private static final int CACHE_SIZE = 32;
+
+	private static final Map<String, ResampleCoefficients> sCache = new LinkedHashMap<String, ResampleCoefficients>(CACHE_SIZE, 0.75f, true){
+
+		private static final long serialVersionUID = 4212046617738153457L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ResampleCoefficients> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private final int mTaps;
+
+	private final int mDstSize;
+
+	private final boolean mArea;
+
+	private final int[] mIndices;
+
+	private final double[] mWeights;
+
+	private ResampleCoefficients(final int pTaps, final int pDstSize, final boolean pArea){
+
+		this.mTaps = pTaps;
+		this.mDstSize = pDstSize;
+		this.mArea = pArea;
+		this.mIndices = new int[pTaps * pDstSize];
+		this.mWeights = new double[pTaps * pDstSize];
+	}
+
+	/**
+	 * returns the coefficients to resample an axis of @param srcSize values
+	 * to @param dstSize values using @param method
+	 *
+	 * the destination position i maps to the source position i * (srcSize - 1) / dstSize
+	 */
+	public static ResampleCoefficients get(final int srcSize, final int dstSize, final ResampleMethod method){
+
+		final String key = srcSize + "_" + dstSize + "_" + method.name();
+
+		synchronized (sCache) {
+			final ResampleCoefficients cached = sCache.get(key);
+			if(cached != null){
+				return cached;
+			}
+		}
+
+		final ResampleCoefficients coefficients = compute(srcSize, dstSize, method);
+
+		synchronized (sCache) {
+			sCache.put(key, coefficients);
+		}
+
+		return coefficients;
+	}
+
+	private static ResampleCoefficients compute(final int srcSize, final int dstSize, final ResampleMethod method){
+
+		final float ratio = ((float) (srcSize - 1)) / dstSize;
+
+		//when sampling down the lanczos kernel is widened to cover all source pixels of a destination pixel
+		final double reduction = Math.max(1, srcSize / (double) dstSize);
+		final boolean stretched = method == ResampleMethod.LANCZOS && reduction > 1;
+
+		final int taps = stretched ? 2 * (int) Math.ceil(LanczosKernel.RADIUS * reduction) : getTaps(method);
+
+		final ResampleCoefficients c = new ResampleCoefficients(taps, dstSize, isArea(method));
+
+		for(int i = 0; i < dstSize; i++){
+
+			final double pos = ratio * i;
+			final int offset = i * taps;
+
+			switch (method) {
+			case NEARESTNEIGHBOUR:
+
+				c.mIndices[offset] = clamp((int) Math.rint(pos), srcSize);
+				c.mWeights[offset] = 1;
+				break;
+
+			case BICUBIC:
+
+				final int x0 = (int) Math.floor(pos);
+				for(int t = 0; t < taps; t++){
+					final int u = x0 - 1 + t;
+					c.mIndices[offset + t] = clamp(u, srcSize);
+					c.mWeights[offset + t] = MResampler.cubic(pos - u);
+				}
+				break;
+
+			case LANCZOS:
+
+				final int base = (int) Math.floor(pos);
+				if(stretched){
+					double sum = 0;
+					for(int t = 0; t < taps; t++){
+						final int u = base - taps / 2 + 1 + t;
+						c.mIndices[offset + t] = clamp(u, srcSize);
+						c.mWeights[offset + t] = LanczosKernel.value((pos - u) / reduction);
+						sum += c.mWeights[offset + t];
+					}
+					for(int t = 0; t < taps; t++){
+						c.mWeights[offset + t] /= sum;
+					}
+				}else{
+					final int lut = LanczosKernel.index(pos - base);
+					for(int t = 0; t < taps; t++){
+						c.mIndices[offset + t] = clamp(base - LanczosKernel.RADIUS + 1 + t, srcSize);
+						c.mWeights[offset + t] = LanczosKernel.weight(lut + t);
+					}
+				}
+				break;
+
+			case AVERAGE:
+			case MODE:
+
+				//the span of source pixels covered by the destination pixel
+				final int first = (int) ((long) i * srcSize / dstSize);
+				final int end = (int) ((long) (i + 1) * srcSize / dstSize);
+				c.mIndices[offset] = Math.min(first, srcSize - 1);
+				c.mIndices[offset + 1] = Math.min(Math.max(first, end - 1), srcSize - 1);
+				break;
+
+			case BILINEAR:
+			default:
+
+				final int left = (int) Math.floor(pos);
+				final double diff = pos - left;
+				c.mIndices[offset] = clamp(left, srcSize);
+				c.mIndices[offset + 1] = clamp(left + 1, srcSize);
+				c.mWeights[offset] = 1 - diff;
+				c.mWeights[offset + 1] = diff;
+				break;
+			}
+		}
+
+		return c;
+	}
+
+	/**
+	 * @return the amount of source indices which are stored per destination position for @param method
+	 */
+	private static int getTaps(final ResampleMethod method){
+
+		switch (method) {
+		case NEARESTNEIGHBOUR:
+			return 1;
+		case BICUBIC:
+			return 4;
+		case LANCZOS:
+			return LanczosKernel.TAPS;
+		case BILINEAR:
+		case AVERAGE:
+		case MODE:
+		default:
+			return 2;
+		}
+	}
+
+	/**
+	 * @return true if @param method reduces the area a destination pixel covers
+	 * instead of interpolating at a position
+	 */
+	public static boolean isArea(final ResampleMethod method){
+
+		return method == ResampleMethod.AVERAGE || method == ResampleMethod.MODE;
+	}
+
+	/**
+	 * @return true if these are the spans of an area method
+	 */
+	public boolean isArea(){
+
+		return mArea;
+	}
+
+	/**
+	 * @return the amount of source indices which are read per destination position
+	 */
+	public int getTaps(){
+
+		return mTaps;
+	}
+
+	/**
+	 * @return the amount of destination positions
+	 */
+	public int getSize(){
+
+		return mDstSize;
+	}
+
+	/**
+	 * @return the first source index the destination position @param dst reads
+	 */
+	public int getFirstIndex(final int dst){
+
+		return mIndices[dst * mTaps];
+	}
+
+	/**
+	 * @return the last source index the destination position @param dst reads
+	 */
+	public int getLastIndex(final int dst){
+
+		return mIndices[dst * mTaps + mTaps - 1];
+	}
+
+	/**
+	 * resamples the row of source values which starts at @param srcOffset in @param src
+	 * and writes the resampled row into @param dst starting at @param dstOffset
+	 */
+	public void resample(final double[] src, final int srcOffset, final double[] dst, final int dstOffset){
+
+		if(mArea){
+			throw new UnsupportedOperationException("the spans of an area method cannot be interpolated");
+		}
+
+		final int taps = mTaps;
+		final int[] indices = mIndices;
+		final double[] weights = mWeights;
+
+		for(int i = 0, k = 0; i < mDstSize; i++){
+
+			double value = 0;
+			for(int t = 0; t < taps; t++, k++){
+				value = value + src[srcOffset + indices[k]] * weights[k];
+			}
+			dst[dstOffset + i] = value;
+		}
+	}
+
+	/**
+	 * combines the resampled rows in @param rows, which are of equal length,
+	 * to the destination row @param dst
+	 * and writes it into @param values
+	 *
+	 * the row of the source index r is found at rows[r % rows.length],
+	 * hence @param rows can be a ring of getTaps() rows
+	 */
+	public void combine(final int dst, final double[][] rows, final double[] values){
+
+		if(mArea){
+			throw new UnsupportedOperationException("the spans of an area method cannot be interpolated");
+		}
+
+		final int first = dst * mTaps;
+		final int width = rows[0].length;
+
+		for(int j = 0; j < width; j++){
+			values[j] = 0;
+		}
+
+		for(int t = 0; t < mTaps; t++){
+
+			final double weight = mWeights[first + t];
+			final double[] row = rows[mIndices[first + t] % rows.length];
+
+			for(int j = 0; j < width; j++){
+				values[j] = values[j] + row[j] * weight;
+			}
+		}
+	}
+
+	private static int clamp(final int pos, final int size){
+
+		return pos < 0 ? 0 : (pos >= size ? size - 1 : pos);
+	}
+}
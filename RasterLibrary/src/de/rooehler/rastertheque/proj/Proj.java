@@ -3,6 +3,12 @@ package de.rooehler.rastertheque.proj;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.gdal.osr.SpatialReference;
 import org.osgeo.proj4j.CRSFactory;
@@ -15,8 +21,9 @@ import org.osgeo.proj4j.io.Proj4FileReader;
 import android.annotation.SuppressLint;
 import android.util.Log;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+
+import de.rooehler.rastertheque.util.WorkerPool;
 /**
  * A class which wraps JTS' CoordinateReferenceSystem
  * 
@@ -29,6 +36,13 @@ import com.vividsolutions.jts.geom.Envelope;
  * It features transformation methods for
  * reprojecting envelopes between different CRS
  * 
+ * Points can be transformed in batches of interleaved x, y coordinates,
+ * large batches are transformed in parallel
+ * 
+ * Parsed CRS are cached by their definition and shared by all threads.
+ * As CoordinateTransforms are not thread-safe, they are cached per thread,
+ * a transform obtained from this class must not be passed to other threads
+ * 
  * @author Robert Oehler
  *
  */
@@ -39,6 +53,54 @@ public class Proj {
 
 	static CoordinateTransformFactory txFactory = new CoordinateTransformFactory();
 
+	/**
+	 * the amount of CRS which are cached
+	 */
+	public static final int CRS_CACHE_SIZE = 64;
+
+	/**
+	 * the amount of transforms which are cached per thread
+	 */
+	public static final int TRANSFORM_CACHE_SIZE = 16;
+
+	private static final Map<String, CoordinateReferenceSystem> sCRSCache = new LinkedHashMap<String, CoordinateReferenceSystem>(CRS_CACHE_SIZE, 0.75f, true){
+
+		private static final long serialVersionUID = -2470432046458711563L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CoordinateReferenceSystem> eldest) {
+			return size() > CRS_CACHE_SIZE;
+		}
+	};
+
+	private static final ThreadLocal<Map<String, CoordinateTransform>> sTransformCache = new ThreadLocal<Map<String, CoordinateTransform>>(){
+		@Override
+		protected Map<String, CoordinateTransform> initialValue() {
+			return new LinkedHashMap<String, CoordinateTransform>(TRANSFORM_CACHE_SIZE, 0.75f, true){
+
+				private static final long serialVersionUID = 6015316254441771735L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, CoordinateTransform> eldest) {
+					return size() > TRANSFORM_CACHE_SIZE;
+				}
+			};
+		}
+	};
+
+	/**
+	 * the minimum amount of points of a batch which is transformed in parallel
+	 */
+	public static final int MIN_PARALLEL_POINTS = 1 << 16;
+
+	private static final AtomicLong sCRSHits = new AtomicLong();
+
+	private static final AtomicLong sCRSMisses = new AtomicLong();
+
+	private static final AtomicLong sTransformHits = new AtomicLong();
+
+	private static final AtomicLong sTransformMisses = new AtomicLong();
+
 	/**
 	 * Google mercator
 	 */
@@ -58,7 +120,12 @@ public class Proj {
 			return EPSG_900913 != null ? EPSG_900913 : createFromExtra("epsg", "900913");
 		}
 
-		return csFactory.createFromName(_epsg);
+		CoordinateReferenceSystem crs = getCachedCRS(_epsg);
+		if(crs == null){
+			crs = csFactory.createFromName(_epsg);
+			putCachedCRS(_epsg, crs);
+		}
+		return crs;
 	}
 
 	/**
@@ -69,10 +136,24 @@ public class Proj {
 	 * @return The crs object.
 	 */
 	public static CoordinateReferenceSystem crs(String... projdef) {
-		if (projdef != null && projdef.length == 1) {
-			return csFactory.createFromParameters(null, projdef[0]);
+
+		final StringBuilder key = new StringBuilder("proj:");
+		if(projdef != null){
+			for(String param : projdef){
+				key.append(param).append(' ');
+			}
+		}
+
+		CoordinateReferenceSystem crs = getCachedCRS(key.toString());
+		if(crs == null){
+			if (projdef != null && projdef.length == 1) {
+				crs = csFactory.createFromParameters(null, projdef[0]);
+			}else{
+				crs = csFactory.createFromParameters(null, projdef);
+			}
+			putCachedCRS(key.toString(), crs);
 		}
-		return csFactory.createFromParameters(null, projdef);
+		return crs;
 	}
 	/**
 	 * Creates a crs object from a "well-known-text" String
@@ -82,9 +163,18 @@ public class Proj {
 	 * @return The crs object.
 	 */
 	public static CoordinateReferenceSystem crs(String wkt) {
+
+		final String key = "wkt:" + wkt;
+
+		CoordinateReferenceSystem crs = getCachedCRS(key);
+		if(crs != null){
+			return crs;
+		}
 		String[] projdef = wkt2proj(wkt);
 		if (projdef != null ) {
-			return csFactory.createFromParameters(null, projdef[0]);
+			crs = csFactory.createFromParameters(null, projdef[0]);
+			putCachedCRS(key, crs);
+			return crs;
 		}
 		return null;
 	}
@@ -108,40 +198,206 @@ public class Proj {
 	 */
 	public static Envelope reproject(Envelope e, CoordinateReferenceSystem from, CoordinateReferenceSystem to) {
 
-		CoordinateTransform tx = transform(from, to);
+		final double[] corners = new double[]{ e.getMinX(), e.getMinY(), e.getMaxX(), e.getMaxY() };
+
+		transform(transform(from, to), corners, corners, 2);
+
+		return new Envelope(corners[0], corners[2], corners[1], corners[3]);
+	}
+
+	/**
+	 * transforms @param count points of interleaved x, y coordinates
+	 * from @param src to @param dst using @param tx
+	 * 
+	 * src and dst may be the same array to transform in place,
+	 * the coordinates of points which cannot be transformed are set to NaN
+	 * 
+	 * no objects are allocated per point
+	 */
+	public static void transform(final CoordinateTransform tx, final double[] src, final double[] dst, final int count) {
+
+		transform(tx, src, dst, 0, count);
+	}
 
-		Coordinate c1 = new Coordinate(e.getMinX(), e.getMinY());
-		Coordinate c2 = new Coordinate(e.getMaxX(), e.getMaxY());
+	/**
+	 * transforms @param count points of interleaved x, y coordinates
+	 * from @param src to @param dst from the crs @param from to the crs @param to
+	 * 
+	 * src and dst may be the same array to transform in place,
+	 * the coordinates of points which cannot be transformed are set to NaN
+	 * 
+	 * batches of at least MIN_PARALLEL_POINTS points are split into chunks
+	 * which are transformed in parallel using the WorkerPool
+	 */
+	public static void transform(final CoordinateReferenceSystem from, final CoordinateReferenceSystem to, final double[] src, final double[] dst, final int count) {
+
+		final int chunks = Math.min(WorkerPool.getParallelism(), count / MIN_PARALLEL_POINTS);
 
-		ProjCoordinate p1 = new ProjCoordinate(c1.x, c1.y);
-		ProjCoordinate p2 = new ProjCoordinate(c2.x, c2.y);
+		if(chunks <= 1){
+			transform(transform(from, to), src, dst, 0, count);
+			return;
+		}
 
-		tx.transform(p1, p1);
-		tx.transform(p2, p2);
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicReference<RuntimeException> error = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(chunks);
 
-		c1.x = p1.x;
-		c1.y = p1.y;
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
 
-		c2.x = p2.x;
-		c2.y = p2.y;
+				int chunk;
+				while((chunk = nextChunk.getAndIncrement()) < chunks){
+					try{
+						final int start = (int) ((long) count * chunk / chunks);
+						final int end = (int) ((long) count * (chunk + 1) / chunks);
+						//transforms are cached per thread
+						transform(transform(from, to), src, dst, start, end - start);
+					}catch(RuntimeException e){
+						error.compareAndSet(null, e);
+					}finally{
+						done.countDown();
+					}
+				}
+			}
+		};
 
-		return new Envelope(c1.x, c2.x, c1.y, c2.y);
+		for(int i = 1; i < chunks; i++){
+			WorkerPool.getExecutor().execute(worker);
+		}
+		//the caller transforms chunks itself, hence it proceeds even if the pool is busy
+		worker.run();
+
+		//chunks taken by the pool may still be running
+		boolean interrupted = false;
+		while(done.getCount() > 0){
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+		if(error.get() != null){
+			throw error.get();
+		}
+	}
+
+	private static void transform(final CoordinateTransform tx, final double[] src, final double[] dst, final int start, final int count) {
+
+		final ProjCoordinate c = new ProjCoordinate();
+
+		final int end = (start + count) * 2;
+
+		for(int i = start * 2; i < end; i += 2){
+
+			c.x = src[i];
+			c.y = src[i + 1];
+
+			try{
+				tx.transform(c, c);
+				dst[i] = c.x;
+				dst[i + 1] = c.y;
+			}catch(RuntimeException e){
+				dst[i] = Double.NaN;
+				dst[i + 1] = Double.NaN;
+			}
+		}
 	}
 	/**
-	 * creates a CoordinateTransform object from two crs
+	 * returns a CoordinateTransform object from two crs
+	 * 
+	 * the transform is cached for the current thread and must only be used by it
+	 * 
 	 * @param from the source crs
 	 * @param to the target crs
 	 * @return the coordinateTransform object which can be used to transform geometries
 	 */
 	public static CoordinateTransform transform(CoordinateReferenceSystem from, CoordinateReferenceSystem to) {
 
+		final String key = from.getParameterString() + " -> " + to.getParameterString();
+
+		final Map<String, CoordinateTransform> cache = sTransformCache.get();
+
+		CoordinateTransform tx = cache.get(key);
+		if(tx != null){
+			sTransformHits.incrementAndGet();
+			return tx;
+		}
+		sTransformMisses.incrementAndGet();
 
-		CoordinateTransform tx = txFactory.createTransform(from, to);
+		tx = txFactory.createTransform(from, to);
 		if (tx == null) {
 			throw new IllegalArgumentException("Unable to find transform from " + from + " to " + to);
 		}
+		cache.put(key, tx);
 		return tx;
 	}
+
+	/**
+	 * @return the amount of CRS which were found in the cache
+	 */
+	public static long getCRSCacheHits(){
+		return sCRSHits.get();
+	}
+
+	/**
+	 * @return the amount of CRS which were not found in the cache and were created
+	 */
+	public static long getCRSCacheMisses(){
+		return sCRSMisses.get();
+	}
+
+	/**
+	 * @return the amount of transforms which were found in the cache
+	 */
+	public static long getTransformCacheHits(){
+		return sTransformHits.get();
+	}
+
+	/**
+	 * @return the amount of transforms which were not found in the cache and were created
+	 */
+	public static long getTransformCacheMisses(){
+		return sTransformMisses.get();
+	}
+
+	/**
+	 * clears the cached CRS and the transforms cached for the current thread
+	 */
+	public static void clearCaches(){
+
+		synchronized (sCRSCache) {
+			sCRSCache.clear();
+		}
+		sTransformCache.get().clear();
+	}
+
+	private static CoordinateReferenceSystem getCachedCRS(final String key){
+
+		CoordinateReferenceSystem crs;
+		synchronized (sCRSCache) {
+			crs = sCRSCache.get(key);
+		}
+		if(crs != null){
+			sCRSHits.incrementAndGet();
+		}else{
+			sCRSMisses.incrementAndGet();
+		}
+		return crs;
+	}
+
+	private static void putCachedCRS(final String key, final CoordinateReferenceSystem crs){
+
+		if(crs == null){
+			return;
+		}
+		synchronized (sCRSCache) {
+			sCRSCache.put(key, crs);
+		}
+	}
 	/**
 	 * helper method to convert a proj parameter String to a wkt string
 	 * @param projString a String in proj parameter format
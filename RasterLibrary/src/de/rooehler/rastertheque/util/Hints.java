@@ -31,6 +31,8 @@ public class Hints implements Map<Object,Object>, Cloneable{
 	private static final int INT_KEY_COLORMAP = 1003;
 	
 	private static final int INT_KEY_AMPLITUDE_RESCALING = 1004;	
+	
+	private static final int INT_KEY_PARALLELISM = 1005;
 
 	
 
@@ -70,6 +72,17 @@ public class Hints implements Map<Object,Object>, Cloneable{
 		}
 		
 	};
+	/**
+	 * the number of threads which execute a SplittableRasterOp in parallel, 1 executes sequentially
+	 */
+	public static final Key KEY_PARALLELISM = new Hints.Key(INT_KEY_PARALLELISM){
+		
+		@Override
+		public boolean isCompatibleValue(Object val) {
+			return val instanceof Integer && ((Integer) val) > 0;
+		}
+		
+	};
 
 	
 
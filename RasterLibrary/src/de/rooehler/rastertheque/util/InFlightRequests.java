@@ -0,0 +1,104 @@
+package de.rooehler.rastertheque.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InFlightRequests coalesces concurrent identical requests, e.g. renders of the same tile
+ *
+ * the first caller of a key computes the result, callers which request the same key
+ * while this computation is in flight attach to it, wait for it and receive the same result
+ *
+ * the result is shared between all waiters and must hence not be modified by them
+ *
+ * once the computation completed, the key is released and a subsequent request computes again,
+ * caching results is up to the caller
+ *
+ * @author Robert Oehler
+ *
+ * @param <K> the type of the key identifying a request
+ * @param <V> the type of the result
+ */
+public class InFlightRequests<K, V> {
+
+	private final ConcurrentHashMap<K, FutureTask<V>> mInFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong mComputed = new AtomicLong();
+
+	private final AtomicLong mCoalesced = new AtomicLong();
+
+	/**
+	 * returns the result of the request @param key, computed by @param loader
+	 * if no identical request is in flight, otherwise the result of the request in flight
+	 *
+	 * @return the result or null if the computation failed or the waiting thread was interrupted
+	 */
+	public V get(final K key, final Callable<V> loader){
+
+		final FutureTask<V> task = new FutureTask<>(loader);
+
+		final FutureTask<V> inFlight = mInFlight.putIfAbsent(key, task);
+
+		if(inFlight != null){
+			mCoalesced.incrementAndGet();
+			return await(inFlight);
+		}
+
+		mComputed.incrementAndGet();
+		try{
+			task.run();
+		}finally{
+			mInFlight.remove(key, task);
+		}
+		return await(task);
+	}
+
+	/**
+	 * waits for @param task to complete
+	 * @return its result or null if it failed or the waiting thread was interrupted
+	 */
+	private V await(final FutureTask<V> task){
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			if(e.getCause() instanceof Error){
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException("request failed", e.getCause());
+		}
+	}
+
+	/**
+	 * @return the amount of requests which are currently in flight
+	 */
+	public int getInFlightCount(){
+
+		return mInFlight.size();
+	}
+
+	/**
+	 * @return the amount of requests which were computed
+	 */
+	public long getComputedCount(){
+
+		return mComputed.get();
+	}
+
+	/**
+	 * @return the amount of duplicate requests which attached to an identical request in flight
+	 */
+	public long getCoalescedCount(){
+
+		return mCoalesced.get();
+	}
+}
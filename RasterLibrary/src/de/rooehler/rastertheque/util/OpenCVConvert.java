@@ -308,6 +308,13 @@ public class OpenCVConvert {
 			return Imgproc.INTER_LINEAR;
 		case BICUBIC:
 			return Imgproc.INTER_CUBIC;
+		case LANCZOS:
+			return Imgproc.INTER_LANCZOS4;
+		case AVERAGE:
+			return Imgproc.INTER_AREA;
+		case MODE:
+			//OpenCV has no majority resampling
+			return Imgproc.INTER_NEAREST;
 		default:
 			return Imgproc.INTER_LINEAR;
 		}	
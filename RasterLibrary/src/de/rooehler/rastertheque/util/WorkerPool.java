@@ -0,0 +1,50 @@
+package de.rooehler.rastertheque.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The WorkerPool provides the pool of daemon threads which is shared
+ * by the parallel computations of the library, e.g. parallel RasterOps
+ * and batch coordinate transformations
+ *
+ * a caller of the pool should compute a share of the work itself, hence the
+ * computation proceeds even if all threads of the pool are busy
+ *
+ * @author Robert Oehler
+ *
+ */
+public class WorkerPool {
+
+	private static ExecutorService executor;
+
+	/**
+	 * lazily creates the pool which has a thread per available processor
+	 * @return the pool
+	 */
+	public static synchronized ExecutorService getExecutor(){
+
+		if(executor == null){
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(getParallelism(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread thread = new Thread(r, "WorkerPool-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * @return the amount of threads of the pool
+	 */
+	public static int getParallelism(){
+
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
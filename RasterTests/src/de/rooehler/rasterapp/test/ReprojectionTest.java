@@ -10,6 +10,11 @@ import android.graphics.Bitmap.Config;
 import android.graphics.Rect;
 import android.util.Log;
 
+import org.osgeo.proj4j.CoordinateReferenceSystem;
+import org.osgeo.proj4j.CoordinateTransform;
+import org.osgeo.proj4j.ProjCoordinate;
+
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
 import de.rooehler.rastertheque.core.Drivers;
@@ -19,9 +24,11 @@ import de.rooehler.rastertheque.io.gdal.GDALDataset;
 import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
 import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
 import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.reprojecting.ApproxTransformer;
 import de.rooehler.rastertheque.processing.reprojecting.GDALReproject;
 import de.rooehler.rastertheque.processing.reprojecting.MReproject;
 import de.rooehler.rastertheque.processing.reprojecting.Reproject;
+import de.rooehler.rastertheque.proj.Proj;
 import de.rooehler.rastertheque.util.Constants;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
@@ -101,17 +108,26 @@ public class ReprojectionTest extends android.test.ActivityTestCase {
 			Log.d(ReprojectionTest.class.getSimpleName(), "reprojecting took "+ (System.currentTimeMillis() - now));
 		}
 		
+		//the raster describes the result
+		assertNotNull(raster.getCRS());
+		assertEquals(Proj.crs(wkt).getParameterString(), raster.getCRS().getParameterString());
+		
+		final int width = raster.getDimension().width();
+		final int height = raster.getDimension().height();
+		
+		assertEquals(width * height * raster.getBands().size() * raster.getBands().get(0).datatype().size(), raster.getData().capacity());
+		
 		
 		if(writeResult){ //save result to disk for a visual evaluation		
 
 			RasterOps.execute(raster, RasterOps.COLORMAP, null, null, null);
 
-			final int[] pixels  = new int[ts * ts];
+			final int[] pixels  = new int[width * height];
 
 			raster.getData().asIntBuffer().get(pixels);
 
-			Bitmap bitmap = Bitmap.createBitmap(ts, ts, Config.ARGB_8888);
-			bitmap.setPixels(pixels, 0, ts, 0, 0, ts, ts);	
+			Bitmap bitmap = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+			bitmap.setPixels(pixels, 0, width, 0, 0, width, height);	
 
 			assertNotNull(bitmap);
 
@@ -121,5 +137,142 @@ public class ReprojectionTest extends android.test.ActivityTestCase {
 		TestUtil.deletefile(file);
 	}
 	
+	/**
+	 * tests that an explicit target dimension determines the geometry of the reprojected raster
+	 */
+	public void testReprojectionDimension() throws IOException {
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_SMALL_BYTE);
+		
+		GDALDataset dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+		
+		final Rect readSize = new Rect(0, 0, 128, 128);
+		
+		final RasterQuery query = new GDALRasterQuery(
+				dataset.getBoundingBox(),
+				dataset.getCRS(),
+				dataset.getBands(),
+				readSize,
+				dataset.getBands().get(0).datatype(),
+				readSize);
+		
+		final Raster raster = dataset.read(query);
+		
+		final HashMap<Key,Serializable> params = new HashMap<>();
+		params.put(Reproject.KEY_REPROJECT_TARGET_CRS, Constants.EPSG_3857);
+		params.put(Reproject.KEY_REPROJECT_TARGET_DIMENSION, new Integer[]{ 100, 80 });
+		
+		new MReproject().execute(raster, params, null, null);
+		
+		assertEquals(100, raster.getDimension().width());
+		assertEquals(80, raster.getDimension().height());
+		assertEquals(100 * 80 * raster.getBands().get(0).datatype().size(), raster.getData().capacity());
+		assertFalse(dataset.getBoundingBox().equals(raster.getBoundingBox()));
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that parsed CRS are shared and transforms are cached per thread
+	 */
+	public void testProjCache() throws InterruptedException {
+		
+		final long hits = Proj.getCRSCacheHits();
+		
+		final CoordinateReferenceSystem first = Proj.crs(Constants.EPSG_3857);
+		final CoordinateReferenceSystem second = Proj.crs(Constants.EPSG_3857);
+		
+		assertSame(first, second);
+		assertTrue(Proj.getCRSCacheHits() > hits);
+		
+		final CoordinateReferenceSystem wgs84 = Proj.crs(4326);
+		
+		final CoordinateTransform transform = Proj.transform(wgs84, first);
+		
+		assertSame(transform, Proj.transform(wgs84, first));
+		
+		//another thread must not get the same instance
+		final CoordinateTransform[] other = new CoordinateTransform[1];
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				other[0] = Proj.transform(wgs84, first);
+			}
+		});
+		thread.start();
+		thread.join();
+		
+		assertNotNull(other[0]);
+		assertNotSame(transform, other[0]);
+	}
+	
+	/**
+	 * tests that a batch transformation, which is executed in parallel,
+	 * results in the same coordinates as transforming each point
+	 */
+	public void testBatchTransform(){
+		
+		final CoordinateReferenceSystem wgs84 = Proj.crs(4326);
+		final CoordinateReferenceSystem mercator = Proj.crs(3857);
+		
+		final int count = 2 * Proj.MIN_PARALLEL_POINTS + 1;
+		
+		final double[] coords = new double[count * 2];
+		for(int i = 0; i < count; i++){
+			coords[i * 2] = (i % 360) - 180;
+			coords[i * 2 + 1] = (i % 170) - 85;
+		}
+		
+		final double[] batch = coords.clone();
+		Proj.transform(wgs84, mercator, batch, batch, count);
+		
+		final CoordinateTransform transform = Proj.transform(wgs84, mercator);
+		final ProjCoordinate c = new ProjCoordinate();
+		for(int i = 0; i < count; i += 997){
+			c.x = coords[i * 2];
+			c.y = coords[i * 2 + 1];
+			transform.transform(c, c);
+			assertEquals(c.x, batch[i * 2]);
+			assertEquals(c.y, batch[i * 2 + 1]);
+		}
+	}
+	
+	/**
+	 * tests that the approximated source positions of a reprojection
+	 * are close to the exactly transformed positions while transforming far less points
+	 */
+	public void testApproxTransformer(){
+		
+		final CoordinateReferenceSystem src = Proj.crs(4326);
+		final CoordinateReferenceSystem dst = Proj.crs(32632);
+		
+		final int width = 300;
+		final int height = 200;
+		
+		final Coordinate dstUpperLeft = new Coordinate(200000, 6500000);
+		final Coordinate srcUpperLeft = new Coordinate(4, 59);
+		
+		final ApproxTransformer exact = new ApproxTransformer(Proj.transform(dst, src), dstUpperLeft, 3000, 3000, srcUpperLeft, 0.01, 0.01, 0);
+		final ApproxTransformer approx = new ApproxTransformer(Proj.transform(dst, src), dstUpperLeft, 3000, 3000, srcUpperLeft, 0.01, 0.01, ApproxTransformer.DEFAULT_MAX_ERROR);
+		
+		final double[] exactX = new double[width * height];
+		final double[] exactY = new double[width * height];
+		final double[] approxX = new double[width * height];
+		final double[] approxY = new double[width * height];
+		
+		exact.transform(width, 0, height, exactX, exactY);
+		approx.transform(width, 0, height, approxX, approxY);
+		
+		for(int i = 0; i < width * height; i++){
+			//the error is checked at the centers of the cells, hence allow some more
+			assertEquals(exactX[i], approxX[i], 2 * ApproxTransformer.DEFAULT_MAX_ERROR);
+			assertEquals(exactY[i], approxY[i], 2 * ApproxTransformer.DEFAULT_MAX_ERROR);
+		}
+		
+		assertEquals(width * height, exact.getTransformedPoints());
+		assertTrue(approx.getTransformedPoints() < width * height / 10);
+	}
 	
 }
@@ -7,6 +7,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import android.content.res.AssetManager;
 import android.graphics.Rect;
@@ -22,12 +26,19 @@ import de.rooehler.rastertheque.core.Drivers;
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.RasterDataset;
 import de.rooehler.rastertheque.core.RasterQuery;
+import de.rooehler.rastertheque.core.RasterVisitor;
+import de.rooehler.rastertheque.core.Statistics;
+import de.rooehler.rastertheque.io.cache.TileDiskCache;
+import de.rooehler.rastertheque.io.gdal.GDALBand;
 import de.rooehler.rastertheque.io.gdal.GDALDataset;
 import de.rooehler.rastertheque.io.gdal.GDALDriver;
 import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
+import de.rooehler.rastertheque.io.gdal.GDALStatistics;
 import de.rooehler.rastertheque.io.mbtiles.MBTilesDriver;
+import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
 import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.processing.rendering.MAmplitudeRescaler;
+import de.rooehler.rastertheque.util.ProgressListener;
 /**
  * tests of the I/O part of the library containing:
  * 
@@ -146,6 +157,316 @@ public class TestIO extends android.test.ActivityTestCase {
 		}
         
 	}
+	/**
+	 * tests building overviews into an external .ovr file
+	 * and reading a downsampled region from them
+	 */
+	public void testBuildOverviews() throws Exception{
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TEST_SMALL_BYTE);
+		
+		GDALDataset dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+		
+		//the listener is called on the building thread, the progress is collected
+		//and asserted on this thread after the future completed
+		final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+		
+		final Future<Boolean> future = dataset.buildOverviews(new int[]{2, 4}, ResampleMethod.BILINEAR, new ProgressListener() {
+			@Override
+			public void onProgress(int percent) {
+				
+				progress.add(percent);
+			}
+		});
+		
+		assertTrue(future.get());
+		
+		assertFalse(progress.isEmpty());
+		synchronized (progress) {
+			for(int percent : progress){
+				assertTrue(percent >= 0 && percent <= 100);
+			}
+		}
+		
+		final File ovr = new File(file.getAbsolutePath() + GDALDataset.OVERVIEW_EXTENSION);
+		
+		assertTrue(ovr.exists());
+		
+		dataset.close();
+		
+		//reopen to use the overviews
+		dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+		
+		final GDALBand band = (GDALBand) dataset.getBands().get(0);
+		
+		assertEquals(2, band.getOverviewCount());
+		
+		final Rect dim = dataset.getDimension();
+		final Rect target = new Rect(0, 0, dim.width() / 4, dim.height() / 4);
+		
+		//a read to a quarter of the size should use the coarsest overview
+		assertEquals(1, band.getBestOverview(dim.width(), dim.height(), target.width(), target.height()));
+		
+		final RasterQuery query = new GDALRasterQuery(
+				dataset.getBoundingBox(),
+				dataset.getCRS(),
+				dataset.getBands(),
+				dim,
+				dataset.getBands().get(0).datatype(),
+				target);
+		
+		final Raster raster = dataset.read(query);
+		
+		assertEquals(target.width() * target.height() * dataset.getBands().get(0).datatype().size(), raster.getData().capacity());
+		
+		dataset.close();
+		
+		ovr.delete();
+		
+		if(file != null && file.exists()){			
+			file.delete();
+		}
+	}
+	
+	/**
+	 * tests that reads without resampling are assembled from the block cache
+	 * and result in the same data as the uncached read
+	 */
+	public void testBlockCache() throws IOException{
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TEST_SMALL_BYTE);
+		
+		GDALDataset dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+		
+		final Rect dim = dataset.getDimension();
+		//a window which is not aligned to the blocks
+		final Rect rect = new Rect(dim.width() / 3, dim.height() / 3, dim.width() / 3 * 2, dim.height() / 3 * 2);
+		
+		final RasterQuery query = new GDALRasterQuery(
+				dataset.getBoundingBox(),
+				dataset.getCRS(),
+				dataset.getBands(),
+				rect,
+				dataset.getBands().get(0).datatype(),
+				rect);
+		
+		dataset.getBlockCache().setMaxBytes(0);
+		
+		final byte[] uncached = dataset.read(query).getData().array().clone();
+		
+		dataset.getBlockCache().setMaxBytes(GDALDataset.DEFAULT_BLOCK_CACHE_SIZE);
+		
+		final byte[] first = dataset.read(query).getData().array().clone();
+		
+		final long misses = dataset.getBlockCache().getMisses();
+		
+		assertTrue(misses > 0);
+		
+		final byte[] second = dataset.read(query).getData().array().clone();
+		
+		//all blocks were cached
+		assertEquals(misses, dataset.getBlockCache().getMisses());
+		
+		assertTrue(dataset.getBlockCache().getHits() > 0);
+		
+		assertTrue(Arrays.equals(uncached, first));
+		
+		assertTrue(Arrays.equals(first, second));
+		
+		dataset.close();
+		
+		if(file != null && file.exists()){			
+			file.delete();
+		}
+	}
+	
+	/**
+	 * tests that the statistics of a band are computed, persisted in a sidecar
+	 * and reloaded from it when the dataset is opened again
+	 */
+	public void testStatistics() throws IOException{
+
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TEST_SMALL_BYTE);
+
+		final File sidecar = GDALStatistics.getSidecar(file.getAbsolutePath());
+		if(sidecar.exists()){
+			sidecar.delete();
+		}
+
+		GDALDataset dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+
+		final Statistics computed = dataset.getBands().get(0).statistics();
+
+		assertNotNull(computed);
+
+		assertTrue(computed.getMin() <= computed.getMean());
+
+		assertTrue(computed.getMean() <= computed.getMax());
+
+		assertTrue(sidecar.exists());
+
+		dataset.close();
+
+		dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+
+		final Statistics loaded = dataset.getStatistics(0);
+
+		assertEquals(computed.getMin(), loaded.getMin());
+
+		assertEquals(computed.getMax(), loaded.getMax());
+
+		assertTrue(Arrays.equals(computed.getHistogram(), loaded.getHistogram()));
+
+		dataset.close();
+
+		sidecar.delete();
+
+		if(file != null && file.exists()){
+			file.delete();
+		}
+	}
+
+	/**
+	 * tests that the TileDiskCache persists tiles, evicts the least recently used ones
+	 * and keeps the tiles of different styles in different containers
+	 */
+	public void testTileDiskCache() throws IOException{
+
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TEST_SMALL_BYTE);
+
+		final File directory = new File(getInstrumentation().getContext().getCacheDir(), "testtiles");
+
+		final RasterDataset dataset = (RasterDataset) Drivers.open(file.getAbsolutePath(), null);
+
+		final String style = TileDiskCache.getStyle(dataset);
+
+		TileDiskCache cache = new TileDiskCache(directory, file.getAbsolutePath(), style, 10 * 1024);
+
+		cache.clear();
+
+		final byte[] tile = new byte[1024];
+		for(int i = 0; i < 20; i++){
+			Arrays.fill(tile, (byte) i);
+			cache.put(10, i, i, 256, tile);
+		}
+
+		assertTrue(cache.getSize() <= 10 * 1024);
+
+		//the least recently used tiles were evicted
+		assertNull(cache.get(10, 0, 0, 256));
+
+		assertEquals(19, cache.get(10, 19, 19, 256)[0]);
+
+		final int count = cache.getCount();
+
+		cache.close();
+
+		//the tiles are persisted
+		cache = new TileDiskCache(directory, file.getAbsolutePath(), style, 10 * 1024);
+
+		assertEquals(count, cache.getCount());
+
+		assertEquals(18, cache.get(10, 18, 18, 256)[0]);
+
+		cache.close();
+
+		//a different style uses its own container
+		TileDiskCache changed = new TileDiskCache(directory, file.getAbsolutePath(), style + "changed", 100 * 1024);
+
+		assertEquals(0, changed.getCount());
+
+		assertFalse(changed.getFile().equals(cache.getFile()));
+
+		changed.close();
+
+		//which does not discard the tiles of the original style as long as all containers fit into the size limit
+		cache = new TileDiskCache(directory, file.getAbsolutePath(), style, 100 * 1024);
+
+		assertEquals(count, cache.getCount());
+
+		cache.close();
+
+		//otherwise the containers of other styles are deleted
+		changed = new TileDiskCache(directory, file.getAbsolutePath(), style + "changed", 1024);
+
+		assertFalse(cache.getFile().exists());
+
+		changed.close();
+
+		changed.getFile().delete();
+
+		dataset.close();
+
+		if(file != null && file.exists()){
+			file.delete();
+		}
+	}
+
+	/**
+	 * tests streaming a dataset in strips and in native blocks
+	 */
+	public void testStream() throws IOException{
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TEST_SMALL_BYTE);
+		
+		final GDALDataset dataset = (GDALDataset) Drivers.open(file.getAbsolutePath(), null);
+		
+		final Rect dim = dataset.getDimension();
+		
+		final RasterQuery query = new RasterQuery(
+				dataset.getBoundingBox(),
+				dataset.getCRS(),
+				dataset.getBands(),
+				dim,
+				dataset.getBands().get(0).datatype());
+		
+		final long[] pixels = new long[1];
+		
+		//strips of 16 rows
+		dataset.stream(query, dim.width(), 16, new RasterVisitor() {
+			@Override
+			public boolean visit(Raster chunk) {
+				
+				final Rect rect = chunk.getDimension();
+				
+				assertEquals(dim.width(), rect.width());
+				assertTrue(rect.height() <= 16);
+				assertEquals(rect.width() * rect.height() * chunk.getBands().size(), chunk.getData().limit());
+				
+				if(rect.top == 0){
+					//the geotransform of the first strip is the one of the dataset
+					assertEquals(dataset.getBoundingBox().getMinX(), chunk.getGeoTransform()[0], 1e-6);
+					assertEquals(dataset.getBoundingBox().getMaxY(), chunk.getGeoTransform()[3], 1e-6);
+				}
+				
+				pixels[0] += rect.width() * rect.height();
+				return true;
+			}
+		});
+		
+		assertEquals(dim.width() * dim.height(), pixels[0]);
+		
+		final int[] chunks = new int[1];
+		
+		//native blocks, stopped after the first one
+		dataset.stream(query, 0, 0, new RasterVisitor() {
+			@Override
+			public boolean visit(Raster chunk) {
+				
+				chunks[0]++;
+				return false;
+			}
+		});
+		
+		assertEquals(1, chunks[0]);
+		
+		dataset.close();
+		
+		if(file != null && file.exists()){			
+			file.delete();
+		}
+	}
+	
 	/**
 	 * tests the identification of Driver implementations 
 	 * there exists currently two implementation (GDALDriver, MBTilesDriver)
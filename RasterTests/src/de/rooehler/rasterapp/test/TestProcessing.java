@@ -4,29 +4,48 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import android.graphics.Rect;
 import android.util.Log;
+import android.util.Pair;
 
 import com.vividsolutions.jts.geom.Envelope;
 
+import de.rooehler.rastertheque.core.Band;
+import de.rooehler.rastertheque.core.DataType;
+import de.rooehler.rastertheque.core.NoData;
 import de.rooehler.rastertheque.core.Raster;
 import de.rooehler.rastertheque.core.RasterQuery;
+import de.rooehler.rastertheque.core.Statistics;
 import de.rooehler.rastertheque.io.gdal.GDALDataset;
 import de.rooehler.rastertheque.io.gdal.GDALDriver;
 import de.rooehler.rastertheque.io.gdal.GDALRasterQuery;
 import de.rooehler.rastertheque.processing.Interpolation.ResampleMethod;
 import de.rooehler.rastertheque.processing.RasterOp;
 import de.rooehler.rastertheque.processing.RasterOps;
+import de.rooehler.rastertheque.processing.SplittableRasterOp;
+import de.rooehler.rastertheque.processing.rendering.AmplitudeRescaler;
+import de.rooehler.rastertheque.processing.rendering.ColorMap;
+import de.rooehler.rastertheque.processing.rendering.ColorMapEntry;
+import de.rooehler.rastertheque.processing.rendering.ColorMapLUT;
 import de.rooehler.rastertheque.processing.rendering.MAmplitudeRescaler;
 import de.rooehler.rastertheque.processing.rendering.MColorMap;
+import de.rooehler.rastertheque.processing.rendering.PyramidTileGrid;
+import de.rooehler.rastertheque.processing.rendering.TileRenderer;
+import de.rooehler.rastertheque.processing.reprojecting.MReproject;
+import de.rooehler.rastertheque.processing.reprojecting.Reproject;
 import de.rooehler.rastertheque.processing.resampling.JAIResampler;
 import de.rooehler.rastertheque.processing.resampling.MResampler;
 import de.rooehler.rastertheque.processing.resampling.OpenCVResampler;
+import de.rooehler.rastertheque.processing.resampling.ResampleCoefficients;
 import de.rooehler.rastertheque.processing.resampling.Resampler;
+import de.rooehler.rastertheque.util.Constants;
 import de.rooehler.rastertheque.util.Hints;
 import de.rooehler.rastertheque.util.Hints.Key;
 
@@ -244,6 +263,569 @@ public class TestProcessing extends android.test.ActivityTestCase  {
         return newHeight * newWidth;
 	}
 	
+	/**
+	 * tests that computing a resampling in strips of rows, as done by a
+	 * parallel execution, produces the same result as the sequential execution
+	 */
+	public void testSplitResampling() throws IOException {
+		
+		final GDALDriver driver = new GDALDriver();
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_SMALL_BYTE);
+		
+		final GDALDataset dataset = driver.open(file.getAbsolutePath());
+		
+		final int readSize = 256;
+		
+		final RasterQuery query = new GDALRasterQuery(
+				new Envelope(0, readSize, 0, readSize),
+				dataset.getCRS(),
+				dataset.getBands(),
+				new Rect(0, 0, readSize, readSize),
+				dataset.getBands().get(0).datatype(),
+				new Rect(0, 0, readSize, readSize));
+		
+		HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 2.5d, 2.5d });
+		
+		final Hints hints = new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.BICUBIC);
+		
+		final Raster sequential = dataset.read(query);
+		new MResampler().execute(sequential, resizeParams, hints, null);
+		
+		final Raster split = dataset.read(query);
+		final SplittableRasterOp.Split resampling = new MResampler().split(split, resizeParams, hints);
+		
+		//compute the strips in reverse order
+		final int rows = resampling.getRows();
+		for(int row = rows; row > 0; row -= 8){
+			resampling.execute(Math.max(0, row - 8), row, null);
+		}
+		resampling.finish();
+		
+		assertEquals(sequential.getDimension(), split.getDimension());
+		assertTrue(sequential.getData().equals(split.getData()));
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that the parallel execution of the splittable resampling, colormap and reprojection
+	 * produces the same bytes as their sequential execution
+	 */
+	public void testParallelExecution() throws IOException {
+		
+		final GDALDriver driver = new GDALDriver();
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_INTERNAL_COLORMAP);
+		
+		final GDALDataset dataset = driver.open(file.getAbsolutePath());
+		
+		final Rect dim = dataset.getDimension();
+		final int readSize = Math.min(256, Math.min(dim.width(), dim.height()));
+		
+		final RasterQuery query = new GDALRasterQuery(
+				dataset.getBoundingBox(),
+				dataset.getCRS(),
+				dataset.getBands(),
+				new Rect(0, 0, readSize, readSize),
+				dataset.getBands().get(0).datatype(),
+				new Rect(0, 0, readSize, readSize));
+		
+		final Hints serial = new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.BILINEAR);
+		final Hints parallel = new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.BILINEAR);
+		parallel.put(Hints.KEY_PARALLELISM, 4);
+		
+		final HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 1.7d, 1.7d });
+		
+		final HashMap<Key,Serializable> reprojectParams = new HashMap<>();
+		reprojectParams.put(Reproject.KEY_REPROJECT_TARGET_CRS, Constants.EPSG_3857);
+		
+		final RasterOp[] ops = new RasterOp[]{ new MResampler(), new MColorMap(), new MReproject() };
+		final List<HashMap<Key,Serializable>> params = new ArrayList<>();
+		params.add(resizeParams);
+		params.add(null);
+		params.add(reprojectParams);
+		
+		for(int i = 0; i < ops.length; i++){
+			
+			final Raster sequential = dataset.read(query);
+			RasterOps.execute(ops[i], sequential, params.get(i), serial, null);
+			
+			final Raster split = dataset.read(query);
+			RasterOps.execute(ops[i], split, params.get(i), parallel, null);
+			
+			assertEquals(sequential.getDimension(), split.getDimension());
+			assertTrue(ops[i].getOperationName(), sequential.getData().equals(split.getData()));
+		}
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that a fused chain of resampling and rendering produces
+	 * the same pixels as executing both operations one after the other,
+	 * also when it is executed in parallel strips
+	 */
+	public void testFusedChain() throws IOException {
+		
+		final GDALDriver driver = new GDALDriver();
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_SMALL_BYTE);
+		
+		final GDALDataset dataset = driver.open(file.getAbsolutePath());
+		
+		final int readSize = 256;
+		
+		final RasterQuery query = new GDALRasterQuery(
+				new Envelope(0, readSize, 0, readSize),
+				dataset.getCRS(),
+				dataset.getBands(),
+				new Rect(0, 0, readSize, readSize),
+				dataset.getBands().get(0).datatype(),
+				new Rect(0, 0, readSize, readSize));
+		
+		HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 1.5d, 1.5d });
+		
+		HashMap<Key,Serializable> renderParams = new HashMap<>();
+		renderParams.put(MAmplitudeRescaler.KEY_MINMAX, new double[]{ 0, 255 });
+		
+		final Raster sequential = dataset.read(query);
+		new MResampler().execute(sequential, resizeParams, null, null);
+		new MAmplitudeRescaler().execute(sequential, renderParams, null, null);
+		
+		final Raster fused = dataset.read(query);
+		final List<RasterOps.Step> steps = new ArrayList<>();
+		steps.add(new RasterOps.Step(RasterOps.RESIZE, resizeParams));
+		steps.add(new RasterOps.Step(RasterOps.AMPLITUDE_RESCALING, renderParams));
+		RasterOps.execute(fused, steps, null, null);
+		
+		assertEquals(sequential.getDimension(), fused.getDimension());
+		assertTrue(sequential.getData().equals(fused.getData()));
+		
+		//the fused pass in parallel strips
+		final Raster parallel = dataset.read(query);
+		RasterOps.execute(parallel, steps, new Hints(Hints.KEY_PARALLELISM, 4), null);
+		
+		assertEquals(sequential.getDimension(), parallel.getDimension());
+		assertTrue(sequential.getData().equals(parallel.getData()));
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that the tile renderer renders tiles which cover the dataset
+	 * and returns null for tiles outside of it
+	 */
+	public void testTileRenderer() throws IOException {
+		
+		final GDALDriver driver = new GDALDriver();
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_SMALL_BYTE);
+		
+		final GDALDataset dataset = driver.open(file.getAbsolutePath());
+		
+		final int tileSize = 256;
+		
+		final TileRenderer renderer = new TileRenderer(dataset, new PyramidTileGrid(0));
+		
+		final int[] pixels = renderer.render(0, 0, 0, tileSize);
+		
+		assertNotNull(pixels);
+		assertEquals(tileSize * tileSize, pixels.length);
+		
+		assertNull(renderer.render(1000, 1000, 0, tileSize));
+		assertTrue(renderer.isEmpty(1000, 1000, 0, 1, tileSize));
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that the values of an unsigned byte band are rescaled in the unsigned domain
+	 * of its statistics, so that values above 127 are not clamped to black
+	 */
+	public void testAmplitudeRescalingUnsignedByte(){
+		
+		//the statistics of GDAL are unsigned
+		final int[][] ranges = new int[][]{ { 130, 250 }, { 0, 255 } };
+		
+		for(final int[] range : ranges){
+			
+			final byte[] values = new byte[]{ (byte) range[0], (byte) 200, (byte) range[1], (byte) range[1] };
+			
+			final Band band = new Band() {
+				
+				@Override
+				public NoData nodata() {
+					return NoData.NONE;
+				}
+				
+				@Override
+				public String name() {
+					return "unsigned byte band";
+				}
+				
+				@Override
+				public DataType datatype() {
+					return DataType.BYTE;
+				}
+				
+				@Override
+				public ColorMap colorMap() {
+					return null;
+				}
+				
+				@Override
+				public Color color() {
+					return Color.GRAY;
+				}
+				
+				@Override
+				public Statistics statistics() {
+					return new Statistics(range[0], range[1], 200, 50, range[0] - 0.5, range[1] + 0.5, null);
+				}
+			};
+			final List<Band> bands = new ArrayList<>();
+			bands.add(band);
+			
+			final Raster raster = new Raster(null, null, new Rect(0, 0, 2, 2), bands, ByteBuffer.wrap(values), null);
+			
+			new MAmplitudeRescaler().execute(raster, null, null, null);
+			
+			final int[] pixels = new int[4];
+			raster.getData().asIntBuffer().get(pixels);
+			
+			final int darkest = pixels[0] & 0xff;
+			final int middle = pixels[1] & 0xff;
+			final int brightest = pixels[2] & 0xff;
+			
+			assertEquals(0, darkest);
+			assertEquals((int) ((200d - range[0]) / (range[1] - range[0]) * 256), middle);
+			assertEquals(255, brightest);
+		}
+		
+		//negative values of signed 16 bit bands, which are of type CHAR, are read unsigned
+		final double[] values = new double[]{ 65436, 10 };
+		AmplitudeRescaler.toValueDomain(values, values.length, DataType.CHAR);
+		assertEquals(-100d, values[0]);
+		assertEquals(10d, values[1]);
+	}
+	
+	/**
+	 * tests that the dense table of an integer colormap and its breakpoints map values to the same colors
+	 */
+	public void testColorMapLUT(){
+		
+		final ArrayList<ColorMapEntry> entries = new ArrayList<>();
+		entries.add(new ColorMapEntry(0xff0000ff, -100, 1, null));
+		entries.add(new ColorMapEntry(0xff00ff00, 0, 1, null));
+		entries.add(new ColorMapEntry(0xffff0000, 250, 1, null));
+		
+		final ColorMap colorMap = new ColorMap(entries, -100, 250, new Pair<Double,Integer>(-9999d, 0xffffffff), false);
+		
+		final ColorMapLUT dense = colorMap.compile(DataType.SHORT);
+		final ColorMapLUT intervals = colorMap.compile(DataType.FLOAT);
+		
+		assertTrue(dense.isDense());
+		assertFalse(intervals.isDense());
+		
+		final double[] values = new double[]{ -9999, -500, -100, -50, 0, 1, 249, 250, 1000 };
+		final int[] densePixels = new int[values.length];
+		final int[] intervalPixels = new int[values.length];
+		
+		dense.lookup(values, values.length, densePixels);
+		intervals.lookup(values, values.length, intervalPixels);
+		
+		for(int i = 0; i < values.length; i++){
+			assertEquals(intervalPixels[i], densePixels[i]);
+		}
+		assertEquals(0xffffffff, densePixels[0]);
+		assertEquals(0xff0000ff, densePixels[3]);
+		assertEquals(0xff00ff00, densePixels[5]);
+		assertEquals(0xffff0000, densePixels[8]);
+	}
+	
+	/**
+	 * tests that downsampling with the area methods reduces the block of source pixels
+	 * each destination pixel covers
+	 */
+	public void testAreaResampling() throws IOException {
+		
+		final GDALDriver driver = new GDALDriver();
+		
+		final File file = TestUtil.createFileFromAssets(getInstrumentation().getContext(),TestIO.TEST_SMALL_BYTE);
+		
+		final GDALDataset dataset = driver.open(file.getAbsolutePath());
+		
+		final int readSize = 256;
+		final int factor = 8;
+		
+		final RasterQuery query = new GDALRasterQuery(
+				new Envelope(0, readSize, 0, readSize),
+				dataset.getCRS(),
+				dataset.getBands(),
+				new Rect(0, 0, readSize, readSize),
+				dataset.getBands().get(0).datatype(),
+				new Rect(0, 0, readSize, readSize));
+		
+		HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 1d / factor, 1d / factor });
+		
+		final Raster average = dataset.read(query);
+		final double[] src = average.getDoubles(0, null);
+		new MResampler().execute(average, resizeParams, new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.AVERAGE), null);
+		
+		final Raster mode = dataset.read(query);
+		new MResampler().execute(mode, resizeParams, new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.MODE), null);
+		
+		assertEquals(readSize / factor, average.getDimension().width());
+		assertEquals(readSize / factor, mode.getDimension().height());
+		
+		//the first destination pixel covers the first block of source pixels
+		double sum = 0;
+		final HashMap<Double, Integer> counts = new HashMap<>();
+		for(int y = 0; y < factor; y++){
+			for(int x = 0; x < factor; x++){
+				final double value = src[y * readSize + x];
+				//bytes are averaged unsigned
+				sum += ((int) value) & 0xff;
+				counts.put(value, counts.containsKey(value) ? counts.get(value) + 1 : 1);
+			}
+		}
+		
+		assertEquals((double) (byte) Math.rint(sum / (factor * factor)), average.getDoubles(0, null)[0]);
+		
+		final double modeValue = mode.getDoubles(0, null)[0];
+		for(Integer count : counts.values()){
+			assertTrue(count <= counts.get(modeValue));
+		}
+		
+		dataset.close();
+		
+		TestUtil.deletefile(file);
+	}
+	
+	/**
+	 * tests that the area methods skip the nodata values of the band
+	 * and that a destination pixel which only covers nodata becomes nodata
+	 */
+	public void testAreaResamplingNoData(){
+		
+		final double noData = -9999;
+		
+		final Band band = new Band() {
+			
+			@Override
+			public NoData nodata() {
+				return NoData.create(noData);
+			}
+			
+			@Override
+			public String name() {
+				return "short band with nodata";
+			}
+			
+			@Override
+			public DataType datatype() {
+				return DataType.SHORT;
+			}
+			
+			@Override
+			public ColorMap colorMap() {
+				return null;
+			}
+			
+			@Override
+			public Color color() {
+				return Color.GRAY;
+			}
+			
+			@Override
+			public Statistics statistics() {
+				return null;
+			}
+		};
+		final List<Band> bands = new ArrayList<>();
+		bands.add(band);
+		
+		final short[] values = new short[]{
+				10, -9999, -9999, -9999,
+				20, -9999, -9999, -9999 };
+		
+		HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 0.5d, 0.5d });
+		
+		for(ResampleMethod method : new ResampleMethod[]{ ResampleMethod.AVERAGE, ResampleMethod.MODE }){
+			
+			final ByteBuffer buffer = ByteBuffer.allocate(values.length * DataType.SHORT.size()).order(ByteOrder.nativeOrder());
+			buffer.asShortBuffer().put(values);
+			
+			final Raster raster = new Raster(null, null, new Rect(0, 0, 4, 2), bands, buffer, null);
+			
+			new MResampler().execute(raster, resizeParams, new Hints(Hints.KEY_INTERPOLATION, method), null);
+			
+			final double[] result = raster.getDoubles(0, null);
+			
+			//the mean of 10 and 20, the smaller value of the tie between 10 and 20
+			assertEquals(method == ResampleMethod.AVERAGE ? 15d : 10d, result[0]);
+			assertEquals(noData, result[1]);
+		}
+	}
+	
+	/**
+	 * tests that the separable resampling using precomputed coefficients
+	 * results in the same values as interpolating each pixel,
+	 * also when the resampled rows are kept in a ring of getTaps() rows
+	 * 
+	 * the lanczos kernel is widened when sampling down, hence it is compared when sampling up only
+	 */
+	public void testResampleCoefficients(){
+		
+		final int srcWidth = 17;
+		final int srcHeight = 13;
+		final int dstWidth = 40;
+		
+		final double[] src = new double[srcWidth * srcHeight];
+		for(int i = 0; i < src.length; i++){
+			src[i] = (i * 31) % 97 - 20;
+		}
+		
+		for(ResampleMethod method : new ResampleMethod[]{ ResampleMethod.NEARESTNEIGHBOUR, ResampleMethod.BILINEAR, ResampleMethod.BICUBIC, ResampleMethod.LANCZOS }){
+			
+			final int dstHeight = method == ResampleMethod.LANCZOS ? 20 : 9;
+			
+			final ResampleCoefficients horizontal = ResampleCoefficients.get(srcWidth, dstWidth, method);
+			final ResampleCoefficients vertical = ResampleCoefficients.get(srcHeight, dstHeight, method);
+			
+			assertSame(horizontal, ResampleCoefficients.get(srcWidth, dstWidth, method));
+			
+			final double[][] rows = new double[srcHeight][dstWidth];
+			for(int r = 0; r < srcHeight; r++){
+				horizontal.resample(src, r * srcWidth, rows[r], 0);
+			}
+			
+			//a ring of as many rows as the vertical kernel has taps
+			final double[][] ring = new double[vertical.getTaps()][dstWidth];
+			final double[] ringRow = new double[dstWidth];
+			
+			final float x_ratio = ((float) (srcWidth - 1)) / dstWidth;
+			final float y_ratio = ((float) (srcHeight - 1)) / dstHeight;
+			final double[] row = new double[dstWidth];
+			
+			for(int i = 0; i < dstHeight; i++){
+				
+				vertical.combine(i, rows, row);
+				
+				for(int r = vertical.getFirstIndex(i); r <= vertical.getLastIndex(i); r++){
+					System.arraycopy(rows[r], 0, ring[r % ring.length], 0, dstWidth);
+				}
+				vertical.combine(i, ring, ringRow);
+				
+				for(int j = 0; j < dstWidth; j++){
+					final double expected = MResampler.interpolate(src, srcWidth, srcHeight, x_ratio * j, y_ratio * i, method);
+					assertEquals(expected, row[j], 1e-9);
+					assertEquals(row[j], ringRow[j], 0);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * tests that the lanczos kernel is widened when sampling down,
+	 * hence a pattern finer than the destination pixels is averaged instead of aliased
+	 */
+	public void testLanczosDownsampling(){
+		
+		final int srcSize = 400;
+		final int dstSize = srcSize / 4;
+		
+		final double[] src = new double[srcSize];
+		for(int i = 0; i < srcSize; i++){
+			src[i] = i % 2 == 0 ? 0 : 100;
+		}
+		
+		final ResampleCoefficients coefficients = ResampleCoefficients.get(srcSize, dstSize, ResampleMethod.LANCZOS);
+		
+		assertTrue(coefficients.getTaps() > 6);
+		
+		final double[] dst = new double[dstSize];
+		coefficients.resample(src, 0, dst, 0);
+		
+		//apart from the borders, which are clamped
+		for(int i = 5; i < dstSize - 5; i++){
+			assertEquals(50, dst[i], 1);
+		}
+	}
+	
+	/**
+	 * pins the values of the bicubic interpolation, which uses the cubic convolution kernel
+	 * with a = -0.5 at fractional distances and rounds the results of integer types
+	 */
+	public void testBicubicResampling(){
+		
+		final Band band = new Band() {
+			
+			@Override
+			public NoData nodata() {
+				return NoData.NONE;
+			}
+			
+			@Override
+			public String name() {
+				return "byte band";
+			}
+			
+			@Override
+			public DataType datatype() {
+				return DataType.BYTE;
+			}
+			
+			@Override
+			public ColorMap colorMap() {
+				return null;
+			}
+			
+			@Override
+			public Color color() {
+				return Color.GRAY;
+			}
+			
+			@Override
+			public Statistics statistics() {
+				return null;
+			}
+		};
+		final List<Band> bands = new ArrayList<>();
+		bands.add(band);
+		
+		final Raster raster = new Raster(null, null, new Rect(0, 0, 4, 1), bands, ByteBuffer.wrap(new byte[]{ 0, 100, 50, 10 }), null);
+		
+		HashMap<Key,Serializable> resizeParams = new HashMap<>();
+		resizeParams.put(Resampler.KEY_SIZE, new Double[]{ 2d, 2d });
+		
+		new MResampler().execute(raster, resizeParams, new Hints(Hints.KEY_INTERPOLATION, ResampleMethod.BICUBIC), null);
+		
+		assertEquals(8, raster.getDimension().width());
+		
+		//the source positions 0, 0.375, 0.75, ..., 2.625, the kernel overshoots at 1.125
+		final double[] expected = new double[]{ 0, 37, 83, 101, 84, 57, 38, 22 };
+		final double[] row = raster.getDoubles(0, 0, 1, null);
+		
+		for(int j = 0; j < expected.length; j++){
+			assertEquals(expected[j], row[j]);
+		}
+	}
+	
 	/**
 	 * test if all currently available implementations of RasterOp are retrieved during runtime
 	 */